@@ -23,13 +23,13 @@ import java.util.Collection;
 import java.util.GregorianCalendar;
 import java.util.Iterator;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.TreeMap;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.geo.Position;
 import us.mn.state.dot.tms.units.Distance;
 import us.mn.state.dot.tms.utils.GPSutil;
-import us.mn.state.dot.tms.utils.twilight.Sun;
-import us.mn.state.dot.tms.utils.twilight.Time;
+import us.mn.state.dot.tms.utils.twilight.SolarTable;
 
 import static us.mn.state.dot.tms.PresetAliasName.HOME;
 import static us.mn.state.dot.tms.PresetAliasName.NIGHT_SHIFT;
@@ -48,6 +48,10 @@ import static us.mn.state.dot.tms.SystemAttrEnum.CAMERA_SHIFT_SUNSET_OFFSET;
  */
 public class CameraHelper extends BaseHelper {
 
+	/** Solar table for camera shift times */
+	static private final SolarTable SOLAR_TABLE =
+		new SolarTable(TimeZone.getDefault());
+
 	/** Don't allow instances to be created */
 	private CameraHelper() {
 		assert false;
@@ -277,42 +281,27 @@ public class CameraHelper extends BaseHelper {
 		GregorianCalendar di = (GregorianCalendar) TimeSteward.getCalendarInstance();
 		di.add(Calendar.DAY_OF_MONTH, off);
 
-		if (off != 0) {
-			/* if there is a day offset, set date instance time to 03:01 (3:01 AM) to account for possible
-			 * Daylight Savings Time changes. */
-			di.set(Calendar.HOUR_OF_DAY, 3);
-			di.set(Calendar.MINUTE, 1);
-			di.set(Calendar.SECOND, 0);
-		}
-
+		/* solar events are computed once per day (at noon, to account
+		 * for possible Daylight Savings Time changes) */
 		GregorianCalendar diTwilight = null;
 		Position center = getGeographicCenter();
 		if (center != null) {
-			Time twilight;
-
-			boolean dst = di.getTimeZone().inDaylightTime(di.getTime());
+			SolarTable.Day sd = SOLAR_TABLE.lookup(di, center);
+			diTwilight = di;
 			if (NIGHT_SHIFT.equals(pan))
-				twilight = Sun.sunsetTime(di, center, di.getTimeZone(), dst);
+				diTwilight.setTimeInMillis(sd.sunset + getSunsetOffset() * 60000);
 			else
-				twilight = Sun.sunriseTime(di, center, di.getTimeZone(), dst);
-
-			diTwilight = (GregorianCalendar) setTimeToCalendar(di, twilight);
-
-			if (NIGHT_SHIFT.equals(pan))
-				diTwilight.setTimeInMillis((diTwilight.getTimeInMillis() + getSunsetOffset() * 60000));
-			else
-				diTwilight.setTimeInMillis((diTwilight.getTimeInMillis() + getSunriseOffset() * 60000));
+				diTwilight.setTimeInMillis(sd.sunrise + getSunriseOffset() * 60000);
 		}
 
 		return diTwilight;
 	}
 
-	/** set the sun-rise/set time to a calendar instance */
-	static private Calendar setTimeToCalendar(Calendar c, Time time) {
-		c.set(Calendar.HOUR_OF_DAY, time.getHours());
-		c.set(Calendar.MINUTE, time.getMinutes());
-		c.set(Calendar.SECOND, (int) time.getSeconds());
-		return c;
+	/** Update the solar table for a new day (call after midnight) */
+	static public void updateSolarTable() {
+		Position center = getGeographicCenter();
+		if (center != null)
+			SOLAR_TABLE.update(TimeSteward.getCalendarInstance(), center);
 	}
 
 	private final static String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss Z";
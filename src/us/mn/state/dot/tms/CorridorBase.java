@@ -16,12 +16,15 @@ package us.mn.state.dot.tms;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeMap;
 import static us.mn.state.dot.tms.GeoLocHelper.distanceTo;
 import static us.mn.state.dot.tms.GeoLocHelper.segmentDistance;
+import us.mn.state.dot.tms.geo.PointIndex;
 import us.mn.state.dot.tms.geo.Position;
 import us.mn.state.dot.tms.geo.SphericalMercatorPosition;
 import us.mn.state.dot.tms.units.Distance;
@@ -29,6 +32,10 @@ import static us.mn.state.dot.tms.units.Distance.Units.MILES;
 
 /**
  * A corridor is a collection of all R_Node objects for one roadway corridor.
+ * When nodes are arranged, their positions are indexed, so that mile points
+ * can be calculated without scanning every node.  Nodes added to an arranged
+ * corridor are inserted next to their nearest neighbour, without sorting the
+ * whole corridor again.
  *
  * @author Douglas Lau
  */
@@ -99,6 +106,19 @@ public class CorridorBase<T extends R_Node> implements Iterable<T> {
 	protected final TreeMap<Float, T> n_points =
 		new TreeMap<Float, T>();
 
+	/** Mapping from r_node to milepoint */
+	private final IdentityHashMap<T, Float> n_miles =
+		new IdentityHashMap<T, Float>();
+
+	/** Nodes with mile points, in mile point order */
+	private final ArrayList<T> m_nodes = new ArrayList<T>();
+
+	/** Mile points of nodes in m_nodes */
+	private float[] m_miles = new float[0];
+
+	/** Position index of nodes in m_nodes */
+	private PointIndex m_index = null;
+
 	/** Create a new corridor */
 	public CorridorBase(GeoLoc loc) {
 		name = GeoLocHelper.getCorridorName(loc);
@@ -106,87 +126,189 @@ public class CorridorBase<T extends R_Node> implements Iterable<T> {
 		road_dir = loc.getRoadDir();
 	}
 
-	/** Add a roadway node to the corridor */
+	/** Add a roadway node to the corridor.  If the node is already on the
+	 * corridor, it is treated as moved, and will be placed again when
+	 * the nodes are arranged. */
 	public void addNode(T r_node) {
 		if (hasLocation(r_node) && !r_node.getAbandoned()) {
+			if (r_nodes.remove(r_node))
+				clearMilePoints();
 			unsorted.add(r_node);
-			unsorted.addAll(r_nodes);
-			r_nodes.clear();
-			n_points.clear();
 		}
 	}
 
 	/** Remove a roadway node from the corridor */
 	public void removeNode(T r_node) {
-		unsorted.addAll(r_nodes);
 		unsorted.remove(r_node);
-		r_nodes.clear();
-		n_points.clear();
+		if (r_nodes.remove(r_node))
+			clearMilePoints();
 	}
 
 	/** Arrange the nodes in the corridor */
 	public void arrangeNodes() {
-		sortNodes();
+		if (r_nodes.size() > 2 * unsorted.size())
+			insertNodes();
+		else
+			sortNodes();
+		if (isReversed())
+			Collections.reverse(r_nodes);
 		calculateNodeMilePoints();
 	}
 
-	/** Sort the roadway nodes for the corridor */
+	/** Sort all roadway nodes for the corridor */
 	private void sortNodes() {
-		assert r_nodes.isEmpty();
-		beginList();
-		while (!unsorted.isEmpty())
-			linkNearestNode();
-		if (isReversed())
-			Collections.reverse(r_nodes);
+		unsorted.addAll(r_nodes);
+		r_nodes.clear();
+		ArrayList<T> nodes = new ArrayList<T>(unsorted.size());
+		ArrayList<Position> pos = new ArrayList<Position>(
+			unsorted.size());
+		for (T n: unsorted) {
+			Position p = GeoLocHelper.getWgs84Position(
+				n.getGeoLoc());
+			if (p != null) {
+				nodes.add(n);
+				pos.add(p);
+			}
+		}
+		unsorted.clear();
+		if (nodes.size() > 0) {
+			linkNodes(nodes, new PointIndex(pos.toArray(
+				new Position[0])));
+		}
 	}
 
-	/** Put one r_node into the list */
-	private void beginList() {
-		// Only way to get one Set element is to get iterator
-		Iterator<T> it = unsorted.iterator();
-		if (it.hasNext()) {
-			r_nodes.add(it.next());
-			it.remove();
+	/** Link nodes into a list, by repeatedly adding the nearest unlinked
+	 * node to either end of the list */
+	private void linkNodes(ArrayList<T> nodes, PointIndex index) {
+		int first = 0;
+		int last = 0;
+		r_nodes.add(nodes.get(0));
+		index.remove(0);
+		while (index.size() > 0) {
+			int fnear = index.findNearestTo(first);
+			int lnear = index.findNearestTo(last);
+			if (fnear < 0 || lnear < 0)
+				break;
+			T f = nodes.get(fnear);
+			T l = nodes.get(lnear);
+			if (meters(f, nodes.get(first)) <
+			    meters(l, nodes.get(last)))
+			{
+				r_nodes.add(0, f);
+				index.remove(fnear);
+				first = fnear;
+			} else {
+				r_nodes.add(l);
+				index.remove(lnear);
+				last = lnear;
+			}
 		}
 	}
 
-	/** Link the nearest node */
-	private void linkNearestNode() {
-		assert r_nodes.size() > 0;
-		T first = r_nodes.get(0);
-		T last = r_nodes.get(r_nodes.size() - 1);
-		NodeDistance fnear = findNearest(first);
-		NodeDistance lnear = findNearest(last);
-		if (fnear == null || lnear == null)
-			unsorted.clear();
-		else if (fnear.meters < lnear.meters) {
-			r_nodes.add(0, fnear.node);
-			unsorted.remove(fnear.node);
-		} else {
-			r_nodes.add(lnear.node);
-			unsorted.remove(lnear.node);
+	/** Insert unsorted nodes next to their nearest sorted node.  Nearest
+	 * nodes are found with the position index only, and the list is
+	 * rebuilt in one pass, so insertion never scans the whole corridor
+	 * for each node. */
+	private void insertNodes() {
+		if (null == m_index)
+			calculateNodeMilePoints();
+		IdentityHashMap<T, Integer> idx =
+			new IdentityHashMap<T, Integer>();
+		for (int i = 0; i < r_nodes.size(); i++)
+			idx.put(r_nodes.get(i), i);
+		IdentityHashMap<T, ArrayList<T>> before =
+			new IdentityHashMap<T, ArrayList<T>>();
+		IdentityHashMap<T, ArrayList<T>> after =
+			new IdentityHashMap<T, ArrayList<T>>();
+		ArrayList<T> orphans = new ArrayList<T>();
+		for (T n: unsorted) {
+			T near = findNearestSorted(n);
+			if (null == near) {
+				orphans.add(n);
+				continue;
+			}
+			int k = idx.get(near);
+			if (isBefore(k, n))
+				addInsert(before, near, n);
+			else
+				addInsert(after, near, n);
+		}
+		unsorted.clear();
+		ArrayList<T> nodes = new ArrayList<T>(r_nodes.size() +
+			before.size() + after.size() + orphans.size());
+		for (T near: r_nodes) {
+			ArrayList<T> b = before.get(near);
+			if (b != null) {
+				sortByDistance(b, near);
+				Collections.reverse(b);
+				nodes.addAll(b);
+			}
+			nodes.add(near);
+			ArrayList<T> a = after.get(near);
+			if (a != null) {
+				sortByDistance(a, near);
+				nodes.addAll(a);
+			}
 		}
+		nodes.addAll(orphans);
+		r_nodes.clear();
+		r_nodes.addAll(nodes);
 	}
 
-	/** Simple structure to hold a node and distance */
-	private class NodeDistance {
-		private final double meters;
-		private final T node;
-		public NodeDistance(Double m, T n) {
-			meters = m;
-			node = n;
+	/** Find the nearest sorted node to an unsorted node */
+	private T findNearestSorted(T n) {
+		Position pos = GeoLocHelper.getWgs84Position(n.getGeoLoc());
+		if (null == pos || null == m_index)
+			return null;
+		int i = m_index.findNearest(pos);
+		return (i >= 0) ? m_nodes.get(i) : null;
+	}
+
+	/** Check if a node should be inserted before a sorted node.
+	 * @param k List index of nearest sorted node.
+	 * @param n Node to insert. */
+	private boolean isBefore(int k, T n) {
+		T near = r_nodes.get(k);
+		double b = (k > 0)
+		     ? insertCost(r_nodes.get(k - 1), n, near)
+		     : meters(n, near);
+		double a = (k + 1 < r_nodes.size())
+		     ? insertCost(near, n, r_nodes.get(k + 1))
+		     : meters(near, n);
+		return b < a;
+	}
+
+	/** Add a node to insert next to a sorted node */
+	static private <T> void addInsert(IdentityHashMap<T, ArrayList<T>> m,
+		T near, T n)
+	{
+		ArrayList<T> l = m.get(near);
+		if (null == l) {
+			l = new ArrayList<T>();
+			m.put(near, l);
 		}
+		l.add(n);
 	}
 
-	/** Find the nearest unsorted node to the given node */
-	private NodeDistance findNearest(T end) {
-		NodeDistance near = null;
-		for (T r_node: unsorted) {
-			Distance m = nodeDistance(r_node, end);
-			if (m != null && (near == null || m.m() < near.meters))
-				near = new NodeDistance(m.m(), r_node);
-		}
-		return near;
+	/** Sort nodes by distance from a sorted node (nearest first) */
+	private void sortByDistance(ArrayList<T> nodes, final T near) {
+		Collections.sort(nodes, new Comparator<T>() {
+			public int compare(T a, T b) {
+				return Double.compare(meters(near, a),
+					meters(near, b));
+			}
+		});
+	}
+
+	/** Calculate the cost of inserting a node between two others */
+	private double insertCost(T a, T n, T b) {
+		return meters(a, n) + meters(n, b) - meters(a, b);
+	}
+
+	/** Calculate the distance between two nodes (meters) */
+	private double meters(T a, T b) {
+		Distance d = nodeDistance(a, b);
+		return (d != null) ? d.m() : Double.POSITIVE_INFINITY;
 	}
 
 	/** Check if the roadway nodes are in reverse order */
@@ -222,9 +344,18 @@ public class CorridorBase<T extends R_Node> implements Iterable<T> {
 		return false;
 	}
 
+	/** Clear the mile points for all nodes */
+	private void clearMilePoints() {
+		n_points.clear();
+		n_miles.clear();
+		m_nodes.clear();
+		m_miles = new float[0];
+		m_index = null;
+	}
+
 	/** Calculate the mile points for all nodes on the corridor */
 	private void calculateNodeMilePoints() {
-		assert n_points.isEmpty();
+		clearMilePoints();
 		float miles = 0;
 		T previous = null;
 		for (T n: r_nodes) {
@@ -237,37 +368,49 @@ public class CorridorBase<T extends R_Node> implements Iterable<T> {
 			while (n_points.containsKey(miles))
 				miles += calculateEpsilon(miles);
 			n_points.put(miles, n);
+			n_miles.put(n, miles);
 			previous = n;
 		}
+		indexMilePoints();
+	}
+
+	/** Index the positions of nodes with mile points */
+	private void indexMilePoints() {
+		ArrayList<Position> pos = new ArrayList<Position>(
+			n_points.size());
+		m_miles = new float[n_points.size()];
+		for (Float mile: n_points.keySet()) {
+			T n = n_points.get(mile);
+			Position p = GeoLocHelper.getWgs84Position(
+				n.getGeoLoc());
+			if (p != null) {
+				m_miles[m_nodes.size()] = mile;
+				m_nodes.add(n);
+				pos.add(p);
+			}
+		}
+		m_index = new PointIndex(pos.toArray(new Position[0]));
 	}
 
 	/** Calculate the mile point for a location.
 	 * @param loc Location to calculate.
 	 * @return Mile point for location, or null if no r_nodes exist. */
 	public Float calculateMilePoint(GeoLoc loc) {
-		if (n_points.isEmpty())
+		Position pos = GeoLocHelper.getWgs84Position(loc);
+		if (null == pos || null == m_index)
 			return null;
-		T nearest = null;
-		T n_after = null;
-		float n_mile = 0;
-		double n_meters = 0;
-		for (Float mile: n_points.keySet()) {
-			T n = n_points.get(mile);
-			Distance m = nodeDistance(n, loc);
-			if (m != null) {
-				double ms = m.m();
-				if (nearest == null || ms < n_meters) {
-					nearest = n;
-					n_after = n;
-					n_mile = mile;
-					n_meters = ms;
-				} else if (n_after == nearest)
-					n_after = n;
-			}
-		}
-		if (nearest == null || n_after == null)
+		int i = m_index.findNearest(pos);
+		if (i < 0)
+			return null;
+		T nearest = m_nodes.get(i);
+		T n_after = (i + 1 < m_nodes.size())
+		          ? m_nodes.get(i + 1)
+		          : nearest;
+		float n_mile = m_miles[i];
+		Distance nm = nodeDistance(nearest, loc);
+		if (null == nm)
 			return null;
-		float mi = new Distance(n_meters).asFloat(MILES);
+		float mi = nm.asFloat(MILES);
 		Distance m0 = nodeDistance(n_after, nearest);
 		Distance m1 = nodeDistance(n_after, loc);
 		if (m0 != null && m1 != null && m0.m() > m1.m())
@@ -278,12 +421,7 @@ public class CorridorBase<T extends R_Node> implements Iterable<T> {
 
 	/** Get the mile point for a specified node */
 	public Float getMilePoint(T r_node) {
-		for (Float mile: n_points.keySet()) {
-			T n = n_points.get(mile);
-			if (n == r_node)
-				return mile;
-		}
-		return null;
+		return n_miles.get(r_node);
 	}
 
 	/** Create a r_node iterator */
@@ -0,0 +1,200 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * A binary sample feed is a compact alternative to the traffic_sample XML
+ * documents.  It consists of two files: an index file containing the sensor
+ * IDs, which only changes when sensors are added or removed, and a data file
+ * containing one fixed-width record per sensor for the current interval.
+ * The data file contains the ID of the index it was written against, so a
+ * client only needs to fetch the index when that ID changes.
+ *
+ * @author Douglas Lau
+ */
+public class SampleFeed {
+
+	/** Magic number for index files ("ISIX") */
+	static private final int MAGIC_INDEX = 0x49534958;
+
+	/** Magic number for data files ("ISDT") */
+	static private final int MAGIC_DATA = 0x49534454;
+
+	/** Feed format version */
+	static private final int VERSION = 1;
+
+	/** File extension for data files */
+	static public final String DATA_EXT = ".bin.gz";
+
+	/** File extension for index files */
+	static public final String INDEX_EXT = "_index.bin.gz";
+
+	/** Value for missing data */
+	static public final int MISSING = -1;
+
+	/** Field offset for flow (vehicles per hour per lane) */
+	static public final int FLOW = 0;
+
+	/** Field offset for speed (miles per hour) */
+	static public final int SPEED = 1;
+
+	/** Field offset for travel time route count */
+	static public final int TVT = 2;
+
+	/** Number of fields per sensor record */
+	static public final int FIELDS = 3;
+
+	/** Charset for sensor IDs */
+	static private final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Get the index file name for a data file name */
+	static public String indexName(String data) {
+		if (data.endsWith(DATA_EXT)) {
+			return data.substring(0, data.length() -
+				DATA_EXT.length()) + INDEX_EXT;
+		} else
+			return null;
+	}
+
+	/** Calculate the ID of an index table */
+	static public int indexId(String[] sensors) {
+		CRC32 crc = new CRC32();
+		for (String s: sensors) {
+			byte[] b = s.getBytes(UTF8);
+			crc.update(b, 0, b.length);
+			crc.update(0);
+		}
+		return (int) crc.getValue();
+	}
+
+	/** Clamp a sample value to the range of a record field */
+	static public short clamp(int v) {
+		if (v < 0)
+			return MISSING;
+		else
+			return (short) Math.min(v, Short.MAX_VALUE);
+	}
+
+	/** Encode an index table */
+	static public void encodeIndex(DataOutputStream out, String[] sensors)
+		throws IOException
+	{
+		out.writeInt(MAGIC_INDEX);
+		out.writeShort(VERSION);
+		out.writeInt(indexId(sensors));
+		out.writeInt(sensors.length);
+		for (String s: sensors)
+			out.writeUTF(s);
+	}
+
+	/** Decode an index table */
+	static public String[] decodeIndex(DataInputStream in)
+		throws IOException
+	{
+		checkHeader(in, MAGIC_INDEX);
+		int id = in.readInt();
+		int n = in.readInt();
+		if (n < 0)
+			throw new IOException("Invalid sensor count: " + n);
+		String[] sensors = new String[n];
+		for (int i = 0; i < n; i++)
+			sensors[i] = in.readUTF();
+		if (indexId(sensors) != id)
+			throw new IOException("Index ID mismatch");
+		return sensors;
+	}
+
+	/** Check a file header */
+	static private void checkHeader(DataInputStream in, int magic)
+		throws IOException
+	{
+		if (in.readInt() != magic)
+			throw new IOException("Invalid magic number");
+		int v = in.readShort();
+		if (v != VERSION)
+			throw new IOException("Unsupported version: " + v);
+	}
+
+	/** Encode one interval of data */
+	static public void encodeData(DataOutputStream out, SampleFeed f)
+		throws IOException
+	{
+		out.writeInt(MAGIC_DATA);
+		out.writeShort(VERSION);
+		out.writeInt(f.index_id);
+		out.writeLong(f.stamp);
+		out.writeShort(f.period);
+		out.writeInt(f.values.length);
+		for (short v: f.values)
+			out.writeShort(v);
+	}
+
+	/** Decode one interval of data */
+	static public SampleFeed decodeData(DataInputStream in)
+		throws IOException
+	{
+		checkHeader(in, MAGIC_DATA);
+		int id = in.readInt();
+		long stamp = in.readLong();
+		int period = in.readShort();
+		int n = in.readInt();
+		if (n < 0 || n % FIELDS != 0)
+			throw new IOException("Invalid value count: " + n);
+		short[] values = new short[n];
+		for (int i = 0; i < n; i++)
+			values[i] = in.readShort();
+		return new SampleFeed(id, stamp, period, values);
+	}
+
+	/** ID of index table */
+	public final int index_id;
+
+	/** Time stamp at end of interval */
+	public final long stamp;
+
+	/** Sample period (seconds) */
+	public final int period;
+
+	/** Sample values (FIELDS per sensor, in index order) */
+	private final short[] values;
+
+	/** Create a new sample feed interval */
+	public SampleFeed(int id, long st, int p, short[] v) {
+		index_id = id;
+		stamp = st;
+		period = p;
+		values = v;
+	}
+
+	/** Get the number of sensor records */
+	public int size() {
+		return values.length / FIELDS;
+	}
+
+	/** Get one sample value.
+	 * @param i Sensor index.
+	 * @param field Field offset (FLOW, SPEED or TVT).
+	 * @return Sample value, or null for missing data. */
+	public Integer getValue(int i, int field) {
+		int v = values[i * FIELDS + field];
+		return (v >= 0) ? v : null;
+	}
+}
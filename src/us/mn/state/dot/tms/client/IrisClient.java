@@ -364,6 +364,8 @@ public class IrisClient extends JFrame {
 		for(ScreenPane sp: s_panes) {
 			MapBean mb = sp.getMap();
 			mb.setModel(createMapModel(mb, s));
+			mb.setFrameTimeVisible(Boolean.parseBoolean(
+				props.getProperty("map.frame.time")));
 			if(s != null)
 				sp.createToolPanels(s);
 			else
@@ -191,7 +191,8 @@ public class Session {
 	/** Create the tile layer */
 	private TileLayer createTileLayer(String url) {
 		if (url != null)
-			return new TileLayer("Base map", url, 1000);
+			return new TileLayer("Base map", url, 1000,
+				UserProperty.getTileCacheDir());
 		else
 			return null;
 	}
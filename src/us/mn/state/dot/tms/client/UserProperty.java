@@ -66,6 +66,11 @@ public enum UserProperty {
 		return new File(home, "iris");
 	}
 
+	/** Get the directory to cache map tiles */
+	static public File getTileCacheDir() {
+		return new File(getDir(), "tiles");
+	}
+
 	/** Get the file to store user properties */
 	static private File getFile() {
 		return new File(getDir(), "user.properties");
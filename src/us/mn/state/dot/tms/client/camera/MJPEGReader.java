@@ -0,0 +1,170 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.camera;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An MJPEG reader splits a multipart MJPEG stream into frames.  Frame
+ * buffers are supplied by the caller, so they can be reused.
+ *
+ * @author Douglas Lau
+ */
+public class MJPEGReader {
+
+	/** Maximum frame size (bytes) */
+	static private final int MAX_FRAME_SZ = 8 * 1024 * 1024;
+
+	/** Maximum number of header lines per part */
+	static private final int MAX_HEADER_LINES = 100;
+
+	/** A frame buffer */
+	static public class Frame {
+
+		/** Frame data (may be longer than frame) */
+		private byte[] data = new byte[0];
+
+		/** Get the frame data */
+		public byte[] getData() {
+			return data;
+		}
+
+		/** Length of frame */
+		private int len;
+
+		/** Get the frame length */
+		public int getLength() {
+			return len;
+		}
+
+		/** Ensure the buffer can hold a frame */
+		private void ensureCapacity(int sz) {
+			if (sz > data.length)
+				data = new byte[Math.max(sz, data.length * 2)];
+		}
+	}
+
+	/** Parse a content-length header */
+	static private int parseContentLength(String s) throws IOException {
+		s = s.substring(s.indexOf(":") + 1).trim();
+		try {
+			int len = Integer.parseInt(s);
+			if (len >= 0 && len <= MAX_FRAME_SZ)
+				return len;
+		}
+		catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IOException("Invalid content-length");
+	}
+
+	/** Input stream to read */
+	private final InputStream stream;
+
+	/** Create a new MJPEG reader */
+	public MJPEGReader(InputStream is) {
+		stream = new BufferedInputStream(is);
+	}
+
+	/** Read the next frame in a multipart stream.
+	 * @param f Frame buffer to fill. */
+	public void readFrame(Frame f) throws IOException {
+		readFully(f, readContentLength());
+	}
+
+	/** Read a single image, with an optional content length.
+	 * @param f Frame buffer to fill.
+	 * @param len Content length, or negative if unknown. */
+	public void readImage(Frame f, int len) throws IOException {
+		if (len >= 0)
+			readFully(f, Math.min(len, MAX_FRAME_SZ));
+		else
+			readToEnd(f);
+	}
+
+	/** Read the part headers, up to the content-length */
+	private int readContentLength() throws IOException {
+		for (int i = 0; i < MAX_HEADER_LINES; i++) {
+			String s = readLine();
+			if (s.toLowerCase().contains("content-length")) {
+				// throw away an empty line after the
+				// content-length header
+				readLine();
+				return parseContentLength(s);
+			}
+		}
+		throw new IOException("Missing content-length");
+	}
+
+	/** Read a frame of known length */
+	private void readFully(Frame f, int len) throws IOException {
+		f.ensureCapacity(len);
+		int n_bytes = 0;
+		while (n_bytes < len) {
+			int r = stream.read(f.data, n_bytes, len - n_bytes);
+			if (r >= 0)
+				n_bytes += r;
+			else
+				throw new IOException("End of stream");
+		}
+		f.len = len;
+	}
+
+	/** Read a frame up to the end of stream */
+	private void readToEnd(Frame f) throws IOException {
+		f.ensureCapacity(4096);
+		int n_bytes = 0;
+		while (true) {
+			if (n_bytes == f.data.length) {
+				if (n_bytes >= MAX_FRAME_SZ)
+					throw new IOException("Image too large");
+				byte[] d = new byte[n_bytes * 2];
+				System.arraycopy(f.data, 0, d, 0, n_bytes);
+				f.data = d;
+			}
+			int r = stream.read(f.data, n_bytes,
+				f.data.length - n_bytes);
+			if (r < 0)
+				break;
+			n_bytes += r;
+		}
+		f.len = n_bytes;
+	}
+
+	/** Read the next line of text */
+	private String readLine() throws IOException {
+		StringBuilder b = new StringBuilder();
+		while (true) {
+			int ch = stream.read();
+			if (ch < 0) {
+				if (b.length() == 0)
+					throw new IOException("End of stream");
+				else
+					break;
+			}
+			b.append((char) ch);
+			if (ch == '\n')
+				break;
+		}
+		return b.toString();
+	}
+
+	/** Close the stream */
+	public void close() throws IOException {
+		stream.close();
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2003-2013  Minnesota Department of Transportation
+ * Copyright (C) 2003-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -15,28 +15,38 @@
 package us.mn.state.dot.tms.client.camera;
 
 import java.awt.Dimension;
-import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
-import java.util.Calendar;
-import javax.swing.ImageIcon;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.swing.JComponent;
-import javax.swing.JLabel;
-import us.mn.state.dot.sched.Job;
-import us.mn.state.dot.sched.Scheduler;
 import us.mn.state.dot.tms.Camera;
 import us.mn.state.dot.tms.CameraHelper;
 import us.mn.state.dot.tms.EncoderType;
 import us.mn.state.dot.tms.StreamType;
 import us.mn.state.dot.tms.utils.HttpUtil;
+import us.mn.state.dot.tms.utils.I18N;
 
 import static us.mn.state.dot.tms.client.widget.Widgets.UI;
 
 /**
- * A video stream which reads an MJPEG source.
+ * A video stream which reads an MJPEG source.  Each stream has a reader
+ * thread, which reads frames into reusable buffers.  Frames are decoded by a
+ * shared pool of threads, subsampled to the requested video size.  If the
+ * decoder falls behind, stale frames are dropped.
  *
  * @author Douglas Lau
  * @author Timothy Johnson
@@ -44,8 +54,74 @@ import static us.mn.state.dot.tms.client.widget.Widgets.UI;
  */
 public class MJPEGStream implements VideoStream {
 
-	/** Label to display video stream */
-	private final JLabel screen = new JLabel();
+	/** Snapshot refresh period (ms) */
+	static private final int SNAPSHOT_PERIOD_MS = 30 * 1000;
+
+	/** Number of decoder threads */
+	static private final int DECODE_THREADS = Math.max(1,
+		Runtime.getRuntime().availableProcessors() - 1);
+
+	/** Shared frame decoder thread pool */
+	static private final ThreadPoolExecutor DECODER =
+		new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS, 30,
+		TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+		new ThreadFactory()
+	{
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "mjpeg_decode");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	static {
+		DECODER.allowCoreThreadTimeOut(true);
+	}
+
+	/** Create a JPEG image reader */
+	static private ImageReader createImageReader() throws IOException {
+		Iterator<ImageReader> it = ImageIO.getImageReadersByFormatName(
+			"jpeg");
+		if (it.hasNext())
+			return it.next();
+		else
+			throw new IOException("No JPEG decoder");
+	}
+
+	/** Calculate the subsampling factor to decode an image.
+	 * @param sw Source width.
+	 * @param sh Source height.
+	 * @param w Requested width.
+	 * @param h Requested height.
+	 * @return Largest factor which does not go below requested size. */
+	static protected int subsampling(int sw, int sh, int w, int h) {
+		if (w <= 0 || h <= 0)
+			return 1;
+		return Math.max(1, Math.min(sw / w, sh / h));
+	}
+
+	/** Decode a JPEG image, subsampled to a requested size */
+	static protected BufferedImage decode(ImageReader ir, byte[] data,
+		int len, Dimension sz) throws IOException
+	{
+		ImageInputStream iis = new MemoryCacheImageInputStream(
+			new ByteArrayInputStream(data, 0, len));
+		try {
+			ir.setInput(iis, true, true);
+			ImageReadParam p = ir.getDefaultReadParam();
+			int s = subsampling(ir.getWidth(0), ir.getHeight(0),
+				sz.width, sz.height);
+			if (s > 1)
+				p.setSourceSubsampling(s, s, 0, 0);
+			return ir.read(0, p);
+		}
+		finally {
+			ir.setInput(null);
+			iis.close();
+		}
+	}
+
+	/** Screen to display video stream */
+	private final VideoScreen screen = new VideoScreen();
 
 	/** URL of the data source */
 	private final URL url;
@@ -53,45 +129,75 @@ public class MJPEGStream implements VideoStream {
 	/** Requested video size */
 	private final Dimension size;
 
-	/** Input stream to read */
-	private InputStream stream;
+	/** Stream must be mocked from static snapshots */
+	private final boolean is_snapshot;
 
-	/** Length of image to be read */
-	private int content_len;
+	/** Thread to read video stream */
+	private final Thread thread;
 
-	/** Count of rendered frames */
-	private int n_frames = 0;
+	/** MJPEG reader */
+	private volatile MJPEGReader reader;
 
 	/** Flag to continue running stream */
-	private boolean running = true;
+	private volatile boolean running = true;
 
 	/** Stream error message */
-	private String error_msg = null;
+	private volatile String error_msg = null;
 
-	/** Stream must be mocked from static snapshots */
-	private final boolean is_snapshot;
+	/** Free frame buffers */
+	private final ArrayDeque<MJPEGReader.Frame> free =
+		new ArrayDeque<MJPEGReader.Frame>();
+
+	/** Frame waiting to be decoded */
+	private MJPEGReader.Frame pending;
+
+	/** Flag indicating a decode task is scheduled */
+	private boolean decoding = false;
 
-	/** Anonymous thread to read video stream */
-	private final Job job;
+	/** JPEG image reader (decode task only) */
+	private ImageReader image_reader;
+
+	/** Count of decoded frames */
+	private final AtomicLong n_decoded = new AtomicLong();
+
+	/** Count of dropped frames */
+	private final AtomicLong n_dropped = new AtomicLong();
+
+	/** Time of last status update */
+	private long stat_time = System.currentTimeMillis();
+
+	/** Decoded frame count at last status update */
+	private long stat_decoded = 0;
+
+	/** Dropped frame count at last status update */
+	private long stat_dropped = 0;
+
+	/** Task to decode pending frames */
+	private final Runnable decode_task = new Runnable() {
+		public void run() {
+			decodePending();
+		}
+	};
 
 	/** Set the stream error message */
 	protected void setErrorMsg(String e) {
-		if(error_msg == null)
+		if (error_msg == null)
 			error_msg = e;
 	}
 
 	/** Create a new MJPEG stream */
-	public MJPEGStream(Scheduler s, VideoRequest req, Camera c)
-		throws IOException
-	{
+	public MJPEGStream(VideoRequest req, Camera c) throws IOException {
 		url = new URL(req.getUrl(c));
 		is_snapshot = isSnapshot(c);
 		size = UI.dimension(req.getSize().width, req.getSize().height);
-		if (is_snapshot) {
-			s.addJob(getImmediateSnapshotJob());
-		}
-		job = getStreamJob();
-		s.addJob(job);
+		thread = new Thread("mjpeg_" + c.getName()) {
+			@Override
+			public void run() {
+				readStream();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
 	}
 
 	/** Whether we are "streaming" a static snapshot */
@@ -100,162 +206,150 @@ public class MJPEGStream implements VideoStream {
 				"image/jpeg".equals(HttpUtil.getContentType(url));
 	}
 
-	/** Inits content length. Additionally stream if null. */
-	private void initContentLength() throws IOException {
-		if (null == stream)
-			initInputStream();
-		else if (!is_snapshot)
-			content_len = getNonSnapshotImageSize();
-	}
-
-	/** Gets background job to retrieving stream frames */
-	private Job getStreamJob() {
-		int iField = Calendar.MILLISECOND;
-		int i = 1;
-		if (is_snapshot) {
-			iField = Calendar.SECOND;
-			i = 30;
-		}
-
-		return new Job(iField, i) {
-			@Override
-			public void perform() {
-				if(running)
-					readStream();
-			}
-			public boolean isRepeating() {
-				return running;
-			}
-		};
-	}
-
-	/**
-	 * Gets first frame for snapshot "stream"
-	 * FIXME: This shouldn't be necessary, but doesn't seem possible to have a Job
-	 * run immediately, then reoccur at given interval. May be missing something.
-	 **/
-	private Job getImmediateSnapshotJob() {
-		return new Job() {
-			@Override
-			public void perform() {
-				if(running)
-					readStream();
-			}
-		};
-	}
-
-	/** Create an input stream from an HTTP connection */
-	protected InputStream initInputStream() throws IOException {
-		HttpURLConnection c = (HttpURLConnection)url.openConnection();
+	/** Open an HTTP connection.
+	 * @return Content length of response. */
+	private int openStream() throws IOException {
+		HttpURLConnection c = (HttpURLConnection) url.openConnection();
 		HttpURLConnection.setFollowRedirects(true);
 		c.setConnectTimeout(HttpUtil.TIMEOUT_DIRECT);
 		c.setReadTimeout(HttpUtil.TIMEOUT_DIRECT);
 		int resp = c.getResponseCode();
-		if (resp != HttpURLConnection.HTTP_OK) {
+		if (resp != HttpURLConnection.HTTP_OK)
 			throw new IOException(c.getResponseMessage());
-		}
-		stream = c.getInputStream();
-		content_len = getImageSize(c);
-		return c.getInputStream();
+		reader = new MJPEGReader(c.getInputStream());
+		return c.getContentLength();
 	}
 
-	/** Read a video stream */
+	/** Read a video stream (on reader thread) */
 	private void readStream() {
 		try {
-			byte[] idata = getImage();
-			screen.setIcon(createIcon(idata));
-		} catch(IOException e) {
-			setErrorMsg(e.getMessage());
-			screen.setIcon(null);
+			if (is_snapshot)
+				readSnapshots();
+			else
+				readFrames();
+		}
+		catch (IOException e) {
+			if (running)
+				setErrorMsg(e.getMessage());
+		}
+		catch (InterruptedException e) {
+			// disposed
+		}
+		finally {
 			running = false;
-		} finally {
-			if (is_snapshot && null != stream) {
-				try {
-					stream.close();
-				} catch (IOException e) {}
-				stream = null;
-			}
+			closeStream();
 		}
 	}
 
-	/** Get the next image in the mjpeg stream */
-	protected byte[] getImage() throws IOException {
-		initContentLength();
-		byte[] image = new byte[content_len];
-		int n_bytes = 0;
-		while(n_bytes < content_len) {
-			int r = stream.read(image, n_bytes, content_len - n_bytes);
-			if(r >= 0)
-				n_bytes += r;
-			else
-				throw new IOException("End of stream");
+	/** Read frames from a multipart stream */
+	private void readFrames() throws IOException {
+		openStream();
+		MJPEGReader r = reader;
+		while (running && r != null) {
+			MJPEGReader.Frame f = takeFreeFrame();
+			r.readFrame(f);
+			offerFrame(f);
+		}
+	}
+
+	/** Read a snapshot periodically */
+	private void readSnapshots() throws IOException, InterruptedException {
+		while (running) {
+			int len = openStream();
+			MJPEGReader r = reader;
+			if (null == r)
+				break;
+			MJPEGReader.Frame f = takeFreeFrame();
+			r.readImage(f, len);
+			closeStream();
+			offerFrame(f);
+			Thread.sleep(SNAPSHOT_PERIOD_MS);
 		}
-		n_frames++;
-		return image;
 	}
 
-	/** Create an image icon from image data */
-	protected ImageIcon createIcon(byte[] idata) {
-		ImageIcon icon = new ImageIcon(idata);
-		if(icon.getIconWidth() == size.width &&
-		   icon.getIconHeight() == size.height)
-			return icon;
-		Image im = icon.getImage().getScaledInstance(size.width,
-			size.height, Image.SCALE_FAST);
-		return new ImageIcon(im);
+	/** Take a free frame buffer */
+	private synchronized MJPEGReader.Frame takeFreeFrame() {
+		MJPEGReader.Frame f = free.poll();
+		return (f != null) ? f : new MJPEGReader.Frame();
 	}
 
-	/** Get the length of the next image */
-	private int getImageSize(URLConnection c) throws IOException {
-		if (is_snapshot) {
-			return c.getContentLength();
-		} else {
-			return getNonSnapshotImageSize();
+	/** Offer a frame to the decoder, replacing any stale frame */
+	private synchronized void offerFrame(MJPEGReader.Frame f) {
+		if (pending != null) {
+			n_dropped.incrementAndGet();
+			free.add(pending);
 		}
+		pending = f;
+		if (!decoding) {
+			decoding = true;
+			DECODER.execute(decode_task);
+		}
+	}
+
+	/** Take the pending frame, if any */
+	private synchronized MJPEGReader.Frame takePending() {
+		MJPEGReader.Frame f = pending;
+		pending = null;
+		if (null == f)
+			decoding = false;
+		return f;
+	}
+
+	/** Release a frame buffer */
+	private synchronized void releaseFrame(MJPEGReader.Frame f) {
+		free.add(f);
 	}
 
-	/** Get the length of the next image in a non-snapshot stream */
-	private int getNonSnapshotImageSize() throws IOException {
-		for (int i = 0; i < 100; i++) {
-			String s = readLine();
-			if (s.toLowerCase().contains("content-length")) {
-				// throw away an empty line after the
-				// content-length header
-				readLine();
-				return parseContentLength(s);
+	/** Decode pending frames (on decoder thread) */
+	private void decodePending() {
+		MJPEGReader.Frame f = takePending();
+		while (f != null) {
+			try {
+				if (running)
+					decodeFrame(f);
+			}
+			catch (IOException e) {
+				setErrorMsg(e.getMessage());
 			}
+			finally {
+				releaseFrame(f);
+			}
+			f = takePending();
 		}
-		throw new IOException("Missing content-length");
+		if (!running)
+			disposeImageReader();
 	}
 
-	/** Parse the content-length header */
-	private int parseContentLength(String s) throws IOException {
-		s = s.substring(s.indexOf(":") + 1);
-		s = s.trim();
-		try {
-			return Integer.parseInt(s);
-		}
-		catch(NumberFormatException e) {
-			throw new IOException("Invalid content-length");
+	/** Dispose of the image reader, unless a decode task is using it.
+	 * If one is, it disposes the reader when it finishes. */
+	private synchronized void disposeImageReader() {
+		if (image_reader != null && !decoding) {
+			image_reader.dispose();
+			image_reader = null;
 		}
 	}
 
-	/** Read the next line of text */
-	private String readLine() throws IOException {
-		StringBuilder b = new StringBuilder();
-		while(true) {
-			int ch = stream.read();
-			if(ch < 0) {
-				if(b.length() == 0)
-					throw new IOException("End of stream");
-				else
-					break;
-			}
-			b.append((char)ch);
-			if(ch == '\n')
-				break;
+	/** Decode one frame and hand it to the screen */
+	private void decodeFrame(MJPEGReader.Frame f) throws IOException {
+		if (null == image_reader)
+			image_reader = createImageReader();
+		BufferedImage img = decode(image_reader, f.getData(),
+			f.getLength(), size);
+		if (img != null) {
+			n_decoded.incrementAndGet();
+			if (screen.setFrame(img))
+				n_dropped.incrementAndGet();
 		}
-		return b.toString();
+	}
+
+	/** Get the count of decoded frames */
+	public long getDecodedFrames() {
+		return n_decoded.get();
+	}
+
+	/** Get the count of dropped frames */
+	public long getDroppedFrames() {
+		return n_dropped.get();
 	}
 
 	/** Get a component for displaying the video stream */
@@ -264,12 +358,28 @@ public class MJPEGStream implements VideoStream {
 	}
 
 	/** Get the status of the stream */
-	public String getStatus() {
+	public synchronized String getStatus() {
 		String e = error_msg;
-		if(e != null)
+		if (e != null)
 			return e;
-		else
-			return StreamType.MJPEG.toString();
+		long now = System.currentTimeMillis();
+		long dec = n_decoded.get();
+		long drp = n_dropped.get();
+		float secs = (now - stat_time) / 1000f;
+		StringBuilder sb = new StringBuilder();
+		sb.append(StreamType.MJPEG.toString());
+		if (secs > 0 && !is_snapshot) {
+			sb.append(String.format(" %.1f ",
+				(dec - stat_decoded) / secs));
+			sb.append(I18N.get("camera.stream.fps"));
+			sb.append(String.format(", %.1f ",
+				(drp - stat_dropped) / secs));
+			sb.append(I18N.get("camera.stream.dropped"));
+		}
+		stat_time = now;
+		stat_decoded = dec;
+		stat_dropped = drp;
+		return sb.toString();
 	}
 
 	/** Test if the video is playing */
@@ -277,17 +387,26 @@ public class MJPEGStream implements VideoStream {
 		return running;
 	}
 
-	/** Dispose of the video stream */
-	public void dispose() {
-		running = false;
-		if (stream != null) {
+	/** Close the stream reader */
+	private void closeStream() {
+		MJPEGReader r = reader;
+		reader = null;
+		if (r != null) {
 			try {
-				stream.close();
+				r.close();
 			}
-			catch(IOException e) {
+			catch (IOException e) {
 				setErrorMsg(e.getMessage());
 			}
 		}
-		screen.setIcon(null);
+	}
+
+	/** Dispose of the video stream */
+	public void dispose() {
+		running = false;
+		closeStream();
+		thread.interrupt();
+		disposeImageReader();
+		screen.dispose();
 	}
 }
@@ -0,0 +1,121 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.camera;
+
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * A video screen displays decoded video frames.  Frames may be set from any
+ * thread; all screens are refreshed together by one swing timer, so only the
+ * latest frame for each screen is painted per display refresh.
+ *
+ * @author Douglas Lau
+ */
+public class VideoScreen extends JComponent {
+
+	/** Display refresh period (ms) */
+	static private final int REFRESH_MS = 33;
+
+	/** Active video screens */
+	static private final ArrayList<VideoScreen> SCREENS =
+		new ArrayList<VideoScreen>();
+
+	/** Timer to refresh all screens */
+	static private final Timer TIMER = new Timer(REFRESH_MS,
+		new ActionListener()
+	{
+		public void actionPerformed(ActionEvent e) {
+			refreshAll();
+		}
+	});
+
+	/** Refresh all active screens (on swing thread) */
+	static private void refreshAll() {
+		VideoScreen[] screens;
+		synchronized (SCREENS) {
+			screens = SCREENS.toArray(new VideoScreen[0]);
+		}
+		for (VideoScreen vs: screens)
+			vs.refresh();
+	}
+
+	/** Register an active screen */
+	static private void register(VideoScreen vs) {
+		synchronized (SCREENS) {
+			SCREENS.add(vs);
+			if (SCREENS.size() == 1)
+				TIMER.start();
+		}
+	}
+
+	/** Unregister a screen */
+	static private void unregister(VideoScreen vs) {
+		synchronized (SCREENS) {
+			if (SCREENS.remove(vs) && SCREENS.isEmpty())
+				TIMER.stop();
+		}
+	}
+
+	/** Next frame to display */
+	private final AtomicReference<BufferedImage> next =
+		new AtomicReference<BufferedImage>();
+
+	/** Frame being displayed */
+	private volatile BufferedImage image;
+
+	/** Create a new video screen */
+	public VideoScreen() {
+		register(this);
+	}
+
+	/** Set the next frame to display.
+	 * @param img Decoded frame.
+	 * @return true if a frame was replaced before being displayed. */
+	public boolean setFrame(BufferedImage img) {
+		return next.getAndSet(img) != null;
+	}
+
+	/** Display the latest frame (on swing thread) */
+	private void refresh() {
+		BufferedImage img = next.getAndSet(null);
+		if (img != null) {
+			image = img;
+			repaint();
+		}
+	}
+
+	/** Paint the current frame, scaled to the screen */
+	@Override
+	protected void paintComponent(Graphics g) {
+		BufferedImage img = image;
+		if (img != null)
+			g.drawImage(img, 0, 0, getWidth(), getHeight(), null);
+	}
+
+	/** Dispose of the video screen */
+	public void dispose() {
+		unregister(this);
+		next.set(null);
+		image = null;
+		repaint();
+	}
+}
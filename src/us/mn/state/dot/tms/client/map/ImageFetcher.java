@@ -14,9 +14,12 @@
  */
 package us.mn.state.dot.tms.client.map;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 
 /**
  * An image fetcher is a simple class to fetch images remotely.
@@ -25,6 +28,12 @@ import java.net.URL;
  */
 public class ImageFetcher {
 
+	/** Timeout for URL connections (ms) */
+	static private final int TIMEOUT_MS = 10 * 1000;
+
+	/** Maximum image size (bytes) */
+	static private final int MAX_IMAGE_SZ = 256 * 1024;
+
 	/** Base URL to fetch images */
 	protected final URL base_url;
 
@@ -33,9 +42,60 @@ public class ImageFetcher {
 		base_url = new URL(url);
 	}
 
+	/** Get the URL of the named image */
+	private URL getUrl(String n) throws IOException {
+		return new URL(base_url.toExternalForm() + n + ".png");
+	}
+
 	/** Fetch the named image */
 	public InputStream fetchImage(String n) throws IOException {
-		URL url = new URL(base_url.toExternalForm() + n + ".png");
-		return url.openStream();
+		return getUrl(n).openStream();
+	}
+
+	/** Fetch the named image as a byte array.
+	 * @param n Image name.
+	 * @param since Time of cached copy (ms), or 0 if not cached.
+	 * @return Image data, or null if not modified since cached copy.
+	 * @throws FileNotFoundException if the image does not exist. */
+	public byte[] fetchBytes(String n, long since) throws IOException {
+		URLConnection c = getUrl(n).openConnection();
+		c.setConnectTimeout(TIMEOUT_MS);
+		c.setReadTimeout(TIMEOUT_MS);
+		if (since > 0)
+			c.setIfModifiedSince(since);
+		if (c instanceof HttpURLConnection) {
+			HttpURLConnection hc = (HttpURLConnection) c;
+			if (hc.getResponseCode() ==
+			    HttpURLConnection.HTTP_NOT_MODIFIED)
+			{
+				hc.disconnect();
+				return null;
+			}
+		}
+		InputStream is = c.getInputStream();
+		try {
+			return readAll(is);
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	/** Read the entire contents of an input stream.
+	 * @throws IOException if the image is larger than MAX_IMAGE_SZ. */
+	static private byte[] readAll(InputStream is) throws IOException {
+		byte[] buf = new byte[4096];
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		while (true) {
+			int n_bytes = is.read(buf);
+			if (n_bytes < 0)
+				break;
+			baos.write(buf, 0, n_bytes);
+			if (baos.size() > MAX_IMAGE_SZ) {
+				throw new IOException("Image too large: " +
+					baos.size() + " bytes");
+			}
+		}
+		return baos.toByteArray();
 	}
 }
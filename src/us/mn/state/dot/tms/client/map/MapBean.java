@@ -126,6 +126,15 @@ public class MapBean extends JComponent {
 	/** Current point selector */
 	private PointSelector pselect = new NullPointSelector();
 
+	/** Flag to display frame render time */
+	private boolean frame_time_visible = false;
+
+	/** Set the frame render time visibility */
+	public void setFrameTimeVisible(boolean v) {
+		frame_time_visible = v;
+		repaint();
+	}
+
 	/** Create a new map */
 	public MapBean(boolean a) {
 		map = this;
@@ -386,9 +395,19 @@ public class MapBean extends JComponent {
 		Image image = mapPane.getImage();
 		if(image != null)
 			g.drawImage(image, 0, 0, this);
+		if(frame_time_visible)
+			paintFrameTime(g);
 		paintSelections(g);
 	}
 
+	/** Paint the frame render time */
+	private void paintFrameTime(Graphics2D g) {
+		String ft = String.format("%.1f ms (%d layers)",
+			mapPane.getFrameTime(), mapPane.getFrameLayers());
+		g.setColor(Color.BLACK);
+		g.drawString(ft, 5, 15);
+	}
+
 	/** Paint the current selections */
 	private void paintSelections(Graphics2D g) {
 		g.transform(mapPane.getTransform());
@@ -14,20 +14,29 @@
  */
 package us.mn.state.dot.tms.client.map;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * This class can be used to generate map graphics when access to the graphics
  * subsystem is not available.
  *
+ * Each visible layer is rendered into its own offscreen buffer, which is only
+ * re-rendered when that layer changes.  When the map is panned without
+ * zooming, the buffers are translated, and only the exposed strips are
+ * rendered.  The buffers are then composited into the screen buffer.
+ *
  * @author Erik Engstrom
  * @author Douglas Lau
  */
@@ -39,9 +48,19 @@ class MapPane implements LayerChangeListener {
 	/** Buffer for map */
 	protected BufferedImage screenBuffer;
 
-	/** Dirty flag */
+	/** Dirty flag (screen buffer needs compositing) */
 	private boolean dirty = true;
 
+	/** Offscreen buffers for each visible layer */
+	private final HashMap<LayerState, LayerBuffer> buffers =
+		new HashMap<LayerState, LayerBuffer>();
+
+	/** Time to render the most recent frame (ns) */
+	private long frame_ns = 0;
+
+	/** Number of layers rendered for the most recent frame */
+	private int frame_layers = 0;
+
 	/** Transform from world to screen coordinates */
 	protected final AffineTransform transform = new AffineTransform();
 
@@ -68,6 +87,7 @@ class MapPane implements LayerChangeListener {
 	public void setSize(Dimension d) {
 		screenBuffer = createImage(d.width, d.height);
 		rescale();
+		buffers.clear();
 		dirty = true;
 	}
 
@@ -87,6 +107,7 @@ class MapPane implements LayerChangeListener {
 
 	/** Dispose of the map pane */
 	public void dispose() {
+		buffers.clear();
 	}
 
 	/** Change the scale of the map panel */
@@ -118,26 +139,139 @@ class MapPane implements LayerChangeListener {
 	/** Get the current image for the map panel */
 	public BufferedImage getImage() {
 		BufferedImage bi = screenBuffer;
-		if(dirty) {
-			drawImage(bi);
+		long st = System.nanoTime();
+		List<LayerState> layers = mapbean.getLayers();
+		buffers.keySet().retainAll(layers);
+		int n = 0;
+		for (LayerState s: layers) {
+			if (s.isVisible()) {
+				if (lookupBuffer(s, bi).update())
+					n++;
+			} else if (buffers.remove(s) != null)
+				dirty = true;
+		}
+		if (n > 0)
+			dirty = true;
+		if (dirty) {
+			composite(bi, layers);
 			dirty = false;
+			frame_ns = System.nanoTime() - st;
+			frame_layers = n;
 		}
 		return bi;
 	}
 
-	/** Draw the map image */
-	private void drawImage(BufferedImage bi) {
+	/** Lookup (or create) the buffer for a layer */
+	private LayerBuffer lookupBuffer(LayerState s, BufferedImage bi) {
+		LayerBuffer lb = buffers.get(s);
+		if (null == lb) {
+			lb = new LayerBuffer(s, bi.getWidth(), bi.getHeight());
+			buffers.put(s, lb);
+		}
+		return lb;
+	}
+
+	/** Composite all layer buffers into the screen buffer */
+	private void composite(BufferedImage bi, List<LayerState> layers) {
 		Graphics2D g = bi.createGraphics();
 		g.setBackground(background);
 		g.clearRect(0, 0, bi.getWidth(), bi.getHeight());
+		for (LayerState s: layers) {
+			LayerBuffer lb = buffers.get(s);
+			if (lb != null)
+				g.drawImage(lb.image, 0, 0, null);
+		}
+		g.dispose();
+	}
+
+	/** Create a graphics context for rendering layers */
+	private Graphics2D createGraphics(BufferedImage bi, Rectangle clip) {
+		Graphics2D g = bi.createGraphics();
+		if (clip != null)
+			g.setClip(clip);
 		g.transform(transform);
-		if(antialiased) {
+		if (antialiased) {
 			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
 				RenderingHints.VALUE_ANTIALIAS_ON);
 		}
-		for(LayerState s: mapbean.getLayers())
-			s.paint(g);
-		g.dispose();
+		return g;
+	}
+
+	/** Offscreen buffer for one layer */
+	private class LayerBuffer {
+
+		/** Layer state */
+		private final LayerState state;
+
+		/** Buffered image (transparent) */
+		private final BufferedImage image;
+
+		/** Flag to indicate the layer must be rendered */
+		private boolean invalid = true;
+
+		/** Pending translation (pixels) */
+		private int dx, dy;
+
+		/** Create a new layer buffer */
+		private LayerBuffer(LayerState s, int w, int h) {
+			state = s;
+			image = new BufferedImage(w, h,
+				BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+
+		/** Check if the buffer is for a given event source */
+		private boolean isSource(Object src) {
+			return src == state || src == state.getLayer();
+		}
+
+		/** Translate the buffer */
+		private void translate(int x, int y) {
+			dx += x;
+			dy += y;
+		}
+
+		/** Update the buffer.
+		 * @return true if any rendering was done. */
+		private boolean update() {
+			int w = image.getWidth();
+			int h = image.getHeight();
+			if (Math.abs(dx) >= w || Math.abs(dy) >= h)
+				invalid = true;
+			if (invalid)
+				render(new Rectangle(0, 0, w, h));
+			else if (dx != 0 || dy != 0)
+				shift(w, h);
+			else
+				return false;
+			invalid = false;
+			dx = 0;
+			dy = 0;
+			return true;
+		}
+
+		/** Shift the buffer and render the exposed strips */
+		private void shift(int w, int h) {
+			Graphics2D g = image.createGraphics();
+			g.copyArea(0, 0, w, h, dx, dy);
+			g.dispose();
+			if (dx != 0)
+				render(new Rectangle((dx > 0) ? 0 : w + dx, 0,
+					Math.abs(dx), h));
+			if (dy != 0)
+				render(new Rectangle(0, (dy > 0) ? 0 : h + dy,
+					w, Math.abs(dy)));
+		}
+
+		/** Render the layer within a clipping rectangle */
+		private void render(Rectangle clip) {
+			Graphics2D g = image.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fill(clip);
+			g.dispose();
+			g = createGraphics(image, clip);
+			state.paint(g);
+			g.dispose();
+		}
 	}
 
 	/** Get the buffered image */
@@ -145,6 +279,16 @@ class MapPane implements LayerChangeListener {
 		return screenBuffer;
 	}
 
+	/** Get the time to render the most recent frame (ms) */
+	public float getFrameTime() {
+		return frame_ns / 1000000f;
+	}
+
+	/** Get the number of layers rendered for the most recent frame */
+	public int getFrameLayers() {
+		return frame_layers;
+	}
+
 	/** Map model has changed */
 	@Override
 	public void layerChanged(LayerChangeEvent ev) {
@@ -152,11 +296,65 @@ class MapPane implements LayerChangeListener {
 		case selection:
 			return;
 		case model:
-		case extent:
 			rescale();
+			invalidateAll();
+			return;
+		case extent:
+			changeExtent();
+			return;
 		default:
+			invalidate(ev.getSource());
+		}
+	}
+
+	/** Change the map extent.  If the scale is unchanged and the map moved
+	 * by a whole number of pixels, translate the layer buffers. */
+	private void changeExtent() {
+		AffineTransform pt = new AffineTransform(transform);
+		rescale();
+		double x = transform.getTranslateX() - pt.getTranslateX();
+		double y = transform.getTranslateY() - pt.getTranslateY();
+		int ix = (int) Math.round(x);
+		int iy = (int) Math.round(y);
+		if (transform.getScaleX() == pt.getScaleX() &&
+		    transform.getScaleY() == pt.getScaleY() &&
+		    Math.abs(x - ix) < 0.01 && Math.abs(y - iy) < 0.01)
+		{
+			for (LayerBuffer lb: buffers.values())
+				lb.translate(ix, iy);
 			dirty = true;
+		} else
+			invalidateAll();
+	}
+
+	/** Invalidate the buffers for a layer change event source */
+	private void invalidate(Object src) {
+		boolean found = false;
+		for (LayerBuffer lb: buffers.values()) {
+			if (lb.isSource(src)) {
+				lb.invalid = true;
+				found = true;
+			}
 		}
+		if (!found && !isLayerSource(src))
+			invalidateAll();
+		dirty = true;
+	}
+
+	/** Check if an event source is one of the map layers */
+	private boolean isLayerSource(Object src) {
+		for (LayerState s: mapbean.getLayers()) {
+			if (src == s || src == s.getLayer())
+				return true;
+		}
+		return false;
+	}
+
+	/** Invalidate all layer buffers */
+	private void invalidateAll() {
+		for (LayerBuffer lb: buffers.values())
+			lb.invalid = true;
+		dirty = true;
 	}
 
 	/** Get the transform from world to screen coordinates */
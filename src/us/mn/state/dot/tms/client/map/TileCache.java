@@ -15,98 +15,319 @@
 package us.mn.state.dot.tms.client.map;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A cache of image tiles.
+ * A cache of image tiles.  Encoded tiles are kept in a least-recently-used
+ * memory cache, backed by an optional disk cache.  Tiles are fetched by a
+ * bounded pool of threads; requests for visible tiles are served before
+ * prefetch requests.
  *
  * @author Douglas Lau
  */
 public class TileCache {
 
-	/** FIFO of tile names in cache */
-	protected final LinkedList<String> tiles = new LinkedList<String>();
+	/** Number of fetch threads */
+	static private final int FETCH_THREADS = 4;
 
-	/** Hash of tile names to image files */
-	protected final HashMap<String, TempImageFile> tile_hash =
-		new HashMap<String, TempImageFile>();
+	/** Maximum number of queued prefetch requests */
+	static private final int MAX_PREFETCH = 64;
+
+	/** Number of decoded tiles to keep */
+	static private final int DECODED_SIZE = 64;
+
+	/** Listener for tile loading */
+	public interface Listener {
+
+		/** A requested (non-prefetch) tile has been loaded */
+		void tileLoaded(String n);
+	}
+
+	/** Create a least-recently-used map */
+	static private <V> LinkedHashMap<String, V> createLru(final int sz) {
+		return new LinkedHashMap<String, V>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+				Map.Entry<String, V> e)
+			{
+				return size() > sz;
+			}
+		};
+	}
+
+	/** LRU map of tile names to encoded image files */
+	private final LinkedHashMap<String, TempImageFile> tile_hash;
+
+	/** LRU map of tile names to decoded images */
+	private final LinkedHashMap<String, BufferedImage> decoded;
+
+	/** Set of missing tiles */
+	private final HashSet<String> missing = new HashSet<String>();
+
+	/** Mapping of in-flight tile names to visible flags */
+	private final HashMap<String, Boolean> pending =
+		new HashMap<String, Boolean>();
 
 	/** Image fetcher */
-	protected final ImageFetcher fetcher;
+	private final ImageFetcher fetcher;
+
+	/** Disk cache (may be null) */
+	private final TileDiskCache disk;
 
 	/** Size of cache (number of tiles) */
-	protected final int size;
+	private final int size;
 
 	/** Get the size of cache */
 	public int getSize() {
 		return size;
 	}
 
-	/** Create a new tile cache */
-	public TileCache(ImageFetcher f, int sz) {
+	/** A request to load one tile.  Visible requests are ordered before
+	 * prefetch requests; the newest visible request is served first,
+	 * while prefetch requests are served in the order requested. */
+	static class Request implements Runnable, Comparable<Request> {
+		private final String name;
+		private final boolean visible;
+		private final long seq;
+		private final TileCache cache;
+		Request(String n, boolean v, long s, TileCache c) {
+			name = n;
+			visible = v;
+			seq = s;
+			cache = c;
+		}
+		@Override
+		public int compareTo(Request o) {
+			if (visible != o.visible)
+				return visible ? -1 : 1;
+			else if (visible)
+				return Long.compare(o.seq, seq);
+			else
+				return Long.compare(seq, o.seq);
+		}
+		public void run() {
+			cache.loadTile(name);
+		}
+	}
+
+	/** Request sequence number */
+	private final AtomicLong seq = new AtomicLong();
+
+	/** Tile request queue, ordered by priority */
+	private final PriorityBlockingQueue<Runnable> queue =
+		new PriorityBlockingQueue<Runnable>();
+
+	/** Fetch thread pool */
+	private final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+		FETCH_THREADS, FETCH_THREADS, 30, TimeUnit.SECONDS, queue,
+		new ThreadFactory()
+	{
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "tile_fetch");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/** Tile load listeners */
+	private final CopyOnWriteArrayList<Listener> listeners =
+		new CopyOnWriteArrayList<Listener>();
+
+	/** Create a new tile cache.
+	 * @param f Image fetcher.
+	 * @param d Disk cache (null for none).
+	 * @param sz Number of tiles to cache in memory. */
+	public TileCache(ImageFetcher f, TileDiskCache d, int sz) {
 		fetcher = f;
+		disk = d;
 		size = sz;
+		tile_hash = createLru(sz);
+		decoded = createLru(Math.min(sz, DECODED_SIZE));
+		pool.allowCoreThreadTimeOut(true);
 	}
 
-	/** Purge the oldest image from the cache */
-	protected void purgeOldestImage() {
-		removeFirst();
+	/** Create a new tile cache with no disk cache */
+	public TileCache(ImageFetcher f, int sz) {
+		this(f, null, sz);
 	}
 
-	/** Remove a tile from the cache */
-	protected TempImageFile removeFirst() {
-		synchronized(tile_hash) {
-			String name = tiles.removeFirst();
-			return tile_hash.remove(name);
-		}
+	/** Add a tile load listener */
+	public void addListener(Listener l) {
+		listeners.add(l);
+	}
+
+	/** Remove a tile load listener */
+	public void removeListener(Listener l) {
+		listeners.remove(l);
 	}
 
 	/** Get the named tile from the cache */
 	public BufferedImage getTile(String n) throws IOException {
+		synchronized (tile_hash) {
+			BufferedImage img = decoded.get(n);
+			if (img != null)
+				return img;
+		}
 		TempImageFile tif = getTempImageFile(n);
-		if(tif != null)
-			return tif.getImage();
-		else
+		if (tif != null) {
+			BufferedImage img = tif.getImage();
+			if (img != null) {
+				synchronized (tile_hash) {
+					decoded.put(n, img);
+				}
+			}
+			return img;
+		} else
 			return null;
 	}
 
 	/** Get the named temp image file from the cache */
-	protected TempImageFile getTempImageFile(String n) {
-		synchronized(tile_hash) {
-			if(tile_hash.containsKey(n))
-				return tile_hash.get(n);
-			else
-				return null;
+	private TempImageFile getTempImageFile(String n) {
+		synchronized (tile_hash) {
+			return tile_hash.get(n);
+		}
+	}
+
+	/** Check if a tile is cached in memory */
+	public boolean isCached(String n) {
+		synchronized (tile_hash) {
+			return tile_hash.containsKey(n);
+		}
+	}
+
+	/** Check if a tile is known to be missing */
+	public boolean isMissing(String n) {
+		synchronized (tile_hash) {
+			return missing.contains(n);
+		}
+	}
+
+	/** Request a tile to be loaded asynchronously.  Listeners will be
+	 * notified when a visible tile is loaded.
+	 * @param n Tile name.
+	 * @param prefetch Prefetch flag; prefetch requests are served after
+	 *                 visible requests, and may be dropped. */
+	public void requestTile(String n, boolean prefetch) {
+		synchronized (tile_hash) {
+			if (tile_hash.containsKey(n) || missing.contains(n))
+				return;
+			Boolean vis = pending.get(n);
+			if (vis != null) {
+				// Upgrade prefetch to visible request
+				if (!prefetch)
+					pending.put(n, true);
+				return;
+			}
+			if (prefetch && queue.size() >= MAX_PREFETCH)
+				return;
+			pending.put(n, !prefetch);
+		}
+		pool.execute(new Request(n, !prefetch, seq.getAndIncrement(),
+			this));
+	}
+
+	/** Load one tile (on a fetch thread) */
+	private void loadTile(String n) {
+		boolean loaded = false;
+		try {
+			lookupTile(n);
+			loaded = true;
+		}
+		catch (FileNotFoundException e) {
+			synchronized (tile_hash) {
+				missing.add(n);
+			}
+		}
+		catch (IOException e) {
+			System.err.print("I/O Error ");
+			System.err.print(e.getMessage());
+			System.err.println(" loading tile: " + n);
+		}
+		finally {
+			Boolean vis;
+			synchronized (tile_hash) {
+				vis = pending.remove(n);
+			}
+			if (loaded && Boolean.TRUE.equals(vis)) {
+				for (Listener l: listeners)
+					l.tileLoaded(n);
+			}
 		}
 	}
 
 	/** Lookup a tile and put it in the cache */
 	public void lookupTile(String n) throws IOException {
-		while(isFull())
-			purgeOldestImage();
-		TempImageFile tif = new TempImageFile(fetcher.fetchImage(n));
-		// Update the FIFO and hash map last so that exceptions cannot
-		// leave us in an inconsistent state
-		synchronized(tile_hash) {
-			tiles.addLast(n);
+		byte[] data = fetchTile(n);
+		TempImageFile tif = new TempImageFile(
+			new ByteArrayInputStream(data));
+		synchronized (tile_hash) {
 			tile_hash.put(n, tif);
+			decoded.remove(n);
+		}
+	}
+
+	/** Fetch a tile from the disk cache or the image fetcher */
+	private byte[] fetchTile(String n) throws IOException {
+		if (null == disk)
+			return fetcher.fetchBytes(n, 0);
+		byte[] data = disk.read(n);
+		if (data != null && !disk.isStale(n))
+			return data;
+		try {
+			long since = (data != null) ? disk.lastModified(n) : 0;
+			byte[] fresh = fetcher.fetchBytes(n, since);
+			if (fresh != null) {
+				writeDisk(n, fresh);
+				return fresh;
+			} else {
+				// Not modified since cached
+				disk.touch(n);
+				return data;
+			}
+		}
+		catch (FileNotFoundException e) {
+			throw e;
+		}
+		catch (IOException e) {
+			// Use stale tile if server is not available
+			if (data != null)
+				return data;
+			else
+				throw e;
 		}
 	}
 
-	/** Check if the cache is full */
-	protected boolean isFull() {
-		synchronized(tile_hash) {
-			return tile_hash.size() >= size;
+	/** Write a tile to the disk cache */
+	private void writeDisk(String n, byte[] data) {
+		try {
+			disk.write(n, data);
+		}
+		catch (IOException e) {
+			System.err.print("I/O Error ");
+			System.err.print(e.getMessage());
+			System.err.println(" caching tile: " + n);
 		}
 	}
 
 	/** Destroy the tile cache */
 	public void destroy() throws IOException {
-		synchronized(tile_hash) {
-			tiles.clear();
+		pool.shutdownNow();
+		synchronized (tile_hash) {
 			tile_hash.clear();
+			decoded.clear();
+			pending.clear();
 		}
 	}
 }
@@ -0,0 +1,144 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.map;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A disk cache of image tiles, keyed by tile name.  Each tile is stored in
+ * a separate PNG file, which is validated when read.  Tiles older than the
+ * maximum age are considered stale, and should be revalidated with the tile
+ * server.
+ *
+ * @author Douglas Lau
+ */
+public class TileDiskCache {
+
+	/** Default maximum age of cached tiles (ms) */
+	static public final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+	/** Maximum tile file size (bytes) */
+	static private final int MAX_FILE_SZ = 256 * 1024;
+
+	/** PNG file signature */
+	static private final byte[] PNG_SIGNATURE = {
+		(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+	};
+
+	/** Check if tile data is valid */
+	static public boolean isValid(byte[] data) {
+		if (data.length <= PNG_SIGNATURE.length)
+			return false;
+		for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+			if (data[i] != PNG_SIGNATURE[i])
+				return false;
+		}
+		return true;
+	}
+
+	/** Create a directory name for a tile URL */
+	static public String dirName(String url) {
+		return url.replaceAll("^[a-z]+://", "")
+		          .replaceAll("[^A-Za-z0-9.-]+", "_");
+	}
+
+	/** Cache directory */
+	private final File dir;
+
+	/** Maximum age of cached tiles (ms) */
+	private final long max_age;
+
+	/** Create a new tile disk cache.
+	 * @param d Cache directory.
+	 * @param ma Maximum age of cached tiles (ms). */
+	public TileDiskCache(File d, long ma) {
+		dir = d;
+		max_age = ma;
+	}
+
+	/** Get the file for a tile */
+	private File getFile(String n) {
+		return new File(dir, n + ".png");
+	}
+
+	/** Read a tile from the cache.
+	 * @return Tile data, or null if not cached or invalid. */
+	public byte[] read(String n) {
+		File f = getFile(n);
+		long len = f.length();
+		if (len <= 0 || len > MAX_FILE_SZ)
+			return null;
+		try {
+			byte[] data = new byte[(int) len];
+			DataInputStream in = new DataInputStream(
+				new FileInputStream(f));
+			try {
+				in.readFully(data);
+			}
+			finally {
+				in.close();
+			}
+			if (isValid(data))
+				return data;
+		}
+		catch (IOException e) {
+			// fall through and remove corrupt file
+		}
+		f.delete();
+		return null;
+	}
+
+	/** Check if a cached tile is stale */
+	public boolean isStale(String n) {
+		long lm = lastModified(n);
+		return System.currentTimeMillis() - lm > max_age;
+	}
+
+	/** Get the time a cached tile was last modified (or validated) */
+	public long lastModified(String n) {
+		return getFile(n).lastModified();
+	}
+
+	/** Mark a cached tile as validated */
+	public void touch(String n) {
+		getFile(n).setLastModified(System.currentTimeMillis());
+	}
+
+	/** Write a tile to the cache.  Invalid tiles are not written. */
+	public void write(String n, byte[] data) throws IOException {
+		if (!isValid(data))
+			return;
+		File f = getFile(n);
+		File p = f.getParentFile();
+		if (!p.isDirectory() && !p.mkdirs())
+			throw new IOException("mkdirs failed: " + p);
+		File temp = new File(f.getPath() + "~");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(data);
+		}
+		finally {
+			out.close();
+		}
+		if (!temp.renameTo(f)) {
+			temp.delete();
+			throw new IOException("Rename failed: " + f);
+		}
+	}
+}
@@ -14,6 +14,7 @@
  */
 package us.mn.state.dot.tms.client.map;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -29,20 +30,43 @@ public class TileLayer extends Layer {
 	/** Number of tiles to cache */
 	private final int n_cached;
 
+	/** Base directory for disk cache (null for none) */
+	private final File cache_dir;
+
 	/** Tile cache */
 	private TileCache cache;
 
-	/** Create a new tile layer */
-	public TileLayer(String n, String url, int n_cached) {
+	/** Create a new tile layer.
+	 * @param n Layer name.
+	 * @param url Base URL of tiles.
+	 * @param n_cached Number of tiles to cache in memory.
+	 * @param dir Base directory for disk cache (null for none). */
+	public TileLayer(String n, String url, int n_cached, File dir) {
 		super(n);
 		this.url = url;
 		this.n_cached = n_cached;
+		cache_dir = dir;
+	}
+
+	/** Create a new tile layer with no disk cache */
+	public TileLayer(String n, String url, int n_cached) {
+		this(n, url, n_cached, null);
 	}
 
 	/** Initialize the tile layer */
 	public void initialize() throws IOException {
 		ImageFetcher f = new ImageFetcher(url);
-		cache = new TileCache(f, n_cached);
+		cache = new TileCache(f, createDiskCache(), n_cached);
+	}
+
+	/** Create the disk cache */
+	private TileDiskCache createDiskCache() {
+		if (cache_dir != null) {
+			File dir = new File(cache_dir,
+				TileDiskCache.dirName(url));
+			return new TileDiskCache(dir, TileDiskCache.MAX_AGE_MS);
+		} else
+			return null;
 	}
 
 	/** Create a new layer state */
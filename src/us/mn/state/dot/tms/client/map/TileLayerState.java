@@ -17,14 +17,15 @@ package us.mn.state.dot.tms.client.map;
 import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.geom.Point2D;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashSet;
-import javax.swing.SwingWorker;
+import javax.swing.SwingUtilities;
 import us.mn.state.dot.tms.geo.ZoomLevel;
 
 /**
- * A tile layer state for drawing a Google-style tile map.
+ * A tile layer state for drawing a Google-style tile map.  Tiles which are
+ * not cached are requested from the tile cache asynchronously.  Tiles
+ * adjacent to the visible area, and tiles for the adjacent zoom levels, are
+ * prefetched.
  *
  * @author Douglas Lau
  */
@@ -33,14 +34,44 @@ public class TileLayerState extends LayerState {
 	/** Cache of tiles */
 	private final TileCache cache;
 
-	/** Set of missing tiles */
-	private final HashSet<String> no_tile = new HashSet<String>();
+	/** Flag to indicate a geometry change is pending */
+	private boolean change_pending = false;
+
+	/** Runnable to notify listeners of a geometry change */
+	private final Runnable change_notifier = new Runnable() {
+		public void run() {
+			synchronized (cache) {
+				change_pending = false;
+			}
+			fireLayerChanged(LayerChange.geometry);
+		}
+	};
+
+	/** Listener for tile loads */
+	private final TileCache.Listener listener = new TileCache.Listener() {
+		public void tileLoaded(String n) {
+			synchronized (cache) {
+				if (change_pending)
+					return;
+				change_pending = true;
+			}
+			SwingUtilities.invokeLater(change_notifier);
+		}
+	};
 
 	/** Create a new tile layer state */
 	public TileLayerState(TileLayer layer, MapBean mb, TileCache c) {
 		super(layer, mb, new Theme("Tile", new TileSymbol(),
 			new Style("Tile")));
 		cache = c;
+		cache.addListener(listener);
+	}
+
+	/** Dispose of the layer state */
+	@Override
+	public void dispose() {
+		cache.removeListener(listener);
+		super.dispose();
 	}
 
 	/** Call the specified callback for each map object in the layer */
@@ -68,15 +99,49 @@ public class TileLayerState extends LayerState {
 				Image img = getTile(tile);
 				if (img != null)
 					s.next(new TileMapObject(img, xp, yp));
-				else {
-					if (!isTileMissing(tile))
-						createTileWorker(tile);
-				}
+				else
+					cache.requestTile(tile, false);
 			}
 		}
+		prefetch(zoom, x0, x1, y0, y1);
 		return null;
 	}
 
+	/** Prefetch tiles around the visible area */
+	private void prefetch(ZoomLevel zoom, int x0, int x1, int y0, int y1) {
+		// Neighbouring tiles at the current zoom level
+		for (int x = x0 - 1; x <= x1 + 1; x++) {
+			prefetch(zoom, x, y0 - 1);
+			prefetch(zoom, x, y1 + 1);
+		}
+		for (int y = y0; y <= y1; y++) {
+			prefetch(zoom, x0 - 1, y);
+			prefetch(zoom, x1 + 1, y);
+		}
+		// Parent tiles at the next lower zoom level
+		ZoomLevel out = ZoomLevel.fromOrdinal(zoom.ordinal() - 1);
+		if (out != null) {
+			for (int x = x0 / 2; x <= x1 / 2; x++) {
+				for (int y = y0 / 2; y <= y1 / 2; y++)
+					prefetch(out, x, y);
+			}
+		}
+		// Child tiles at the next higher zoom level
+		ZoomLevel in = ZoomLevel.fromOrdinal(zoom.ordinal() + 1);
+		if (in != null) {
+			for (int x = x0 * 2; x <= x1 * 2 + 1; x++) {
+				for (int y = y0 * 2; y <= y1 * 2 + 1; y++)
+					prefetch(in, x, y);
+			}
+		}
+	}
+
+	/** Prefetch one tile */
+	private void prefetch(ZoomLevel zoom, int x, int y) {
+		if (x >= 0 && x < zoom.n_tiles && y >= 0 && y < zoom.n_tiles)
+			cache.requestTile(getTileName(zoom, x, y), true);
+	}
+
 	/** Limit X or Y tile based on zoom level */
 	private int zoomLimit(ZoomLevel zoom, int xory) {
 		return Math.max(0, Math.min(zoom.n_tiles - 1, xory));
@@ -88,13 +153,6 @@ public class TileLayerState extends LayerState {
 		return "" + zoom.ordinal() + '/' + tx + '/' + gy;
 	}
 
-	/** Is the given tile missing? */
-	private boolean isTileMissing(String tile) {
-		synchronized (no_tile) {
-			return no_tile.contains(tile);
-		}
-	}
-
 	/** Get a tile from the tile cache */
 	private Image getTile(String tile) {
 		try {
@@ -107,47 +165,4 @@ public class TileLayerState extends LayerState {
 			return null;
 		}
 	}
-
-	/** Create a worker to lookup one tile */
-	private void createTileWorker(final String tile) {
-		SwingWorker worker = new SwingWorker<String, Void>() {
-			@Override
-			public String doInBackground() {
-				return lookupTile(tile);
-			}
-			@Override
-			public void done() {
-				try {
-					String tile = get();
-					if (tile != null) {
-						fireLayerChanged(
-							LayerChange.geometry);
-					}
-				}
-				catch (Exception e) {
-					// ignore
-				}
-			}
-		};
-		worker.execute();
-	}
-
-	/** Lookup one tile */
-	private String lookupTile(String tile) {
-		try {
-			cache.lookupTile(tile);
-			return tile;
-		}
-		catch (FileNotFoundException e) {
-			synchronized (no_tile) {
-				no_tile.add(tile);
-			}
-		}
-		catch (IOException e) {
-			System.err.print("I/O Error ");
-			System.err.print(e.getMessage());
-			System.err.println(" loading tile: " + tile);
-		}
-		return null;
-	}
 }
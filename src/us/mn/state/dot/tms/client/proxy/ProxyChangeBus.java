@@ -0,0 +1,131 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.proxy;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import javax.swing.Timer;
+import us.mn.state.dot.tms.client.MainClient;
+
+/**
+ * The proxy change bus coalesces change notifications from any thread and
+ * delivers them on the swing thread once per frame.  Each posted runnable
+ * is run at most once per frame, no matter how many times it was posted.
+ *
+ * @author Douglas Lau
+ */
+public final class ProxyChangeBus {
+
+	/** Frame period (ms) */
+	static public final int FRAME_MS = 100;
+
+	/** Runnables pending delivery in the next frame */
+	static private final LinkedHashSet<Runnable> pending =
+		new LinkedHashSet<Runnable>();
+
+	/** Time when the first runnable of the pending frame was posted */
+	static private long frame_start = 0;
+
+	/** Total count of posted runnables */
+	static private long n_posted = 0;
+
+	/** Total count of delivered runnables */
+	static private long n_delivered = 0;
+
+	/** Delivery lag of most recent frame (ms) */
+	static private long last_lag = 0;
+
+	/** Maximum delivery lag (ms) */
+	static private long max_lag = 0;
+
+	/** Timer to deliver a frame (fires on swing thread) */
+	static private final Timer timer = new Timer(FRAME_MS,
+		new ActionListener()
+	{
+		public void actionPerformed(ActionEvent e) {
+			deliver();
+		}
+	});
+	static {
+		timer.setRepeats(false);
+	}
+
+	/** Post a runnable to be run on the swing thread in the next frame.
+	 * May be called from any thread. */
+	static public void post(Runnable r) {
+		synchronized (pending) {
+			n_posted++;
+			if (pending.isEmpty())
+				frame_start = System.currentTimeMillis();
+			pending.add(r);
+			if (!timer.isRunning())
+				timer.start();
+		}
+	}
+
+	/** Deliver all pending runnables */
+	static private void deliver() {
+		ArrayList<Runnable> frame;
+		synchronized (pending) {
+			frame = new ArrayList<Runnable>(pending);
+			pending.clear();
+			last_lag = System.currentTimeMillis() - frame_start;
+			max_lag = Math.max(max_lag, last_lag);
+			n_delivered += frame.size();
+		}
+		for (Runnable r: frame) {
+			try {
+				r.run();
+			}
+			catch (Exception e) {
+				MainClient.getHandler().handle(e);
+			}
+		}
+	}
+
+	/** Get the total count of posted runnables */
+	static public long getPosted() {
+		synchronized (pending) {
+			return n_posted;
+		}
+	}
+
+	/** Get the total count of delivered runnables.  The difference
+	 * between posted and delivered is the number of coalesced posts. */
+	static public long getDelivered() {
+		synchronized (pending) {
+			return n_delivered;
+		}
+	}
+
+	/** Get the delivery lag of the most recent frame (ms) */
+	static public long getLastLag() {
+		synchronized (pending) {
+			return last_lag;
+		}
+	}
+
+	/** Get the maximum delivery lag (ms) */
+	static public long getMaxLag() {
+		synchronized (pending) {
+			return max_lag;
+		}
+	}
+
+	/** Don't allow instantiation */
+	private ProxyChangeBus() { }
+}
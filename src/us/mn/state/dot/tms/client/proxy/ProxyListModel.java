@@ -19,6 +19,8 @@ package us.mn.state.dot.tms.client.proxy;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.AbstractListModel;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
@@ -92,6 +94,9 @@ public class ProxyListModel<T extends SonarObject>
 		protected void proxyChangedSwing(T proxy, String attr) {
 			ProxyListModel.this.proxyChangedSwing(proxy);
 		}
+		protected void proxiesChangedSwing(Map<T, Set<String>> batch) {
+			ProxyListModel.this.proxiesChangedSwing(batch.keySet());
+		}
 	};
 
 	/** Listens for changes in backing data in order to re-filter as needed */
@@ -233,6 +238,41 @@ public class ProxyListModel<T extends SonarObject>
 			fireIntervalAdded(this, post, post);
 	}
 
+	/** Change a batch of proxies in the list model.  Proxies which are
+	 * added or removed fire their own interval events, so that selection
+	 * models can track the shifted rows.  Proxies which stay in the list
+	 * are coalesced into one contents changed event. */
+	void proxiesChangedSwing(Set<T> batch) {
+		if (batch.size() == 1) {
+			proxyChangedSwing(batch.iterator().next());
+			return;
+		}
+		int r0 = Integer.MAX_VALUE;
+		int r1 = -1;
+		boolean resized = false;
+		for (T proxy: batch) {
+			int pre = doProxyRemoved(proxy);
+			int post = doProxyAdded(proxy);
+			if (pre >= 0 && post >= 0) {
+				r0 = Math.min(r0, Math.min(pre, post));
+				r1 = Math.max(r1, Math.max(pre, post));
+			} else if (pre >= 0) {
+				fireIntervalRemoved(this, pre, pre);
+				resized = true;
+			} else if (post >= 0) {
+				fireIntervalAdded(this, post, post);
+				resized = true;
+			}
+		}
+		if (r1 >= 0) {
+			// Rows may have shifted since r0 and r1 were recorded
+			if (resized)
+				fireContentsChanged(this, 0, getSize() - 1);
+			else
+				fireContentsChanged(this, r0, r1);
+		}
+	}
+
 	/** Sets the filter to be applied against members */
 	public void setFilter(Filter<T> f) {
 		filter = f;
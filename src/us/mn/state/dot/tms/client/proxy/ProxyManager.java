@@ -17,6 +17,8 @@ package us.mn.state.dot.tms.client.proxy;
 
 import java.awt.event.MouseEvent;
 import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.Box;
 import javax.swing.JLabel;
 import javax.swing.JPopupMenu;
@@ -87,6 +89,9 @@ abstract public class ProxyManager<T extends SonarObject> {
 		protected void proxyChangedSwing(T proxy, String attr) {
 			ProxyManager.this.proxyChangedSwing(proxy, attr);
 		}
+		protected void proxiesChangedSwing(Map<T, Set<String>> batch) {
+			ProxyManager.this.proxiesChangedSwing(batch);
+		}
 		protected boolean checkAttributeChange(String attr) {
 			return ProxyManager.this.checkAttributeChange(attr);
 		}
@@ -222,9 +227,38 @@ abstract public class ProxyManager<T extends SonarObject> {
 		return isStyleAttrib(attr);
 	}
 
+	/** Flag to indicate a batch of changes is being processed */
+	private boolean batching = false;
+
+	/** Flag to indicate layer status changed during a batch */
+	private boolean status_changed = false;
+
 	/** Called when a proxy has been changed */
 	protected void proxyChangedSwing(T proxy, String attr) {
-		if (layer != null && isStyleAttrib(attr))
+		if (layer != null && isStyleAttrib(attr)) {
+			if (batching)
+				status_changed = true;
+			else
+				layer.updateStatus();
+		}
+	}
+
+	/** Called when a batch of proxies has been changed.  The layer
+	 * status is only updated once for the whole batch. */
+	private void proxiesChangedSwing(Map<T, Set<String>> batch) {
+		batching = true;
+		status_changed = false;
+		try {
+			for (Map.Entry<T, Set<String>> e: batch.entrySet()) {
+				T proxy = e.getKey();
+				for (String attr: e.getValue())
+					proxyChangedSwing(proxy, attr);
+			}
+		}
+		finally {
+			batching = false;
+		}
+		if (status_changed && layer != null)
 			layer.updateStatus();
 	}
 
@@ -94,13 +94,20 @@ public class StyleSummary<T extends SonarObject> extends JPanel {
 	/** The current style */
 	private String style;
 
+	/** Runnable to update counts, coalesced by the proxy change bus */
+	private final Runnable count_updater = new Runnable() {
+		public void run() {
+			updateCounts();
+		}
+	};
+
 	/** Style status counter */
 	private final ProxyListener<T> counter = new ProxyListener<T>() {
 		private boolean complete = false;
 		@Override
 		public void proxyAdded(T proxy) {
 			if(complete)
-				updateCounts();
+				ProxyChangeBus.post(count_updater);
 		}
 		@Override
 		public void enumerationComplete() {
@@ -109,12 +116,12 @@ public class StyleSummary<T extends SonarObject> extends JPanel {
 		}
 		@Override
 		public void proxyRemoved(T proxy) {
-			updateCounts();
+			ProxyChangeBus.post(count_updater);
 		}
 		@Override
 		public void proxyChanged(T proxy, String attrib) {
 			if(manager.isStyleAttrib(attrib))
-				updateCounts();
+				ProxyChangeBus.post(count_updater);
 		}
 	};
 
@@ -16,6 +16,10 @@ package us.mn.state.dot.tms.client.proxy;
 
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.sonar.client.ProxyListener;
@@ -35,6 +39,17 @@ abstract public class SwingProxyAdapter<T extends SonarObject>
 	/** Flag to pass along notifications */
 	private boolean notify;
 
+	/** Pending proxy changes, coalesced until the next frame */
+	private final LinkedHashMap<T, Set<String>> changes =
+		new LinkedHashMap<T, Set<String>>();
+
+	/** Runnable to deliver pending changes */
+	private final Runnable change_runner = new Runnable() {
+		public void run() {
+			deliverChanges();
+		}
+	};
+
 	/** Create a new swing proxy adapter */
 	protected SwingProxyAdapter(boolean n) {
 		notify = n;
@@ -80,6 +95,9 @@ abstract public class SwingProxyAdapter<T extends SonarObject>
 	 * @see ProxyListener */
 	@Override
 	public final void proxyRemoved(final T proxy) {
+		synchronized (changes) {
+			changes.remove(proxy);
+		}
 		if (notify) {
 			runSwing(new IrisRunnable() {
 				public void run() {
@@ -90,24 +108,42 @@ abstract public class SwingProxyAdapter<T extends SonarObject>
 		}
 	}
 
-	/** A proxy has been changed.
+	/** A proxy has been changed.  Changes are coalesced by proxy and
+	 * attribute, then delivered in a batch on the next frame.
 	 * @see ProxyListener */
 	@Override
 	public final void proxyChanged(final T proxy, final String attr) {
 		if (notify && checkAttributeChange(attr)) {
-			runSwing(new IrisRunnable() {
-				public void run() {
-					customMessage = "proxyChanged, " + proxy.getTypeName() + ": " + proxy.getName()
-						+ ", attr=" + attr;
-					proxyChangedSwing(proxy, attr);
+			synchronized (changes) {
+				Set<String> attrs = changes.get(proxy);
+				if (null == attrs) {
+					attrs = new LinkedHashSet<String>();
+					changes.put(proxy, attrs);
 				}
-			});
+				attrs.add(attr);
+			}
+			ProxyChangeBus.post(change_runner);
 		}
 	}
 
+	/** Deliver pending changes (on swing thread) */
+	private void deliverChanges() {
+		LinkedHashMap<T, Set<String>> batch;
+		synchronized (changes) {
+			if (changes.isEmpty())
+				return;
+			batch = new LinkedHashMap<T, Set<String>>(changes);
+			changes.clear();
+		}
+		proxiesChangedSwing(batch);
+	}
+
 	/** Dispose of the adapter */
 	public final void dispose() {
 		proxies.clear();
+		synchronized (changes) {
+			changes.clear();
+		}
 	}
 
 	/** Get a proxy comparator */
@@ -141,6 +177,17 @@ abstract public class SwingProxyAdapter<T extends SonarObject>
 		// subclasses can override
 	}
 
+	/** A batch of proxies has been changed.  Subclasses can override
+	 * this to update models once per batch.
+	 * @param batch Mapping of changed proxies to changed attributes. */
+	protected void proxiesChangedSwing(Map<T, Set<String>> batch) {
+		for (Map.Entry<T, Set<String>> e: batch.entrySet()) {
+			T proxy = e.getKey();
+			for (String attr: e.getValue())
+				proxyChangedSwing(proxy, attr);
+		}
+	}
+
 	/** Check if an attribute change is interesting */
 	protected boolean checkAttributeChange(String attr) {
 		return true;
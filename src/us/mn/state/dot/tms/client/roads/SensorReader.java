@@ -14,6 +14,8 @@
  */
 package us.mn.state.dot.tms.client.roads;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -30,11 +32,13 @@ import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.Scheduler;
+import us.mn.state.dot.tms.SampleFeed;
 
 /**
  * SensorReader reads and parses an XML document at a 30-second interval.
  * SensorSample objects are created for each sample element, and reported
- * to the segment layer.
+ * to the segment layer.  If the URL refers to a binary sample feed, that is
+ * read instead, and the sensor index is only fetched when it changes.
  *
  * @author Douglas Lau
  */
@@ -64,9 +68,18 @@ public class SensorReader {
 		return null;
 	}
 
-	/** The URL of the xml document */
+	/** The URL of the xml document (or binary sample feed) */
 	private final URL url;
 
+	/** The URL of the binary sample feed index (null for XML) */
+	private final URL index_url;
+
+	/** Sensor IDs from binary sample feed index */
+	private String[] sensors = new String[0];
+
+	/** ID of binary sample feed index */
+	private int index_id = 0;
+
 	/** SAX parser */
 	private final SAXParser parser;
 
@@ -95,10 +108,11 @@ public class SensorReader {
 	};
 
 	/** Create a new sensor reader */
-	public SensorReader(URL u, SegmentBuilder sb) throws SAXException,
-		ParserConfigurationException
+	public SensorReader(URL u, SegmentBuilder sb) throws IOException,
+		SAXException, ParserConfigurationException
 	{
 		url = u;
+		index_url = createIndexUrl(u);
 		builder = sb;
 		SAXParserFactory factory = SAXParserFactory.newInstance();
 		parser = factory.newSAXParser();
@@ -112,6 +126,12 @@ public class SensorReader {
 		READER.addJob(job);
 	}
 
+	/** Create the URL of a binary sample feed index */
+	static private URL createIndexUrl(URL u) throws IOException {
+		String idx = SampleFeed.indexName(u.toString());
+		return (idx != null) ? new URL(idx) : null;
+	}
+
 	/** Dispose of the sensor listener */
 	public void dispose() {
 		READER.removeJob(job);
@@ -139,12 +159,63 @@ public class SensorReader {
 
 	/** Parse the XML document and notify clients */
 	private void parse() throws IOException, SAXException {
-		URLConnection conn = url.openConnection();
+		InputStream in = openStream(url);
+		try {
+			if (index_url != null)
+				parseFeed(in);
+			else
+				parser.parse(in, handler);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/** Open a gzipped input stream from a URL */
+	private InputStream openStream(URL u) throws IOException {
+		URLConnection conn = u.openConnection();
 		conn.setConnectTimeout(URL_TIMEOUT_MS);
 		conn.setReadTimeout(URL_TIMEOUT_MS);
 		conn.setUseCaches(false);
-		InputStream in = new GZIPInputStream(conn.getInputStream());
-		parser.parse(in, handler);
+		return new GZIPInputStream(new BufferedInputStream(
+			conn.getInputStream()));
+	}
+
+	/** Parse one interval of a binary sample feed */
+	private void parseFeed(InputStream in) throws IOException {
+		SampleFeed f = SampleFeed.decodeData(new DataInputStream(in));
+		if (f.index_id != index_id || f.size() != sensors.length)
+			readIndex();
+		if (f.index_id != index_id || f.size() != sensors.length)
+			throw new IOException("Sample feed index mismatch");
+		String stamp = Long.toString(f.stamp);
+		time_changed = !stamp.equals(last_stamp);
+		last_stamp = stamp;
+		if (time_changed) {
+			for (int i = 0; i < sensors.length; i++) {
+				Integer flow = f.getValue(i, SampleFeed.FLOW);
+				Integer speed = f.getValue(i, SampleFeed.SPEED);
+				Integer tvt = f.getValue(i, SampleFeed.TVT);
+				if (flow != null || speed != null || tvt != null) {
+					builder.update(new SensorSample(
+						sensors[i], flow, speed, tvt));
+				}
+			}
+		}
+	}
+
+	/** Read the binary sample feed index */
+	private void readIndex() throws IOException {
+		InputStream in = openStream(index_url);
+		try {
+			String[] sids = SampleFeed.decodeIndex(
+				new DataInputStream(in));
+			sensors = sids;
+			index_id = SampleFeed.indexId(sids);
+		}
+		finally {
+			in.close();
+		}
 	}
 
 	/** Inner class to handle parsing sensor elements */
@@ -0,0 +1,76 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.toolbar;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Properties;
+import javax.swing.JLabel;
+import javax.swing.Timer;
+import us.mn.state.dot.tms.client.proxy.ProxyChangeBus;
+import us.mn.state.dot.tms.client.widget.IPanel;
+import us.mn.state.dot.tms.client.widget.SwingRunner;
+import us.mn.state.dot.tms.utils.I18N;
+
+/**
+ * A tool panel that displays swing event dispatch thread backlog metrics.
+ *
+ * @author Douglas Lau
+ */
+public class EdtStatusPanel extends ToolPanel {
+
+	/** Update period (ms) */
+	static private final int PERIOD_MS = 1000;
+
+	/** Is this panel IRIS enabled? */
+	static public boolean getIEnabled(Properties props) {
+		return Boolean.parseBoolean(props.getProperty(
+			"edt.status.enable"));
+	}
+
+	/** Label for metrics */
+	private final JLabel edt_lbl = IPanel.createValueLabel();
+
+	/** Timer to update metrics */
+	private final Timer timer = new Timer(PERIOD_MS, new ActionListener() {
+		public void actionPerformed(ActionEvent e) {
+			updateLabel();
+		}
+	});
+
+	/** Create a new EDT status panel */
+	public EdtStatusPanel() {
+		add(edt_lbl);
+		updateLabel();
+		timer.start();
+	}
+
+	/** Update the metrics label */
+	private void updateLabel() {
+		long posted = ProxyChangeBus.getPosted();
+		long coalesced = posted - ProxyChangeBus.getDelivered();
+		edt_lbl.setText(I18N.get("edt.queue") + " " +
+			SwingRunner.getBacklog() + "  " +
+			I18N.get("edt.lag") + " " + ProxyChangeBus.getLastLag() +
+			" / " + ProxyChangeBus.getMaxLag() + " ms  " +
+			I18N.get("edt.coalesced") + " " + coalesced + " / " +
+			posted);
+	}
+
+	/** Dispose of the EDT status panel */
+	@Override public void dispose() {
+		timer.stop();
+	}
+}
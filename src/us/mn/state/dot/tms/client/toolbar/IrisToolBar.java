@@ -55,6 +55,10 @@ public class IrisToolBar extends JToolBar {
 			add(new CoordinatePanel(map));
 			add(Box.createGlue());
 		}
+		if(EdtStatusPanel.getIEnabled(s.getProperties())) {
+			add(new EdtStatusPanel());
+			add(Box.createGlue());
+		}
 		if(EditModePanel.getIEnabled())
 			add(new EditModePanel(s));
 	}
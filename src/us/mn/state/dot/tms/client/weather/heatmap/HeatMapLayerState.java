@@ -25,38 +25,49 @@ import us.mn.state.dot.tms.GeoLocHelper;
 import us.mn.state.dot.tms.ItemStyle;
 import us.mn.state.dot.tms.WeatherSensor;
 import us.mn.state.dot.tms.WeatherSensorHelper;
-import us.mn.state.dot.tms.client.proxy.IrisRunnable;
 import us.mn.state.dot.tms.client.proxy.MapGeoLoc;
+import us.mn.state.dot.tms.client.proxy.ProxyChangeBus;
 import us.mn.state.dot.tms.client.proxy.ProxyManager;
+import us.mn.state.dot.tms.client.widget.IWorker;
 import us.mn.state.dot.tms.geo.SphericalMercatorPosition;
 
 import java.awt.Color;
-import java.awt.Composite;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static us.mn.state.dot.tms.SystemAttrEnum.RWIS_MEASUREMENT_RADIUS;
-import static us.mn.state.dot.tms.client.widget.SwingRunner.runSwing;
 
 /**
  * HeatMapLayerState manages the rendering of the low/medium/high weather station
  * area circles that denote an easy means of determining important weather-related
  * information for the given area.
  *
+ * The areas are interpolated into a HeatMapRaster by a background worker
+ * whenever the data or zoom level changes, or the map is panned outside of
+ * the cached raster.  Rasters are cached for a few zoom levels, and only
+ * drawn when painting.
+ *
  * @author Jacob Barde
+ * @author Douglas Lau
  */
 public class HeatMapLayerState extends LayerState {
 
-	/** color array */
-	static final private Color[] COLOR_ARRAY = new Color[] { WeatherMeasurementDataSet.LOCOLOR, WeatherMeasurementDataSet.MOCOLOR,
-		WeatherMeasurementDataSet.HOCOLOR };
-
 	/** radius of circles (meters) */
 	static final private float RADIUS_METERS = RWIS_MEASUREMENT_RADIUS.getFloat();
 
+	/** maximum number of cached rasters (zoom levels) */
+	static final private int MAX_RASTERS = 4;
+
 	/** heatmap layer */
 	final private HeatMapLayer heatMapLayer;
 
@@ -68,6 +79,28 @@ public class HeatMapLayerState extends LayerState {
 
 	private ItemStyle current_style = null;
 
+	/** sample points for rasters (replaced on data change) */
+	private List<HeatMapRaster.Point> points =
+		Collections.<HeatMapRaster.Point>emptyList();
+
+	/** data serial number (incremented on data change) */
+	private int serial = 0;
+
+	/** cached rasters, by zoom level ordinal */
+	final private LinkedHashMap<Integer, HeatMapRaster> rasters =
+		new LinkedHashMap<Integer, HeatMapRaster>(8, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(
+			Map.Entry<Integer, HeatMapRaster> e)
+		{
+			return size() > MAX_RASTERS;
+		}
+	};
+
+	/** flag indicating a raster worker is running */
+	private boolean worker_busy = false;
+
 	/** Listener to handle the style selection changing */
 	final private ActionListener style_listener = new ActionListener() {
 		@Override
@@ -90,15 +123,17 @@ public class HeatMapLayerState extends LayerState {
 		public void proxyRemoved(WeatherSensor proxy) { }
 
 		@Override
-		public void proxyChanged(final WeatherSensor proxy, final String a) {
-			runSwing(new IrisRunnable() {
-				public void run() {
-					customMessage = "weather sensor (heatmap layer state) proxyChanged, " +
-						proxy.getTypeName() + ": " + proxy.getName() + ", attr=" + a;
-					refreshDataSet(current_style);
-					fireLayerChanged(LayerChange.status);
-				}
-			});
+		public void proxyChanged(WeatherSensor proxy, String a) {
+			ProxyChangeBus.post(refresh_runner);
+		}
+	};
+
+	/** Runnable to refresh the data set, coalesced by the proxy change
+	 * bus so that it runs at most once per frame */
+	final private Runnable refresh_runner = new Runnable() {
+		public void run() {
+			refreshDataSet(current_style);
+			fireLayerChanged(LayerChange.status);
 		}
 	};
 
@@ -139,6 +174,33 @@ public class HeatMapLayerState extends LayerState {
 		Iterator<WeatherSensor> wi = WeatherSensorHelper.iterator();
 		while (wi.hasNext())
 			dataSet.add(wi.next());
+		points = createPoints();
+		serial++;
+	}
+
+	/** Create a list of sample points from the data set */
+	private List<HeatMapRaster.Point> createPoints() {
+		ArrayList<HeatMapRaster.Point> pts =
+			new ArrayList<HeatMapRaster.Point>();
+		for (Color c : new Color[] { WeatherMeasurementDataSet.LOCOLOR,
+			WeatherMeasurementDataSet.MOCOLOR,
+			WeatherMeasurementDataSet.HOCOLOR })
+		{
+			int l = HeatMapRaster.level(c);
+			for (WeatherMeasurementSample sample : dataSet.getList(c)) {
+				MapGeoLoc mloc = manager.findGeoLoc(
+					sample.getWeatherSensor());
+				if (mloc == null)
+					continue;
+				SphericalMercatorPosition pos =
+					GeoLocHelper.getPosition(mloc.getGeoLoc());
+				if (pos != null) {
+					pts.add(new HeatMapRaster.Point(pos.getX(),
+						pos.getY(), l));
+				}
+			}
+		}
+		return pts;
 	}
 
 	/** Paint the layer */
@@ -146,48 +208,65 @@ public class HeatMapLayerState extends LayerState {
 	public void paint(final Graphics2D g) {
 		super.paint(g);
 		if (isVisible())
-			paintRadii(g);
+			paintRaster(g);
 	}
 
 	/**
-	 * paint the circles on the the graphics object in order of lowest
-	 * threshold to highest threshold
+	 * paint the cached raster, requesting a new raster if it is out of
+	 * date or does not cover the visible region
 	 */
-	private void paintRadii(final Graphics2D g) {
-		Composite origComposite = g.getComposite();
-		//FIXME fix compositing so later drawings disregard any overlap from previous drawing so as
-		// not to affect transparency nor color.
-		//AlphaComposite ac = AlphaComposite.getInstance(AlphaComposite.SRC_OVER);
-		//g.setComposite(ac);
-		for (Color c : COLOR_ARRAY)
-			refreshRadii(g, c);
-
-		g.setComposite(origComposite);
+	private void paintRaster(final Graphics2D g) {
+		int z = map.getModel().getZoomLevel().ordinal();
+		Rectangle2D view = getView();
+		HeatMapRaster r = rasters.get(z);
+		if (r != null)
+			r.paint(g);
+		if (r == null || r.getSerial() != serial || !r.covers(z, view))
+			requestRaster(z, view);
+	}
+
+	/** Get the visible region of the map (world coordinates) */
+	private Rectangle2D getView() {
+		Point2D c = map.getModel().getCenter();
+		Dimension sz = map.getSize();
+		double hw = sz.width * map.getScale() / 2;
+		double hh = sz.height * map.getScale() / 2;
+		return new Rectangle2D.Double(c.getX() - hw, c.getY() - hh,
+			hw * 2, hh * 2);
 	}
 
 	/**
-	 * paint the circles of a color type
-	 *
-	 * @param g graphics
-	 * @param c color to paint
+	 * request a raster covering the view, plus one view size in each
+	 * direction so that panning can reuse it
 	 */
-	private void refreshRadii(final Graphics2D g, Color c) {
-		g.setColor(c);
-		MapGeoLoc mloc;
-		int r = (int) RADIUS_METERS;
-		int x;
-		int y;
-		List<WeatherMeasurementSample> samples = dataSet.getList(c);
-		for (WeatherMeasurementSample sample : samples) {
-			WeatherSensor ws = sample.getWeatherSensor();
-			mloc = getManager().findGeoLoc(ws);
-			SphericalMercatorPosition pos = GeoLocHelper.getPosition(mloc.getGeoLoc());
-
-			x = (int) pos.getX() - r;
-			y = (int) pos.getY() - r;
-
-			g.fillOval(x, y, 2 * r, 2 * r);
-		}
+	private void requestRaster(final int z, Rectangle2D view) {
+		if (worker_busy)
+			return;
+		worker_busy = true;
+		final int s = serial;
+		final List<HeatMapRaster.Point> pts = points;
+		final double scale = map.getScale();
+		final Rectangle2D b = new Rectangle2D.Double(
+			view.getX() - view.getWidth(),
+			view.getY() - view.getHeight(),
+			view.getWidth() * 3, view.getHeight() * 3);
+		IWorker<HeatMapRaster> worker = new IWorker<HeatMapRaster>() {
+			@Override
+			protected HeatMapRaster doInBackground() {
+				return new HeatMapRaster(s, z, b, scale, pts,
+					RADIUS_METERS);
+			}
+			@Override
+			public void done() {
+				worker_busy = false;
+				HeatMapRaster r = getResult();
+				if (r != null) {
+					rasters.put(z, r);
+					fireLayerChanged(LayerChange.status);
+				}
+			}
+		};
+		worker.execute();
 	}
 
 	/** Get the heatmap layer */
@@ -0,0 +1,175 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.weather.heatmap;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * A heat map raster is an interpolated surface of weather measurement
+ * threshold levels, covering one region of the map at one zoom level.  Each
+ * cell is colored by inverse-distance weighting of the levels of all samples
+ * within the measurement radius, so overlapping areas blend by distance
+ * instead of by drawing order.  Rasters are computed off the swing thread,
+ * and only drawn when painting.
+ *
+ * @author Douglas Lau
+ */
+public class HeatMapRaster {
+
+	/** Screen pixels per raster cell */
+	static private final int CELL_PIXELS = 4;
+
+	/** Maximum raster width or height (cells) */
+	static private final int MAX_CELLS = 2048;
+
+	/** Threshold colors, by level */
+	static private final Color[] LEVEL_COLORS = new Color[] {
+		WeatherMeasurementDataSet.LOCOLOR,
+		WeatherMeasurementDataSet.MOCOLOR,
+		WeatherMeasurementDataSet.HOCOLOR
+	};
+
+	/** Get the threshold level of a color.
+	 * @return Level, or -1 if color is not a threshold color. */
+	static public int level(Color c) {
+		for (int i = 0; i < LEVEL_COLORS.length; i++) {
+			if (LEVEL_COLORS[i].equals(c))
+				return i;
+		}
+		return -1;
+	}
+
+	/** A sample point for a raster */
+	static public class Point {
+
+		/** World X coordinate */
+		private final double x;
+
+		/** World Y coordinate */
+		private final double y;
+
+		/** Threshold level */
+		private final int level;
+
+		/** Create a new sample point */
+		public Point(double x, double y, int l) {
+			this.x = x;
+			this.y = y;
+			level = l;
+		}
+	}
+
+	/** Data serial number */
+	private final int serial;
+
+	/** Zoom level ordinal */
+	private final int zoom;
+
+	/** Region covered (world coordinates) */
+	private final Rectangle2D bounds;
+
+	/** Size of one cell (world units) */
+	private final double cell;
+
+	/** Raster image (top row is maximum Y) */
+	private final BufferedImage image;
+
+	/** Create a new heat map raster.
+	 * @param s Data serial number.
+	 * @param z Zoom level ordinal.
+	 * @param b Region to cover (world coordinates).
+	 * @param scale Size of a screen pixel (world units).
+	 * @param pts Sample points.
+	 * @param radius Measurement radius (world units). */
+	public HeatMapRaster(int s, int z, Rectangle2D b, double scale,
+		List<Point> pts, double radius)
+	{
+		serial = s;
+		zoom = z;
+		bounds = b;
+		cell = Math.max(scale * CELL_PIXELS, Math.max(b.getWidth(),
+			b.getHeight()) / MAX_CELLS);
+		int w = Math.max(1, (int) Math.ceil(b.getWidth() / cell));
+		int h = Math.max(1, (int) Math.ceil(b.getHeight() / cell));
+		image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, w, h, interpolate(w, h, pts, radius), 0, w);
+	}
+
+	/** Interpolate sample levels into ARGB pixels */
+	private int[] interpolate(int w, int h, List<Point> pts, double r) {
+		float[] sum_w = new float[w * h];
+		float[] sum_l = new float[w * h];
+		double x0 = bounds.getMinX();
+		double y1 = bounds.getMaxY();
+		double r2 = r * r;
+		double min2 = cell * cell;
+		for (Point p: pts) {
+			int i0 = Math.max(0, (int) ((p.x - r - x0) / cell));
+			int i1 = Math.min(w - 1, (int) ((p.x + r - x0) / cell));
+			int j0 = Math.max(0, (int) ((y1 - p.y - r) / cell));
+			int j1 = Math.min(h - 1, (int) ((y1 - p.y + r) / cell));
+			for (int j = j0; j <= j1; j++) {
+				double dy = y1 - (j + 0.5) * cell - p.y;
+				for (int i = i0; i <= i1; i++) {
+					double dx = x0 + (i + 0.5) * cell - p.x;
+					double d2 = dx * dx + dy * dy;
+					if (d2 > r2)
+						continue;
+					float wt = (float) (1 / Math.max(d2, min2));
+					int c = j * w + i;
+					sum_w[c] += wt;
+					sum_l[c] += wt * p.level;
+				}
+			}
+		}
+		int[] argb = new int[w * h];
+		for (int c = 0; c < argb.length; c++) {
+			if (sum_w[c] > 0) {
+				int l = Math.round(sum_l[c] / sum_w[c]);
+				argb[c] = LEVEL_COLORS[l].getRGB();
+			}
+		}
+		return argb;
+	}
+
+	/** Get the data serial number */
+	public int getSerial() {
+		return serial;
+	}
+
+	/** Check if the raster covers a view.
+	 * @param z Zoom level ordinal.
+	 * @param view Visible region (world coordinates). */
+	public boolean covers(int z, Rectangle2D view) {
+		return z == zoom && bounds.contains(view);
+	}
+
+	/** Paint the raster.
+	 * @param g Graphics, transformed to world coordinates. */
+	public void paint(Graphics2D g) {
+		AffineTransform t = AffineTransform.getTranslateInstance(
+			bounds.getMinX(), bounds.getMaxY());
+		t.scale(cell, -cell);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+			RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, t, null);
+	}
+}
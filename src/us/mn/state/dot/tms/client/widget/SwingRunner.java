@@ -15,6 +15,7 @@
 package us.mn.state.dot.tms.client.widget;
 
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.SwingUtilities;
 import us.mn.state.dot.sched.ExceptionHandler;
 import us.mn.state.dot.sched.TimeSteward;
@@ -32,6 +33,14 @@ public final class SwingRunner {
 	/** Maximum elapsed time before logging */
 	static public final long MAX_ELAPSED = 50;
 
+	/** Count of runnables posted to the EDT but not yet run */
+	static private final AtomicInteger backlog = new AtomicInteger();
+
+	/** Get the count of runnables waiting on the EDT */
+	static public int getBacklog() {
+		return backlog.get();
+	}
+
 	/** Get the exception handler */
 	static private ExceptionHandler getHandler() {
 		return MainClient.getHandler();
@@ -71,8 +80,10 @@ public final class SwingRunner {
 		// NOTE: use invokeLater for 2 reasons:
 		//    1. Serialize on the EDT no matter which thread we're on.
 		//    2. Drop any held locks before invoking the Runnable.
+		backlog.incrementAndGet();
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
+				backlog.decrementAndGet();
 				runNow(r);
 			}
 		});
@@ -98,8 +109,10 @@ public final class SwingRunner {
 
 	/** Run an invokable on the swing thread */
 	static public void runSwing(final Invokable r) {
+		backlog.incrementAndGet();
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
+				backlog.decrementAndGet();
 				runNow(r);
 			}
 		});
@@ -112,6 +125,7 @@ public final class SwingRunner {
 
 	/** Queue an invokable on the swing thread */
 	static public void runQueued(final Invokable r) {
+		backlog.incrementAndGet();
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				if (queue.isEmpty())
@@ -126,6 +140,7 @@ public final class SwingRunner {
 		public void run() {
 			Invokable r = queue.poll();
 			if (r != null) {
+				backlog.decrementAndGet();
 				runNow(r);
 				if (!queue.isEmpty())
 					pollQueue();
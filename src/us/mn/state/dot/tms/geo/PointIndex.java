@@ -0,0 +1,236 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.geo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A point index finds the nearest of a fixed set of positions.  Positions
+ * are projected onto a unit sphere, where chord length increases with
+ * great-circle distance, so the nearest point by chord is also the nearest
+ * by haversine distance.  Points are sorted along the axis with the greatest
+ * spread, and searched outward from the query point, stopping when the axis
+ * distance alone exceeds the best chord found.
+ *
+ * @author Douglas Lau
+ */
+public class PointIndex {
+
+	/** Project a position onto the unit sphere */
+	static public double[] project(Position p) {
+		double lat = Math.toRadians(p.getLatitude());
+		double lon = Math.toRadians(p.getLongitude());
+		double c = Math.cos(lat);
+		return new double[] {
+			c * Math.cos(lon), c * Math.sin(lon), Math.sin(lat)
+		};
+	}
+
+	/** Calculate the squared chord length between two projections */
+	static public double chord2(double[] a, double[] b) {
+		double dx = a[0] - b[0];
+		double dy = a[1] - b[1];
+		double dz = a[2] - b[2];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/** Projected points, in insertion order */
+	private final double[][] points;
+
+	/** Axis of greatest spread */
+	private final int axis;
+
+	/** Point indices, sorted by axis coordinate */
+	private final int[] order;
+
+	/** Axis coordinates, sorted */
+	private final double[] keys;
+
+	/** Rank of each point in sorted order */
+	private final int[] rank;
+
+	/** Links to next point up (sorted order) which is not removed */
+	private final int[] up;
+
+	/** Links to next point down (sorted order, offset by 1) which is not
+	 * removed */
+	private final int[] down;
+
+	/** Count of points not removed */
+	private int n_points;
+
+	/** Create a new point index.
+	 * @param pos Array of positions to index. */
+	public PointIndex(Position[] pos) {
+		int n = pos.length;
+		points = new double[n][];
+		for (int i = 0; i < n; i++)
+			points[i] = project(pos[i]);
+		axis = findAxis();
+		Integer[] idx = new Integer[n];
+		for (int i = 0; i < n; i++)
+			idx[i] = i;
+		Arrays.sort(idx, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(points[a][axis],
+					points[b][axis]);
+			}
+		});
+		order = new int[n];
+		keys = new double[n];
+		rank = new int[n];
+		for (int r = 0; r < n; r++) {
+			order[r] = idx[r];
+			keys[r] = points[idx[r]][axis];
+			rank[idx[r]] = r;
+		}
+		up = new int[n + 1];
+		down = new int[n + 1];
+		for (int r = 0; r <= n; r++) {
+			up[r] = r;
+			down[r] = r;
+		}
+		n_points = n;
+	}
+
+	/** Find the axis with the greatest spread */
+	private int findAxis() {
+		int a = 0;
+		double spread = -1;
+		for (int j = 0; j < 3; j++) {
+			double lo = Double.POSITIVE_INFINITY;
+			double hi = Double.NEGATIVE_INFINITY;
+			for (double[] p: points) {
+				lo = Math.min(lo, p[j]);
+				hi = Math.max(hi, p[j]);
+			}
+			if (hi - lo > spread) {
+				a = j;
+				spread = hi - lo;
+			}
+		}
+		return a;
+	}
+
+	/** Get the number of points (not removed) */
+	public int size() {
+		return n_points;
+	}
+
+	/** Remove a point from the index */
+	public void remove(int i) {
+		int r = rank[i];
+		if (up[r] == r) {
+			up[r] = r + 1;
+			down[r + 1] = r;
+			n_points--;
+		}
+	}
+
+	/** Find the first point at or above a rank which is not removed.
+	 * @return Rank of point, or keys.length if none. */
+	private int findUp(int r) {
+		while (up[r] != r) {
+			up[r] = up[up[r]];
+			r = up[r];
+		}
+		return r;
+	}
+
+	/** Find the first point at or below a rank which is not removed.
+	 * @return Rank of point, or -1 if none. */
+	private int findDown(int r) {
+		int k = r + 1;
+		while (down[k] != k) {
+			down[k] = down[down[k]];
+			k = down[k];
+		}
+		return k - 1;
+	}
+
+	/** Find the nearest point to a position.
+	 * @param p Position to search.
+	 * @return Index of nearest point (lowest index for ties), or -1. */
+	public int findNearest(Position p) {
+		return findNearest(project(p));
+	}
+
+	/** Find the nearest point to an indexed point.
+	 * @param i Index of point to search from.
+	 * @return Index of nearest other point, or -1. */
+	public int findNearestTo(int i) {
+		return findNearest(points[i], i);
+	}
+
+	/** Find the nearest point to a projection */
+	private int findNearest(double[] q) {
+		return findNearest(q, -1);
+	}
+
+	/** Find the nearest point to a projection.
+	 * @param q Projected query point.
+	 * @param skip Index of point to skip (or -1).
+	 * @return Index of nearest point, or -1. */
+	private int findNearest(double[] q, int skip) {
+		double k = q[axis];
+		int s = Arrays.binarySearch(keys, k);
+		if (s < 0)
+			s = -(s + 1);
+		int lo = findDown(s - 1);
+		int hi = findUp(s);
+		int best = -1;
+		double best2 = Double.POSITIVE_INFINITY;
+		while (lo >= 0 || hi < keys.length) {
+			if (lo >= 0) {
+				double d = k - keys[lo];
+				if (d * d > best2)
+					lo = -1;
+				else {
+					int i = order[lo];
+					if (isCloser(q, i, skip, best, best2)) {
+						best = i;
+						best2 = chord2(q, points[i]);
+					}
+					lo = findDown(lo - 1);
+				}
+			}
+			if (hi < keys.length) {
+				double d = keys[hi] - k;
+				if (d * d > best2)
+					hi = keys.length;
+				else {
+					int i = order[hi];
+					if (isCloser(q, i, skip, best, best2)) {
+						best = i;
+						best2 = chord2(q, points[i]);
+					}
+					hi = findUp(hi + 1);
+				}
+			}
+		}
+		return best;
+	}
+
+	/** Check if a point is closer than the best found so far */
+	private boolean isCloser(double[] q, int i, int skip, int best,
+		double best2)
+	{
+		if (i == skip)
+			return false;
+		double c2 = chord2(q, points[i]);
+		return c2 < best2 || (c2 == best2 && i < best);
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2013  Minnesota Department of Transportation
+ * Copyright (C) 2010-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,47 +14,168 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
+import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
 
 /**
- * Job to create sample data archive files.
+ * Job to create sample data archive files.  Archiving runs on a dedicated
+ * thread, so the FLUSH thread is not blocked.  Sample files for each day are
+ * read and compressed in parallel by a bounded pool of workers, then written
+ * in order to the archive.  Each archive is verified before the original
+ * sample files are deleted.  Optionally, periodic samples are also appended
+ * to a SampleSeriesFile for each sensor and year.
  *
  * @author Douglas Lau
  */
 public class ArchiveSamplesJob extends Job {
 
-	/** Buffer for reading sample data files */
-	protected final byte[] buffer = new byte[8192];
+	/** Archive debug log */
+	static private final DebugLog ARCHIVE_LOG = new DebugLog("archive");
+
+	/** Default number of compression threads */
+	static private final int DEFAULT_THREADS = Math.max(1,
+		Runtime.getRuntime().availableProcessors() / 2);
+
+	/** Default maximum size of entries stored without compression */
+	static private final int DEFAULT_STORE_BYTES = 256;
+
+	/** Number of entries in progress per compression thread */
+	static private final int ENTRIES_PER_THREAD = 64;
+
+	/** Bytes per megabyte */
+	static private final double MB = 1024 * 1024;
+
+	/** Get an integer property */
+	static private int intProperty(Properties props, String p, int d) {
+		String v = props.getProperty(p);
+		return (v != null) ? Integer.parseInt(v.trim()) : d;
+	}
+
+	/** Create a thread pool with daemon threads */
+	static private ThreadPoolExecutor createPool(int n_threads,
+		final String name)
+	{
+		ThreadPoolExecutor ex = new ThreadPoolExecutor(n_threads,
+			n_threads, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ex.allowCoreThreadTimeOut(true);
+		return ex;
+	}
 
 	/** Sample archive factory */
 	private final SampleArchiveFactory a_factory;
 
+	/** Deflate compression level */
+	private final int level;
+
+	/** Maximum size of entries stored without compression */
+	private final int store_bytes;
+
+	/** Number of compression threads */
+	private final int n_threads;
+
+	/** Flag to also append samples to series files */
+	private final boolean series;
+
+	/** Archive thread */
+	private final ExecutorService archiver = createPool(1, "archive");
+
+	/** Compression worker pool */
+	private final ExecutorService workers;
+
+	/** Flag indicating archiving is in progress */
+	private final AtomicBoolean running = new AtomicBoolean();
+
 	/** Create a new job to archive sample data.  This needs to happen
 	 * after 6 PM to allow for buffered data to be read in case of
-	 * communication errors (MnDOT protocol). */
-	public ArchiveSamplesJob(SampleArchiveFactory saf) {
+	 * communication errors (MnDOT protocol).
+	 * @param saf Sample archive factory.
+	 * @param props Server properties. */
+	public ArchiveSamplesJob(SampleArchiveFactory saf, Properties props) {
 		super(Calendar.DATE, 1, Calendar.HOUR, 22);
 		a_factory = saf;
+		level = intProperty(props, "sample.archive.level",
+			Deflater.DEFAULT_COMPRESSION);
+		store_bytes = intProperty(props, "sample.archive.store.bytes",
+			DEFAULT_STORE_BYTES);
+		n_threads = Math.max(1, intProperty(props,
+			"sample.archive.threads", DEFAULT_THREADS));
+		workers = createPool(n_threads, "archive_worker");
+		series = Boolean.parseBoolean(props.getProperty(
+			"sample.archive.series"));
 	}
 
 	/** Perform the archive samples job */
-	public void perform() throws IOException {
-		archiveSamples();
+	public void perform() {
+		if(running.compareAndSet(false, true)) {
+			archiver.execute(new Runnable() {
+				public void run() {
+					try {
+						archiveSamples();
+					}
+					catch(IOException e) {
+						logStderr("error: " +
+							e.getMessage());
+					}
+					finally {
+						running.set(false);
+					}
+				}
+			});
+		} else
+			logStderr("still running, skipped");
+	}
+
+	/** Log an archive failure to stderr.  Failures are always reported,
+	 * whether or not the archive debug log is open. */
+	static private void logStderr(String msg) {
+		System.err.println(TimeSteward.currentDateTimeString(true) +
+			" Archive samples " + msg);
+		if(ARCHIVE_LOG.isOpen())
+			ARCHIVE_LOG.log(msg);
+	}
+
+	/** Log an archive message */
+	private void logArchive(String msg) {
+		if(ARCHIVE_LOG.isOpen())
+			ARCHIVE_LOG.log(msg);
 	}
 
 	/** Archive data samples */
@@ -99,85 +220,302 @@ public class ArchiveSamplesJob extends Job {
 			createSampleArchive(traf, day);
 	}
 
-	/** Create a sample archive file and delete the original sample files */
+	/** Create a sample archive file and delete the original sample
+	 * files.  The archive is written to a temporary file, which is
+	 * verified and renamed before the originals are deleted. */
 	protected void createSampleArchive(File traf, File day)
 		throws IOException
 	{
-		FileOutputStream fos = new FileOutputStream(traf);
+		File tmp = new File(traf.toString() + ".tmp");
+		long start = TimeSteward.currentTimeMillis();
+		ArchiveZipWriter zw = new ArchiveZipWriter(
+			new FileOutputStream(tmp));
+		boolean renamed = false;
 		try {
-			addSampleEntries(fos, day);
-			deleteOriginalSampleFiles(traf, day);
+			try {
+				addSampleEntries(zw, day);
+				zw.finish();
+			}
+			finally {
+				zw.close();
+			}
+			verifyArchive(tmp, zw);
+			if(!tmp.renameTo(traf))
+				throw new IOException("rename failed: " + traf);
+			renamed = true;
 		}
 		finally {
-			fos.close();
+			if(!renamed)
+				tmp.delete();
 		}
+		logThroughput(day, zw, TimeSteward.currentTimeMillis() - start);
+		deleteOriginalSampleFiles(traf, day);
+		if(series)
+			appendSeries(traf, day);
 	}
 
-	/** Add all valid sample file entries to an archive file */
-	protected void addSampleEntries(FileOutputStream fos, File day)
-		throws IOException
-	{
-		ZipOutputStream zos = new ZipOutputStream(
-			new BufferedOutputStream(fos));
-		addSampleEntries(zos, day);
-		zos.finish();
-		zos.close();
+	/** Append samples from an archive file to sample series files */
+	private void appendSeries(File traf, File day) throws IOException {
+		File dir = new File(day.getParentFile(), SampleSeriesFile.EXT);
+		int n = SampleSeriesFile.appendTraffic(traf,
+			Integer.parseInt(day.getName()), dir);
+		logArchive(day.getName() + ": " + n + " series entries");
+	}
+
+	/** Log archive throughput */
+	private void logThroughput(File day, ArchiveZipWriter zw, long ms) {
+		if(ARCHIVE_LOG.isOpen()) {
+			double secs = Math.max(ms, 1) / 1000.0;
+			double raw = zw.getRawBytes() / MB;
+			ARCHIVE_LOG.log(day.getName() + ": " +
+				zw.getEntryCount() + " entries, " +
+				String.format("%.1f MB -> %.1f MB in %.1f s " +
+				"(%.1f MB/s)", raw, zw.getBytes() / MB, secs,
+				raw / secs));
+		}
 	}
 
-	/** Add all valid sample file entries to an archive file */
-	protected void addSampleEntries(ZipOutputStream zos, File day)
+	/** Add all valid sample file entries to an archive file.  Entries
+	 * are compressed by the worker pool, with a bounded number in
+	 * progress, and written in sorted order. */
+	protected void addSampleEntries(ArchiveZipWriter zw, File day)
 		throws IOException
 	{
-		String[] entries = day.list(new FilenameFilter() {
+		String[] names = day.list(new FilenameFilter() {
 			public boolean accept(File dir, String name) {
-				return a_factory.hasKnownExtension(name);
+				return a_factory.hasKnownExtension(name) ||
+				       SampleDayFile.isDayFile(name);
 			}
 		});
-		Arrays.sort(entries);
-		for(String entry: entries)
-			addSampleEntry(zos, day, entry);
+		if(null == names)
+			throw new IOException("list failed: " + day);
+		Arrays.sort(names);
+		ArrayDeque<Future<List<ArchiveZipWriter.Entry>>> pending =
+			new ArrayDeque<Future<List<ArchiveZipWriter.Entry>>>();
+		int max_pending = n_threads * ENTRIES_PER_THREAD;
+		try {
+			for(String name: names) {
+				if(pending.size() >= max_pending)
+					writeEntries(zw, pending.poll());
+				pending.add(workers.submit(
+					createEntryTask(day, name)));
+			}
+			while(!pending.isEmpty())
+				writeEntries(zw, pending.poll());
+		}
+		finally {
+			for(Future<List<ArchiveZipWriter.Entry>> f: pending)
+				f.cancel(true);
+		}
+	}
+
+	/** Write compressed entries from a worker task */
+	private void writeEntries(ArchiveZipWriter zw,
+		Future<List<ArchiveZipWriter.Entry>> f) throws IOException
+	{
+		try {
+			for(ArchiveZipWriter.Entry e: f.get())
+				zw.write(e);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted");
+		}
+		catch(ExecutionException e) {
+			Throwable c = e.getCause();
+			if(c instanceof IOException)
+				throw (IOException)c;
+			throw new IOException(c.toString());
+		}
+	}
+
+	/** Create a task to read and compress one sample file */
+	private Callable<List<ArchiveZipWriter.Entry>> createEntryTask(
+		final File day, final String name)
+	{
+		return new Callable<List<ArchiveZipWriter.Entry>>() {
+			public List<ArchiveZipWriter.Entry> call()
+				throws IOException
+			{
+				if(SampleDayFile.isDayFile(name))
+					return compressDayFile(day, name);
+				else
+					return compressFile(day, name);
+			}
+		};
+	}
+
+	/** Compress one sample file */
+	private List<ArchiveZipWriter.Entry> compressFile(File day,
+		String name) throws IOException
+	{
+		ArrayList<ArchiveZipWriter.Entry> entries =
+			new ArrayList<ArchiveZipWriter.Entry>(1);
+		entries.add(new ArchiveZipWriter.Entry(name,
+			readFile(new File(day, name)), level, store_bytes));
+		return entries;
 	}
 
-	/** Add one sample file entry to an archive file */
-	protected void addSampleEntry(ZipOutputStream zos, File day,
+	/** Compress all entries in a sample day file */
+	private List<ArchiveZipWriter.Entry> compressDayFile(File day,
 		String name) throws IOException
 	{
-		zos.putNextEntry(new ZipEntry(name));
-		FileInputStream fis = new FileInputStream(new File(day, name));
+		ArrayList<ArchiveZipWriter.Entry> entries =
+			new ArrayList<ArchiveZipWriter.Entry>();
+		String sid = daySensorId(name);
+		SampleDayFile df = new SampleDayFile(new File(day, name),
+			false);
 		try {
-			synchronized(buffer) {
-				while(true) {
-					int n_bytes = fis.read(buffer);
-					if(n_bytes < 0)
-						break;
-					zos.write(buffer, 0, n_bytes);
-				}
+			String[] exts = df.getExtensions();
+			Arrays.sort(exts);
+			for(String ext: exts) {
+				entries.add(new ArchiveZipWriter.Entry(
+					sid + "." + ext, df.read(ext), level,
+					store_bytes));
 			}
 		}
+		finally {
+			df.close();
+		}
+		return entries;
+	}
+
+	/** Get the sensor ID of a sample day file name */
+	static private String daySensorId(String name) {
+		return name.substring(0, name.length() -
+			SampleDayFile.EXT.length() - 1);
+	}
+
+	/** Read the contents of a file */
+	static private byte[] readFile(File f) throws IOException {
+		long len = f.length();
+		if(len > Integer.MAX_VALUE)
+			throw new IOException("too large: " + f);
+		byte[] data = new byte[(int)len];
+		FileInputStream fis = new FileInputStream(f);
+		try {
+			int n = 0;
+			while(n < data.length) {
+				int r = fis.read(data, n, data.length - n);
+				if(r < 0)
+					break;
+				n += r;
+			}
+			return (n < data.length)
+			      ? Arrays.copyOf(data, n)
+			      : data;
+		}
 		finally {
 			fis.close();
 		}
 	}
 
+	/** Verify an archive by reading every entry and checking its size
+	 * and CRC against what was written */
+	protected void verifyArchive(File arc, ArchiveZipWriter zw)
+		throws IOException
+	{
+		byte[] buf = new byte[8192];
+		ZipFile zf = new ZipFile(arc);
+		try {
+			int n_entries = 0;
+			Enumeration<? extends ZipEntry> e = zf.entries();
+			while(e.hasMoreElements()) {
+				verifyEntry(zf, e.nextElement(), buf);
+				n_entries++;
+			}
+			if(n_entries != zw.getEntryCount()) {
+				throw new IOException("verify failed: " + arc +
+					" entries");
+			}
+		}
+		finally {
+			zf.close();
+		}
+	}
+
+	/** Verify one archive entry */
+	private void verifyEntry(ZipFile zf, ZipEntry ze, byte[] buf)
+		throws IOException
+	{
+		CRC32 crc = new CRC32();
+		long size = 0;
+		InputStream is = zf.getInputStream(ze);
+		try {
+			while(true) {
+				int n = is.read(buf);
+				if(n < 0)
+					break;
+				crc.update(buf, 0, n);
+				size += n;
+			}
+		}
+		finally {
+			is.close();
+		}
+		if(size != ze.getSize() || crc.getValue() != ze.getCrc()) {
+			throw new IOException("verify failed: " + zf.getName()
+				+ " " + ze.getName());
+		}
+	}
+
 	/** Delete the original sample files that have been copied into an
-	 * archive file */
+	 * archive file.  A sample day file is only deleted if every one of
+	 * its entries is in the archive. */
 	protected void deleteOriginalSampleFiles(File traf, File day)
 		throws IOException
 	{
+		HashSet<String> archived = new HashSet<String>();
 		ZipFile zf = new ZipFile(traf);
-		Enumeration e = zf.entries();
-		while(e.hasMoreElements()) {
-			ZipEntry ze = (ZipEntry)e.nextElement();
-			String name = ze.getName();
-			if(a_factory.hasKnownExtension(name)) {
-				File file = new File(day, name);
-				if(file.isFile())
-					file.delete();
+		try {
+			Enumeration<? extends ZipEntry> e = zf.entries();
+			while(e.hasMoreElements()) {
+				String name = e.nextElement().getName();
+				archived.add(name);
+				if(a_factory.hasKnownExtension(name)) {
+					File file = new File(day, name);
+					if(file.isFile())
+						file.delete();
+				}
+			}
+		}
+		finally {
+			zf.close();
+		}
+		String[] dfs = day.list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return SampleDayFile.isDayFile(name);
+			}
+		});
+		if(dfs != null) {
+			for(String name: dfs) {
+				if(isArchived(day, name, archived))
+					new File(day, name).delete();
 			}
 		}
 		day.delete();
 	}
 
+	/** Check if every entry of a sample day file is in a set of
+	 * archived entry names */
+	private boolean isArchived(File day, String name, Set<String> archived)
+		throws IOException
+	{
+		String sid = daySensorId(name);
+		SampleDayFile df = new SampleDayFile(new File(day, name),
+			false);
+		try {
+			for(String ext: df.getExtensions()) {
+				if(!archived.contains(sid + "." + ext))
+					return false;
+			}
+			return true;
+		}
+		finally {
+			df.close();
+		}
+	}
+
 	/** Test if a year is valid */
 	static protected boolean isValidYear(String year) {
 		if(year.length() != 4)
@@ -0,0 +1,328 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A writer for zip archives of entries which have already been compressed.
+ * This allows entries to be compressed in parallel, then written in order.
+ * The zip64 end record is written when there are too many entries for the
+ * original format.
+ *
+ * @author Douglas Lau
+ */
+public class ArchiveZipWriter {
+
+	/** Local file header signature */
+	static private final int LOCAL_SIG = 0x04034b50;
+
+	/** Central directory header signature */
+	static private final int CENTRAL_SIG = 0x02014b50;
+
+	/** End of central directory signature */
+	static private final int END_SIG = 0x06054b50;
+
+	/** Zip64 end of central directory signature */
+	static private final int END64_SIG = 0x06064b50;
+
+	/** Zip64 end of central directory locator signature */
+	static private final int LOCATOR64_SIG = 0x07064b50;
+
+	/** Version needed to extract (2.0) */
+	static private final int VERSION = 20;
+
+	/** Version needed to extract zip64 (4.5) */
+	static private final int VERSION64 = 45;
+
+	/** Compression method: stored */
+	static public final int STORED = 0;
+
+	/** Compression method: deflated */
+	static public final int DEFLATED = 8;
+
+	/** Maximum value of a 16-bit field */
+	static private final int MAX16 = 0xFFFF;
+
+	/** Maximum value of a 32-bit field */
+	static private final long MAX32 = 0xFFFFFFFFL;
+
+	/** Charset for entry names */
+	static private final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** A compressed zip entry */
+	static public class Entry {
+
+		/** Entry name */
+		private final byte[] name;
+
+		/** Compression method */
+		private final int method;
+
+		/** CRC-32 of uncompressed data */
+		private final long crc;
+
+		/** Uncompressed size */
+		private final int size;
+
+		/** Compressed data */
+		private final byte[] data;
+
+		/** Compressed length */
+		private final int c_size;
+
+		/** Create a compressed entry.
+		 * @param n Entry name.
+		 * @param raw Uncompressed data.
+		 * @param level Deflate level (0-9, or -1 for default).
+		 * @param store_max Maximum size to store without
+		 *                  compressing. */
+		public Entry(String n, byte[] raw, int level, int store_max) {
+			name = n.getBytes(UTF8);
+			CRC32 c = new CRC32();
+			c.update(raw);
+			crc = c.getValue();
+			size = raw.length;
+			byte[] d = (raw.length > store_max && level != 0)
+				? deflate(raw, level)
+				: null;
+			if (d != null && d.length < raw.length) {
+				method = DEFLATED;
+				data = d;
+			} else {
+				method = STORED;
+				data = raw;
+			}
+			c_size = data.length;
+		}
+
+		/** Get the entry name */
+		public String getName() {
+			return new String(name, UTF8);
+		}
+
+		/** Get the compression method */
+		public int getMethod() {
+			return method;
+		}
+
+		/** Get the CRC-32 of uncompressed data */
+		public long getCrc() {
+			return crc;
+		}
+
+		/** Get the uncompressed size */
+		public int getSize() {
+			return size;
+		}
+
+		/** Get the compressed size */
+		public int getCompressedSize() {
+			return c_size;
+		}
+	}
+
+	/** Deflate raw data (without zlib wrapper) */
+	static private byte[] deflate(byte[] raw, int level) {
+		Deflater d = new Deflater(level, true);
+		try {
+			d.setInput(raw);
+			d.finish();
+			byte[] buf = new byte[raw.length / 2 + 64];
+			int n = 0;
+			while (!d.finished()) {
+				if (n == buf.length)
+					buf = Arrays.copyOf(buf, n * 2);
+				n += d.deflate(buf, n, buf.length - n);
+			}
+			return Arrays.copyOf(buf, n);
+		}
+		finally {
+			d.end();
+		}
+	}
+
+	/** Get a DOS date/time for the current time */
+	static private int dosTime() {
+		Calendar cal = Calendar.getInstance();
+		int year = Math.max(cal.get(Calendar.YEAR) - 1980, 0);
+		return (year << 25) |
+		       ((cal.get(Calendar.MONTH) + 1) << 21) |
+		       (cal.get(Calendar.DAY_OF_MONTH) << 16) |
+		       (cal.get(Calendar.HOUR_OF_DAY) << 11) |
+		       (cal.get(Calendar.MINUTE) << 5) |
+		       (cal.get(Calendar.SECOND) >> 1);
+	}
+
+	/** Output stream */
+	private final OutputStream out;
+
+	/** DOS date/time for all entries */
+	private final int dos_time = dosTime();
+
+	/** Entries written */
+	private final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+	/** Local header offsets of entries */
+	private final ArrayList<Long> offsets = new ArrayList<Long>();
+
+	/** Current offset */
+	private long offset = 0;
+
+	/** Uncompressed bytes written */
+	private long raw_bytes = 0;
+
+	/** Create a new archive zip writer */
+	public ArchiveZipWriter(OutputStream os) {
+		out = new BufferedOutputStream(os, 65536);
+	}
+
+	/** Get the number of entries written */
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	/** Get the total uncompressed size of entries written */
+	public long getRawBytes() {
+		return raw_bytes;
+	}
+
+	/** Get the number of bytes written */
+	public long getBytes() {
+		return offset;
+	}
+
+	/** Write a 16-bit little-endian value */
+	private void write16(int v) throws IOException {
+		out.write(v);
+		out.write(v >>> 8);
+		offset += 2;
+	}
+
+	/** Write a 32-bit little-endian value */
+	private void write32(long v) throws IOException {
+		write16((int) (v & MAX16));
+		write16((int) ((v >>> 16) & MAX16));
+	}
+
+	/** Write a 64-bit little-endian value */
+	private void write64(long v) throws IOException {
+		write32(v & MAX32);
+		write32(v >>> 32);
+	}
+
+	/** Write an array of bytes */
+	private void writeBytes(byte[] b) throws IOException {
+		out.write(b);
+		offset += b.length;
+	}
+
+	/** Write one entry */
+	public void write(Entry e) throws IOException {
+		if (offset > MAX32)
+			throw new IOException("Archive too large");
+		entries.add(e);
+		offsets.add(offset);
+		raw_bytes += e.size;
+		write32(LOCAL_SIG);
+		write16(VERSION);
+		write16(0);
+		write16(e.method);
+		write32(dos_time);
+		write32(e.crc);
+		write32(e.c_size);
+		write32(e.size);
+		write16(e.name.length);
+		write16(0);
+		writeBytes(e.name);
+		out.write(e.data, 0, e.c_size);
+		offset += e.c_size;
+	}
+
+	/** Write the central directory and flush the stream */
+	public void finish() throws IOException {
+		long cd_start = offset;
+		for (int i = 0; i < entries.size(); i++)
+			writeCentral(entries.get(i), offsets.get(i));
+		long cd_size = offset - cd_start;
+		int n_entries = entries.size();
+		if (n_entries >= MAX16 || cd_start > MAX32)
+			writeEnd64(n_entries, cd_start, cd_size);
+		write32(END_SIG);
+		write16(0);
+		write16(0);
+		write16(Math.min(n_entries, MAX16));
+		write16(Math.min(n_entries, MAX16));
+		write32(Math.min(cd_size, MAX32));
+		write32(Math.min(cd_start, MAX32));
+		write16(0);
+		out.flush();
+	}
+
+	/** Write a central directory header */
+	private void writeCentral(Entry e, long off) throws IOException {
+		write32(CENTRAL_SIG);
+		write16(VERSION);
+		write16(VERSION);
+		write16(0);
+		write16(e.method);
+		write32(dos_time);
+		write32(e.crc);
+		write32(e.c_size);
+		write32(e.size);
+		write16(e.name.length);
+		write16(0);
+		write16(0);
+		write16(0);
+		write16(0);
+		write32(0);
+		write32(off);
+		writeBytes(e.name);
+	}
+
+	/** Write the zip64 end of central directory record and locator */
+	private void writeEnd64(int n_entries, long cd_start, long cd_size)
+		throws IOException
+	{
+		long end64 = offset;
+		write32(END64_SIG);
+		write64(44);
+		write16(VERSION64);
+		write16(VERSION64);
+		write32(0);
+		write32(0);
+		write64(n_entries);
+		write64(n_entries);
+		write64(cd_size);
+		write64(cd_start);
+		write32(LOCATOR64_SIG);
+		write32(0);
+		write64(end64);
+		write32(1);
+	}
+
+	/** Close the output stream */
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2001-2012  Minnesota Department of Transportation
+ * Copyright (C) 2001-2016  Minnesota Department of Transportation
  * Copyright (C) 2011  University of Minnesota Duluth (NATSRL)
  *
  * This program is free software; you can redistribute it and/or modify
@@ -16,28 +16,60 @@
 package us.mn.state.dot.tms.server;
 
 /**
- * Bounded Sample History container.
+ * Bounded Sample History container.  Samples are kept in a primitive ring,
+ * with NaN for missing data.  Running totals of sample values and counts
+ * are kept alongside, so the average of any window is found without
+ * scanning it.  An exponentially weighted moving average can optionally be
+ * kept as samples are pushed.
  *
  * @author Chongmyung Park (chongmyung.park@gmail.com)
  * @author Douglas Lau
  */
 public class BoundedSampleHistory {
 
-	/** Sample data history */
-	private final Double[] samples;
+	/** Sample data history (NaN for missing data) */
+	private final double[] samples;
+
+	/** Running total of sample values, by push.  This ring has one more
+	 * entry than samples, for the total before the oldest sample. */
+	private final double[] totals;
+
+	/** Running count of valid samples, by push */
+	private final int[] counts;
+
+	/** Smoothing factor for moving average (0 for none) */
+	private final double alpha;
 
 	/** Sample cursor (most recent) */
 	private int cursor = -1;
 
+	/** Running totals cursor (most recent) */
+	private int t_cursor = 0;
+
 	/** Count of samples */
 	private int n_samples = 0;
 
+	/** Exponentially weighted moving average (NaN for missing) */
+	private double ewma = Double.NaN;
+
 	/**
 	 * Create a new bounded sample history.
 	 * @param max_samples Maximum number of samples to retain.
 	 */
 	public BoundedSampleHistory(int max_samples) {
-		samples = new Double[max_samples];
+		this(max_samples, 0);
+	}
+
+	/**
+	 * Create a new bounded sample history with a moving average.
+	 * @param max_samples Maximum number of samples to retain.
+	 * @param a Smoothing factor for moving average, from 0 to 1.
+	 */
+	public BoundedSampleHistory(int max_samples, double a) {
+		samples = new double[max_samples];
+		totals = new double[max_samples + 1];
+		counts = new int[max_samples + 1];
+		alpha = a;
 	}
 
 	/**
@@ -45,47 +77,97 @@ public class BoundedSampleHistory {
 	 * @param sam Current sample data, or null for missing data.
 	 */
 	public void push(Double sam) {
-		cursor = nextIndex(cursor);
-		samples[cursor] = filterSample(sam);
-		if(n_samples < samples.length)
+		push((sam != null) ? sam : Double.NaN);
+	}
+
+	/**
+	 * Add one data sample to the history.
+	 * @param sam Current sample data, or NaN for missing data.
+	 */
+	public void push(double sam) {
+		double s = filterSample(sam);
+		cursor = nextIndex(cursor, samples.length);
+		samples[cursor] = s;
+		if (n_samples < samples.length)
 			n_samples++;
+		int p = t_cursor;
+		t_cursor = nextIndex(t_cursor, totals.length);
+		if (t_cursor == 0)
+			rebase(p);
+		boolean valid = !Double.isNaN(s);
+		totals[t_cursor] = totals[p] + (valid ? s : 0);
+		counts[t_cursor] = counts[p] + (valid ? 1 : 0);
+		if (valid && alpha > 0) {
+			ewma = Double.isNaN(ewma)
+			     ? s
+			     : ewma + alpha * (s - ewma);
+		}
 	}
 
 	/**
-	 * Get the next sample array index.
-	 * @param idx Index into samples array.
+	 * Get the next array index.
+	 * @param idx Index into an array.
+	 * @param len Length of the array.
 	 * @return Next index, rolling over if necessary.
 	 */
-	private int nextIndex(int idx) {
+	static private int nextIndex(int idx, int len) {
 		idx++;
-		return idx < samples.length ? idx : 0;
+		return idx < len ? idx : 0;
+	}
+
+	/**
+	 * Rebase running totals, so they do not grow without bound.  This
+	 * happens once per trip around the ring.
+	 * @param p Index of most recent running total.
+	 */
+	private void rebase(int p) {
+		double b = totals[p];
+		int c = counts[p];
+		for (int i = 0; i < totals.length; i++) {
+			totals[i] -= b;
+			counts[i] -= c;
+		}
 	}
 
 	/**
-	 * Filter out negative data samples.
+	 * Filter out negative and infinite data samples.  An infinite value
+	 * would poison the running totals, even after rebasing.
 	 * @param sam Sample data.
-	 * @return Sample data, with negative values replaced with null.
+	 * @return Sample data, with invalid values replaced with NaN.
 	 */
-	private Double filterSample(Double sam) {
-		if(sam != null && sam >= 0)
-			return sam;
-		else
-			return null;
+	static private double filterSample(double sam) {
+		return (sam >= 0 && sam < Double.POSITIVE_INFINITY)
+		      ? sam
+		      : Double.NaN;
 	}
 
 	/**
 	 * Return sample at given time step index (in reversed direction).
 	 * @param t Time-step index (0 for most recent).
-	 * @return Sample data, or null for missing data.
+	 * @return Sample data, or NaN for missing data.
 	 */
-	public Double get(int t) {
-		if(t < n_samples) {
+	public double getValue(int t) {
+		if (t >= 0 && t < n_samples) {
 			int idx = cursor - t;
-			if(idx < 0)
+			if (idx < 0)
 				idx += samples.length;
 			return samples[idx];
 		} else
-			return null;
+			return Double.NaN;
+	}
+
+	/**
+	 * Return sample at given time step index (in reversed direction).
+	 * @param t Time-step index (0 for most recent).
+	 * @return Sample data, or null for missing data.
+	 */
+	public Double get(int t) {
+		return toDouble(getValue(t));
+	}
+
+	/** Convert a primitive value to a Double, or null for NaN */
+	static private Double toDouble(double v) {
+		return Double.isNaN(v) ? null : v;
 	}
 
 	/**
@@ -93,7 +175,11 @@ public class BoundedSampleHistory {
 	 */
 	public void clear() {
 		cursor = -1;
+		t_cursor = 0;
+		totals[0] = 0;
+		counts[0] = 0;
 		n_samples = 0;
+		ewma = Double.NaN;
 	}
 
 	/**
@@ -112,6 +198,35 @@ public class BoundedSampleHistory {
 		return n_samples == samples.length;
 	}
 
+	/**
+	 * Get the running totals index for a time step.
+	 * @param t Time-step index (0 for most recent).
+	 * @return Index into totals array.
+	 */
+	private int totalIndex(int t) {
+		int idx = t_cursor - t;
+		return (idx >= 0) ? idx : idx + totals.length;
+	}
+
+	/**
+	 * Return the average of the specified number of samples.
+	 * @param t Starting time-step index (0 for most recent).
+	 * @param n_sam Number of samples to calculate average.
+	 * @return Average of the specified samples, or NaN for missing data.
+	 */
+	public double averageValue(int t, int n_sam) {
+		if (t < 0 || t >= n_samples || n_sam <= 0)
+			return Double.NaN;
+		int e = Math.min(t + n_sam, n_samples);
+		int newer = totalIndex(t);
+		int older = totalIndex(e);
+		int count = counts[newer] - counts[older];
+		if (count > 0)
+			return (totals[newer] - totals[older]) / count;
+		else
+			return Double.NaN;
+	}
+
 	/**
 	 * Return the average of the specified number of samples.
 	 * @param t Starting time-step index (0 for most recent).
@@ -119,19 +234,7 @@ public class BoundedSampleHistory {
 	 * @return Average of the specified samples, or null for missing data.
 	 */
 	public Double average(int t, int n_sam) {
-		double sum = 0;
-		int count = 0;
-		for(int i = t; i < t + n_sam; i++) {
-			Double d = get(i);
-			if(d != null) {
-				sum += d;
-				count++;
-			}
-		}
-		if(count > 0)
-			return sum / count;
-		else
-			return null;
+		return toDouble(averageValue(t, n_sam));
 	}
 
 	/**
@@ -141,4 +244,14 @@ public class BoundedSampleHistory {
 	public Double average() {
 		return average(0, n_samples);
 	}
+
+	/**
+	 * Return the exponentially weighted moving average of all samples
+	 * pushed since the history was cleared.  Missing samples are skipped.
+	 * @return Moving average, or NaN for missing data (or if the history
+	 *         was created without a smoothing factor).
+	 */
+	public double ewmaValue() {
+		return ewma;
+	}
 }
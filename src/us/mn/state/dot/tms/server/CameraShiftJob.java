@@ -65,15 +65,18 @@ public class CameraShiftJob extends Job {
 	/** seconds offset from the minute to perform this job */
 	static final private int OFFSET_SECS = 30;
 
-	/** maximum amount of time to run this job (hours) */
-	static final private int MAX_RUNTIME = 12;
-
 	/** milliseconds in an hour */
 	static final private int HOUR = 3600000;
 
 	/** milliseconds in an minute */
 	static final private int MINUTE = 60000;
 
+	/** milliseconds between in-use queries to the video server */
+	static final private int INUSE_PERIOD = 5000;
+
+	/** queue of scheduled camera moves, dispatched by DispatchJob */
+	static final private ShiftQueue<Shift> MOVES = new ShiftQueue<>();
+
 	/** camera comparator */
 	static final private Comparator<Camera> comp = new Comparator<Camera>() {
 		@Override
@@ -98,17 +101,14 @@ public class CameraShiftJob extends Job {
 	static final private String LOG_SCHEDULED_SHIFT = "Successfully scheduled next camera-shift job.";
 	static final private String ERROR_COMPUTE_SHIFT =
 		"ERROR: Unable to compute and schedule next camera-shift job.";
-	static final private String NOTICE_MT_HOUR = "NOTICE: Camera Shift Job is taking more than an hour.";
 	static final private String WARN_CAMERA_IN_USE = "WARNING: Not moving camera, as it is in use: ";
 	static final private String WARN_NO_CAMERAS = "WARNING: no cameras found with requisite '" + HOME.alias
 		+ "' and '" + NIGHT_SHIFT.alias + "' presets enabled.";
-	static final private String WARN_TERMINATING = "WARNING: Terminating job, as it has taken more than "
-		+ MAX_RUNTIME + " hours.";
 
 	/** instance of the scheduler controlling this job */
 	private final Scheduler scheduler;
 
-	/** a map to track what cameras were moved (or attempted to do so) */
+	/** a map to track what cameras were scheduled to move */
 	private final Map<Camera, Boolean> camMoved = new HashMap<>();
 
 	/** used to force movement of camera */
@@ -120,9 +120,6 @@ public class CameraShiftJob extends Job {
 	/** VideoServerCoupler to query cameras for their in-use status */
 	private final VideoServerCoupler videoServerCoupler;
 
-	/** last time a log message was issued warning of excessive time */
-	private long lastLogMessage;
-
 	/** used to determine if we execute camera movement on server startup */
 	private final boolean doReinit;
 
@@ -172,6 +169,9 @@ public class CameraShiftJob extends Job {
 
 		initialize();
 
+		if (start && ctm == null)
+			scheduler.addJob(new DispatchJob(vsc));
+
 		if ((clear || start) && ctm == null) {
 			CameraShiftJob j = new CameraShiftJob(s, vsc, null, is) {
 				private boolean doRepeat = true;
@@ -264,62 +264,26 @@ public class CameraShiftJob extends Job {
 			}
 		}
 
-		long started = TimeSteward.currentTimeMillis();
-		lastLogMessage = started;
 		int delay = CameraHelper.getShiftPause() * 1000;
-		int movingNow = 0;
-		long lastMovement = 0L;
-		long iuLastUpdate = 0L;
-		long diff;
 
 		logComputedInformation();
 
 		log.log(LOG_BEGIN_SHIFT);
 
-		Map<String, Integer> inuse = null;
 		List<Camera> camSortedList = new ArrayList<>(camMoved.keySet());
 		Collections.sort(camSortedList, comp);
 
-		while (doJob(started)) {
-			if (!forceMovement) {
-				if (movingNow >= concurrent) {
-					TimeSteward.sleep(delay);
-					movingNow = 0;
-				}
-
-				diff = (TimeSteward.currentTimeMillis() - lastMovement);
-				if (delay > 0 && delay > diff)
-					TimeSteward.sleep((delay - diff));
-			}
-
-			// in-use updated every 5 seconds so as not to overwhelm video server
-			diff = (TimeSteward.currentTimeMillis() - iuLastUpdate);
-			if (diff > 5000) {
-				inuse = videoServerCoupler.getCamerasInUse();
-				iuLastUpdate = TimeSteward.currentTimeMillis();
-			}
-
-			assert inuse != null;
-			for (Camera c : camSortedList) {
-				if (!forceMovement) {
-					if (camMoved.get(c))
-						continue;
-					if (movingNow >= concurrent)
-						break;
-				}
-
-				if (inuse.containsKey(c.getName())) {
-					camMoved.put(c, true);
-					log.log(WARN_CAMERA_IN_USE + c.getName());
-					continue;
-				}
-
-				moveCamera(c, destPan);
-				movingNow++;
-				lastMovement = TimeSteward.currentTimeMillis();
-				camMoved.put(c, true);
-			}
+		// moves are dispatched from the queue, so this job never sleeps
+		List<Shift> shifts = new ArrayList<>();
+		for (Camera c : camSortedList) {
+			shifts.add(new Shift(c, destPan, forceMovement));
+			camMoved.put(c, true);
 		}
+		if (forceMovement)
+			MOVES.schedule(shifts, shifts.size(), 0);
+		else
+			MOVES.schedule(shifts, concurrent, delay);
+		log.log("Scheduled " + shifts.size() + " camera moves.");
 
 		for (Camera c : camDeferred) {
 			GregorianCalendar cal = (GregorianCalendar) TimeSteward.getCalendarInstance();
@@ -341,16 +305,9 @@ public class CameraShiftJob extends Job {
 	public void complete() {
 		super.complete();
 
-		for (Camera c : camMoved.keySet())
-			if (!camMoved.get(c))
-				log.log("WARNING: Camera Shift Job was unable to move camera " + c.getName() + ".");
-
-		if (forceMovement) {
-			for (Camera c : camMoved.keySet())
-				log.log("Completed scheduled camera shift job for " + c.getName() + " at " + c
-					.getShiftSchedule() + " past the hour.");
+		// scheduled shifts are logged by DispatchJob when moved
+		if (forceMovement)
 			return; // jobs with forced movement at specific times do not reschedule
-		}
 
 		log.log(LOG_COMPLETED_SHIFT);
 		scheduleNextJob();
@@ -383,32 +340,8 @@ public class CameraShiftJob extends Job {
 		log.log(ERROR_COMPUTE_SHIFT);
 	}
 
-	/** determine if the job should continue executing at this point */
-	private boolean doJob(long started) {
-		boolean rv = false;
-
-		for (Camera c : camMoved.keySet()) {
-			if (!camMoved.get(c))
-				rv = true;
-		}
-
-		int mxrt = MAX_RUNTIME * HOUR;
-
-		if ((TimeSteward.currentTimeMillis() - lastLogMessage) > HOUR) {
-			log.log(NOTICE_MT_HOUR);
-			lastLogMessage = TimeSteward.currentTimeMillis();
-		}
-
-		if ((TimeSteward.currentTimeMillis() - started) > mxrt) {
-			rv = false;
-			log.log(WARN_TERMINATING);
-		}
-
-		return rv;
-	}
-
 	/** move the camera to desired preset */
-	private void moveCamera(Camera c, PresetAliasName pan) {
+	static private void moveCamera(Camera c, PresetAliasName pan) {
 		Integer p = PresetAliasHelper.getPreset(c, pan);
 
 		if (p != null) {
@@ -554,6 +487,8 @@ public class CameraShiftJob extends Job {
 			}
 		}
 		scheduler.removeJob(this);
+		MOVES.clear();
+		log.log("Cleared scheduled camera moves.");
 	}
 
 	/** Get the name of the job */
@@ -588,4 +523,57 @@ public class CameraShiftJob extends Job {
 	private void logJob(Job j, String action) {
 		//log.log(action + " job '" + j.getName() + "' hash=" + j.hashCode() + ", to scheduler.");
 	}
+
+	/** one scheduled camera move */
+	static private final class Shift {
+		private final Camera camera;
+		private final PresetAliasName preset;
+		private final boolean scheduled;
+		private Shift(Camera c, PresetAliasName pan, boolean s) {
+			camera = c;
+			preset = pan;
+			scheduled = s;
+		}
+	}
+
+	/** job to dispatch scheduled camera moves which are due */
+	static private class DispatchJob extends Job implements ShiftQueue.Mover<Shift> {
+
+		/** VideoServerCoupler to query cameras for their in-use status */
+		private final VideoServerCoupler videoServerCoupler;
+
+		/** cameras in use, updated at most every INUSE_PERIOD */
+		private Map<String, Integer> inuse;
+
+		/** last time cameras in use were updated */
+		private long inuseUpdated;
+
+		private DispatchJob(VideoServerCoupler vsc) {
+			super(Calendar.SECOND, 1);
+			videoServerCoupler = vsc;
+		}
+
+		/** perform all moves which are due, without waiting */
+		@Override
+		public void perform() {
+			MOVES.dispatch(this);
+		}
+
+		/** move one camera, unless it is in use */
+		@Override
+		public void move(Shift s) {
+			long now = TimeSteward.currentTimeMillis();
+			if (inuse == null || now - inuseUpdated > INUSE_PERIOD) {
+				inuse = videoServerCoupler.getCamerasInUse();
+				inuseUpdated = now;
+			}
+			if (inuse.containsKey(s.camera.getName()))
+				log.log(WARN_CAMERA_IN_USE + s.camera.getName());
+			else
+				moveCamera(s.camera, s.preset);
+			if (s.scheduled)
+				log.log("Completed scheduled camera shift job for " + s.camera.getName() + " at "
+					+ s.camera.getShiftSchedule() + " past the hour.");
+		}
+	}
 }
@@ -571,6 +571,27 @@ public class ControllerImpl extends BaseObjectImpl implements Controller {
 			last_store_time = TimeSteward.currentTimeMillis();
 	}
 
+	/** Store extended metric sample data.
+	 * @param stamp Timestamp in milliseconds since epoch.
+	 * @param period Sampling period in seconds.
+	 * @param start_pin Start pin on controller I/O.
+	 * @param st Sample type (HEADWAY, GAP or SPEED_85).
+	 * @param vals Array of metric samples. */
+	public void storeMetric(long stamp, int period, int start_pin,
+		PeriodicSampleType st, int[] vals)
+	{
+		HashMap<Integer, DetectorImpl> dets = getDetectors();
+		for (Integer pin: dets.keySet()) {
+			DetectorImpl det = dets.get(pin);
+			int i = pin - start_pin;
+			int v = sampleValue(vals, i);
+			if (v >= 0) {
+				det.storeMetric(st, new PeriodicSample(stamp,
+					period, v));
+			}
+		}
+	}
+
 	/** Bin 30-second sample data */
 	public synchronized void binEventSamples() {
 		for (ControllerIO io: io_pins.values()) {
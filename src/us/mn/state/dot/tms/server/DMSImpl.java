@@ -1917,6 +1917,13 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 			((SignMessageImpl)msg).writeXml(w, this);
 	}
 
+	/** Get a change stamp for the sign message XML element.  Sign
+	 * messages are immutable, so the element can only change with the
+	 * current message, the style bits or the deploy time. */
+	public Object getSignMessageStamp() {
+		return Arrays.asList(getMessageCurrent(), styles, deployTime);
+	}
+
 	/** Check if the sign is an active dialup sign */
 	public boolean isActiveDialup() {
 		return isActive() && (isDmsXMLDialup() || hasModemCommLink());
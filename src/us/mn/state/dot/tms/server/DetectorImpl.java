@@ -167,6 +167,11 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 			PeriodicSampleType.MEDIUM);
 		vol_l_cache = new PeriodicSampleCache(
 			PeriodicSampleType.LONG);
+		hdw_cache = new PeriodicSampleCache(
+			PeriodicSampleType.HEADWAY);
+		gap_cache = new PeriodicSampleCache(PeriodicSampleType.GAP);
+		spd85_cache = new PeriodicSampleCache(
+			PeriodicSampleType.SPEED_85);
 		v_log = new VehicleEventLog(n);
 		initTransients();
 	}
@@ -196,6 +201,11 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 			PeriodicSampleType.MEDIUM);
 		vol_l_cache = new PeriodicSampleCache(
 			PeriodicSampleType.LONG);
+		hdw_cache = new PeriodicSampleCache(
+			PeriodicSampleType.HEADWAY);
+		gap_cache = new PeriodicSampleCache(PeriodicSampleType.GAP);
+		spd85_cache = new PeriodicSampleCache(
+			PeriodicSampleType.SPEED_85);
 		v_log = new VehicleEventLog(n);
 	}
 
@@ -539,6 +549,15 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 	/** Periodic volume sample cache (LONG class) */
 	private transient final PeriodicSampleCache vol_l_cache;
 
+	/** Periodic headway sample cache */
+	private transient final PeriodicSampleCache hdw_cache;
+
+	/** Periodic gap sample cache */
+	private transient final PeriodicSampleCache gap_cache;
+
+	/** Periodic 85th percentile speed sample cache */
+	private transient final PeriodicSampleCache spd85_cache;
+
 	/** Volume from the last 30-second sample period.  FIXME: use
 	 * vol_cache to get "last_volume" value. */
 	private transient int last_volume = MISSING_DATA;
@@ -866,6 +885,38 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 		}
 	}
 
+	/** Store one extended metric sample for this detector.
+	 * @param st Sample type (HEADWAY, GAP or SPEED_85).
+	 * @param ps Periodic sample containing metric data. */
+	public void storeMetric(PeriodicSampleType st, PeriodicSample ps) {
+		switch (st) {
+		case HEADWAY:
+			hdw_cache.add(ps);
+			break;
+		case GAP:
+			gap_cache.add(ps);
+			break;
+		case SPEED_85:
+			spd85_cache.add(ps);
+			break;
+		}
+	}
+
+	/** Store one replayed 30-second sample.  Unlike live samples, these
+	 * are not tested for malfunctions or cached for the sample archive.
+	 * @param stamp Time stamp after end of sample period.
+	 * @param vol Volume (vehicle count).
+	 * @param scans Scan count (60 Hz).
+	 * @param speed Speed (mph). */
+	void storeReplay(long stamp, int vol, int scans, int speed) {
+		last_volume = vol;
+		last_volume_stamp = stamp;
+		last_scans = scans;
+		last_scans_stamp = stamp;
+		last_speed = speed;
+		last_speed_stamp = stamp;
+	}
+
 	/** Flush buffered data to disk */
 	public void flush(PeriodicSampleWriter writer) throws IOException {
 		writer.flush(vol_cache, name);
@@ -876,6 +927,7 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 		writer.flush(vol_s_cache, name);
 		writer.flush(vol_m_cache, name);
 		writer.flush(vol_l_cache, name);
+		writer.flushMetrics(name, hdw_cache, gap_cache, spd85_cache);
 	}
 
 	/** Purge all samples before a given stamp. */
@@ -888,6 +940,9 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 		vol_s_cache.purge(before);
 		vol_m_cache.purge(before);
 		vol_l_cache.purge(before);
+		hdw_cache.purge(before);
+		gap_cache.purge(before);
+		spd85_cache.purge(before);
 	}
 
 	/** Vehicle event log */
@@ -963,6 +1018,17 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 		w.write("/>\n");
 	}
 
+	/** Write the current sample to a binary sample feed */
+	public void writeSampleFeed(SampleFeedWriter f) {
+		if (abandoned || !isSampling())
+			return;
+		int speed = Math.round(getSpeed());
+		int tvt = getTravelTimeRoutes();
+		f.add(name, getFlowRaw(),
+			(isMainline() && speed > 0) ? speed : MISSING_DATA,
+			(tvt > 0) ? tvt : MISSING_DATA);
+	}
+
 
 	/** Periodic speed sample cache */
 	private transient final PeriodicSampleCache tvt_cache;
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2012  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,13 +16,18 @@ package us.mn.state.dot.tms.server;
 
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.Objects;
 import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.DeviceRequest;
 import us.mn.state.dot.tms.DMS;
 import us.mn.state.dot.tms.DMSHelper;
+import us.mn.state.dot.tms.server.comm.DevicePoller;
 
 /**
- * Job to periodically query all DMS status.
+ * Job to periodically query all DMS status.  Queries are paced over the
+ * polling interval, and signs which changed recently are queried more
+ * often.
  *
  * @author Douglas Lau
  */
@@ -31,22 +36,56 @@ public class DmsQueryStatusJob extends Job {
 	/** Seconds to offset each poll from start of interval */
 	static private final int OFFSET_SECS = 2;
 
+	/** Maximum status query interval (ms) */
+	static private final long MAX_INTERVAL_MS = 5 * 60 * 1000;
+
+	/** Minimum status query interval, for signs which changed (ms) */
+	static private final long MIN_INTERVAL_MS = MAX_INTERVAL_MS / 4;
+
+	/** Maximum queued operations per comm link */
+	static private final int MAX_LINK_OPS = 4;
+
+	/** Pacer for DMS status queries */
+	private final PollPacer<DMS> pacer = new PollPacer<DMS>(
+		MIN_INTERVAL_MS, MAX_INTERVAL_MS, OFFSET_SECS * 1000,
+		MAX_INTERVAL_MS, MAX_LINK_OPS)
+	{
+		protected Iterator<DMS> iterator() {
+			return DMSHelper.iterator();
+		}
+		protected String getName(DMS d) {
+			return d.getName();
+		}
+		protected int getStateHash(DMS d) {
+			return Objects.hash(d.getMessageCurrent(),
+				d.getController(), DMSHelper.getMaintenance(d),
+				DMSHelper.isFailed(d));
+		}
+		protected int getLinkDepth(DMS d) {
+			if (d instanceof DMSImpl) {
+				DevicePoller dp = ((DMSImpl) d).getPoller();
+				return (dp != null) ? dp.getQueueSize() : 0;
+			} else
+				return 0;
+		}
+		protected void poll(DMS d) {
+			if (d instanceof DMSImpl) {
+				DMSImpl dms = (DMSImpl) d;
+				if (dms.isPeriodicallyQueriable()) {
+					dms.setDeviceRequest(DeviceRequest
+						.QUERY_STATUS.ordinal());
+				}
+			}
+		}
+	};
+
 	/** Create a new job to query DMS status */
 	public DmsQueryStatusJob() {
-		super(Calendar.MINUTE, 5, Calendar.SECOND, OFFSET_SECS);
+		super(Calendar.SECOND, 1);
 	}
 
 	/** Perform the DMS query status job */
 	public void perform() {
-		int req = DeviceRequest.QUERY_STATUS.ordinal();
-		Iterator<DMS> it = DMSHelper.iterator();
-		while(it.hasNext()) {
-			DMS d = it.next();
-			if(d instanceof DMSImpl) {
-				DMSImpl dms = (DMSImpl)d;
-				if(dms.isPeriodicallyQueriable())
-					dms.setDeviceRequest(req);
-			}
-		}
+		pacer.tick(TimeSteward.currentTimeMillis());
 	}
 }
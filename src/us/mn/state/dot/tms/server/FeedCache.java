@@ -0,0 +1,160 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of incidents in incident feeds.  Incidents are tracked separately
+ * for each feed, so one feed can not clear incidents from another.  Each
+ * feed update has a generation number; incidents which are refreshed are
+ * moved to the end of the feed's map, so incidents which are missing from
+ * an update can be found without checking every incident.
+ *
+ * @param <T> Type of incident.
+ * @author Douglas Lau
+ */
+abstract public class FeedCache<T> {
+
+	/** Incident entry from one feed */
+	static private class Entry<T> {
+
+		/** Incident (null if it could not be created) */
+		private final T inc;
+
+		/** Parsed incident signature */
+		private final String sig;
+
+		/** Generation when incident was last in feed */
+		private int seen;
+
+		/** Create a new incident entry */
+		private Entry(T i, String s, int g) {
+			inc = i;
+			sig = s;
+			seen = g;
+		}
+	}
+
+	/** Incidents from one feed */
+	static private class Feed<T> {
+
+		/** Current update generation */
+		private int generation = 0;
+
+		/** Map of active incidents, in order of last refresh */
+		private final LinkedHashMap<String, Entry<T>> active =
+			new LinkedHashMap<String, Entry<T>>(16, 0.75f, true);
+
+		/** Set of cleared incidents */
+		private final HashSet<String> cleared = new HashSet<String>();
+
+		/** Set of garbage incidents */
+		private final HashSet<String> garbage = new HashSet<String>();
+	}
+
+	/** Map of feeds */
+	private final HashMap<String, Feed<T>> feeds =
+		new HashMap<String, Feed<T>>();
+
+	/** Lookup a feed, creating it if necessary */
+	private Feed<T> lookupFeed(String fid) {
+		Feed<T> f = feeds.get(fid);
+		if (null == f) {
+			f = new Feed<T>();
+			feeds.put(fid, f);
+		}
+		return f;
+	}
+
+	/** Begin an update from one feed */
+	public synchronized void begin(String fid) {
+		lookupFeed(fid).generation++;
+	}
+
+	/** Refresh an incident from a feed.
+	 * @param fid Feed ID.
+	 * @param id Incident ID.
+	 * @param sig Parsed incident signature.
+	 * @return true if incident was refreshed, false if it must be put. */
+	public synchronized boolean refresh(String fid, String id, String sig){
+		Feed<T> f = lookupFeed(fid);
+		Entry<T> e = f.active.get(id);
+		if (e != null) {
+			// Retry incidents which could not be created only
+			// after the feed changes them
+			if (e.inc != null || e.sig.equals(sig)) {
+				e.seen = f.generation;
+				return true;
+			} else
+				return false;
+		}
+		if (f.cleared.contains(id) || f.garbage.contains(id)) {
+			f.cleared.add(id);
+			f.garbage.remove(id);
+			return true;
+		}
+		return false;
+	}
+
+	/** Put an incident from a feed.
+	 * @param fid Feed ID.
+	 * @param id Incident ID.
+	 * @param sig Parsed incident signature.
+	 * @param inc Incident (null if it could not be created). */
+	public synchronized void put(String fid, String id, String sig, T inc){
+		Feed<T> f = lookupFeed(fid);
+		f.active.put(id, new Entry<T>(inc, sig, f.generation));
+	}
+
+	/** Update the cache, after all incidents from a feed were refreshed.
+	 * @param fid Feed ID.
+	 * @return Number of incidents cleared. */
+	public synchronized int update(String fid) {
+		Feed<T> f = lookupFeed(fid);
+		int n_cleared = 0;
+		Iterator<Map.Entry<String, Entry<T>>> it =
+			f.active.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Entry<T>> me = it.next();
+			Entry<T> e = me.getValue();
+			// All remaining incidents are in this generation
+			if (e.seen == f.generation)
+				break;
+			f.cleared.add(me.getKey());
+			if (e.inc != null)
+				clear(e.inc);
+			it.remove();
+			n_cleared++;
+		}
+		return n_cleared;
+	}
+
+	/** Clear one incident which is missing from its feed */
+	abstract protected void clear(T inc);
+
+	/** Purge old garbage */
+	public synchronized void purge() {
+		for (Feed<T> f: feeds.values()) {
+			f.garbage.clear();
+			f.garbage.addAll(f.cleared);
+			f.cleared.clear();
+		}
+	}
+}
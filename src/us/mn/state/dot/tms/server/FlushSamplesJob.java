@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2013  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -47,6 +47,20 @@ public class FlushSamplesJob extends Job {
 		return TimeSteward.currentTimeMillis() - SAMPLE_CACHE_MS;
 	}
 
+	/** Flush period (ms) */
+	static private final long PERIOD_MS = 2 * 60 * 1000;
+
+	/** Nanoseconds per millisecond */
+	static private final long NS_PER_MS = 1000000;
+
+	/** Flush duration histogram */
+	static private final LatencyHistogram FLUSH_LATENCY =
+		ServerMetrics.histogram("job.flush_samples");
+
+	/** Flush lag histogram (start time past scheduled time) */
+	static private final LatencyHistogram FLUSH_LAG =
+		ServerMetrics.histogram("job.flush_samples.lag");
+
 	/** Periodic sample writer */
 	private final PeriodicSampleWriter writer;
 
@@ -58,9 +72,17 @@ public class FlushSamplesJob extends Job {
 
 	/** Perform the flush samples job */
 	public void perform() throws IOException {
-		long before = calculatePurgeStamp();
-		flushDetectorSamples(before);
-		flushWeatherSamples(before);
+		FLUSH_LAG.record(TimeSteward.currentTimeMillis() % PERIOD_MS *
+			NS_PER_MS);
+		long start = System.nanoTime();
+		try {
+			long before = calculatePurgeStamp();
+			flushDetectorSamples(before);
+			flushWeatherSamples(before);
+		}
+		finally {
+			FLUSH_LATENCY.recordSince(start);
+		}
 	}
 
 	/** Flush detector sample data to disk */
@@ -32,9 +32,16 @@ public class FlushXmlJob extends Job {
 	/** Detector sample file */
 	static private final String SAMPLE_XML = "det_sample.xml";
 
+	/** Detector sample feed */
+	static private final String SAMPLE_FEED = "det_sample";
+
 	/** Station manager */
 	private final StationManager station_manager;
 
+	/** Binary sample feed writer */
+	private final SampleFeedWriter feed_writer =
+		new SampleFeedWriter(SAMPLE_FEED);
+
 	/** Create a new flush XML samples job */
 	public FlushXmlJob(StationManager sm) {
 		station_manager = sm;
@@ -43,7 +50,9 @@ public class FlushXmlJob extends Job {
 	/** Perform flush XML data to disk */
 	public void perform() throws IOException {
 		writeSampleXml();
+		writeSampleFeed();
 		station_manager.writeSampleXml();
+		station_manager.writeSampleFeed();
 	}
 
 	/** Write the sample data out as XML */
@@ -60,6 +69,19 @@ public class FlushXmlJob extends Job {
 		w.write();
 	}
 
+	/** Write the sample data out as a binary feed */
+	private void writeSampleFeed() throws IOException {
+		Iterator<Detector> it = DetectorHelper.iterator();
+		while (it.hasNext()) {
+			Detector d = it.next();
+			if (d instanceof DetectorImpl) {
+				DetectorImpl det = (DetectorImpl) d;
+				det.writeSampleFeed(feed_writer);
+			}
+		}
+		feed_writer.write(TimeSteward.currentTimeMillis());
+	}
+
 	/** Write the header of the detector sample XML file */
 	private void writeSampleXmlHead(Writer w) throws IOException {
 		w.write(XmlWriter.XML_DECLARATION);
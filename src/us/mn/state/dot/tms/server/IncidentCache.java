@@ -14,9 +14,6 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import us.mn.state.dot.tms.IncidentHelper;
 
 /**
@@ -24,69 +21,11 @@ import us.mn.state.dot.tms.IncidentHelper;
  *
  * @author Douglas Lau
  */
-public class IncidentCache {
+public class IncidentCache extends FeedCache<IncidentImpl> {
 
-	/** Map of active incidents */
-	private final HashMap<String, IncidentImpl> incidents =
-		new HashMap<String, IncidentImpl>();
-
-	/** Map of updated incidents */
-	private final HashMap<String, IncidentImpl> nxt =
-		new HashMap<String, IncidentImpl>();
-
-	/** Set of cleared incidents */
-	private final HashSet<String> cleared = new HashSet<String>();
-
-	/** Set of garbage incidents */
-	private final HashSet<String> garbage = new HashSet<String>();
-
-	/** Check if the cache contains an incident ID */
-	public synchronized boolean contains(String id) {
-		return incidents.containsKey(id)
-		    || cleared.contains(id)
-		    || garbage.contains(id);
-	}
-
-	/** Put an incident */
-	public synchronized void put(String id, IncidentImpl inc) {
-		nxt.put(id, inc);
-	}
-
-	/** Refresh an incident */
-	public synchronized void refresh(String id) {
-		IncidentImpl inc = incidents.get(id);
-		if (inc != null)
-			nxt.put(id, inc);
-		else {
-			cleared.add(id);
-			garbage.remove(id);
-		}
-	}
-
-	/** Update the cache */
-	public synchronized void update() {
-		Iterator<String> it = incidents.keySet().iterator();
-		while (it.hasNext()) {
-			String id = it.next();
-			if (!nxt.containsKey(id)) {
-				clear(id);
-				it.remove();
-			}
-		}
-		incidents.putAll(nxt);
-		nxt.clear();
-	}
-
-	/** Clear one incident */
-	private void clear(String id) {
-		cleared.add(id);
-		IncidentImpl inc = incidents.get(id);
-		if (inc != null)
-			clear(inc);
-	}
-
-	/** Clear one incident */
-	private void clear(IncidentImpl inc) {
+	/** Clear one incident which is missing from its feed */
+	@Override
+	protected void clear(IncidentImpl inc) {
 		inc.setClearedNotify(true);
 		if (!inc.getConfirmed() && isActive(inc))
 			inc.notifyRemove();
@@ -96,11 +35,4 @@ public class IncidentCache {
 	private boolean isActive(IncidentImpl inc) {
 		return inc == IncidentHelper.lookup(inc.getName());
 	}
-
-	/** Purge old garbage */
-	public synchronized void purge() {
-		garbage.clear();
-		garbage.addAll(cleared);
-		cleared.clear();
-	}
 }
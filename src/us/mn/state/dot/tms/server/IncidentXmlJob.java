@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2012  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -28,6 +28,9 @@ public class IncidentXmlJob extends Job {
 	/** Seconds to offset each poll from start of interval */
 	static protected final int OFFSET_SECS = 7;
 
+	/** XML writer */
+	private final IncidentXmlWriter writer = new IncidentXmlWriter();
+
 	/** Create a new incident XML job */
 	public IncidentXmlJob() {
 		super(Calendar.MINUTE, 1, Calendar.SECOND, OFFSET_SECS);
@@ -35,7 +38,6 @@ public class IncidentXmlJob extends Job {
 
 	/** Perform the incident XML job */
 	public void perform() throws IOException {
-		IncidentXmlWriter writer = new IncidentXmlWriter();
 		writer.write();
 	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2013  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -27,25 +27,19 @@ import us.mn.state.dot.tms.IncidentHelper;
  *
  * @author Douglas Lau
  */
-public class IncidentXmlWriter extends XmlWriter {
+public class IncidentXmlWriter extends XmlFragmentWriter {
 
 	/** Incident XML file */
 	static private final String XML_FILE = "incident.xml";
 
 	/** Create a new incident XML writer */
 	public IncidentXmlWriter() {
-		super(XML_FILE, true);
-	}
-
-	/** Write the incident XML file */
-	@Override protected void write(Writer w) throws IOException {
-		writeHead(w);
-		writeBody(w);
-		writeTail(w);
+		super(XML_FILE, true, "incident");
 	}
 
 	/** Write the head of the incident XML file */
-	private void writeHead(Writer w) throws IOException {
+	@Override
+	protected void writeHead(Writer w) throws IOException {
 		w.write(XML_DECLARATION);
 		writeDtd(w);
 		w.write("<active_incidents time_stamp='" +
@@ -77,17 +71,19 @@ public class IncidentXmlWriter extends XmlWriter {
 	}
 
 	/** Write the body of the incident XML file */
-	private void writeBody(Writer w) throws IOException {
+	@Override
+	protected void writeBody() throws IOException {
 		Iterator<Incident> it = IncidentHelper.iterator();
 		while(it.hasNext()) {
 			Incident inc = it.next();
 			if(inc instanceof IncidentImpl)
-				((IncidentImpl)inc).writeXml(w);
+				((IncidentImpl)inc).writeXml(fragment(inc));
 		}
 	}
 
 	/** Write the tail of the incident XML file */
-	private void writeTail(Writer w) throws IOException {
+	@Override
+	protected void writeTail(Writer w) throws IOException {
 		w.write("</active_incidents>\n");
 	}
 }
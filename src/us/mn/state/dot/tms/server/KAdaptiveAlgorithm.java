@@ -15,14 +15,15 @@
  */
 package us.mn.state.dot.tms.server;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import us.mn.state.dot.sched.DebugLog;
-import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.EventType;
 import us.mn.state.dot.tms.LaneType;
 import us.mn.state.dot.tms.R_NodeType;
 import us.mn.state.dot.tms.RampMeterQueue;
+import us.mn.state.dot.tms.SystemAttrEnum;
 import us.mn.state.dot.tms.units.Interval;
 import static us.mn.state.dot.tms.units.Interval.HOUR;
 import static us.mn.state.dot.tms.server.Constants.FEET_PER_MILE;
@@ -55,6 +56,36 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 	/** Number of seconds for one time step */
 	static private final int STEP_SECONDS = 30;
 
+	/** Interval for sampled meter event summary (seconds) */
+	static private final int EVENT_SUMMARY_SECS = 300;
+
+	/** Meter state log */
+	static private final MeterStateLog STATE_LOG =
+		new MeterStateLog(MainServer.a_factory);
+
+	/** Write pending meter state log records */
+	static public void flushStateLog() throws IOException {
+		STATE_LOG.flush();
+	}
+
+	/** Discard pending meter state log records */
+	static public void clearStateLog() {
+		STATE_LOG.clear();
+	}
+
+	/** Is the meter state log enabled? */
+	static private boolean isStateLogEnabled() {
+		return SystemAttrEnum.SAMPLE_ARCHIVE_ENABLE.getBoolean();
+	}
+
+	/** Is a meter event summary due for the current step? */
+	static private boolean isEventSummaryDue() {
+		if (MeterEvent.getMeterEventPurgeDays() <= 0)
+			return false;
+		int step = MeterClock.currentSecondOfDayInt() / STEP_SECONDS;
+		return step % steps(EVENT_SUMMARY_SECS) == 0;
+	}
+
 	/** Calculate steps per hour */
 	static private final double STEP_HOUR =
 		new Interval(STEP_SECONDS).per(HOUR);
@@ -300,7 +331,9 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		MeterState ms = getMeterState(meter);
 		if (ms != null) {
 			ms.validate();
-			if (MeterEvent.getMeterEventPurgeDays() > 0)
+			if (isStateLogEnabled())
+				ms.logMeterState();
+			if (isEventSummaryDue())
 				ms.logMeterEvent();
 		}
 	}
@@ -533,8 +566,8 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		/** Get 1 minute density at current time step.
 		 * @return average 1 min density; missing data returns 0. */
 		public double getDensity() {
-			Double avg = density_hist.average(0, steps(60));
-			if (avg != null)
+			double avg = density_hist.averageValue(0, steps(60));
+			if (!Double.isNaN(avg))
 				return avg;
 			else
 				return 0;
@@ -543,8 +576,8 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		/** Get 1 minute speed at current time step.
 		 * @return Average 1 min speed; missing data returns 0. */
 		private double getSpeed() {
-			Double avg = speed_hist.average(0, steps(60));
-			if (avg != null)
+			double avg = speed_hist.averageValue(0, steps(60));
+			if (!Double.isNaN(avg))
 				return avg;
 			else
 				return 0;
@@ -1235,7 +1268,7 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		 * @param m Number of minutes before end of metering period.
 		 * @return true if within m minutes of end of period. */
 		private boolean isPeriodExpiring(int m) {
-			int min = TimeSteward.currentMinuteOfDayInt();
+			int min = MeterClock.currentMinuteOfDayInt();
 			int stop_min = meter.getStopMin();
 			return min >= stop_min - m;
 		}
@@ -1440,6 +1473,21 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 			return null;
 		}
 
+		/** Log the meter state */
+		protected void logMeterState() {
+			Double sd = getSegmentDensity();
+			Double pas = passage_hist.get(0);
+			MeterStateLog.Record rec = new MeterStateLog.Record(
+				phase.ordinal(), getQueueState().ordinal(),
+				limit_control.ordinal(), tracking_demand,
+				(pas != null) ? pas.intValue() : MISSING_DATA,
+				queueLength(), demand_adj, estimateWaitSecs(),
+				min_rate, release_rate, max_rate,
+				(sd != null) ? sd.floatValue() : MISSING_DATA);
+			STATE_LOG.add(meter.name, MeterClock.currentTimeMillis(),
+				rec);
+		}
+
 		/** Log a meter event */
 		protected void logMeterEvent() {
 			StationNode dn = segmentDownstream();
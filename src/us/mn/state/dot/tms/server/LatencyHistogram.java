@@ -0,0 +1,144 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with fixed buckets.  Values below 16 have one bucket
+ * each, and every power of 2 above that is split into 16 equal buckets, so
+ * a bucket is never wider than 1/16 of its lower bound.  Recording a value
+ * does not lock or allocate, so it can be done on any thread.
+ *
+ * @author Douglas Lau
+ */
+public class LatencyHistogram {
+
+	/** Number of bits for sub-buckets */
+	static private final int SUB_BITS = 4;
+
+	/** Number of sub-buckets per power of 2 */
+	static private final int SUB = 1 << SUB_BITS;
+
+	/** Exponent of largest value with a unique bucket */
+	static private final int MAX_EXP = 40;
+
+	/** Largest value with a unique bucket (about 18 minutes in ns) */
+	static public final long MAX_VALUE = (1L << (MAX_EXP + 1)) - 1;
+
+	/** Number of buckets */
+	static private final int N_BUCKETS = SUB * (MAX_EXP - SUB_BITS + 2);
+
+	/** Get the bucket index of a value */
+	static private int index(long v) {
+		if (v < SUB)
+			return (v > 0) ? (int) v : 0;
+		if (v > MAX_VALUE)
+			return N_BUCKETS - 1;
+		int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+		int sub = (int) (v >>> shift) & (SUB - 1);
+		return SUB * (shift + 1) + sub;
+	}
+
+	/** Get the lower bound of a bucket */
+	static private long lowerBound(int i) {
+		if (i < SUB)
+			return i;
+		int shift = i / SUB - 1;
+		return (long) (SUB + i % SUB) << shift;
+	}
+
+	/** Get the upper bound of a bucket (inclusive) */
+	static private long upperBound(int i) {
+		return (i + 1 < N_BUCKETS) ? lowerBound(i + 1) - 1 : MAX_VALUE;
+	}
+
+	/** Count of values in each bucket */
+	private final AtomicLongArray counts = new AtomicLongArray(N_BUCKETS);
+
+	/** Count of all values */
+	private final AtomicLong count = new AtomicLong();
+
+	/** Total of all values */
+	private final AtomicLong total = new AtomicLong();
+
+	/** Maximum value */
+	private final AtomicLong max = new AtomicLong();
+
+	/** Record one value.
+	 * @param v Value (nanoseconds for latency). */
+	public void record(long v) {
+		counts.incrementAndGet(index(v));
+		count.incrementAndGet();
+		total.addAndGet(Math.max(v, 0));
+		long m = max.get();
+		while (v > m && !max.compareAndSet(m, v))
+			m = max.get();
+	}
+
+	/** Record the time elapsed since a start time.
+	 * @param start Start time from System.nanoTime(). */
+	public void recordSince(long start) {
+		record(System.nanoTime() - start);
+	}
+
+	/** Get the count of recorded values */
+	public long getCount() {
+		return count.get();
+	}
+
+	/** Get the maximum recorded value */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** Get the mean of recorded values */
+	public long getMean() {
+		long n = count.get();
+		return (n > 0) ? total.get() / n : 0;
+	}
+
+	/** Get a value at a percentile.  The value returned is the upper
+	 * bound of the bucket containing the percentile, limited to the
+	 * maximum recorded value.
+	 * @param p Percentile (0 to 100).
+	 * @return Value at percentile, or 0 if nothing recorded. */
+	public long getPercentile(double p) {
+		long[] c = new long[N_BUCKETS];
+		long n = 0;
+		for (int i = 0; i < N_BUCKETS; i++) {
+			c[i] = counts.get(i);
+			n += c[i];
+		}
+		long rank = Math.max(1, (long) Math.ceil(n * p / 100));
+		long sum = 0;
+		for (int i = 0; i < N_BUCKETS; i++) {
+			sum += c[i];
+			if (sum >= rank)
+				return Math.min(upperBound(i), getMax());
+		}
+		return 0;
+	}
+
+	/** Clear all recorded values */
+	public void clear() {
+		for (int i = 0; i < N_BUCKETS; i++)
+			counts.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+}
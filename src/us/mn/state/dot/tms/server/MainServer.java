@@ -102,6 +102,10 @@ public class MainServer {
 			initialize();
 			Properties props = PropertyLoader.load(PROP_FILE);
 			district = props.getProperty("district", "tms");
+			a_factory.setDayFiles(SampleDayFile.EXT.equals(
+				props.getProperty("sample.archive.layout")));
+			TagReaderImpl.setDedupSecs(Integer.parseInt(props
+				.getProperty("tag.read.dedup.secs", "10")));
 			initProxySelector(props);
 			store = createStore(props);
 			BaseEvent.store = store;
@@ -113,12 +117,14 @@ public class MainServer {
 			IrisUserImpl.lookup(store, ns);
 			BaseObjectImpl.loadAll(store, ns);
 			scheduleTimerJobs();
-			scheduleFlushJobs();
+			scheduleFlushJobs(props);
 			aws_scheduler.addJob(new AwsJob());
 			shift_scheduler.addJob(
 				new CameraShiftJob(shift_scheduler,
 					new VideoServerCoupler(props),
 					600000));
+			PushServer.start(props);
+			MetricsServer.start(props);
 			server = new Server(ns, props, new AccessLogger(FLUSH));
 			auth_provider = new IrisProvider();
 			server.addProvider(auth_provider);
@@ -180,7 +186,9 @@ public class MainServer {
 		return new SQLConnection(
 			props.getProperty("db.url"),
 			props.getProperty("db.user"),
-			props.getProperty("db.password")
+			props.getProperty("db.password"),
+			Integer.parseInt(props.getProperty("db.pool.size",
+				String.valueOf(SQLConnection.DEFAULT_POOL_SIZE)))
 		);
 	}
 
@@ -212,12 +220,14 @@ public class MainServer {
 		TIMER.addJob(new TollZoneJob());
 		TIMER.addJob(new ReaperJob());
 		TIMER.addJob(new CommLinkQuery30SecJob());
+		TIMER.addJob(new SolarTableJob());
+		TIMER.addJob(new SchedulerLagJob("timer"));
 	}
 
 	/** Schedule jobs on FLUSH thread */
-	static private void scheduleFlushJobs() {
+	static private void scheduleFlushJobs(Properties props) {
 		FLUSH.addJob(new FlushSamplesJob(a_factory));
-		FLUSH.addJob(new ArchiveSamplesJob(a_factory));
+		FLUSH.addJob(new ArchiveSamplesJob(a_factory, props));
 		FLUSH.addJob(new ProfilingJob());
 		FLUSH.addJob(new XmlConfigJob());
 		FLUSH.addJob(new XmlConfigJob(1000));
@@ -225,5 +235,10 @@ public class MainServer {
 		FLUSH.addJob(new IncidentXmlJob());
 		FLUSH.addJob(new WeatherSensorXmlJob());
 		FLUSH.addJob(new EventPurgeJob());
+		FLUSH.addJob(new TagReadJob());
+		FLUSH.addJob(new SchedulerLagJob("flush"));
+		String mf = props.getProperty("metrics.file");
+		if (mf != null)
+			FLUSH.addJob(new MetricsJob(new File(mf)));
 	}
 }
@@ -0,0 +1,70 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.Calendar;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * Clock for ramp metering algorithms.  This is normally the wall clock, but
+ * a metering replay sets a virtual time for each interval.
+ *
+ * @author Douglas Lau
+ */
+public class MeterClock {
+
+	/** Value when no virtual time is set */
+	static private final long WALL_CLOCK = Long.MIN_VALUE;
+
+	/** Virtual time (ms) */
+	static private volatile long virtual_time = WALL_CLOCK;
+
+	/** Set the virtual time.
+	 * @param t Virtual time (ms since epoch). */
+	static public void setVirtual(long t) {
+		virtual_time = t;
+	}
+
+	/** Go back to the wall clock */
+	static public void clearVirtual() {
+		virtual_time = WALL_CLOCK;
+	}
+
+	/** Get the current time (ms since epoch) */
+	static public long currentTimeMillis() {
+		long t = virtual_time;
+		return (t != WALL_CLOCK) ? t : TimeSteward.currentTimeMillis();
+	}
+
+	/** Get a calendar set to the current time */
+	static public Calendar getCalendarInstance() {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(currentTimeMillis());
+		return cal;
+	}
+
+	/** Get the current second of the day */
+	static public int currentSecondOfDayInt() {
+		Calendar cal = getCalendarInstance();
+		return cal.get(Calendar.HOUR_OF_DAY) * 3600 +
+		       cal.get(Calendar.MINUTE) * 60 +
+		       cal.get(Calendar.SECOND);
+	}
+
+	/** Get the current minute of the day */
+	static public int currentMinuteOfDayInt() {
+		return currentSecondOfDayInt() / 60;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * A meter rate log records the release rate of every ramp meter for each
+ * interval of a day.  It can be written as text and read back, so a
+ * metering replay can be checked against golden output.
+ *
+ * The text format has one line for each rate change: meter name, interval
+ * time (HH:MM:SS at end of interval) and rate (or "-" when not metering).
+ *
+ * @author Douglas Lau
+ */
+public class MeterRateLog {
+
+	/** Text for no release rate */
+	static private final String NO_RATE = "-";
+
+	/** Format an interval as time of day (end of interval) */
+	static private String formatStep(int step) {
+		int s = (step + 1) * TrafficReplay.PERIOD_SEC;
+		return String.format("%02d:%02d:%02d", s / 3600, s / 60 % 60,
+			s % 60);
+	}
+
+	/** Parse a time of day into an interval */
+	static private int parseStep(String t) throws IOException {
+		String[] hms = t.split(":");
+		if (hms.length != 3)
+			throw new IOException("Invalid time: " + t);
+		try {
+			int s = Integer.parseInt(hms[0]) * 3600 +
+				Integer.parseInt(hms[1]) * 60 +
+				Integer.parseInt(hms[2]);
+			int step = s / TrafficReplay.PERIOD_SEC - 1;
+			if (step < 0 || step >= TrafficReplay.STEPS)
+				throw new IOException("Invalid time: " + t);
+			return step;
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Invalid time: " + t);
+		}
+	}
+
+	/** Read a meter rate log.
+	 * @param r Reader of log text.
+	 * @return Meter rate log. */
+	static public MeterRateLog read(Reader r) throws IOException {
+		MeterRateLog log = new MeterRateLog();
+		BufferedReader br = new BufferedReader(r);
+		String line;
+		while ((line = br.readLine()) != null) {
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#"))
+				continue;
+			String[] f = line.split("\\s+");
+			if (f.length != 3)
+				throw new IOException("Invalid line: " + line);
+			int[] rates = log.lookupRates(f[0]);
+			int step = parseStep(f[1]);
+			int rate = parseRate(f[2]);
+			Arrays.fill(rates, step, rates.length, rate);
+		}
+		return log;
+	}
+
+	/** Parse a release rate */
+	static private int parseRate(String r) throws IOException {
+		if (NO_RATE.equals(r))
+			return MISSING_DATA;
+		try {
+			return Integer.parseInt(r);
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Invalid rate: " + r);
+		}
+	}
+
+	/** Rates by meter name */
+	private final TreeMap<String, int[]> meters =
+		new TreeMap<String, int[]>();
+
+	/** Lookup (or create) rates for a meter */
+	private int[] lookupRates(String m) {
+		int[] rates = meters.get(m);
+		if (null == rates) {
+			rates = new int[TrafficReplay.STEPS];
+			Arrays.fill(rates, MISSING_DATA);
+			meters.put(m, rates);
+		}
+		return rates;
+	}
+
+	/** Get rates for a meter (all missing if not recorded) */
+	private int[] getRates(String m) {
+		int[] rates = meters.get(m);
+		if (rates != null)
+			return rates;
+		rates = new int[TrafficReplay.STEPS];
+		Arrays.fill(rates, MISSING_DATA);
+		return rates;
+	}
+
+	/** Record the release rate of a meter.
+	 * @param m Meter name.
+	 * @param step Interval (0 to STEPS - 1).
+	 * @param rate Release rate, or null if not metering. */
+	public void record(String m, int step, Integer rate) {
+		lookupRates(m)[step] = (rate != null) ? rate : MISSING_DATA;
+	}
+
+	/** Get the release rate of a meter.
+	 * @param m Meter name.
+	 * @param step Interval (0 to STEPS - 1).
+	 * @return Release rate, or null if not metering. */
+	public Integer getRate(String m, int step) {
+		int[] rates = meters.get(m);
+		if (rates != null && rates[step] != MISSING_DATA)
+			return rates[step];
+		else
+			return null;
+	}
+
+	/** Get the set of meter names (sorted) */
+	public Set<String> getMeters() {
+		return meters.keySet();
+	}
+
+	/** Write the log as text.
+	 * @param w Writer for log text. */
+	public void write(Writer w) throws IOException {
+		for (Map.Entry<String, int[]> e: meters.entrySet()) {
+			int[] rates = e.getValue();
+			int prev = MISSING_DATA;
+			for (int i = 0; i < rates.length; i++) {
+				if (rates[i] != prev) {
+					w.write(e.getKey() + " " + formatStep(i) +
+						" " + formatRate(rates[i]) + "\n");
+					prev = rates[i];
+				}
+			}
+		}
+		w.flush();
+	}
+
+	/** Format a release rate */
+	static private String formatRate(int r) {
+		return (r != MISSING_DATA) ? Integer.toString(r) : NO_RATE;
+	}
+
+	/** Compare with another log (such as golden output).
+	 * @param o Other meter rate log.
+	 * @return Description of first difference, or null if equal. */
+	public String compare(MeterRateLog o) {
+		TreeSet<String> all = new TreeSet<String>(getMeters());
+		all.addAll(o.getMeters());
+		for (String m: all) {
+			int[] a = getRates(m);
+			int[] b = o.getRates(m);
+			for (int i = 0; i < TrafficReplay.STEPS; i++) {
+				if (a[i] != b[i]) {
+					return m + " " + formatStep(i) + ": " +
+						formatRate(a[i]) + " != " +
+						formatRate(b[i]);
+				}
+			}
+		}
+		return null;
+	}
+}
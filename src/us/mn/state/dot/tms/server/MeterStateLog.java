@@ -0,0 +1,270 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Calendar;
+
+/**
+ * The meter state log records metering algorithm state for each 30-second
+ * interval.  There is one file per meter per day, stored in the sample
+ * archive next to detector sample files.  Each file has one fixed-width
+ * record per interval of the day, so a time range can be read with one seek.
+ * Records which were never written read back as missing (null).
+ *
+ * @author Douglas Lau
+ */
+public class MeterStateLog {
+
+	/** File extension for meter state logs */
+	static public final String EXT = "mst";
+
+	/** Record period (seconds) */
+	static public final int PERIOD_SEC = 30;
+
+	/** Number of records per day */
+	static public final int RECORDS = 24 * 3600 / PERIOD_SEC;
+
+	/** Length of one record (bytes) */
+	static public final int RECORD_LEN = 24;
+
+	/** Flag for a record which has been written */
+	static private final byte PRESENT = 1;
+
+	/** Scale for fractional values stored as shorts */
+	static private final float SCALE = 10f;
+
+	/** Clamp a value to the range of a short */
+	static private short toShort(int v) {
+		return (short) Math.max(Short.MIN_VALUE,
+			Math.min(Short.MAX_VALUE, v));
+	}
+
+	/** Encode a fractional value as a short */
+	static private short toShort(float v) {
+		return toShort(Math.round(v * SCALE));
+	}
+
+	/** One meter state record */
+	static public class Record {
+
+		/** Metering phase (ordinal) */
+		public final int phase;
+
+		/** Queue state (ordinal) */
+		public final int q_state;
+
+		/** Minimum rate limit control (ordinal) */
+		public final int limit_ctrl;
+
+		/** Queue demand (vehicles / hour) */
+		public final int demand;
+
+		/** Ramp passage (vehicles / hour) */
+		public final int passage;
+
+		/** Queue length (vehicles) */
+		public final float q_len;
+
+		/** Demand adjustment (vehicles) */
+		public final float dem_adj;
+
+		/** Estimated wait time (seconds) */
+		public final int wait_secs;
+
+		/** Minimum rate (vehicles / hour) */
+		public final int min_rate;
+
+		/** Release rate (vehicles / hour) */
+		public final int rel_rate;
+
+		/** Maximum rate (vehicles / hour) */
+		public final int max_rate;
+
+		/** Segment density (vehicles / mile) */
+		public final float seg_density;
+
+		/** Create a new meter state record */
+		public Record(int p, int qs, int lc, int dem, int pas,
+			float ql, float da, int ws, int mn, int rr, int mx,
+			float sd)
+		{
+			phase = p;
+			q_state = qs;
+			limit_ctrl = lc;
+			demand = dem;
+			passage = pas;
+			q_len = ql;
+			dem_adj = da;
+			wait_secs = ws;
+			min_rate = mn;
+			rel_rate = rr;
+			max_rate = mx;
+			seg_density = sd;
+		}
+
+		/** Decode a record from a buffer */
+		private Record(ByteBuffer b) {
+			phase = b.get();
+			q_state = b.get();
+			limit_ctrl = b.get();
+			demand = b.getShort();
+			passage = b.getShort();
+			q_len = b.getShort() / SCALE;
+			dem_adj = b.getShort() / SCALE;
+			wait_secs = b.getShort();
+			min_rate = b.getShort();
+			rel_rate = b.getShort();
+			max_rate = b.getShort();
+			seg_density = b.getShort() / SCALE;
+		}
+
+		/** Encode the record into a buffer */
+		private void encode(ByteBuffer b) {
+			int p = b.position();
+			b.put(PRESENT);
+			b.put((byte) phase);
+			b.put((byte) q_state);
+			b.put((byte) limit_ctrl);
+			b.putShort(toShort(demand));
+			b.putShort(toShort(passage));
+			b.putShort(toShort(q_len));
+			b.putShort(toShort(dem_adj));
+			b.putShort(toShort(wait_secs));
+			b.putShort(toShort(min_rate));
+			b.putShort(toShort(rel_rate));
+			b.putShort(toShort(max_rate));
+			b.putShort(toShort(seg_density));
+			while (b.position() < p + RECORD_LEN)
+				b.put((byte) 0);
+		}
+
+		/** Get a string representation of the record */
+		@Override
+		public String toString() {
+			return "phase=" + phase + " q_state=" + q_state +
+				" limit=" + limit_ctrl + " demand=" + demand +
+				" passage=" + passage + " q_len=" + q_len +
+				" dem_adj=" + dem_adj + " wait=" + wait_secs +
+				" rates=" + min_rate + "/" + rel_rate + "/" +
+				max_rate + " k=" + seg_density;
+		}
+	}
+
+	/** Get the record index of a time stamp */
+	static public int index(long stamp) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(stamp);
+		int sec = cal.get(Calendar.HOUR_OF_DAY) * 3600 +
+			cal.get(Calendar.MINUTE) * 60 +
+			cal.get(Calendar.SECOND);
+		return sec / PERIOD_SEC;
+	}
+
+	/** Read a range of records from a meter state log file.
+	 * @param f Meter state log file.
+	 * @param first Index of first record.
+	 * @param n Number of records.
+	 * @return Array of records (null for missing). */
+	static public Record[] read(File f, int first, int n)
+		throws IOException
+	{
+		Record[] recs = new Record[n];
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			long pos = (long) first * RECORD_LEN;
+			int len = (int) Math.max(0, Math.min((long) n *
+				RECORD_LEN, raf.length() - pos));
+			byte[] data = new byte[len];
+			raf.seek(pos);
+			raf.readFully(data);
+			ByteBuffer b = ByteBuffer.wrap(data);
+			for (int i = 0; i < len / RECORD_LEN; i++) {
+				b.position(i * RECORD_LEN);
+				if (b.get() == PRESENT)
+					recs[i] = new Record(b);
+			}
+		}
+		finally {
+			raf.close();
+		}
+		return recs;
+	}
+
+	/** A record waiting to be written */
+	static private class Pending {
+		private final String meter;
+		private final long stamp;
+		private final Record rec;
+		private Pending(String m, long s, Record r) {
+			meter = m;
+			stamp = s;
+			rec = r;
+		}
+	}
+
+	/** Sample archive factory */
+	private final SampleArchiveFactory factory;
+
+	/** Records waiting to be written */
+	private ArrayList<Pending> pending = new ArrayList<Pending>();
+
+	/** Create a new meter state log */
+	public MeterStateLog(SampleArchiveFactory f) {
+		factory = f;
+	}
+
+	/** Add a record to be written on the next flush.
+	 * @param m Meter name.
+	 * @param stamp Time stamp.
+	 * @param rec Meter state record. */
+	public synchronized void add(String m, long stamp, Record rec) {
+		pending.add(new Pending(m, stamp, rec));
+	}
+
+	/** Discard all records waiting to be written */
+	public synchronized void clear() {
+		pending.clear();
+	}
+
+	/** Take all records waiting to be written */
+	private synchronized ArrayList<Pending> takePending() {
+		ArrayList<Pending> p = pending;
+		pending = new ArrayList<Pending>();
+		return p;
+	}
+
+	/** Write all pending records to their log files */
+	public void flush() throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(RECORD_LEN);
+		for (Pending p: takePending()) {
+			b.clear();
+			p.rec.encode(b);
+			File f = factory.createFile(p.meter, EXT, p.stamp);
+			RandomAccessFile raf = new RandomAccessFile(f, "rw");
+			try {
+				raf.seek((long) index(p.stamp) * RECORD_LEN);
+				raf.write(b.array());
+			}
+			finally {
+				raf.close();
+			}
+		}
+	}
+}
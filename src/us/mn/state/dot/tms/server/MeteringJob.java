@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2014  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,6 +14,7 @@
  */
 package us.mn.state.dot.tms.server;
 
+import java.io.IOException;
 import java.util.Calendar;
 import java.util.Iterator;
 import us.mn.state.dot.sched.Job;
@@ -40,6 +41,13 @@ public class MeteringJob extends Job {
 	/** Job to be performed after data has been processed */
 	private final FlushXmlJob flush_job;
 
+	/** Job to write the meter state log */
+	private final Job state_log_job = new Job() {
+		public void perform() throws IOException {
+			KAdaptiveAlgorithm.flushStateLog();
+		}
+	};
+
 	/** Create a new metering job */
 	public MeteringJob(Scheduler f) {
 		super(Calendar.SECOND, 30, Calendar.SECOND, OFFSET_SECS);
@@ -63,24 +71,31 @@ public class MeteringJob extends Job {
 
 	/** Validate all metering algorithms */
 	private void validateMetering() {
-		KAdaptiveAlgorithm.processAllStates();
+		processAlgorithms();
 		Iterator<RampMeter> it = RampMeterHelper.iterator();
 		while(it.hasNext()) {
 			RampMeter rm = it.next();
 			if(rm instanceof RampMeterImpl) {
 				RampMeterImpl meter = (RampMeterImpl)rm;
-				meter.validateAlgorithm();
+				meter.updateQueueState();
+				meter.updateRatePlanned();
 			}
 		}
-		StratifiedAlgorithm.processAllStates();
-		it = RampMeterHelper.iterator();
+		flush.addJob(state_log_job);
+	}
+
+	/** Process one interval for all metering algorithms.  Planned
+	 * release rates are left on each meter. */
+	static void processAlgorithms() {
+		KAdaptiveAlgorithm.processAllStates();
+		Iterator<RampMeter> it = RampMeterHelper.iterator();
 		while(it.hasNext()) {
 			RampMeter rm = it.next();
 			if(rm instanceof RampMeterImpl) {
 				RampMeterImpl meter = (RampMeterImpl)rm;
-				meter.updateQueueState();
-				meter.updateRatePlanned();
+				meter.validateAlgorithm();
 			}
 		}
+		StratifiedAlgorithm.processAllStates();
 	}
 }
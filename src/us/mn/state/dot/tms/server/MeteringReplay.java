@@ -0,0 +1,196 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import us.mn.state.dot.tms.Detector;
+import us.mn.state.dot.tms.DetectorHelper;
+import us.mn.state.dot.tms.RampMeter;
+import us.mn.state.dot.tms.RampMeterHelper;
+
+/**
+ * Metering replay drives the ramp metering algorithms with archived traffic
+ * samples, using a virtual clock.  Each 30-second interval is processed as
+ * fast as possible, in the same order as the metering job, and the planned
+ * release rate of every meter is recorded.  This makes it possible to check
+ * algorithm changes against golden output, and to profile them.
+ *
+ * Replayed samples are stored in the detectors loaded by the server, and all
+ * meters are set operating for the replay, so it must never be run on a
+ * server which is operating ramp meters.  A replay refuses to run if any
+ * meter is already operating, and each meter is put back into its previous
+ * operating state afterwards.  Release rates are not sent to the meters.
+ *
+ * @author Douglas Lau
+ */
+public class MeteringReplay {
+
+	/** Get the time at the start of a day.
+	 * @param date Date (yyyymmdd).
+	 * @return Time at midnight (ms since epoch). */
+	static public long startOfDay(int date) {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(date / 10000, date / 100 % 100 - 1, date % 100);
+		return cal.getTimeInMillis();
+	}
+
+	/** Create a metering replay from a sample archive.
+	 * @param traf Traffic archive file (yyyymmdd.traffic).
+	 * @return Metering replay for the archived day. */
+	static public MeteringReplay load(File traf) throws IOException {
+		String name = traf.getName();
+		int i = name.indexOf('.');
+		try {
+			int date = Integer.parseInt(name.substring(0,
+				(i > 0) ? i : name.length()));
+			return new MeteringReplay(new TrafficReplay(traf),
+				startOfDay(date));
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("Invalid archive name: " + name);
+		}
+	}
+
+	/** Traffic samples to replay */
+	private final TrafficReplay traffic;
+
+	/** Time at start of replayed day (ms) */
+	private final long midnight;
+
+	/** Replayed detectors (with archived samples) */
+	private final HashMap<DetectorImpl, TrafficReplay.Samples> dets =
+		new HashMap<DetectorImpl, TrafficReplay.Samples>();
+
+	/** All ramp meters */
+	private final ArrayList<RampMeterImpl> meters =
+		new ArrayList<RampMeterImpl>();
+
+	/** Station manager */
+	private final StationManager station_manager = new StationManager();
+
+	/** Time to run the most recent replay (ms) */
+	private long elapsed = 0;
+
+	/** Create a new metering replay.
+	 * @param t Traffic samples.
+	 * @param m Time at start of day (ms). */
+	public MeteringReplay(TrafficReplay t, long m) {
+		traffic = t;
+		midnight = m;
+		for (String d: traffic.getDetectors()) {
+			Detector det = DetectorHelper.lookup(d);
+			if (det instanceof DetectorImpl) {
+				dets.put((DetectorImpl) det,
+					traffic.getSamples(d));
+			}
+		}
+		Iterator<RampMeter> it = RampMeterHelper.iterator();
+		while (it.hasNext()) {
+			RampMeter rm = it.next();
+			if (rm instanceof RampMeterImpl)
+				meters.add((RampMeterImpl) rm);
+		}
+	}
+
+	/** Get the number of replayed detectors */
+	public int getDetectorCount() {
+		return dets.size();
+	}
+
+	/** Get the time to run the most recent replay (ms) */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/** Run the replay for a whole day.
+	 * @return Meter rate log. */
+	public MeterRateLog run() {
+		return run(0, TrafficReplay.STEPS - 1);
+	}
+
+	/** Run the replay for a range of intervals.
+	 * @param first First interval.
+	 * @param last Last interval (inclusive).
+	 * @return Meter rate log.
+	 * @throws IllegalStateException if any meter is operating. */
+	public MeterRateLog run(int first, int last) {
+		HashMap<RampMeterImpl, Boolean> operating = saveOperating();
+		MeterRateLog log = new MeterRateLog();
+		long start = System.nanoTime();
+		// Drop stale algorithm states, since no meter is operating
+		MeteringJob.processAlgorithms();
+		try {
+			for (RampMeterImpl meter: meters)
+				meter.setOperating(true);
+			for (int step = first; step <= last; step++)
+				processInterval(step, log);
+		}
+		finally {
+			for (RampMeterImpl meter: meters)
+				meter.setOperating(operating.get(meter));
+			// Let algorithms drop their corridor states
+			MeteringJob.processAlgorithms();
+			MeterClock.clearVirtual();
+		}
+		elapsed = (System.nanoTime() - start) / 1000000;
+		return log;
+	}
+
+	/** Save the operating state of all meters.
+	 * @return Mapping of meters to operating state.
+	 * @throws IllegalStateException if any meter is operating. */
+	private HashMap<RampMeterImpl, Boolean> saveOperating() {
+		HashMap<RampMeterImpl, Boolean> operating =
+			new HashMap<RampMeterImpl, Boolean>();
+		for (RampMeterImpl meter: meters) {
+			if (meter.isOperating()) {
+				throw new IllegalStateException(
+					"Meter operating: " + meter.getName());
+			}
+			operating.put(meter, meter.isOperating());
+		}
+		return operating;
+	}
+
+	/** Process one interval */
+	private void processInterval(int step, MeterRateLog log) {
+		long stamp = midnight +
+			(step + 1) * TrafficReplay.PERIOD_SEC * 1000L;
+		MeterClock.setVirtual(stamp);
+		for (Map.Entry<DetectorImpl, TrafficReplay.Samples> e:
+		     dets.entrySet())
+		{
+			TrafficReplay.Samples s = e.getValue();
+			e.getKey().storeReplay(stamp, s.getVolume(step),
+				s.getScans(step), s.getSpeed(step));
+		}
+		station_manager.calculateData();
+		BaseObjectImpl.corridors.findBottlenecks();
+		MeteringJob.processAlgorithms();
+		for (RampMeterImpl meter: meters) {
+			log.record(meter.getName(), step,
+				meter.getRatePlanned());
+			meter.setRatePlanned(null);
+		}
+		KAdaptiveAlgorithm.clearStateLog();
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import us.mn.state.dot.sched.Job;
+
+/**
+ * Job to periodically write a snapshot of server metrics to a file.
+ *
+ * @author Douglas Lau
+ */
+public class MetricsJob extends Job {
+
+	/** Seconds to offset each dump from start of interval */
+	static private final int OFFSET_SECS = 2;
+
+	/** Metrics file */
+	private final File file;
+
+	/** Create a new metrics job.
+	 * @param f File to write metrics. */
+	public MetricsJob(File f) {
+		super(Calendar.MINUTE, 1, Calendar.SECOND, OFFSET_SECS);
+		file = f;
+	}
+
+	/** Perform the metrics job */
+	@Override
+	public void perform() throws IOException {
+		ServerMetrics.writeFile(file);
+	}
+}
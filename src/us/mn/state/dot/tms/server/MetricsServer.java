@@ -0,0 +1,101 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+
+/**
+ * An embedded HTTP server which responds to "/metrics" with a plain text
+ * snapshot of all server metrics.
+ *
+ * @author Douglas Lau
+ */
+public class MetricsServer {
+
+	/** Metrics path */
+	static public final String PATH = "/metrics";
+
+	/** Metrics server singleton (null if disabled) */
+	static private MetricsServer server;
+
+	/** Start the metrics server, if enabled by the "metrics.port"
+	 * property */
+	static public synchronized void start(Properties props)
+		throws IOException
+	{
+		String port = props.getProperty("metrics.port");
+		if (port != null && null == server) {
+			String host = props.getProperty("metrics.host",
+				"127.0.0.1");
+			server = new MetricsServer(new InetSocketAddress(host,
+				Integer.parseInt(port.trim())));
+		}
+	}
+
+	/** HTTP server */
+	private final HttpServer http;
+
+	/** Create and start a new metrics server */
+	protected MetricsServer(InetSocketAddress addr) throws IOException {
+		http = HttpServer.create(addr, 0);
+		http.createContext(PATH, new HttpHandler() {
+			public void handle(HttpExchange ex) throws IOException {
+				handleExchange(ex);
+			}
+		});
+		http.start();
+	}
+
+	/** Get the bound address */
+	public InetSocketAddress getAddress() {
+		return http.getAddress();
+	}
+
+	/** Stop the metrics server */
+	public void stop() {
+		http.stop(0);
+	}
+
+	/** Handle one HTTP exchange */
+	private void handleExchange(HttpExchange ex) throws IOException {
+		try {
+			if ("GET".equals(ex.getRequestMethod()))
+				sendSnapshot(ex);
+			else
+				ex.sendResponseHeaders(405, -1);
+		}
+		finally {
+			ex.close();
+		}
+	}
+
+	/** Send a snapshot of all metrics */
+	private void sendSnapshot(HttpExchange ex) throws IOException {
+		byte[] body = ServerMetrics.snapshot().getBytes("UTF-8");
+		ex.getResponseHeaders().add("Content-Type",
+			"text/plain; charset=utf-8");
+		ex.getResponseHeaders().add("Cache-Control", "no-cache");
+		ex.sendResponseHeaders(200, body.length);
+		OutputStream os = ex.getResponseBody();
+		os.write(body);
+		os.flush();
+	}
+}
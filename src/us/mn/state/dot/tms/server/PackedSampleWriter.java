@@ -0,0 +1,292 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.TreeMap;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * A writer for packed periodic sample data.  Several sample types are
+ * written together as one fixed-width record per sample period, so only one
+ * file is needed per sensor per day for all of them.  For example, extended
+ * detector metrics with a 30-second period are written to a ".x30" file,
+ * with 2880 records of 5 bytes (headway, gap and 85th percentile speed).
+ *
+ * Each field has the same layout as in the sample file for its type, and
+ * missing values are MISSING_DATA.  If the archive factory has day files,
+ * the records are written in place to a region of the SampleDayFile instead.
+ *
+ * @author Douglas Lau
+ */
+public class PackedSampleWriter {
+
+	/** File extension base for extended detector metrics */
+	static public final String DET_METRICS_EXT = "x";
+
+	/** Sample types of extended detector metrics (in record order) */
+	static public final PeriodicSampleType[] DET_METRICS = {
+		PeriodicSampleType.HEADWAY,
+		PeriodicSampleType.GAP,
+		PeriodicSampleType.SPEED_85,
+	};
+
+	/** Minimum sample period (seconds) */
+	static private final int MIN_PERIOD = 5;
+
+	/** Get the record index of a time stamp.
+	 * @param start Time stamp at start of sample period.
+	 * @param period Sample period (seconds). */
+	static private int index(long start, int period) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(start);
+		int sec = cal.get(Calendar.HOUR_OF_DAY) * 3600 +
+			cal.get(Calendar.MINUTE) * 60 +
+			cal.get(Calendar.SECOND);
+		return sec / period;
+	}
+
+	/** Get the number of records per day */
+	static private int recordsPerDay(int period) {
+		return 24 * 3600 / period;
+	}
+
+	/** Sample archive factory */
+	private final SampleArchiveFactory factory;
+
+	/** File extension base */
+	private final String ext_base;
+
+	/** Sample types of record fields */
+	private final PeriodicSampleType[] types;
+
+	/** Length of one record (bytes) */
+	public final int record_len;
+
+	/** Buffer for a run of consecutive records */
+	private final ByteBuffer run;
+
+	/** Sample file extension of buffered run */
+	private transient String run_ext;
+
+	/** File position of buffered run */
+	private transient int run_pos;
+
+	/** Current file */
+	private transient File file;
+
+	/** Current file (not day files) */
+	private transient RandomAccessFile raf;
+
+	/** Current sample day file */
+	private transient SampleDayFile day_file;
+
+	/** Create a new packed sample writer.
+	 * @param f Sample archive factory.
+	 * @param e File extension base (period is appended).
+	 * @param t Sample types of record fields. */
+	public PackedSampleWriter(SampleArchiveFactory f, String e,
+		PeriodicSampleType... t)
+	{
+		factory = f;
+		ext_base = e;
+		types = t;
+		int len = 0;
+		for (PeriodicSampleType st: t)
+			len += st.sample_bytes;
+		record_len = len;
+		run = ByteBuffer.allocate(recordsPerDay(MIN_PERIOD) * len);
+	}
+
+	/** Get the byte offset of a field within a record */
+	private int fieldOffset(int field) {
+		int off = 0;
+		for (int i = 0; i < field; i++)
+			off += types[i].sample_bytes;
+		return off;
+	}
+
+	/** Decode all values of one field from packed data.
+	 * @param data Packed records for one day.
+	 * @param t Sample type of field.
+	 * @return Array of values, one per record. */
+	public int[] decode(byte[] data, PeriodicSampleType t) {
+		int field = Arrays.asList(types).indexOf(t);
+		if (field < 0)
+			throw new IllegalArgumentException("Bad type: " + t);
+		int off = fieldOffset(field);
+		ByteBuffer b = ByteBuffer.wrap(data);
+		int[] vals = new int[data.length / record_len];
+		for (int i = 0; i < vals.length; i++) {
+			int p = i * record_len + off;
+			vals[i] = (t.sample_bytes == 1) ? b.get(p) :
+				b.getShort(p);
+		}
+		return vals;
+	}
+
+	/** One packed record */
+	static private class Record {
+		private final long start;
+		private final int period;
+		private final int[] vals;
+		private Record(PeriodicSample ps, int n_fields) {
+			start = ps.start();
+			period = ps.period;
+			vals = new int[n_fields];
+			Arrays.fill(vals, MISSING_DATA);
+		}
+	}
+
+	/** Flush samples from caches to packed records.  Caches must be in
+	 * the same order as the record fields.
+	 * @param sensor_id Sensor identifier.
+	 * @param caches Caches for each field. */
+	public void flush(String sensor_id, PeriodicSampleCache... caches)
+		throws IOException
+	{
+		if (caches.length != types.length)
+			throw new IllegalArgumentException("Bad cache count");
+		try {
+			for (Record rec: gather(caches).values())
+				writeRecord(sensor_id, rec);
+		}
+		finally {
+			closeFile();
+		}
+	}
+
+	/** Gather cached samples into records, in time order.  Samples with
+	 * a different period than the first sample starting at the same time
+	 * are skipped. */
+	private TreeMap<Long, Record> gather(PeriodicSampleCache[] caches) {
+		TreeMap<Long, Record> recs = new TreeMap<Long, Record>();
+		for (int f = 0; f < caches.length; f++) {
+			if (caches[f].sample_type != types[f])
+				throw new IllegalArgumentException("Bad cache");
+			Iterator<PeriodicSample> it = caches[f].iterator();
+			while (it.hasNext()) {
+				PeriodicSample ps = it.next();
+				Record rec = recs.get(ps.start());
+				if (null == rec) {
+					rec = new Record(ps, types.length);
+					recs.put(rec.start, rec);
+				}
+				if (rec.period == ps.period)
+					rec.vals[f] = ps.value;
+			}
+		}
+		return recs;
+	}
+
+	/** Write one record.  Consecutive records are buffered into a run,
+	 * which is written with one seek. */
+	private void writeRecord(String sensor_id, Record rec)
+		throws IOException
+	{
+		String ext = ext_base + rec.period;
+		int n_bytes = recordsPerDay(rec.period) * record_len;
+		int pos = index(rec.start, rec.period) * record_len;
+		File f = factory.hasDayFiles()
+		       ? factory.createFile(sensor_id, SampleDayFile.EXT,
+		                            rec.start)
+		       : factory.createFile(sensor_id, ext, rec.start);
+		if (!f.equals(file)) {
+			closeFile();
+			openFile(f, n_bytes);
+		}
+		if (!ext.equals(run_ext) || pos != run_pos + run.position()) {
+			writeRun();
+			if (day_file != null)
+				day_file.allocate(ext, n_bytes);
+			run_ext = ext;
+			run_pos = pos;
+		}
+		for (int i = 0; i < types.length; i++)
+			types[i].putValue(run, rec.vals[i]);
+	}
+
+	/** Write the buffered run to the current file */
+	private void writeRun() throws IOException {
+		if (run_ext != null && run.position() > 0) {
+			run.flip();
+			if (day_file != null)
+				day_file.write(run_ext, run_pos, run);
+			else {
+				raf.seek(run_pos);
+				raf.write(run.array(), 0, run.limit());
+			}
+		}
+		run.clear();
+		run_ext = null;
+	}
+
+	/** Open a file for writing packed records.
+	 * @param f File to open.
+	 * @param n_bytes Size of one full day of records. */
+	private void openFile(File f, int n_bytes)
+		throws IOException
+	{
+		if (factory.hasDayFiles())
+			day_file = new SampleDayFile(f, true);
+		else
+			raf = padFile(f, n_bytes);
+		file = f;
+	}
+
+	/** Open a packed file, padding it to one full day of records */
+	private RandomAccessFile padFile(File f, int n_bytes)
+		throws IOException
+	{
+		RandomAccessFile r = new RandomAccessFile(f, "rw");
+		long len = r.length();
+		if (len < n_bytes) {
+			byte[] fill = new byte[n_bytes - (int) len];
+			Arrays.fill(fill, (byte) MISSING_DATA);
+			r.seek(len);
+			r.write(fill);
+		}
+		return r;
+	}
+
+	/** Close the current file (after writing buffered run) */
+	private void closeFile() throws IOException {
+		try {
+			writeRun();
+		}
+		finally {
+			closeChannels();
+		}
+	}
+
+	/** Close the current file channels */
+	private void closeChannels() throws IOException {
+		RandomAccessFile r = raf;
+		SampleDayFile df = day_file;
+		raf = null;
+		day_file = null;
+		file = null;
+		if (r != null)
+			r.close();
+		if (df != null)
+			df.close();
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012  Minnesota Department of Transportation
+ * Copyright (C) 2012-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -55,7 +55,20 @@ public enum PeriodicSampleType {
 	PRECIP_TYPE("pt", 1, Byte.MAX_VALUE, Aggregation.NONE),
 
 	/** TVT type - count of routes */
-	TVT_TYPE("tvt", 1, Byte.MAX_VALUE, Aggregation.NONE);
+	TVT_TYPE("tvt", 1, Byte.MAX_VALUE, Aggregation.NONE),
+
+	/* The following types are only archived in packed detector metric
+	 * records (see PackedSampleWriter), so their extensions are never
+	 * used for sample files. */
+
+	/** Headway (tenths of second between vehicle fronts) */
+	HEADWAY("h", 2, Short.MAX_VALUE, Aggregation.AVERAGE),
+
+	/** Gap (tenths of second between vehicles) */
+	GAP("g", 2, Short.MAX_VALUE, Aggregation.AVERAGE),
+
+	/** 85th percentile speed (mph) */
+	SPEED_85("spct", 1, Byte.MAX_VALUE, Aggregation.AVERAGE);
 
 	/** Maximum bytes to store any sample type */
 	static public final int MAX_BYTES = 2;
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2012  Minnesota Department of Transportation
+ * Copyright (C) 2010-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -34,6 +34,12 @@ import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
  * Each file contains one day of sample data.  For example, a volume file with
  * a 30-second period would have 2880 bytes.
  *
+ * If the archive factory has day files, all sample types for a sensor are
+ * written in place to one SampleDayFile per day instead.
+ *
+ * Extended detector metrics (headway, gap, etc.) are written together as
+ * packed records by a PackedSampleWriter.
+ *
  * @author Douglas Lau
  */
 public class PeriodicSampleWriter {
@@ -62,9 +68,33 @@ public class PeriodicSampleWriter {
 	/** Current file channel */
 	private transient FileChannel channel;
 
+	/** Current sample day file */
+	private transient SampleDayFile day_file;
+
+	/** Sample file extension of buffered run (day files) */
+	private transient String run_ext;
+
+	/** Region position of buffered run (day files) */
+	private transient int run_pos;
+
+	/** Packed writer for extended detector metrics */
+	private final PackedSampleWriter metrics;
+
 	/** Create a new periodic sample writer */
 	public PeriodicSampleWriter(SampleArchiveFactory f) {
 		factory = f;
+		metrics = new PackedSampleWriter(f,
+			PackedSampleWriter.DET_METRICS_EXT,
+			PackedSampleWriter.DET_METRICS);
+	}
+
+	/** Flush extended detector metric caches to packed records.
+	 * @param sensor_id Sensor identifier.
+	 * @param caches Caches in DET_METRICS order. */
+	public void flushMetrics(String sensor_id,
+		PeriodicSampleCache... caches) throws IOException
+	{
+		metrics.flush(sensor_id, caches);
 	}
 
 	/** Flush samples from a cache to files */
@@ -75,7 +105,73 @@ public class PeriodicSampleWriter {
 		file = null;
 		channel = null;
 		buffer.clear();
-		flush(cache.iterator(), sensor_id, cache.sample_type);
+		if(factory.hasDayFiles())
+			flushDay(cache.iterator(), sensor_id, cache.sample_type);
+		else
+			flush(cache.iterator(), sensor_id, cache.sample_type);
+	}
+
+	/** Flush an iterator of samples to sample day files.  Runs of
+	 * consecutive samples are buffered and written in place. */
+	private void flushDay(Iterator<PeriodicSample> it, String sensor_id,
+		PeriodicSampleType s_type) throws IOException
+	{
+		day_file = null;
+		run_ext = null;
+		try {
+			while(it.hasNext()) {
+				PeriodicSample ps = it.next();
+				period = new Interval(ps.period);
+				File f = factory.createFile(sensor_id,
+					SampleDayFile.EXT, ps.start());
+				if(null == day_file ||
+				   !f.equals(day_file.getFile()))
+				{
+					writeRun();
+					closeDayFile();
+					day_file = new SampleDayFile(f, true);
+				}
+				putRunSample(ps, s_type);
+			}
+			writeRun();
+		}
+		finally {
+			closeDayFile();
+		}
+	}
+
+	/** Put one sample into the run buffer, starting a new run if it is
+	 * not consecutive with the current run. */
+	private void putRunSample(PeriodicSample ps, PeriodicSampleType s_type)
+		throws IOException
+	{
+		String ext = s_type.extension + ps.period;
+		int pos = samplePosition(ps, s_type.sample_bytes);
+		if(!ext.equals(run_ext) || pos != run_pos + buffer.position()) {
+			writeRun();
+			day_file.allocate(ext, bufferBytes(s_type.sample_bytes));
+			run_ext = ext;
+			run_pos = pos;
+		}
+		s_type.putValue(buffer, ps.value);
+	}
+
+	/** Write the buffered run to the current day file */
+	private void writeRun() throws IOException {
+		if(run_ext != null && buffer.position() > 0) {
+			buffer.flip();
+			day_file.write(run_ext, run_pos, buffer);
+		}
+		buffer.clear();
+		run_ext = null;
+	}
+
+	/** Close the current day file */
+	private void closeDayFile() throws IOException {
+		SampleDayFile df = day_file;
+		day_file = null;
+		if(df != null)
+			df.close();
 	}
 
 	/** Flush an iterator of samples to files */
@@ -0,0 +1,227 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * A poll pacer spreads periodic polling of devices over time, instead of
+ * polling every device at the same instant.  Each device has a stable phase
+ * offset within a window, derived from a hash of its name.
+ *
+ * Poll intervals adapt between a minimum and maximum.  When the state of a
+ * device changed since its previous poll, the interval is halved; otherwise
+ * it is doubled.  The maximum interval should be the minimum times a power
+ * of two.  Polls are deferred while a device's comm link has too many
+ * queued operations.
+ *
+ * The pacer does not keep time itself -- tick must be called periodically
+ * (every second) with the current time.
+ *
+ * @author Douglas Lau
+ */
+abstract public class PollPacer<T> {
+
+	/** Time to defer a poll when its comm link is busy (ms) */
+	static private final long DEFER_MS = 1000;
+
+	/** Get a stable phase offset for a device name.
+	 * @param name Device name.
+	 * @param window Phase window (ms).
+	 * @return Offset from 0 to window (exclusive). */
+	static public long phaseOffset(String name, long window) {
+		// Fibonacci hashing spreads similar names apart
+		int h = name.hashCode() * 0x9E3779B1;
+		return ((h & 0xFFFFFFFFL) * window) >>> 32;
+	}
+
+	/** Poll slot for one device */
+	private final class Slot {
+		private final String name;
+		private T device;
+		private int gen;
+		private long base;
+		private long due;
+		private long interval = max_interval;
+		private boolean polled = false;
+		private int hash;
+		private Slot(T d, String n, long b) {
+			device = d;
+			name = n;
+			gen = generation;
+			base = b;
+			due = b;
+		}
+	}
+
+	/** Comparator for due time of slots */
+	private final Comparator<Slot> due_comparator = new Comparator<Slot>() {
+		public int compare(Slot a, Slot b) {
+			return Long.compare(a.due, b.due);
+		}
+	};
+
+	/** Minimum poll interval (ms) */
+	private final long min_interval;
+
+	/** Maximum poll interval (ms) */
+	private final long max_interval;
+
+	/** Offset from start of maximum interval (ms) */
+	private final long offset;
+
+	/** Window for phase offsets (ms) */
+	private final long window;
+
+	/** Maximum queued operations per comm link */
+	private final int max_link;
+
+	/** Slots by device name */
+	private final HashMap<String, Slot> slots = new HashMap<String, Slot>();
+
+	/** Slots in order of due time */
+	private final PriorityQueue<Slot> queue =
+		new PriorityQueue<Slot>(64, due_comparator);
+
+	/** Device set generation */
+	private int generation = 0;
+
+	/** Time of next device set sync */
+	private long next_sync = Long.MIN_VALUE;
+
+	/** Total number of polls */
+	private long n_polls = 0;
+
+	/** Total number of deferred polls */
+	private long n_deferred = 0;
+
+	/** Create a new poll pacer.
+	 * @param min Minimum poll interval (ms).
+	 * @param max Maximum poll interval (ms).
+	 * @param off Offset from start of maximum interval (ms).
+	 * @param win Window for phase offsets (ms).
+	 * @param ml Maximum queued operations per comm link. */
+	protected PollPacer(long min, long max, long off, long win, int ml) {
+		min_interval = min;
+		max_interval = max;
+		offset = off;
+		window = win;
+		max_link = ml;
+	}
+
+	/** Get an iterator of all devices to poll */
+	abstract protected Iterator<T> iterator();
+
+	/** Get the name of a device */
+	abstract protected String getName(T d);
+
+	/** Get a hash of the state of a device, to detect changes */
+	abstract protected int getStateHash(T d);
+
+	/** Get the number of operations queued on a device's comm link */
+	abstract protected int getLinkDepth(T d);
+
+	/** Poll a device */
+	abstract protected void poll(T d);
+
+	/** Process polls which are due.
+	 * @param now Current time (ms). */
+	public void tick(long now) {
+		if (now >= next_sync) {
+			sync(now);
+			next_sync = now + min_interval;
+		}
+		ArrayList<Slot> deferred = new ArrayList<Slot>();
+		while (!queue.isEmpty() && queue.peek().due <= now) {
+			Slot s = queue.poll();
+			if (s.gen != generation) {
+				// device was removed
+				slots.remove(s.name);
+				continue;
+			}
+			if (getLinkDepth(s.device) >= max_link) {
+				s.due = now + DEFER_MS;
+				deferred.add(s);
+				n_deferred++;
+				continue;
+			}
+			pollSlot(s);
+			while (s.base <= now)
+				s.base += s.interval;
+			s.due = s.base;
+			queue.add(s);
+		}
+		queue.addAll(deferred);
+	}
+
+	/** Sync slots with the current set of devices */
+	private void sync(long now) {
+		generation++;
+		Iterator<T> it = iterator();
+		while (it.hasNext()) {
+			T d = it.next();
+			String n = getName(d);
+			Slot s = slots.get(n);
+			if (s != null) {
+				s.device = d;
+				s.gen = generation;
+			} else {
+				s = new Slot(d, n, firstDue(n, now));
+				slots.put(n, s);
+				queue.add(s);
+			}
+		}
+	}
+
+	/** Get the first due time for a device */
+	private long firstDue(String n, long now) {
+		long phase = offset + phaseOffset(n, window);
+		long t = now - (now % max_interval) + (phase % max_interval);
+		return (t > now) ? t : t + max_interval;
+	}
+
+	/** Poll one slot, adapting its interval */
+	private void pollSlot(Slot s) {
+		int h = getStateHash(s.device);
+		if (s.polled) {
+			s.interval = (h != s.hash)
+			           ? Math.max(min_interval, s.interval / 2)
+			           : Math.min(max_interval, s.interval * 2);
+		}
+		s.hash = h;
+		s.polled = true;
+		n_polls++;
+		poll(s.device);
+	}
+
+	/** Get the number of devices being paced */
+	public int size() {
+		return slots.size();
+	}
+
+	/** Get the total number of polls */
+	public long getPolls() {
+		return n_polls;
+	}
+
+	/** Get the total number of deferred polls */
+	public long getDeferred() {
+		return n_deferred;
+	}
+}
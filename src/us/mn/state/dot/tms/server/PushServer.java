@@ -0,0 +1,406 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embedded HTTP server which pushes XML element changes to subscribers.
+ * Events are streamed from the "/events" path, either as server-sent events
+ * (default) or newline-delimited JSON ("?format=ndjson").  Topics can be
+ * selected with "?topics=incident,sign_message".  On connection, the latest
+ * element for each object is sent, followed by changes as they happen.
+ *
+ * Each subscriber has a bounded queue; a subscriber which falls behind
+ * until its queue is full is disconnected, and must reconnect to resync.
+ *
+ * @author Douglas Lau
+ */
+public class PushServer {
+
+	/** Event stream path */
+	static public final String PATH = "/events";
+
+	/** Default queue capacity (events per subscriber) */
+	static private final int QUEUE_CAPACITY = 256;
+
+	/** Default maximum number of subscribers */
+	static private final int MAX_SUBSCRIBERS = 32;
+
+	/** Keep-alive period (seconds) */
+	static private final int KEEPALIVE_SEC = 15;
+
+	/** Push server singleton (null if disabled) */
+	static private PushServer server;
+
+	/** Start the push server, if enabled by the "push.port" property */
+	static public synchronized void start(Properties props)
+		throws IOException
+	{
+		String port = props.getProperty("push.port");
+		if (port != null && null == server) {
+			String host = props.getProperty("push.host",
+				"127.0.0.1");
+			server = new PushServer(new InetSocketAddress(host,
+				Integer.parseInt(port.trim())),
+				intProperty(props, "push.queue", QUEUE_CAPACITY),
+				intProperty(props, "push.max.subscribers",
+				MAX_SUBSCRIBERS));
+		}
+	}
+
+	/** Get an integer property */
+	static private int intProperty(Properties props, String p, int d) {
+		String v = props.getProperty(p);
+		return (v != null) ? Integer.parseInt(v.trim()) : d;
+	}
+
+	/** Publish a change to the push server (if enabled).
+	 * @param topic Event topic.
+	 * @param name Object name.
+	 * @param xml XML element, or null if object was removed. */
+	static public void publish(String topic, String name, String xml) {
+		PushServer ps = server;
+		if (ps != null)
+			ps.publishEvent(topic, name, xml);
+	}
+
+	/** Escape a string for JSON */
+	static private String escapeJson(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	/** A change event */
+	static protected class PushEvent {
+		private final long seq;
+		private final String topic;
+		private final String name;
+		private final String xml;
+		private PushEvent(long sq, String t, String n, String x) {
+			seq = sq;
+			topic = t;
+			name = n;
+			xml = x;
+		}
+
+		/** Format as a server-sent event */
+		private String formatSse() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("id: ").append(seq).append('\n');
+			if (xml != null) {
+				sb.append("event: ").append(topic).append('\n');
+				for (String line: xml.trim().split("\n")) {
+					sb.append("data: ").append(line.trim())
+					  .append('\n');
+				}
+			} else {
+				sb.append("event: ").append(topic)
+				  .append(".removed\n");
+				sb.append("data: ").append(name).append('\n');
+			}
+			sb.append('\n');
+			return sb.toString();
+		}
+
+		/** Format as a JSON line */
+		private String formatJson() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"seq\":").append(seq);
+			sb.append(",\"topic\":").append(escapeJson(topic));
+			sb.append(",\"name\":").append(escapeJson(name));
+			if (xml != null) {
+				sb.append(",\"xml\":").append(escapeJson(
+					xml.trim()));
+			} else
+				sb.append(",\"removed\":true");
+			sb.append("}\n");
+			return sb.toString();
+		}
+	}
+
+	/** Event which tells a subscriber to disconnect */
+	static private final PushEvent DISCONNECT =
+		new PushEvent(0, "", "", null);
+
+	/** A subscriber to events */
+	private class Subscriber {
+		private final Set<String> topics;
+		private final ArrayBlockingQueue<PushEvent> queue;
+		private volatile boolean dropped = false;
+		private Subscriber(Set<String> t) {
+			topics = t;
+			queue = new ArrayBlockingQueue<PushEvent>(capacity);
+		}
+
+		/** Check if subscribed to a topic */
+		private boolean isSubscribed(String t) {
+			return topics.isEmpty() || topics.contains(t);
+		}
+
+		/** Offer an event, dropping the subscriber if full */
+		private void offer(PushEvent e) {
+			if (dropped || !isSubscribed(e.topic))
+				return;
+			if (!queue.offer(e)) {
+				dropped = true;
+				n_dropped.incrementAndGet();
+				queue.clear();
+				queue.offer(DISCONNECT);
+			}
+		}
+	}
+
+	/** HTTP server */
+	private final HttpServer http;
+
+	/** Thread pool for subscriber connections */
+	private final ExecutorService executor;
+
+	/** Subscriber queue capacity */
+	private final int capacity;
+
+	/** Maximum number of subscribers */
+	private final int max_subscribers;
+
+	/** Current subscribers */
+	private final CopyOnWriteArrayList<Subscriber> subscribers =
+		new CopyOnWriteArrayList<Subscriber>();
+
+	/** Latest XML element for each topic / object name */
+	private final ConcurrentHashMap<String, Map<String, String>> latest =
+		new ConcurrentHashMap<String, Map<String, String>>();
+
+	/** Event sequence number */
+	private final AtomicLong seq = new AtomicLong();
+
+	/** Count of subscribers dropped for falling behind */
+	private final AtomicLong n_dropped = new AtomicLong();
+
+	/** Get the count of subscribers dropped for falling behind */
+	public long getDropped() {
+		return n_dropped.get();
+	}
+
+	/** Get the number of current subscribers */
+	public int getSubscribers() {
+		return subscribers.size();
+	}
+
+	/** Create and start a new push server */
+	protected PushServer(InetSocketAddress addr, int cap, int max_sub)
+		throws IOException
+	{
+		capacity = cap;
+		max_subscribers = max_sub;
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "push");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		http = HttpServer.create(addr, 0);
+		http.createContext(PATH, new HttpHandler() {
+			public void handle(HttpExchange ex) throws IOException {
+				handleExchange(ex);
+			}
+		});
+		http.setExecutor(executor);
+		http.start();
+	}
+
+	/** Get the bound address */
+	public InetSocketAddress getAddress() {
+		return http.getAddress();
+	}
+
+	/** Stop the push server */
+	public void stop() {
+		for (Subscriber s: subscribers)
+			s.queue.offer(DISCONNECT);
+		http.stop(0);
+		executor.shutdownNow();
+	}
+
+	/** Publish an event to all subscribers */
+	protected void publishEvent(String topic, String name, String xml) {
+		Map<String, String> m = latest.get(topic);
+		if (null == m) {
+			latest.putIfAbsent(topic,
+				new ConcurrentHashMap<String, String>());
+			m = latest.get(topic);
+		}
+		if (xml != null)
+			m.put(name, xml);
+		else
+			m.remove(name);
+		PushEvent e = new PushEvent(seq.incrementAndGet(), topic, name,
+			xml);
+		for (Subscriber s: subscribers)
+			s.offer(e);
+	}
+
+	/** Handle one HTTP exchange */
+	private void handleExchange(HttpExchange ex) throws IOException {
+		try {
+			if (!"GET".equals(ex.getRequestMethod()))
+				ex.sendResponseHeaders(405, -1);
+			else if (subscribers.size() >= max_subscribers)
+				ex.sendResponseHeaders(503, -1);
+			else
+				streamEvents(ex);
+		}
+		finally {
+			ex.close();
+		}
+	}
+
+	/** Stream events to a subscriber */
+	private void streamEvents(HttpExchange ex) throws IOException {
+		String query = ex.getRequestURI().getQuery();
+		boolean json = "ndjson".equals(getParam(query, "format"));
+		Subscriber s = new Subscriber(parseTopics(getParam(query,
+			"topics")));
+		ex.getResponseHeaders().add("Content-Type", json
+			? "application/x-ndjson; charset=utf-8"
+			: "text/event-stream; charset=utf-8");
+		ex.getResponseHeaders().add("Cache-Control", "no-cache");
+		ex.sendResponseHeaders(200, 0);
+		OutputStream os = ex.getResponseBody();
+		subscribers.add(s);
+		try {
+			writeSnapshot(os, s, json);
+			while (true) {
+				PushEvent e = s.queue.poll(KEEPALIVE_SEC,
+					TimeUnit.SECONDS);
+				if (e == DISCONNECT)
+					break;
+				else if (e != null)
+					writeEvent(os, e, json);
+				else
+					os.write((json ? "\n" : ":\n\n")
+						.getBytes("UTF-8"));
+				if (s.queue.isEmpty())
+					os.flush();
+			}
+		}
+		catch (InterruptedException e) {
+			// server stopped
+		}
+		catch (IOException e) {
+			// subscriber disconnected
+		}
+		finally {
+			subscribers.remove(s);
+		}
+	}
+
+	/** Write the latest element for each object */
+	private void writeSnapshot(OutputStream os, Subscriber s, boolean json)
+		throws IOException
+	{
+		for (Map.Entry<String, Map<String, String>> t:
+		     latest.entrySet())
+		{
+			String topic = t.getKey();
+			if (!s.isSubscribed(topic))
+				continue;
+			for (Map.Entry<String, String> e:
+			     t.getValue().entrySet())
+			{
+				writeEvent(os, new PushEvent(seq.get(), topic,
+					e.getKey(), e.getValue()), json);
+			}
+		}
+		os.flush();
+	}
+
+	/** Write one event */
+	private void writeEvent(OutputStream os, PushEvent e, boolean json)
+		throws IOException
+	{
+		String ev = json ? e.formatJson() : e.formatSse();
+		os.write(ev.getBytes("UTF-8"));
+	}
+
+	/** Get a parameter from a query string */
+	static private String getParam(String query, String p) {
+		if (query != null) {
+			for (String kv: query.split("&")) {
+				int i = kv.indexOf('=');
+				if (i > 0 && p.equals(kv.substring(0, i)))
+					return kv.substring(i + 1);
+			}
+		}
+		return null;
+	}
+
+	/** Parse a comma-separated list of topics */
+	static private Set<String> parseTopics(String t) {
+		HashSet<String> topics = new HashSet<String>();
+		if (t != null) {
+			for (String s: t.split(",")) {
+				if (s.trim().length() > 0)
+					topics.add(s.trim());
+			}
+		}
+		return topics;
+	}
+}
@@ -24,7 +24,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import us.mn.state.dot.sched.DebugLog;
-import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.tms.ActionPlan;
@@ -96,7 +95,7 @@ public class RampMeterImpl extends DeviceImpl implements RampMeter {
 
 	/** Get the current AM/PM period */
 	static protected int currentPeriod() {
-		return TimeSteward.getCalendarInstance().get(Calendar.AM_PM);
+		return MeterClock.getCalendarInstance().get(Calendar.AM_PM);
 	}
 
 	/** Load all the ramp meters */
@@ -672,6 +671,11 @@ public class RampMeterImpl extends DeviceImpl implements RampMeter {
 			ratePlanned = r;
 	}
 
+	/** Get the planned next release rate */
+	Integer getRatePlanned() {
+		return ratePlanned;
+	}
+
 	/** Update the planned rate */
 	public void updateRatePlanned() {
 		if (!isLocked())
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2005-2012  Minnesota Department of Transportation
+ * Copyright (C) 2005-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,13 +14,17 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
-import java.util.LinkedList;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import us.mn.state.dot.sched.DebugLog;
@@ -28,7 +32,10 @@ import us.mn.state.dot.tms.ChangeVetoException;
 import us.mn.state.dot.tms.TMSException;
 
 /**
- * Simple SQL database abstraction stuff
+ * Simple SQL database abstraction stuff.  Statements are executed on a
+ * small pool of connections, so threads do not wait on each other.  Values
+ * for storable records are passed as bind parameters to prepared
+ * statements, which are cached by SQL template.
  *
  * @author Douglas Lau
  */
@@ -63,30 +70,59 @@ public class SQLConnection {
 			throw new ChangeVetoException("Invalid SQL value: " +v);
 	}
 
-	/** Escape a string constant value for SQL */
-	static private String escapeValue(Object value) {   
-		return value.toString().replace("'", "''").replace("\\","\\\\");
+	/** Default number of pooled connections */
+	static public final int DEFAULT_POOL_SIZE = 4;
+
+	/** Maximum prepared statements cached per connection */
+	static private final int STATEMENT_CACHE_SIZE = 64;
+
+	/** Bind parameters to a prepared statement.  Values are bound as
+	 * strings, which the server converts like quoted constants. */
+	static private void bind(PreparedStatement ps, Object[] params)
+		throws SQLException
+	{
+		for (int i = 0; i < params.length; i++) {
+			Object v = params[i];
+			if (v != null)
+				ps.setString(i + 1, v.toString());
+			else
+				ps.setNull(i + 1, Types.VARCHAR);
+		}
 	}
 
-	/** Location of database server */
-	protected final String location;
+	/** Query latency histogram */
+	static private final LatencyHistogram QUERY_LATENCY =
+		ServerMetrics.histogram("sql.query");
 
-	/** User to log into database server */
-	protected final String user;
+	/** Update latency histogram */
+	static private final LatencyHistogram UPDATE_LATENCY =
+		ServerMetrics.histogram("sql.update");
 
-	/** Password to log into database server */
-	protected final String password;
+	/** Batch latency histogram */
+	static private final LatencyHistogram BATCH_LATENCY =
+		ServerMetrics.histogram("sql.batch");
 
-	/** Connection to the SQL database */
-	protected Connection connection = null;
+	/** Count of SQL errors */
+	static private final AtomicLong ERRORS =
+		ServerMetrics.counter("sql.errors");
 
-	/** Available SQL statements */
-	protected final LinkedList<Statement> statements =
-		new LinkedList<Statement>();
+	/** Pool of database connections */
+	private final SQLConnectionPool pool;
 
 	/** Create a new SQL connection */
 	public SQLConnection(String url, String usr, String pswd)
 		throws TMSException
+	{
+		this(url, usr, pswd, DEFAULT_POOL_SIZE);
+	}
+
+	/** Create a new SQL connection.
+	 * @param url Database URL.
+	 * @param usr Database user.
+	 * @param pswd Database password.
+	 * @param n_conn Number of pooled connections. */
+	public SQLConnection(String url, String usr, String pswd, int n_conn)
+		throws TMSException
 	{
 		try {
 			Class.forName("org.postgresql.Driver");
@@ -94,101 +130,152 @@ public class SQLConnection {
 		catch(ClassNotFoundException e) {
 			throw new TMSException(e);
 		}
-		location = url;
-		user = usr;
-		password = pswd;
+		Properties info = new Properties();
+		if(usr != null)
+			info.setProperty("user", usr);
+		if(pswd != null)
+			info.setProperty("password", pswd);
+		// Let the server infer types of string parameters
+		info.setProperty("stringtype", "unspecified");
+		pool = new SQLConnectionPool(url, info, n_conn,
+			STATEMENT_CACHE_SIZE);
 	}
 
-	/** Close the current database connection */
-	protected void close() throws SQLException {
-		statements.clear();
-		if(connection != null) {
-			try {
-				connection.close();
-			}
-			finally {
-				connection = null;
-			}
-		}
-	}
-
-	/** Open a new database connection */
-	protected void open() throws SQLException {
-		connection = DriverManager.getConnection(location, user,
-			password);
-		connection.setAutoCommit(true);
+	/** Close all idle database connections */
+	protected void close() {
+		pool.close();
 	}
 
-	/** Create a database statement */
-	protected Statement _createStatement() throws SQLException {
-		if(connection == null)
-			open();
-		return connection.createStatement();
-	}
-
-	/** Create a database statement */
-	protected Statement createStatement() throws TMSException {
+	/** Acquire a pooled connection */
+	private SQLConnectionPool.Pooled acquire() throws TMSException {
 		try {
-			return _createStatement();
+			return pool.acquire();
 		}
 		catch(SQLException e) {
-			SQL_LOG.log("createStatement -> " + e);
+			ERRORS.incrementAndGet();
+			SQL_LOG.log("acquire -> " + e);
+			throw new TMSException(e);
+		}
+	}
+
+	/** Query the database and call a factory for each result */
+	public void query(String sql, ResultFactory factory)
+		throws TMSException
+	{
+		long start = System.nanoTime();
+		SQLConnectionPool.Pooled pc = acquire();
+		try {
+			Statement s = pc.getStatement();
 			try {
-				close();
-				return _createStatement();
+				ResultSet set = s.executeQuery(sql);
+				try {
+					while(set.next())
+						factory.create(set);
+				}
+				finally {
+					set.close();
+				}
 			}
-			catch(SQLException e2) {
-				SQL_LOG.log("createStatement.2 -> " + e2);
-				throw new TMSException(e2);
+			finally {
+				pc.putStatement(s);
 			}
 		}
+		catch(Exception e) {
+			ERRORS.incrementAndGet();
+			throw new TMSException(e);
+		}
+		finally {
+			pool.release(pc);
+			QUERY_LATENCY.recordSince(start);
+		}
 	}
 
-	/** Get an available statement */
-	protected synchronized Statement getStatement() throws TMSException {
-		if(statements.isEmpty())
-			return createStatement();
-		else
-			return statements.removeLast();
-	}
-
-	/** Put a statement back after using it */
-	protected synchronized void putStatement(Statement s) {
-		statements.add(s);
-	}
-
-	/** Query the database and call a factory for each result */
-	public void query(String sql, ResultFactory factory)
+	/** Query the database with bind parameters.
+	 * @param sql SQL template, with a ? for each parameter.
+	 * @param factory Factory to call for each result.
+	 * @param params Parameter values. */
+	public void query(String sql, ResultFactory factory, Object... params)
 		throws TMSException
 	{
-		Statement s = getStatement();
+		long start = System.nanoTime();
+		SQLConnectionPool.Pooled pc = acquire();
 		try {
-			ResultSet set = s.executeQuery(sql);
+			PreparedStatement ps = pc.prepare(sql);
 			try {
-				while(set.next())
-					factory.create(set);
+				bind(ps, params);
+				ResultSet set = ps.executeQuery();
+				try {
+					while(set.next())
+						factory.create(set);
+				}
+				finally {
+					set.close();
+				}
 			}
 			finally {
-				set.close();
+				pc.putPrepared(ps);
 			}
-			putStatement(s);
 		}
 		catch(Exception e) {
+			ERRORS.incrementAndGet();
 			throw new TMSException(e);
 		}
+		finally {
+			pool.release(pc);
+			QUERY_LATENCY.recordSince(start);
+		}
 	}
 
 	/** Update the database with the given SQL command */
 	public void update(String sql) throws TMSException {
-		Statement s = getStatement();
+		long start = System.nanoTime();
+		SQLConnectionPool.Pooled pc = acquire();
+		try {
+			Statement s = pc.getStatement();
+			try {
+				s.executeUpdate(sql);
+			}
+			finally {
+				pc.putStatement(s);
+			}
+		}
+		catch(SQLException e) {
+			ERRORS.incrementAndGet();
+			SQL_LOG.log(sql + " -> " + e);
+			throw new TMSException(e);
+		}
+		finally {
+			pool.release(pc);
+			UPDATE_LATENCY.recordSince(start);
+		}
+	}
+
+	/** Update the database with bind parameters.
+	 * @param sql SQL template, with a ? for each parameter.
+	 * @param params Parameter values.
+	 * @return Number of rows updated. */
+	public int update(String sql, Object... params) throws TMSException {
+		long start = System.nanoTime();
+		SQLConnectionPool.Pooled pc = acquire();
 		try {
-			s.executeUpdate(sql);
-			putStatement(s);
+			PreparedStatement ps = pc.prepare(sql);
+			try {
+				bind(ps, params);
+				return ps.executeUpdate();
+			}
+			finally {
+				pc.putPrepared(ps);
+			}
 		}
 		catch(SQLException e) {
+			ERRORS.incrementAndGet();
 			SQL_LOG.log(sql + " -> " + e);
 			throw new TMSException(e);
 		}
+		finally {
+			pool.release(pc);
+			UPDATE_LATENCY.recordSince(start);
+		}
 	}
 
 	/** Update one field in a storable database table */
@@ -196,30 +283,35 @@ public class SQLConnection {
 		throws TMSException
 	{
 		validateIdentifier(field);
-		String key = escapeValue(s.getKey());
+		String key = s.getKey();
 		validateValue(key);
 		if(value == null) {
-			updateNull(s, field, key);
+			update("UPDATE " + s.getTable() + " SET " + field +
+				" = NULL WHERE " + s.getKeyName() + " = ?;",
+				key);
 			return;
 		}
-		String v = escapeValue(value);
+		String v = value.toString();
 		validateValue(v);
 		update("UPDATE " + s.getTable() + " SET " + field +
-			" = '" + v + "' WHERE " + s.getKeyName() +
-			" = '" + key + "';");
-	}
-
-	/** Update one field with a NULL value */
-	private void updateNull(Storable s, String field, String key)
-		throws TMSException
-	{
-		update("UPDATE " + s.getTable() + " SET " + field +
-			" = NULL WHERE " + s.getKeyName() + " = '" +
-			key + "';");
+			" = ? WHERE " + s.getKeyName() + " = ?;", v, key);
 	}
 
 	/** Create one storable record */
 	public void create(Storable s) throws TMSException {
+		ArrayList<String> params = new ArrayList<String>();
+		String sql = insertSQL(s, params);
+		update(sql, params.toArray());
+	}
+
+	/** Build an INSERT statement for a storable record.  Columns with
+	 * null values are skipped.
+	 * @param s Storable record.
+	 * @param params List to add bind parameter values.
+	 * @return SQL template, with a ? for each parameter. */
+	private String insertSQL(Storable s, ArrayList<String> params)
+		throws TMSException
+	{
 		Map<String, Object> columns = s.getColumns();
 		StringBuilder keys = new StringBuilder();
 		StringBuilder values = new StringBuilder();
@@ -230,45 +322,113 @@ public class SQLConnection {
 				validateIdentifier(field);
 				keys.append(field);
 				keys.append(",");
-				String val = escapeValue(value);
+				String val = value.toString();
 				validateValue(val);
-				values.append("'");
-				values.append(val);
-				values.append("',");
+				values.append("?,");
+				params.add(val);
 			}
 		}
 		keys.setLength(keys.length() - 1);
 		values.setLength(values.length() - 1);
-		String sql = "INSERT INTO " + s.getTable() + " (" + keys +
+		return "INSERT INTO " + s.getTable() + " (" + keys +
 			") VALUES (" + values + ");";
-		update(sql);
+	}
+
+	/** Create a batch of storable records.  Records with the same
+	 * INSERT template are added to one prepared statement batch, so each
+	 * template is sent to the server only once.
+	 * @param recs Storable records to create. */
+	public void createBatch(List<? extends Storable> recs)
+		throws TMSException
+	{
+		LinkedHashMap<String, ArrayList<Object[]>> batches =
+			new LinkedHashMap<String, ArrayList<Object[]>>();
+		for (Storable s: recs) {
+			ArrayList<String> params = new ArrayList<String>();
+			String sql = insertSQL(s, params);
+			ArrayList<Object[]> b = batches.get(sql);
+			if (null == b) {
+				b = new ArrayList<Object[]>();
+				batches.put(sql, b);
+			}
+			b.add(params.toArray());
+		}
+		for (Map.Entry<String, ArrayList<Object[]>> e:
+		     batches.entrySet())
+		{
+			createBatch(e.getKey(), e.getValue());
+		}
+	}
+
+	/** Create a batch of records with one prepared statement.
+	 * @param sql SQL template, with a ? for each parameter.
+	 * @param rows Parameter values for each record. */
+	private void createBatch(String sql, ArrayList<Object[]> rows)
+		throws TMSException
+	{
+		long start = System.nanoTime();
+		SQLConnectionPool.Pooled pc = acquire();
+		try {
+			PreparedStatement ps = pc.prepare(sql);
+			try {
+				for (Object[] params: rows) {
+					bind(ps, params);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			}
+			finally {
+				ps.clearBatch();
+				pc.putPrepared(ps);
+			}
+		}
+		catch(SQLException e) {
+			ERRORS.incrementAndGet();
+			SQL_LOG.log(sql + " (batch) -> " + e);
+			throw new TMSException(e);
+		}
+		finally {
+			pool.release(pc);
+			BATCH_LATENCY.recordSince(start);
+		}
 	}
 
 	/** Destroy one storable record */
 	public void destroy(Storable s) throws TMSException {
-		String val = escapeValue(s.getKey());
+		String val = s.getKey();
 		validateValue(val);
 		update("DELETE FROM " + s.getTable() + " WHERE " +
-			s.getKeyName() + " = '" + val + "';");
+			s.getKeyName() + " = ?;", val);
 	}
 
 	/** Update the database with a batch of SQL commands */
 	public void batch(BatchFactory f) throws TMSException {
-		Statement s = getStatement();
+		long start = System.nanoTime();
+		SQLConnectionPool.Pooled pc = acquire();
 		try {
-			while(true) {
-				String sql = f.next();
-				if(sql == null)
-					break;
-				s.addBatch(sql);
+			Statement s = pc.getStatement();
+			try {
+				while(true) {
+					String sql = f.next();
+					if(sql == null)
+						break;
+					s.addBatch(sql);
+				}
+				s.executeBatch();
+			}
+			finally {
+				s.clearBatch();
+				pc.putStatement(s);
 			}
-			s.executeBatch();
-			s.clearBatch();
-			putStatement(s);
 		}
 		catch(SQLException e) {
+			ERRORS.incrementAndGet();
 			SQL_LOG.log("batch -> " + e);
 			throw new TMSException(e);
 		}
+		finally {
+			pool.release(pc);
+			BATCH_LATENCY.recordSince(start);
+		}
 	}
 }
@@ -0,0 +1,276 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small pool of database connections.  Each connection keeps an LRU
+ * cache of prepared statements, keyed by SQL template.  A thread which
+ * already holds a connection gets the same connection again, so result
+ * factories can use the database without deadlocking the pool.
+ *
+ * @author Douglas Lau
+ */
+public class SQLConnectionPool {
+
+	/** One pooled connection */
+	public final class Pooled {
+
+		/** Database connection */
+		private Connection connection = null;
+
+		/** Available plain statements */
+		private final LinkedList<Statement> statements =
+			new LinkedList<Statement>();
+
+		/** Prepared statements in use */
+		private final IdentityHashMap<PreparedStatement, Boolean> in_use =
+			new IdentityHashMap<PreparedStatement, Boolean>();
+
+		/** Prepared statement cache (in LRU order) */
+		private final LinkedHashMap<String, PreparedStatement> prepared =
+			new LinkedHashMap<String, PreparedStatement>(16, 0.75f,
+			true)
+		{
+			@Override
+			protected boolean removeEldestEntry(
+				Map.Entry<String, PreparedStatement> e)
+			{
+				PreparedStatement ps = e.getValue();
+				if (size() > cache_size && !in_use.containsKey(ps)) {
+					closeQuietly(ps);
+					return true;
+				} else
+					return false;
+			}
+		};
+
+		/** Number of nested holds by owner thread */
+		private int holds = 0;
+
+		/** Open the connection if needed */
+		private Connection connect() throws SQLException {
+			if (null == connection) {
+				connection = DriverManager.getConnection(url, info);
+				connection.setAutoCommit(true);
+			}
+			return connection;
+		}
+
+		/** Get an available plain statement */
+		public Statement getStatement() throws SQLException {
+			if (!statements.isEmpty())
+				return statements.removeLast();
+			try {
+				return connect().createStatement();
+			}
+			catch (SQLException e) {
+				// Connection may have been dropped; try again
+				reset();
+				return connect().createStatement();
+			}
+		}
+
+		/** Put a plain statement back after using it */
+		public void putStatement(Statement s) {
+			statements.add(s);
+		}
+
+		/** Get a prepared statement for a SQL template.  It must be
+		 * returned with putPrepared after use. */
+		public PreparedStatement prepare(String sql)
+			throws SQLException
+		{
+			PreparedStatement ps = prepared.get(sql);
+			if (ps != null && !in_use.containsKey(ps)) {
+				n_reused.incrementAndGet();
+				ps.clearParameters();
+			} else {
+				ps = _prepare(sql);
+				n_prepared.incrementAndGet();
+				if (!prepared.containsKey(sql))
+					prepared.put(sql, ps);
+			}
+			in_use.put(ps, Boolean.TRUE);
+			return ps;
+		}
+
+		/** Prepare a new statement */
+		private PreparedStatement _prepare(String sql)
+			throws SQLException
+		{
+			try {
+				return connect().prepareStatement(sql);
+			}
+			catch (SQLException e) {
+				// Connection may have been dropped; try again
+				reset();
+				return connect().prepareStatement(sql);
+			}
+		}
+
+		/** Put a prepared statement back after using it */
+		public void putPrepared(PreparedStatement ps) {
+			in_use.remove(ps);
+			if (!prepared.containsValue(ps))
+				closeQuietly(ps);
+		}
+
+		/** Close the connection and discard all statements */
+		private void reset() {
+			statements.clear();
+			prepared.clear();
+			in_use.clear();
+			if (connection != null) {
+				try {
+					connection.close();
+				}
+				catch (SQLException e) {
+					// ignore
+				}
+				connection = null;
+			}
+		}
+
+		/** Check if the connection was closed by an error */
+		private boolean isBroken() {
+			try {
+				return connection != null && connection.isClosed();
+			}
+			catch (SQLException e) {
+				return true;
+			}
+		}
+	}
+
+	/** Close a statement, ignoring errors */
+	static private void closeQuietly(Statement s) {
+		try {
+			s.close();
+		}
+		catch (SQLException e) {
+			// ignore
+		}
+	}
+
+	/** Database URL */
+	private final String url;
+
+	/** Connection properties */
+	private final Properties info;
+
+	/** Maximum prepared statements cached per connection */
+	private final int cache_size;
+
+	/** All pooled connections */
+	private final ArrayList<Pooled> all = new ArrayList<Pooled>();
+
+	/** Idle pooled connections (most recently used first) */
+	private final LinkedBlockingDeque<Pooled> idle =
+		new LinkedBlockingDeque<Pooled>();
+
+	/** Connection held by each thread */
+	private final ThreadLocal<Pooled> held = new ThreadLocal<Pooled>();
+
+	/** Count of statements prepared */
+	private final AtomicLong n_prepared = new AtomicLong();
+
+	/** Count of prepared statements reused from cache */
+	private final AtomicLong n_reused = new AtomicLong();
+
+	/** Create a new connection pool.  Connections are opened when they
+	 * are first used.
+	 * @param u Database URL.
+	 * @param i Connection properties (user, password, etc).
+	 * @param n Number of connections.
+	 * @param cs Maximum prepared statements cached per connection. */
+	public SQLConnectionPool(String u, Properties i, int n, int cs) {
+		url = u;
+		info = i;
+		cache_size = cs;
+		for (int c = 0; c < Math.max(n, 1); c++) {
+			Pooled pc = new Pooled();
+			all.add(pc);
+			idle.add(pc);
+		}
+	}
+
+	/** Get the number of connections */
+	public int size() {
+		return all.size();
+	}
+
+	/** Acquire a connection, waiting until one is available */
+	public Pooled acquire() throws SQLException {
+		Pooled pc = held.get();
+		if (null == pc) {
+			try {
+				pc = idle.takeFirst();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted");
+			}
+			held.set(pc);
+		}
+		pc.holds++;
+		return pc;
+	}
+
+	/** Release a connection after using it */
+	public void release(Pooled pc) {
+		pc.holds--;
+		if (pc.holds > 0)
+			return;
+		if (pc.isBroken())
+			pc.reset();
+		held.remove();
+		idle.addFirst(pc);
+	}
+
+	/** Get the count of statements prepared */
+	public long getPrepared() {
+		return n_prepared.get();
+	}
+
+	/** Get the count of prepared statements reused from cache */
+	public long getReused() {
+		return n_reused.get();
+	}
+
+	/** Close all idle connections.  Connections will be opened again
+	 * when they are next used. */
+	public void close() {
+		ArrayList<Pooled> pcs = new ArrayList<Pooled>();
+		idle.drainTo(pcs);
+		for (Pooled pc: pcs) {
+			pc.reset();
+			idle.addLast(pc);
+		}
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2013  Minnesota Department of Transportation
+ * Copyright (C) 2010-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -43,4 +43,7 @@ public interface SampleArchiveFactory {
 
 	/** Test if a sample file name has a known extension */
 	boolean hasKnownExtension(String name);
+
+	/** Test if periodic samples are stored in sample day files */
+	boolean hasDayFiles();
 }
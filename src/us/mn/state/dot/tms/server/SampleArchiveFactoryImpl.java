@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2014  Minnesota Department of Transportation
+ * Copyright (C) 2010-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -51,6 +51,19 @@ public class SampleArchiveFactoryImpl implements SampleArchiveFactory {
 		return dir.getCanonicalPath();
 	}
 
+	/** Flag to store periodic samples in sample day files */
+	private boolean day_files = false;
+
+	/** Set whether periodic samples are stored in sample day files */
+	public void setDayFiles(boolean df) {
+		day_files = df;
+	}
+
+	/** Test if periodic samples are stored in sample day files */
+	public boolean hasDayFiles() {
+		return day_files;
+	}
+
 	/** Set of all archive file extensions */
 	private final HashSet<String> extensions = new HashSet<String>();
 
@@ -0,0 +1,406 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * A sample day file stores all sample types for one sensor for one day.
+ * This replaces a separate file for each sample type (.v30, .c30, etc.)
+ * with a single file, so fewer files are touched by each flush.
+ *
+ * The file starts with a fixed-size header, containing a table of entries.
+ * Each entry has a sample file extension (such as "v30"), and the offset and
+ * length of its data region.  A region is appended the first time its
+ * extension is written, pre-sized to one full day of MISSING_DATA samples.
+ * Sample data within a region has the same layout as the original sample
+ * files, and is written in place.
+ *
+ * @author Douglas Lau
+ */
+public class SampleDayFile {
+
+	/** File extension for sample day files */
+	static public final String EXT = "day";
+
+	/** Magic number ("IRSD") */
+	static private final int MAGIC = 0x49525344;
+
+	/** File format version */
+	static private final short VERSION = 1;
+
+	/** Maximum number of entries */
+	static private final int MAX_ENTRIES = 15;
+
+	/** Maximum length of an entry extension */
+	static private final int EXT_LEN = 8;
+
+	/** Length of one entry in header */
+	static private final int ENTRY_LEN = EXT_LEN + 8;
+
+	/** Length of header (magic, version, entry count, entries) */
+	static public final int HEADER_LEN = 256;
+
+	/** ASCII charset for extensions */
+	static private final Charset ASCII = Charset.forName("US-ASCII");
+
+	/** Test if a file name is a sample day file */
+	static public boolean isDayFile(String name) {
+		return name.endsWith("." + EXT);
+	}
+
+	/** Get the sensor ID from a file name */
+	static private String sensorId(String name) {
+		int i = name.indexOf('.');
+		return (i > 0) ? name.substring(0, i) : name;
+	}
+
+	/** Get the extension from a file name */
+	static private String extension(String name) {
+		int i = name.indexOf('.');
+		return (i > 0) ? name.substring(i + 1) : "";
+	}
+
+	/** Day file */
+	private final File file;
+
+	/** File channel */
+	private final FileChannel channel;
+
+	/** Entry extensions, in order */
+	private final ArrayList<String> exts = new ArrayList<String>();
+
+	/** Entry offsets, by extension */
+	private final HashMap<String, Integer> offsets =
+		new HashMap<String, Integer>();
+
+	/** Entry lengths, by extension */
+	private final HashMap<String, Integer> lengths =
+		new HashMap<String, Integer>();
+
+	/** End of last region */
+	private long end = HEADER_LEN;
+
+	/** Open a sample day file.
+	 * @param f File to open.
+	 * @param write Open file for writing (creating if needed). */
+	public SampleDayFile(File f, boolean write) throws IOException {
+		file = f;
+		channel = new RandomAccessFile(f, write ? "rw" : "r")
+			.getChannel();
+		try {
+			if (channel.size() > 0)
+				readHeader();
+			else if (write)
+				writeHeader();
+			else
+				throw new IOException("Empty day file: " + f);
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Get the file */
+	public File getFile() {
+		return file;
+	}
+
+	/** Read the file header */
+	private void readHeader() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_LEN);
+		readFully(buf, 0);
+		buf.flip();
+		if (buf.getInt() != MAGIC)
+			throw new IOException("Bad magic: " + file);
+		if (buf.getShort() != VERSION)
+			throw new IOException("Bad version: " + file);
+		int n_entries = buf.getShort();
+		if (n_entries < 0 || n_entries > MAX_ENTRIES)
+			throw new IOException("Bad entries: " + file);
+		byte[] e = new byte[EXT_LEN];
+		for (int i = 0; i < n_entries; i++) {
+			buf.get(e);
+			int len = 0;
+			while (len < EXT_LEN && e[len] != 0)
+				len++;
+			String ext = new String(e, 0, len, ASCII);
+			int off = buf.getInt();
+			int n_bytes = buf.getInt();
+			if (off < HEADER_LEN || n_bytes < 0)
+				throw new IOException("Bad entry: " + file);
+			addEntry(ext, off, n_bytes);
+		}
+	}
+
+	/** Add an entry to the table */
+	private void addEntry(String ext, int off, int n_bytes) {
+		exts.add(ext);
+		offsets.put(ext, off);
+		lengths.put(ext, n_bytes);
+		end = Math.max(end, (long) off + n_bytes);
+	}
+
+	/** Write the file header */
+	private void writeHeader() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_LEN);
+		buf.putInt(MAGIC);
+		buf.putShort(VERSION);
+		buf.putShort((short) exts.size());
+		for (String ext: exts) {
+			byte[] e = Arrays.copyOf(ext.getBytes(ASCII), EXT_LEN);
+			buf.put(e);
+			buf.putInt(offsets.get(ext));
+			buf.putInt(lengths.get(ext));
+		}
+		buf.clear();
+		writeFully(buf, 0);
+	}
+
+	/** Get the extensions of all entries */
+	public String[] getExtensions() {
+		return exts.toArray(new String[0]);
+	}
+
+	/** Get the offset of an entry region.
+	 * @param ext Sample file extension.
+	 * @return File offset of region, or -1 if not found. */
+	public long getOffset(String ext) {
+		Integer off = offsets.get(ext);
+		return (off != null) ? off : -1;
+	}
+
+	/** Get the length of an entry region.
+	 * @param ext Sample file extension.
+	 * @return Length of region, or 0 if not found. */
+	public int getLength(String ext) {
+		Integer len = lengths.get(ext);
+		return (len != null) ? len : 0;
+	}
+
+	/** Allocate an entry region, if it does not exist.  A new region is
+	 * filled with MISSING_DATA.
+	 * @param ext Sample file extension.
+	 * @param n_bytes Size of region (bytes).
+	 * @return File offset of region. */
+	public long allocate(String ext, int n_bytes) throws IOException {
+		Integer off = offsets.get(ext);
+		if (off != null) {
+			if (lengths.get(ext) != n_bytes) {
+				throw new IOException("Region size mismatch: "
+					+ file + " " + ext);
+			}
+			return off;
+		}
+		if (exts.size() >= MAX_ENTRIES)
+			throw new IOException("Too many entries: " + file);
+		if (ext.length() > EXT_LEN || ext.length() == 0)
+			throw new IOException("Invalid extension: " + ext);
+		int o = (int) end;
+		byte[] fill = new byte[n_bytes];
+		Arrays.fill(fill, MISSING_DATA);
+		writeFully(ByteBuffer.wrap(fill), o);
+		addEntry(ext, o, n_bytes);
+		writeHeader();
+		return o;
+	}
+
+	/** Read an entry region.
+	 * @param ext Sample file extension.
+	 * @return Sample data, or null if not found. */
+	public byte[] read(String ext) throws IOException {
+		Integer off = offsets.get(ext);
+		if (off != null) {
+			ByteBuffer buf = ByteBuffer.allocate(lengths.get(ext));
+			readFully(buf, off);
+			return buf.array();
+		} else
+			return null;
+	}
+
+	/** Write data into an entry region.
+	 * @param ext Sample file extension.
+	 * @param pos Position within region.
+	 * @param buf Buffer to write (position to limit). */
+	public void write(String ext, int pos, ByteBuffer buf)
+		throws IOException
+	{
+		Integer off = offsets.get(ext);
+		if (null == off)
+			throw new IOException("No region: " + file + " " + ext);
+		if (pos < 0 || pos + buf.remaining() > lengths.get(ext))
+			throw new IOException("Outside region: " + file);
+		writeFully(buf, off + pos);
+	}
+
+	/** Read from the channel until a buffer is full */
+	private void readFully(ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if (n < 0)
+				throw new IOException("Truncated: " + file);
+			pos += n;
+		}
+	}
+
+	/** Write a buffer to the channel */
+	private void writeFully(ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining())
+			pos += channel.write(buf, pos);
+	}
+
+	/** Close the file */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/** Write all entries to a zip stream, as separate sample files.
+	 * @param zos Zip output stream.
+	 * @param sensor_id Sensor ID for entry names. */
+	public void writeEntries(ZipOutputStream zos, String sensor_id)
+		throws IOException
+	{
+		String[] ex = getExtensions();
+		Arrays.sort(ex);
+		for (String ext: ex) {
+			zos.putNextEntry(new ZipEntry(sensor_id + "." + ext));
+			zos.write(read(ext));
+			zos.closeEntry();
+		}
+	}
+
+	/** Write all day files in a directory to a zip stream, as sample files
+	 * in the traffic archive format.
+	 * @param zos Zip output stream.
+	 * @param dir Directory containing day files. */
+	static public void writeTraffic(ZipOutputStream zos, File dir)
+		throws IOException
+	{
+		String[] names = dir.list();
+		if (null == names)
+			return;
+		Arrays.sort(names);
+		for (String name: names) {
+			if (isDayFile(name)) {
+				SampleDayFile df = new SampleDayFile(
+					new File(dir, name), false);
+				try {
+					df.writeEntries(zos, sensorId(name));
+				}
+				finally {
+					df.close();
+				}
+			}
+		}
+	}
+
+	/** Convert a directory of day files to a traffic archive.
+	 * @param dir Directory containing day files.
+	 * @param traf Traffic archive file to create. */
+	static public void toTraffic(File dir, File traf) throws IOException {
+		ZipOutputStream zos = new ZipOutputStream(
+			new FileOutputStream(traf));
+		try {
+			writeTraffic(zos, dir);
+			zos.finish();
+		}
+		finally {
+			zos.close();
+		}
+	}
+
+	/** Convert a traffic archive to a directory of day files.
+	 * @param traf Traffic archive file.
+	 * @param dir Directory to create day files. */
+	static public void fromTraffic(File traf, File dir) throws IOException {
+		ZipFile zf = new ZipFile(traf);
+		try {
+			ArrayList<ZipEntry> entries = new ArrayList<ZipEntry>();
+			Enumeration<? extends ZipEntry> e = zf.entries();
+			while (e.hasMoreElements())
+				entries.add(e.nextElement());
+			SampleDayFile df = null;
+			try {
+				for (ZipEntry ze: entries) {
+					String name = ze.getName();
+					File f = new File(dir, sensorId(name) +
+						"." + EXT);
+					if (null == df || !f.equals(df.file)) {
+						if (df != null)
+							df.close();
+						df = null;
+						df = new SampleDayFile(f, true);
+					}
+					copyEntry(zf, ze, df, extension(name));
+				}
+			}
+			finally {
+				if (df != null)
+					df.close();
+			}
+		}
+		finally {
+			zf.close();
+		}
+	}
+
+	/** Copy one zip entry into a day file region */
+	static private void copyEntry(ZipFile zf, ZipEntry ze,
+		SampleDayFile df, String ext) throws IOException
+	{
+		byte[] data = readEntry(zf, ze);
+		df.allocate(ext, data.length);
+		df.write(ext, 0, ByteBuffer.wrap(data));
+	}
+
+	/** Read all data from a zip entry */
+	static private byte[] readEntry(ZipFile zf, ZipEntry ze)
+		throws IOException
+	{
+		InputStream is = zf.getInputStream(ze);
+		try {
+			byte[] buf = new byte[4096];
+			int n = 0;
+			while (true) {
+				if (n == buf.length)
+					buf = Arrays.copyOf(buf, n * 2);
+				int r = is.read(buf, n, buf.length - n);
+				if (r < 0)
+					break;
+				n += r;
+			}
+			return Arrays.copyOf(buf, n);
+		}
+		finally {
+			is.close();
+		}
+	}
+}
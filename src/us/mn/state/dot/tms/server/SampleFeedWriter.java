@@ -0,0 +1,143 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
+import us.mn.state.dot.tms.SampleFeed;
+
+/**
+ * Writer for binary sample feed files.  Samples are collected with add, and
+ * then written out with write.  The index file is only rewritten when the
+ * set of sensors changes.
+ *
+ * @author Douglas Lau
+ */
+public class SampleFeedWriter {
+
+	/** Sample period (seconds) */
+	static private final int PERIOD_SEC = 30;
+
+	/** Data file */
+	private final File data_file;
+
+	/** Index file */
+	private final File index_file;
+
+	/** Sensor IDs for current interval */
+	private final ArrayList<String> sensors = new ArrayList<String>();
+
+	/** Sample values for current interval */
+	private short[] values = new short[SampleFeed.FIELDS * 1024];
+
+	/** ID of most recently written index */
+	private Integer index_id = null;
+
+	/** Create a new sample feed writer.
+	 * @param n Base file name (without extension). */
+	public SampleFeedWriter(String n) {
+		data_file = new File(XmlWriter.XML_OUTPUT_DIRECTORY,
+			n + SampleFeed.DATA_EXT);
+		index_file = new File(XmlWriter.XML_OUTPUT_DIRECTORY,
+			n + SampleFeed.INDEX_EXT);
+	}
+
+	/** Add a sample for one sensor.
+	 * @param sid Sensor ID.
+	 * @param flow Flow rate, or MISSING_DATA.
+	 * @param speed Speed, or MISSING_DATA.
+	 * @param tvt Travel time route count, or MISSING_DATA. */
+	public void add(String sid, int flow, int speed, int tvt) {
+		int i = sensors.size() * SampleFeed.FIELDS;
+		if (i + SampleFeed.FIELDS > values.length) {
+			short[] v = new short[values.length * 2];
+			System.arraycopy(values, 0, v, 0, values.length);
+			values = v;
+		}
+		values[i + SampleFeed.FLOW] = SampleFeed.clamp(flow);
+		values[i + SampleFeed.SPEED] = SampleFeed.clamp(speed);
+		values[i + SampleFeed.TVT] = SampleFeed.clamp(tvt);
+		sensors.add(sid);
+	}
+
+	/** Write the feed files and clear the current interval.
+	 * @param stamp Time stamp of interval. */
+	public void write(long stamp) throws IOException {
+		try {
+			String[] sids = sensors.toArray(new String[0]);
+			int id = SampleFeed.indexId(sids);
+			if (index_id == null || index_id != id) {
+				writeIndex(sids);
+				index_id = id;
+			}
+			short[] v = new short[sids.length * SampleFeed.FIELDS];
+			System.arraycopy(values, 0, v, 0, v.length);
+			writeData(new SampleFeed(id, stamp, PERIOD_SEC, v));
+		}
+		finally {
+			sensors.clear();
+		}
+	}
+
+	/** Write the index file */
+	private void writeIndex(String[] sids) throws IOException {
+		File temp = tempFile(index_file);
+		DataOutputStream out = createOutput(temp);
+		try {
+			SampleFeed.encodeIndex(out, sids);
+		}
+		finally {
+			out.close();
+		}
+		rename(temp, index_file);
+	}
+
+	/** Write the data file */
+	private void writeData(SampleFeed f) throws IOException {
+		File temp = tempFile(data_file);
+		DataOutputStream out = createOutput(temp);
+		try {
+			SampleFeed.encodeData(out, f);
+		}
+		finally {
+			out.close();
+		}
+		rename(temp, data_file);
+	}
+
+	/** Get a temp file */
+	static private File tempFile(File f) {
+		return new File(f.getAbsolutePath() + "~");
+	}
+
+	/** Create a compressed output stream */
+	static private DataOutputStream createOutput(File f)
+		throws IOException
+	{
+		return new DataOutputStream(new BufferedOutputStream(
+			new GZIPOutputStream(new FileOutputStream(f))));
+	}
+
+	/** Rename a temp file */
+	static private void rename(File temp, File f) throws IOException {
+		if (!temp.renameTo(f))
+			throw new IOException("Rename failed: " + f);
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2014  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,13 +17,15 @@ package us.mn.state.dot.tms.server;
 import java.util.Calendar;
 import java.util.Iterator;
 import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.Controller;
 import us.mn.state.dot.tms.ControllerHelper;
 import us.mn.state.dot.tms.server.comm.DevicePoller;
 import us.mn.state.dot.tms.server.comm.SamplePoller;
 
 /**
- * Job to query 30-second sample data
+ * Job to query 30-second sample data.  Queries are paced over a short
+ * window, so that all controllers are not queried at the same instant.
  *
  * @author Douglas Lau
  */
@@ -32,24 +34,51 @@ public class SampleQuery30SecJob extends Job {
 	/** Seconds to offset each poll from start of interval */
 	static public final int OFFSET_SECS = 8;
 
+	/** Sample query interval (ms) */
+	static private final long INTERVAL_MS = 30 * 1000;
+
+	/** Window to spread queries over (ms) */
+	static private final long WINDOW_MS = 10 * 1000;
+
+	/** Maximum queued operations per comm link */
+	static private final int MAX_LINK_OPS = 32;
+
+	/** Pacer for sample queries */
+	private final PollPacer<Controller> pacer = new PollPacer<Controller>(
+		INTERVAL_MS, INTERVAL_MS, OFFSET_SECS * 1000, WINDOW_MS,
+		MAX_LINK_OPS)
+	{
+		protected Iterator<Controller> iterator() {
+			return ControllerHelper.iterator();
+		}
+		protected String getName(Controller c) {
+			return c.getName();
+		}
+		protected int getStateHash(Controller c) {
+			return 0;
+		}
+		protected int getLinkDepth(Controller c) {
+			if (c instanceof ControllerImpl) {
+				DevicePoller dp = ((ControllerImpl) c)
+					.getPoller();
+				return (dp != null) ? dp.getQueueSize() : 0;
+			} else
+				return 0;
+		}
+		protected void poll(Controller c) {
+			if (c instanceof ControllerImpl)
+				querySample30Sec((ControllerImpl) c);
+		}
+	};
+
 	/** Create a new 30-second timer job */
 	public SampleQuery30SecJob() {
-		super(Calendar.SECOND, 30, Calendar.SECOND, OFFSET_SECS);
+		super(Calendar.SECOND, 1);
 	}
 
 	/** Perform the 30-second timer job */
 	public void perform() {
-		querySample30Sec();
-	}
-
-	/** Poll all sampling controllers 30-second interval */
-	private void querySample30Sec() {
-		Iterator<Controller> it = ControllerHelper.iterator();
-		while(it.hasNext()) {
-			Controller c = it.next();
-			if(c instanceof ControllerImpl)
-				querySample30Sec((ControllerImpl)c);
-		}
+		pacer.tick(TimeSteward.currentTimeMillis());
 	}
 
 	/** Query 30-second sample data from one controller */
@@ -0,0 +1,273 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * Codec for periodic sample data, designed for time series.  Raw sample
+ * files (fixed width, 1 or 2 bytes per sample) are encoded as a sequence of
+ * runs.  Each run starts with a varint header: the low bit is set for a run
+ * of MISSING_DATA samples, and the remaining bits are the run length.  A run
+ * of valid samples is followed by a zigzag varint for each sample: either
+ * the delta from the previous valid sample, or the value itself.
+ *
+ * The first byte of an encoded block contains flags: DELTA if values are
+ * deltas, and DEFLATED if the runs are deflated.  The encoder chooses
+ * whichever is smallest; deltas suit smooth series (speed), while noisy
+ * counts (volume) compress better without them.  Encoding is lossless.
+ *
+ * @author Douglas Lau
+ */
+public class SampleSeriesCodec {
+
+	/** Flag for delta encoded values */
+	static private final int DELTA = 1 << 0;
+
+	/** Flag for deflated runs */
+	static private final int DEFLATED = 1 << 1;
+
+	/** Don't allow instantiation */
+	private SampleSeriesCodec() { }
+
+	/** Get the sample type for a sample file extension.
+	 * @param ext Sample file extension (such as "v30").
+	 * @return Periodic sample type, or null if unknown. */
+	static public PeriodicSampleType sampleType(String ext) {
+		int i = 0;
+		while (i < ext.length() && !Character.isDigit(ext.charAt(i)))
+			i++;
+		if (i == 0 || i == ext.length())
+			return null;
+		String base = ext.substring(0, i);
+		for (PeriodicSampleType t: PeriodicSampleType.values()) {
+			if (t.extension.equals(base))
+				return t;
+		}
+		return null;
+	}
+
+	/** Get one sample from raw data */
+	static private int getSample(byte[] raw, int i, int s_bytes) {
+		if (s_bytes == 1)
+			return raw[i];
+		else {
+			int j = i * 2;
+			return (short) ((raw[j] << 8) | (raw[j + 1] & 0xFF));
+		}
+	}
+
+	/** Put one sample into raw data */
+	static private void putSample(byte[] raw, int i, int s_bytes, int v) {
+		if (s_bytes == 1)
+			raw[i] = (byte) v;
+		else {
+			int j = i * 2;
+			raw[j] = (byte) (v >> 8);
+			raw[j + 1] = (byte) v;
+		}
+	}
+
+	/** Encode raw sample data.
+	 * @param raw Raw sample data (big-endian, fixed width).
+	 * @param s_bytes Bytes per sample (1 or 2).
+	 * @return Encoded data. */
+	static public byte[] encode(byte[] raw, int s_bytes) {
+		byte[] direct = encodeRuns(raw, s_bytes, false);
+		byte[] delta = encodeRuns(raw, s_bytes, true);
+		int flags = 0;
+		byte[] runs = direct;
+		if (delta.length < direct.length) {
+			flags |= DELTA;
+			runs = delta;
+		}
+		byte[] d = deflate(runs);
+		if (d.length < runs.length) {
+			flags |= DEFLATED;
+			runs = d;
+		}
+		byte[] enc = new byte[runs.length + 1];
+		enc[0] = (byte) flags;
+		System.arraycopy(runs, 0, enc, 1, runs.length);
+		return enc;
+	}
+
+	/** Encode raw sample data as runs.
+	 * @param raw Raw sample data (big-endian, fixed width).
+	 * @param s_bytes Bytes per sample (1 or 2).
+	 * @param delta Encode values as deltas.
+	 * @return Encoded runs. */
+	static private byte[] encodeRuns(byte[] raw, int s_bytes,
+		boolean delta)
+	{
+		int n_samples = raw.length / s_bytes;
+		// at most: 1 byte run header + 3 byte value per sample
+		ByteBuffer buf = ByteBuffer.allocate(n_samples * 4 + 16);
+		int prev = 0;
+		int i = 0;
+		while (i < n_samples) {
+			int s = i;
+			if (getSample(raw, i, s_bytes) == MISSING_DATA) {
+				while (i < n_samples && getSample(raw, i,
+				       s_bytes) == MISSING_DATA)
+					i++;
+				putVarint(buf, ((i - s) << 1) | 1);
+			} else {
+				while (i < n_samples && getSample(raw, i,
+				       s_bytes) != MISSING_DATA)
+					i++;
+				putVarint(buf, (i - s) << 1);
+				for (int j = s; j < i; j++) {
+					int v = getSample(raw, j, s_bytes);
+					putVarint(buf, zigzag(v - prev));
+					if (delta)
+						prev = v;
+				}
+			}
+		}
+		return Arrays.copyOf(buf.array(), buf.position());
+	}
+
+	/** Deflate data (without zlib wrapper) */
+	static private byte[] deflate(byte[] data) {
+		Deflater d = new Deflater(Deflater.BEST_COMPRESSION, true);
+		try {
+			d.setInput(data);
+			d.finish();
+			byte[] buf = new byte[data.length + 64];
+			int n = 0;
+			while (!d.finished() && n < buf.length)
+				n += d.deflate(buf, n, buf.length - n);
+			return d.finished() ? Arrays.copyOf(buf, n) : data;
+		}
+		finally {
+			d.end();
+		}
+	}
+
+	/** Inflate data (without zlib wrapper) */
+	static private byte[] inflate(byte[] data, int off, int max_len)
+		throws IOException
+	{
+		Inflater inf = new Inflater(true);
+		try {
+			inf.setInput(data, off, data.length - off);
+			byte[] buf = new byte[max_len];
+			int n = 0;
+			while (!inf.finished() && n < buf.length) {
+				int r = inf.inflate(buf, n, buf.length - n);
+				if (r == 0 && (inf.needsInput() ||
+				    inf.needsDictionary()))
+					break;
+				n += r;
+			}
+			if (!inf.finished())
+				throw new IOException("Bad deflate data");
+			return Arrays.copyOf(buf, n);
+		}
+		catch (DataFormatException e) {
+			throw new IOException(e.getMessage());
+		}
+		finally {
+			inf.end();
+		}
+	}
+
+	/** Decode sample data.
+	 * @param enc Encoded data.
+	 * @param n_samples Number of samples.
+	 * @param s_bytes Bytes per sample (1 or 2).
+	 * @return Raw sample data. */
+	static public byte[] decode(byte[] enc, int n_samples, int s_bytes)
+		throws IOException
+	{
+		if (enc.length < 1)
+			throw new IOException("Empty samples");
+		int flags = enc[0];
+		ByteBuffer buf = ((flags & DEFLATED) != 0)
+			? ByteBuffer.wrap(inflate(enc, 1, n_samples * 4 + 16))
+			: ByteBuffer.wrap(enc, 1, enc.length - 1);
+		boolean delta = (flags & DELTA) != 0;
+		byte[] raw = new byte[n_samples * s_bytes];
+		int prev = 0;
+		int i = 0;
+		try {
+			while (buf.hasRemaining()) {
+				int h = getVarint(buf);
+				int n = h >>> 1;
+				if (n > n_samples - i)
+					throw new IOException("Bad run length");
+				if ((h & 1) != 0) {
+					Arrays.fill(raw, i * s_bytes,
+						(i + n) * s_bytes,
+						MISSING_DATA);
+					i += n;
+				} else {
+					for (int j = 0; j < n; j++, i++) {
+						int v = prev + unzigzag(
+							getVarint(buf));
+						putSample(raw, i, s_bytes, v);
+						if (delta)
+							prev = v;
+					}
+				}
+			}
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException("Truncated samples");
+		}
+		if (i != n_samples)
+			throw new IOException("Wrong sample count");
+		return raw;
+	}
+
+	/** Zigzag encode a signed value */
+	static private int zigzag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	/** Decode a zigzag value */
+	static private int unzigzag(int v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/** Put an unsigned varint into a buffer */
+	static private void putVarint(ByteBuffer buf, int v) {
+		while ((v & ~0x7F) != 0) {
+			buf.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buf.put((byte) v);
+	}
+
+	/** Get an unsigned varint from a buffer */
+	static private int getVarint(ByteBuffer buf) throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = buf.get();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Bad varint");
+	}
+}
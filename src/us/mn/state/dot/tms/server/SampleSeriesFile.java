@@ -0,0 +1,371 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A sample series file stores encoded periodic sample data for one sensor,
+ * typically for one year.  Each day of each sample type is stored in a
+ * block, with a small header followed by data encoded with
+ * SampleSeriesCodec.  Blocks are appended; if a block is appended for a day
+ * which already exists, the newer block replaces it.
+ *
+ * Block headers are indexed when the file is opened, so a date range can be
+ * read without decoding unrelated blocks.
+ *
+ * @author Douglas Lau
+ */
+public class SampleSeriesFile {
+
+	/** File extension for sample series files */
+	static public final String EXT = "series";
+
+	/** Magic number ("IRSS") */
+	static private final int MAGIC = 0x49525353;
+
+	/** File format version */
+	static private final short VERSION = 1;
+
+	/** Length of file header */
+	static private final int FILE_HEADER_LEN = 6;
+
+	/** Maximum length of a sample file extension */
+	static private final int EXT_LEN = 8;
+
+	/** Length of block header (date, ext, samples, bytes, length) */
+	static private final int BLOCK_HEADER_LEN = 4 + EXT_LEN + 4 + 1 + 4;
+
+	/** ASCII charset for extensions */
+	static private final Charset ASCII = Charset.forName("US-ASCII");
+
+	/** Index of one block */
+	static private class Block {
+		private final long offset;
+		private final int n_samples;
+		private final int s_bytes;
+		private final int length;
+		private Block(long o, int n, int sb, int len) {
+			offset = o;
+			n_samples = n;
+			s_bytes = sb;
+			length = len;
+		}
+	}
+
+	/** Series file */
+	private final File file;
+
+	/** File channel */
+	private final FileChannel channel;
+
+	/** Block index, by extension and date */
+	private final HashMap<String, TreeMap<Integer, Block>> index =
+		new HashMap<String, TreeMap<Integer, Block>>();
+
+	/** End of last complete block */
+	private long end = FILE_HEADER_LEN;
+
+	/** Open a sample series file.
+	 * @param f File to open.
+	 * @param write Open file for writing (creating if needed). */
+	public SampleSeriesFile(File f, boolean write) throws IOException {
+		file = f;
+		channel = new RandomAccessFile(f, write ? "rw" : "r")
+			.getChannel();
+		try {
+			if (channel.size() > 0)
+				readIndex();
+			else if (write)
+				writeFileHeader();
+			else
+				throw new IOException("Empty series: " + f);
+			// Discard any partially written block
+			if (write && channel.size() > end)
+				channel.truncate(end);
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Write the file header */
+	private void writeFileHeader() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(FILE_HEADER_LEN);
+		buf.putInt(MAGIC);
+		buf.putShort(VERSION);
+		buf.flip();
+		writeFully(buf, 0);
+	}
+
+	/** Read block headers into the index */
+	private void readIndex() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(BLOCK_HEADER_LEN);
+		buf.limit(FILE_HEADER_LEN);
+		if (!readFully(buf, 0))
+			throw new IOException("Bad header: " + file);
+		buf.flip();
+		if (buf.getInt() != MAGIC || buf.getShort() != VERSION)
+			throw new IOException("Bad header: " + file);
+		long size = channel.size();
+		long pos = FILE_HEADER_LEN;
+		byte[] e = new byte[EXT_LEN];
+		while (pos + BLOCK_HEADER_LEN <= size) {
+			buf.clear();
+			if (!readFully(buf, pos))
+				break;
+			buf.flip();
+			int date = buf.getInt();
+			buf.get(e);
+			int n_samples = buf.getInt();
+			int s_bytes = buf.get();
+			int len = buf.getInt();
+			long off = pos + BLOCK_HEADER_LEN;
+			if (n_samples < 0 || len < 0 || off + len > size)
+				break;
+			indexBlock(date, extension(e), new Block(off,
+				n_samples, s_bytes, len));
+			pos = off + len;
+			end = pos;
+		}
+	}
+
+	/** Get an extension from a zero-padded array */
+	static private String extension(byte[] e) {
+		int len = 0;
+		while (len < e.length && e[len] != 0)
+			len++;
+		return new String(e, 0, len, ASCII);
+	}
+
+	/** Add a block to the index */
+	private void indexBlock(int date, String ext, Block b) {
+		TreeMap<Integer, Block> days = index.get(ext);
+		if (null == days) {
+			days = new TreeMap<Integer, Block>();
+			index.put(ext, days);
+		}
+		days.put(date, b);
+	}
+
+	/** Append one day of raw sample data.
+	 * @param date Date (yyyymmdd).
+	 * @param ext Sample file extension (such as "v30").
+	 * @param raw Raw sample data.
+	 * @param s_bytes Bytes per sample. */
+	public void append(int date, String ext, byte[] raw, int s_bytes)
+		throws IOException
+	{
+		if (ext.length() == 0 || ext.length() > EXT_LEN)
+			throw new IOException("Invalid extension: " + ext);
+		byte[] enc = SampleSeriesCodec.encode(raw, s_bytes);
+		int n_samples = raw.length / s_bytes;
+		ByteBuffer buf = ByteBuffer.allocate(BLOCK_HEADER_LEN +
+			enc.length);
+		buf.putInt(date);
+		buf.put(Arrays.copyOf(ext.getBytes(ASCII), EXT_LEN));
+		buf.putInt(n_samples);
+		buf.put((byte) s_bytes);
+		buf.putInt(enc.length);
+		buf.put(enc);
+		buf.flip();
+		long pos = end;
+		writeFully(buf, pos);
+		end = pos + BLOCK_HEADER_LEN + enc.length;
+		indexBlock(date, ext, new Block(pos + BLOCK_HEADER_LEN,
+			n_samples, s_bytes, enc.length));
+	}
+
+	/** Get the sample file extensions in the series */
+	public String[] getExtensions() {
+		String[] exts = index.keySet().toArray(new String[0]);
+		Arrays.sort(exts);
+		return exts;
+	}
+
+	/** Read one day of raw sample data.
+	 * @param date Date (yyyymmdd).
+	 * @param ext Sample file extension.
+	 * @return Raw sample data, or null if not found. */
+	public byte[] read(int date, String ext) throws IOException {
+		TreeMap<Integer, Block> days = index.get(ext);
+		Block b = (days != null) ? days.get(date) : null;
+		return (b != null) ? decode(b) : null;
+	}
+
+	/** Read a range of days of raw sample data.
+	 * @param first First date (yyyymmdd, inclusive).
+	 * @param last Last date (yyyymmdd, inclusive).
+	 * @param ext Sample file extension.
+	 * @return Raw sample data, by date (only days which exist). */
+	public SortedMap<Integer, byte[]> readRange(int first, int last,
+		String ext) throws IOException
+	{
+		TreeMap<Integer, byte[]> data = new TreeMap<Integer, byte[]>();
+		TreeMap<Integer, Block> days = index.get(ext);
+		if (days != null && first <= last) {
+			for (Map.Entry<Integer, Block> e:
+			     days.subMap(first, true, last, true).entrySet())
+				data.put(e.getKey(), decode(e.getValue()));
+		}
+		return data;
+	}
+
+	/** Read and decode one block */
+	private byte[] decode(Block b) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(b.length);
+		if (!readFully(buf, b.offset))
+			throw new IOException("Truncated: " + file);
+		return SampleSeriesCodec.decode(buf.array(), b.n_samples,
+			b.s_bytes);
+	}
+
+	/** Read from the channel until a buffer is full.
+	 * @return false if end of file was reached. */
+	private boolean readFully(ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if (n < 0)
+				return false;
+			pos += n;
+		}
+		return true;
+	}
+
+	/** Write a buffer to the channel */
+	private void writeFully(ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining())
+			pos += channel.write(buf, pos);
+	}
+
+	/** Close the file */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/** Append all periodic samples in a traffic archive to series files.
+	 * Entries with unknown sample types are skipped.
+	 * @param traf Traffic archive file.
+	 * @param date Date of archive (yyyymmdd).
+	 * @param dir Directory containing series files.
+	 * @return Number of entries appended. */
+	static public int appendTraffic(File traf, int date, File dir)
+		throws IOException
+	{
+		if (!dir.exists() && !dir.mkdirs())
+			throw new IOException("mkdir failed: " + dir);
+		int n_entries = 0;
+		ZipFile zf = new ZipFile(traf);
+		try {
+			TreeMap<String, ArrayList<ZipEntry>> sensors =
+				groupBySensor(zf);
+			for (Map.Entry<String, ArrayList<ZipEntry>> s:
+			     sensors.entrySet())
+			{
+				File f = new File(dir, s.getKey() + "." + EXT);
+				SampleSeriesFile sf = new SampleSeriesFile(f,
+					true);
+				try {
+					for (ZipEntry ze: s.getValue()) {
+						sf.appendEntry(zf, ze, date);
+						n_entries++;
+					}
+				}
+				finally {
+					sf.close();
+				}
+			}
+		}
+		finally {
+			zf.close();
+		}
+		return n_entries;
+	}
+
+	/** Group periodic sample entries in a zip file by sensor ID */
+	static private TreeMap<String, ArrayList<ZipEntry>> groupBySensor(
+		ZipFile zf)
+	{
+		TreeMap<String, ArrayList<ZipEntry>> sensors =
+			new TreeMap<String, ArrayList<ZipEntry>>();
+		Enumeration<? extends ZipEntry> e = zf.entries();
+		while (e.hasMoreElements()) {
+			ZipEntry ze = e.nextElement();
+			String name = ze.getName();
+			int i = name.indexOf('.');
+			if (i > 0 && SampleSeriesCodec.sampleType(
+			    name.substring(i + 1)) != null)
+			{
+				String sid = name.substring(0, i);
+				ArrayList<ZipEntry> ents = sensors.get(sid);
+				if (null == ents) {
+					ents = new ArrayList<ZipEntry>();
+					sensors.put(sid, ents);
+				}
+				ents.add(ze);
+			}
+		}
+		return sensors;
+	}
+
+	/** Append one zip entry */
+	private void appendEntry(ZipFile zf, ZipEntry ze, int date)
+		throws IOException
+	{
+		String name = ze.getName();
+		String ext = name.substring(name.indexOf('.') + 1);
+		PeriodicSampleType st = SampleSeriesCodec.sampleType(ext);
+		append(date, ext, readEntry(zf, ze), st.sample_bytes);
+	}
+
+	/** Read all data from a zip entry */
+	static byte[] readEntry(ZipFile zf, ZipEntry ze)
+		throws IOException
+	{
+		InputStream is = zf.getInputStream(ze);
+		try {
+			byte[] buf = new byte[4096];
+			int n = 0;
+			while (true) {
+				if (n == buf.length)
+					buf = Arrays.copyOf(buf, n * 2);
+				int r = is.read(buf, n, buf.length - n);
+				if (r < 0)
+					break;
+				n += r;
+			}
+			return Arrays.copyOf(buf, n);
+		}
+		finally {
+			is.close();
+		}
+	}
+}
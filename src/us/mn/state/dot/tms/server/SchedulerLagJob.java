@@ -0,0 +1,48 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.Calendar;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * Job to measure scheduler lag.  It is scheduled at the start of every
+ * second, so the time past the second when it runs is how long other jobs
+ * on the same scheduler delayed it (modulo one second).
+ *
+ * @author Douglas Lau
+ */
+public class SchedulerLagJob extends Job {
+
+	/** Nanoseconds per millisecond */
+	static private final long NS_PER_MS = 1000000;
+
+	/** Lag histogram */
+	private final LatencyHistogram lag;
+
+	/** Create a new scheduler lag job.
+	 * @param sched Name of scheduler. */
+	public SchedulerLagJob(String sched) {
+		super(Calendar.SECOND, 1);
+		lag = ServerMetrics.histogram("sched." + sched + ".lag");
+	}
+
+	/** Perform the scheduler lag job */
+	@Override
+	public void perform() {
+		lag.record(TimeSteward.currentTimeMillis() % 1000 * NS_PER_MS);
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process registry of server metrics: latency histograms, counters and
+ * gauges, by name.  Metrics should be looked up once and kept, so that
+ * recording on a hot path is only an atomic update.  A snapshot of all
+ * metrics can be formatted as text, one metric per line, sorted by name.
+ *
+ * @author Douglas Lau
+ */
+public class ServerMetrics {
+
+	/** A gauge is sampled when a snapshot is taken */
+	public interface Gauge {
+
+		/** Get the current value */
+		long getValue();
+	}
+
+	/** Nanoseconds per microsecond */
+	static private final long NS_PER_US = 1000;
+
+	/** Latency histograms */
+	static private final ConcurrentSkipListMap<String, LatencyHistogram>
+		HISTOGRAMS = new ConcurrentSkipListMap<String,
+		LatencyHistogram>();
+
+	/** Counters */
+	static private final ConcurrentSkipListMap<String, AtomicLong>
+		COUNTERS = new ConcurrentSkipListMap<String, AtomicLong>();
+
+	/** Gauges */
+	static private final ConcurrentSkipListMap<String, Gauge> GAUGES =
+		new ConcurrentSkipListMap<String, Gauge>();
+
+	/** Get or create a latency histogram.
+	 * @param name Metric name.
+	 * @return Histogram with the given name. */
+	static public LatencyHistogram histogram(String name) {
+		LatencyHistogram h = HISTOGRAMS.get(name);
+		if (null == h) {
+			LatencyHistogram nh = new LatencyHistogram();
+			h = HISTOGRAMS.putIfAbsent(name, nh);
+			if (null == h)
+				h = nh;
+		}
+		return h;
+	}
+
+	/** Get or create a counter.
+	 * @param name Metric name.
+	 * @return Counter with the given name. */
+	static public AtomicLong counter(String name) {
+		AtomicLong c = COUNTERS.get(name);
+		if (null == c) {
+			AtomicLong nc = new AtomicLong();
+			c = COUNTERS.putIfAbsent(name, nc);
+			if (null == c)
+				c = nc;
+		}
+		return c;
+	}
+
+	/** Add a gauge, replacing any gauge with the same name.
+	 * @param name Metric name.
+	 * @param g Gauge to sample. */
+	static public void addGauge(String name, Gauge g) {
+		GAUGES.put(name, g);
+	}
+
+	/** Remove a gauge, if it has not been replaced.
+	 * @param name Metric name.
+	 * @param g Gauge to remove. */
+	static public void removeGauge(String name, Gauge g) {
+		GAUGES.remove(name, g);
+	}
+
+	/** Format a snapshot of all metrics as text.  Histogram values are
+	 * in microseconds. */
+	static public String snapshot() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, AtomicLong> e: COUNTERS.entrySet()) {
+			sb.append(e.getKey()).append(" count=");
+			sb.append(e.getValue().get()).append('\n');
+		}
+		for (Map.Entry<String, Gauge> e: GAUGES.entrySet()) {
+			sb.append(e.getKey()).append(" value=");
+			sb.append(e.getValue().getValue()).append('\n');
+		}
+		for (Map.Entry<String, LatencyHistogram> e:
+		     HISTOGRAMS.entrySet())
+		{
+			sb.append(e.getKey());
+			formatHistogram(sb, e.getValue());
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/** Format a latency histogram */
+	static private void formatHistogram(StringBuilder sb,
+		LatencyHistogram h)
+	{
+		sb.append(" count=").append(h.getCount());
+		sb.append(" mean_us=").append(h.getMean() / NS_PER_US);
+		sb.append(" p50_us=").append(h.getPercentile(50) / NS_PER_US);
+		sb.append(" p90_us=").append(h.getPercentile(90) / NS_PER_US);
+		sb.append(" p99_us=").append(h.getPercentile(99) / NS_PER_US);
+		sb.append(" max_us=").append(h.getMax() / NS_PER_US);
+	}
+
+	/** Write a snapshot of all metrics to a file.  The snapshot is written
+	 * to a temp file first, so readers never see a partial file.
+	 * @param f File to write. */
+	static public void writeFile(File f) throws IOException {
+		File tmp = new File(f.getPath() + "~");
+		FileWriter fw = new FileWriter(tmp);
+		try {
+			fw.write(snapshot());
+		}
+		finally {
+			fw.close();
+		}
+		if (!tmp.renameTo(f))
+			throw new IOException("Rename failed: " + f);
+	}
+}
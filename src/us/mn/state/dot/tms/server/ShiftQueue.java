@@ -0,0 +1,117 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A delay queue of scheduled moves, such as camera preset shifts.  Moves
+ * are scheduled in batches, with a pause between batches.  Dispatching
+ * never waits: it performs all moves which are due, and returns.
+ *
+ * @author Douglas Lau
+ */
+public class ShiftQueue<T> {
+
+	/** Mover for items in the queue */
+	public interface Mover<T> {
+
+		/** Move one item */
+		void move(T item);
+	}
+
+	/** Nanoseconds per millisecond */
+	static private final long NS_PER_MS = 1000000;
+
+	/** One scheduled move */
+	private final class Move implements Delayed {
+		private final T item;
+		private final long due;
+		private final long seq;
+		private Move(T i, long d, long s) {
+			item = i;
+			due = d;
+			seq = s;
+		}
+		@Override
+		public long getDelay(TimeUnit u) {
+			return u.convert(due - nanoTime(),
+				TimeUnit.NANOSECONDS);
+		}
+		@Override
+		public int compareTo(Delayed o) {
+			Move m = (Move) o;
+			if (due != m.due)
+				return (due - m.due < 0) ? -1 : 1;
+			else
+				return Long.compare(seq, m.seq);
+		}
+	}
+
+	/** Queue of scheduled moves */
+	private final DelayQueue<Move> queue = new DelayQueue<Move>();
+
+	/** Sequence number, to keep moves due at the same time in order */
+	private final AtomicLong seq = new AtomicLong();
+
+	/** Get the current time for scheduling moves.  This can be
+	 * overridden to test without depending on the wall clock.
+	 * @return Time (ns), as from System.nanoTime. */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/** Schedule moves in batches.  The first batch is due immediately.
+	 * @param items Items to move, in order.
+	 * @param batch Number of items in each batch.
+	 * @param pause_ms Pause between batches (ms). */
+	public void schedule(List<T> items, int batch, long pause_ms) {
+		long now = nanoTime();
+		int b = Math.max(batch, 1);
+		for (int i = 0; i < items.size(); i++) {
+			long due = now + (i / b) * pause_ms * NS_PER_MS;
+			queue.add(new Move(items.get(i), due,
+				seq.getAndIncrement()));
+		}
+	}
+
+	/** Dispatch all moves which are due, without waiting.
+	 * @param m Mover to perform moves.
+	 * @return Number of moves performed. */
+	public int dispatch(Mover<T> m) {
+		int n = 0;
+		Move mv = queue.poll();
+		while (mv != null) {
+			m.move(mv.item);
+			n++;
+			mv = queue.poll();
+		}
+		return n;
+	}
+
+	/** Get the number of scheduled moves */
+	public int size() {
+		return queue.size();
+	}
+
+	/** Clear all scheduled moves */
+	public void clear() {
+		queue.clear();
+	}
+}
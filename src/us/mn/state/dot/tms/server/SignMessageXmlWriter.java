@@ -29,25 +29,19 @@ import us.mn.state.dot.tms.DMSHelper;
  * @author Douglas Lau
  * @author Michael Darter
  */
-public class SignMessageXmlWriter extends XmlWriter {
+public class SignMessageXmlWriter extends XmlFragmentWriter {
 
 	/** XML file */
 	static private final String SIGN_MESSAGE_XML = "sign_message.xml";
 
 	/** Create a new sign message XML writer */
 	public SignMessageXmlWriter() {
-		super(SIGN_MESSAGE_XML, true);
-	}
-
-	/** Write the sign message XML file */
-	@Override protected void write(Writer w) throws IOException {
-		writeHead(w);
-		writeBody(w);
-		writeTail(w);
+		super(SIGN_MESSAGE_XML, true, "sign_message");
 	}
 
 	/** Write the head of the sign message XML file */
-	private void writeHead(Writer w) throws IOException {
+	@Override
+	protected void writeHead(Writer w) throws IOException {
 		w.write(XML_DECLARATION);
 		writeDtd(w);
 		w.write("<sign_messages time_stamp='" +
@@ -74,17 +68,23 @@ public class SignMessageXmlWriter extends XmlWriter {
 	}
 
 	/** Write the body of the sign message XML file */
-	private void writeBody(Writer w) throws IOException {
+	@Override
+	protected void writeBody() throws IOException {
 		Iterator<DMS> it = DMSHelper.iterator();
 		while(it.hasNext()) {
 			DMS dms = it.next();
-			if(dms instanceof DMSImpl)
-				((DMSImpl)dms).writeSignMessageXml(w);
+			if(dms instanceof DMSImpl) {
+				DMSImpl d = (DMSImpl)dms;
+				Writer w = fragment(d, d.getSignMessageStamp());
+				if(w != null)
+					d.writeSignMessageXml(w);
+			}
 		}
 	}
 
 	/** Write the tail of the sign message XML file */
-	private void writeTail(Writer w) throws IOException {
+	@Override
+	protected void writeTail(Writer w) throws IOException {
 		w.write("</sign_messages>\n");
 	}
 }
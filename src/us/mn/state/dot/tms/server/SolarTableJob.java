@@ -0,0 +1,41 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.Calendar;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.tms.CameraHelper;
+
+/**
+ * Job to compute solar events (sunrise and sunset) for a new day.
+ *
+ * @author Douglas Lau
+ */
+public class SolarTableJob extends Job {
+
+	/** Seconds to offset from midnight */
+	static private final int OFFSET_SECS = 5;
+
+	/** Create a new solar table job */
+	public SolarTableJob() {
+		super(Calendar.DATE, 1, Calendar.SECOND, OFFSET_SECS);
+	}
+
+	/** Perform the solar table job */
+	@Override
+	public void perform() {
+		CameraHelper.updateSolarTable();
+	}
+}
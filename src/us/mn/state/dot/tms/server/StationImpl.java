@@ -436,6 +436,16 @@ public class StationImpl implements Station, VehicleSampler {
 		w.write("/>\n");
 	}
 
+	/** Write the current sample to a binary sample feed */
+	public void writeSampleFeed(SampleFeedWriter sf) {
+		if(!getActive())
+			return;
+		int s = Math.round(getSpeed());
+		int t = getTravelTimeRoutes();
+		sf.add(name, getFlow(), (s > 0) ? s : MISSING_DATA,
+			(t > 0) ? t : MISSING_DATA);
+	}
+
 	/** Get the station index */
 	private String getIndex() {
 		if(name.startsWith("S"))
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2004-2014  Minnesota Department of Transportation
+ * Copyright (C) 2004-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -31,6 +31,9 @@ class StationManager {
 	/** Location of station sample XML file */
 	static private final String SAMPLE_XML = "stat_sample.xml";
 
+	/** Name of station sample feed */
+	static private final String SAMPLE_FEED = "stat_sample";
+
 	/** DTD in single location */
 	static protected final String DTD_TRAF_SAMP = new StringBuilder()
 		.append("<!DOCTYPE traffic_sample [\n")
@@ -46,6 +49,9 @@ class StationManager {
 		.append("]>\n")
 		.toString();
 
+	/** Binary sample feed writer */
+	private final SampleFeedWriter feed_writer =
+		new SampleFeedWriter(SAMPLE_FEED);
 
 	/** Calculate the current data for all stations */
 	public void calculateData() {
@@ -59,18 +65,45 @@ class StationManager {
 		}
 	}
 
+	/** Station sample XML writer */
+	private final XmlFragmentWriter sample_writer =
+		new XmlFragmentWriter(SAMPLE_XML, true, "station_sample")
+	{
+		@Override protected boolean isSkipUnchanged() {
+			// Each sample period must be written
+			return false;
+		}
+		@Override protected void writeHead(Writer w)
+			throws IOException
+		{
+			writeSampleXmlHead(w);
+		}
+		@Override protected void writeBody() throws IOException {
+			writeSampleXmlBody(this);
+		}
+		@Override protected void writeTail(Writer w)
+			throws IOException
+		{
+			writeSampleXmlTail(w);
+		}
+	};
+
 	/** Write the station sample data out as XML */
 	public void writeSampleXml() throws IOException {
-		XmlWriter w = new XmlWriter(SAMPLE_XML, true) {
-			@Override protected void write(Writer w)
-				throws IOException
-			{
-				writeSampleXmlHead(w);
-				writeSampleXmlBody(w);
-				writeSampleXmlTail(w);
+		sample_writer.write();
+	}
+
+	/** Write the station sample data out as a binary feed */
+	public void writeSampleFeed() throws IOException {
+		Iterator<Station> it = StationHelper.iterator();
+		while(it.hasNext()) {
+			Station s = it.next();
+			if(s instanceof StationImpl) {
+				StationImpl si = (StationImpl)s;
+				si.writeSampleFeed(feed_writer);
 			}
-		};
-		w.write();
+		}
+		feed_writer.write(TimeSteward.currentTimeMillis());
 	}
 
 	/** Print the header of the station sample XML file */
@@ -87,13 +120,15 @@ class StationManager {
 	}
 
 	/** Print the body of the station sample XML file */
-	private void writeSampleXmlBody(Writer w) throws IOException {
+	private void writeSampleXmlBody(XmlFragmentWriter xw)
+		throws IOException
+	{
 		Iterator<Station> it = StationHelper.iterator();
 		while(it.hasNext()) {
 			Station s = it.next();
 			if(s instanceof StationImpl) {
 				StationImpl si = (StationImpl)s;
-				si.writeSampleXml(w);
+				si.writeSampleXml(xw.fragment(si));
 			}
 		}
 	}
@@ -175,7 +175,7 @@ public class StratifiedAlgorithm implements MeterAlgorithmState {
 
 	/** Get a stamp of the current 30 second interval */
 	static public String stamp_30() {
-		int i30 = TimeSteward.currentSecondOfDayInt() / 30 + 1;
+		int i30 = MeterClock.currentSecondOfDayInt() / 30 + 1;
 		StringBuilder b = new StringBuilder();
 		b.append(i30 / 120);
 		while(b.length() < 2)
@@ -347,7 +347,7 @@ public class StratifiedAlgorithm implements MeterAlgorithmState {
 
 		/** Check if we're in the flushing window */
 		protected boolean isFlushing() {
-			int min = TimeSteward.currentMinuteOfDayInt();
+			int min = MeterClock.currentMinuteOfDayInt();
 			int stop_min = meter.getStopMin();
 			return min >= stop_min - FLUSH_MINUTES &&
 			       min <= stop_min;
@@ -355,7 +355,7 @@ public class StratifiedAlgorithm implements MeterAlgorithmState {
 
 		/** Check if we're in the first half of the plan window */
 		protected boolean isFirstHalf() {
-			int min = TimeSteward.currentMinuteOfDayInt();
+			int min = MeterClock.currentMinuteOfDayInt();
 			return min * 2 < meter.getStartMin()+meter.getStopMin();
 		}
 
@@ -0,0 +1,68 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.tms.TagReader;
+import us.mn.state.dot.tms.TagReaderHelper;
+import us.mn.state.dot.tms.TMSException;
+import us.mn.state.dot.tms.server.event.BaseEvent;
+import us.mn.state.dot.tms.server.event.TagReadEvent;
+
+/**
+ * Job to drain tag reads from all tag readers, and store them in one
+ * database batch.
+ *
+ * @author Douglas Lau
+ */
+public class TagReadJob extends Job {
+
+	/** Create a new tag read job */
+	public TagReadJob() {
+		super(Calendar.SECOND, 1);
+	}
+
+	/** Perform the tag read job */
+	@Override
+	public void perform() throws TMSException {
+		ArrayList<TagReadEvent> evs = new ArrayList<TagReadEvent>();
+		Iterator<TagReader> it = TagReaderHelper.iterator();
+		while (it.hasNext()) {
+			TagReader tr = it.next();
+			if (tr instanceof TagReaderImpl)
+				((TagReaderImpl) tr).drainReads(evs);
+		}
+		if (evs.size() > 0)
+			storeBatch(evs);
+	}
+
+	/** Store a batch of tag read events.  If the batch fails, it is
+	 * logged with the number of reads lost. */
+	private void storeBatch(ArrayList<TagReadEvent> evs)
+		throws TMSException
+	{
+		try {
+			BaseEvent.store.createBatch(evs);
+		}
+		catch (TMSException e) {
+			TollZoneImpl.TOLL_LOG.log("Tag read batch failed, " +
+				evs.size() + " reads lost: " + e.getMessage());
+			throw e;
+		}
+	}
+}
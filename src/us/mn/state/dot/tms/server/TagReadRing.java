@@ -0,0 +1,214 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded ring of tag (transponder) reads for one tag reader.  Reads can
+ * be offered by any thread without locking, and are drained in order by a
+ * single consumer thread.  Each slot has a sequence number, which a producer
+ * publishes after writing the slot, so the consumer never sees a partly
+ * written read.  If the ring is full, new reads are dropped.
+ *
+ * When draining, repeat reads of the same tag within a time window of the
+ * last passed read are skipped.
+ *
+ * @author Douglas Lau
+ */
+public class TagReadRing {
+
+	/** Consumer of drained tag reads */
+	public interface Consumer {
+
+		/** Consume one tag read.
+		 * @param stamp Timestamp of read event.
+		 * @param tt Tag type.
+		 * @param agency Agency ID (may be null).
+		 * @param tid Tag (transponder) ID.
+		 * @param hov HOV switch flag. */
+		void read(long stamp, TagType tt, Integer agency, int tid,
+			boolean hov);
+	}
+
+	/** Bit for a missing agency in a tag key */
+	static private final long NO_AGENCY = 1L << 16;
+
+	/** Shift for tag type in a tag key */
+	static private final int TYPE_SHIFT = 49;
+
+	/** HOV flag in a packed read */
+	static private final long HOV = 1L << 50;
+
+	/** Mask for tag key in a packed read */
+	static private final long KEY_MASK = HOV - 1;
+
+	/** Get a key which identifies one tag.
+	 * @param tt Tag type.
+	 * @param agency Agency ID (16 bits, may be null).
+	 * @param tid Tag (transponder) ID.
+	 * @return Tag key. */
+	static public long tagKey(TagType tt, Integer agency, int tid) {
+		long ag = (agency != null) ? (agency & 0xFFFF) : NO_AGENCY;
+		return ((long) tt.ordinal() << TYPE_SHIFT) | (ag << 32) |
+			(tid & 0xFFFFFFFFL);
+	}
+
+	/** Get the tag type from a tag key */
+	static private TagType tagType(long key) {
+		return TagType.values()[(int) (key >>> TYPE_SHIFT)];
+	}
+
+	/** Get the agency ID from a tag key */
+	static private Integer agency(long key) {
+		long ag = (key >>> 32) & (NO_AGENCY | 0xFFFF);
+		return (ag != NO_AGENCY) ? Integer.valueOf((int) ag) : null;
+	}
+
+	/** Mask for slot index */
+	private final int mask;
+
+	/** Slot sequence numbers */
+	private final AtomicLongArray seq;
+
+	/** Read timestamps */
+	private final long[] stamps;
+
+	/** Packed reads (tag key and HOV flag) */
+	private final long[] reads;
+
+	/** Position of next slot to claim (producers) */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** Position of next slot to drain (consumer only) */
+	private long head = 0;
+
+	/** Count of dropped reads (ring full) */
+	private final AtomicLong n_dropped = new AtomicLong();
+
+	/** Count of skipped repeat reads */
+	private long n_repeats = 0;
+
+	/** Timestamp of last passed read, by tag key (consumer only) */
+	private final HashMap<Long, Long> passed = new HashMap<Long, Long>();
+
+	/** Latest drained timestamp (consumer only) */
+	private long latest = 0;
+
+	/** Create a new tag read ring.
+	 * @param size Number of slots (rounded up to a power of 2). */
+	public TagReadRing(int size) {
+		int n = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+		mask = n - 1;
+		seq = new AtomicLongArray(n);
+		for (int i = 0; i < n; i++)
+			seq.set(i, i);
+		stamps = new long[n];
+		reads = new long[n];
+	}
+
+	/** Get the number of slots */
+	public int size() {
+		return mask + 1;
+	}
+
+	/** Offer a tag read to the ring.
+	 * @param stamp Timestamp of read event.
+	 * @param tt Tag type.
+	 * @param agency Agency ID (may be null).
+	 * @param tid Tag (transponder) ID.
+	 * @param hov HOV switch flag.
+	 * @return true if added, false if the ring was full. */
+	public boolean offer(long stamp, TagType tt, Integer agency, int tid,
+		boolean hov)
+	{
+		long pos = tail.get();
+		while (true) {
+			long dif = seq.get((int) pos & mask) - pos;
+			if (0 == dif) {
+				if (tail.compareAndSet(pos, pos + 1))
+					break;
+				pos = tail.get();
+			} else if (dif < 0) {
+				n_dropped.incrementAndGet();
+				return false;
+			} else
+				pos = tail.get();
+		}
+		int i = (int) pos & mask;
+		stamps[i] = stamp;
+		reads[i] = tagKey(tt, agency, tid) | (hov ? HOV : 0);
+		seq.lazySet(i, pos + 1);
+		return true;
+	}
+
+	/** Drain all published reads from the ring, in order.  This must
+	 * only be called by one thread at a time.
+	 * @param window_ms Window to skip repeat reads of a tag (ms).
+	 * @param c Consumer of reads which are not repeats.
+	 * @return Number of reads passed to the consumer. */
+	public int drain(long window_ms, Consumer c) {
+		int n_passed = 0;
+		while (true) {
+			int i = (int) head & mask;
+			if (seq.get(i) != head + 1)
+				break;
+			long stamp = stamps[i];
+			long read = reads[i];
+			seq.lazySet(i, head + mask + 1);
+			head++;
+			long key = read & KEY_MASK;
+			if (isRepeat(key, stamp, window_ms)) {
+				n_repeats++;
+				continue;
+			}
+			passed.put(key, stamp);
+			latest = Math.max(latest, stamp);
+			c.read(stamp, tagType(key), agency(key), (int) key,
+				(read & HOV) != 0);
+			n_passed++;
+		}
+		purgePassed(window_ms);
+		return n_passed;
+	}
+
+	/** Check if a read is a repeat of a recently passed read */
+	private boolean isRepeat(long key, long stamp, long window_ms) {
+		Long last = passed.get(key);
+		return last != null && Math.abs(stamp - last) < window_ms;
+	}
+
+	/** Purge passed reads which are older than the window */
+	private void purgePassed(long window_ms) {
+		Iterator<Long> it = passed.values().iterator();
+		while (it.hasNext()) {
+			if (latest - it.next() >= window_ms)
+				it.remove();
+		}
+	}
+
+	/** Get the count of dropped reads (ring full) */
+	public long getDropped() {
+		return n_dropped.get();
+	}
+
+	/** Get the count of skipped repeat reads (consumer thread only) */
+	public long getRepeats() {
+		return n_repeats;
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2014-2015  Minnesota Department of Transportation
+ * Copyright (C) 2014-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,9 +16,12 @@ package us.mn.state.dot.tms.server;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.sql.ResultSet;
+import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.tms.ChangeVetoException;
 import us.mn.state.dot.tms.DeviceRequest;
@@ -227,7 +230,47 @@ public class TagReaderImpl extends DeviceImpl implements TagReader {
 		     : null;
 	}
 
-	/** Log a tag (transponder) read event.
+	/** Number of slots in tag read ring */
+	static private final int RING_SIZE = 4096;
+
+	/** Window to skip repeat reads of a tag (ms) */
+	static private volatile long dedup_ms = 10 * 1000;
+
+	/** Set the window to skip repeat reads of a tag.
+	 * @param s Window (seconds). */
+	static public void setDedupSecs(int s) {
+		dedup_ms = s * 1000L;
+	}
+
+	/** Counter of tag reads dropped because a ring was full */
+	static private final AtomicLong DROPPED =
+		ServerMetrics.counter("tag_reader.dropped");
+
+	/** Counter of repeat tag reads skipped */
+	static private final AtomicLong REPEATS =
+		ServerMetrics.counter("tag_reader.repeats");
+
+	/** Minimum interval between dropped read log messages (ms) */
+	static private final long DROP_LOG_MS = 60 * 1000;
+
+	/** Ring of tag reads waiting to be drained */
+	private transient final TagReadRing reads = new TagReadRing(RING_SIZE);
+
+	/** Dropped reads counted so far (drain thread only) */
+	private transient long n_dropped = 0;
+
+	/** Repeat reads counted so far (drain thread only) */
+	private transient long n_repeats = 0;
+
+	/** Dropped reads not yet logged (drain thread only) */
+	private transient long drops_unlogged = 0;
+
+	/** Time of most recent dropped read log message (drain thread only) */
+	private transient long drop_log_time = 0;
+
+	/** Log a tag (transponder) read event.  The read is added to a ring
+	 * without locking, and stored later by TagReadJob.  If the ring is
+	 * full, the read is dropped, and counted when the ring is drained.
 	 * @param stamp Timestamp of read event.
 	 * @param tt Tag Type.
 	 * @param agency Agency ID.
@@ -236,8 +279,52 @@ public class TagReaderImpl extends DeviceImpl implements TagReader {
 	public void logRead(long stamp, TagType tt, Integer agency, int tid,
 		boolean hov)
 	{
-		TagReadEvent ev = new TagReadEvent(EventType.TAG_READ,
-			new Date(stamp), tt.ordinal(), agency, tid, name, hov);
-		logEvent(ev);
+		reads.offer(stamp, tt, agency, tid, hov);
+	}
+
+	/** Drain tag reads from the ring.  Repeat reads of a tag are skipped,
+	 * and other reads are added to the toll zone and a list of events.
+	 * This must only be called by one thread at a time.
+	 * @param evs List to add tag read events. */
+	public void drainReads(final List<TagReadEvent> evs) {
+		TollZone tz = toll_zone;
+		final TollZoneImpl zone = (tz instanceof TollZoneImpl)
+		                        ? (TollZoneImpl) tz
+		                        : null;
+		reads.drain(dedup_ms, new TagReadRing.Consumer() {
+			public void read(long stamp, TagType tt, Integer agency,
+				int tid, boolean hov)
+			{
+				evs.add(new TagReadEvent(EventType.TAG_READ,
+					new Date(stamp), tt.ordinal(), agency,
+					tid, name, hov));
+				if (zone != null) {
+					zone.addTagRead(stamp, TagReadRing
+						.tagKey(tt, agency, tid), name);
+				}
+			}
+		});
+		countReads();
+	}
+
+	/** Count dropped and repeat reads since the last drain.  Drops are
+	 * logged at most once per minute. */
+	private void countReads() {
+		long d = reads.getDropped();
+		long r = reads.getRepeats();
+		DROPPED.addAndGet(d - n_dropped);
+		REPEATS.addAndGet(r - n_repeats);
+		drops_unlogged += d - n_dropped;
+		n_dropped = d;
+		n_repeats = r;
+		long now = TimeSteward.currentTimeMillis();
+		if (drops_unlogged > 0 && now - drop_log_time >= DROP_LOG_MS) {
+			if (TollZoneImpl.TOLL_LOG.isOpen()) {
+				TollZoneImpl.TOLL_LOG.log(name + ": dropped " +
+					drops_unlogged + " reads (ring full)");
+			}
+			drops_unlogged = 0;
+			drop_log_time = now;
+		}
 	}
 }
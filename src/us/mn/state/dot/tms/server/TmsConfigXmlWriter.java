@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2013  Minnesota Department of Transportation
+ * Copyright (C) 2012-2016  Minnesota Department of Transportation
  * Copyright (C) 2011  Berkeley Transportation Systems Inc.
  * Copyright (C) 2012  Iteris Inc.
  *
@@ -39,7 +39,7 @@ import us.mn.state.dot.tms.RampMeterHelper;
  * @author Douglas Lau
  * @author Michael Darter
  */
-public class TmsConfigXmlWriter extends XmlWriter {
+public class TmsConfigXmlWriter extends XmlFragmentWriter {
 
 	/** TMS config XML file */
 	static private final String CONFIG_XML = "_config.xml";
@@ -53,15 +53,9 @@ public class TmsConfigXmlWriter extends XmlWriter {
 		manager = cm;
 	}
 
-	/** Write the TMS config XML file */
-	@Override protected void write(Writer w) throws IOException {
-		writeHead(w);
-		writeBody(w);
-		writeTail(w);
-	}
-
 	/** Write the head of the TMS config XML file */
-	private void writeHead(Writer w) throws IOException {
+	@Override
+	protected void writeHead(Writer w) throws IOException {
 		w.write(XML_DECLARATION);
 		writeDtd(w);
 		w.write("<tms_config time_stamp='" +
@@ -165,12 +159,13 @@ public class TmsConfigXmlWriter extends XmlWriter {
 	}
 
 	/** Write the body of the TMS config XML file */
-	private void writeBody(Writer w) throws IOException {
-		writeRNodeBody(w);
-		writeCameraBody(w);
-		writeCommLinkBody(w);
-		writeControllerBody(w);
-		writeDmsBody(w);
+	@Override
+	protected void writeBody() throws IOException {
+		writeRNodeBody(fragment(manager));
+		writeCameraBody();
+		writeCommLinkBody();
+		writeControllerBody();
+		writeDmsBody();
 	}
 
 	/** Write the r_node elements */
@@ -196,47 +191,48 @@ public class TmsConfigXmlWriter extends XmlWriter {
 	}
 
 	/** Write the camera elements */
-	private void writeCameraBody(Writer w) throws IOException {
+	private void writeCameraBody() throws IOException {
 		Iterator<Camera> it = CameraHelper.iterator();
 		while(it.hasNext()) {
 			Camera c = it.next();
 			if(c instanceof CameraImpl)
-				((CameraImpl)c).writeXml(w);
+				((CameraImpl)c).writeXml(fragment(c));
 		}
 	}
 
 	/** Write the comm link elements */
-	private void writeCommLinkBody(Writer w) throws IOException {
+	private void writeCommLinkBody() throws IOException {
 		Iterator<CommLink> it = CommLinkHelper.iterator();
 		while(it.hasNext()) {
 			CommLink cl = it.next();
 			if(cl instanceof CommLinkImpl)
-				((CommLinkImpl)cl).writeXml(w);
+				((CommLinkImpl)cl).writeXml(fragment(cl));
 		}
 	}
 
 	/** Write the controller elements */
-	private void writeControllerBody(Writer w) throws IOException {
+	private void writeControllerBody() throws IOException {
 		Iterator<Controller> it = ControllerHelper.iterator();
 		while(it.hasNext()) {
 			Controller c = it.next();
 			if(c instanceof ControllerImpl)
-				((ControllerImpl)c).writeXml(w);
+				((ControllerImpl)c).writeXml(fragment(c));
 		}
 	}
 
 	/** Write the DMS elements */
-	private void writeDmsBody(Writer w) throws IOException {
+	private void writeDmsBody() throws IOException {
 		Iterator<DMS> it = DMSHelper.iterator();
 		while(it.hasNext()) {
 			DMS dms = it.next();
 			if(dms instanceof DMSImpl)
-				((DMSImpl)dms).writeXml(w);
+				((DMSImpl)dms).writeXml(fragment(dms));
 		}
 	}
 
 	/** Write the tail of the TMS config XML file */
-	private void writeTail(Writer w) throws IOException {
+	@Override
+	protected void writeTail(Writer w) throws IOException {
 		w.write("</tms_config>\n");
 	}
 }
@@ -34,11 +34,14 @@ import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
 public class TollZoneImpl extends BaseObjectImpl implements TollZone {
 
 	/** Toll zone debug log */
-	static private final DebugLog TOLL_LOG = new DebugLog("toll");
+	static final DebugLog TOLL_LOG = new DebugLog("toll");
 
 	/** Maximum number of time steps needed for sample history */
 	static private final int MAX_STEPS = 12;
 
+	/** Maximum trip time between two tag readers (ms) */
+	static private final long MAX_TRIP_MS = 30 * 60 * 1000;
+
 	/** Magic constant to convert density to price dollars */
 	static private final double ALPHA = 0.045;
 
@@ -181,7 +184,7 @@ public class TollZoneImpl extends BaseObjectImpl implements TollZone {
 		 * @param np New period.
 		 * @param k Current density. */
 		void updateDensity(boolean np, double k) {
-			hist.push((k >= 0) ? k : null);
+			hist.push(k);
 			if (np)
 				density = hist.average();
 		}
@@ -249,6 +252,86 @@ public class TollZoneImpl extends BaseObjectImpl implements TollZone {
 			double k = e.getKey().getDensity();
 			e.getValue().updateDensity(np, k);
 		}
+		updateTagHistory();
+	}
+
+	/** Last read of one tag in the toll zone */
+	static private class TagSighting {
+		private final long stamp;
+		private final String reader;
+		private TagSighting(long st, String r) {
+			stamp = st;
+			reader = r;
+		}
+	}
+
+	/** Mapping of tag keys to last read */
+	private transient final HashMap<Long, TagSighting> sightings =
+		new HashMap<Long, TagSighting>();
+
+	/** Tag read history for 6 minutes (reads per time step) */
+	private transient final BoundedSampleHistory read_hist =
+		new BoundedSampleHistory(MAX_STEPS);
+
+	/** Latest tag read time stamp */
+	private transient long latest_read = 0;
+
+	/** Count of tag reads in current time step */
+	private transient int n_reads = 0;
+
+	/** Count of matched trips in current time step */
+	private transient int n_trips = 0;
+
+	/** Total time of matched trips in current time step (ms) */
+	private transient long trip_ms = 0;
+
+	/** Add a tag read from a tag reader in the toll zone.  If the same
+	 * tag was last read by a different reader within the maximum trip
+	 * time, the two reads are matched as one trip.
+	 * @param stamp Timestamp of read event.
+	 * @param key Tag key (from TagReadRing.tagKey).
+	 * @param reader Name of tag reader. */
+	public synchronized void addTagRead(long stamp, long key,
+		String reader)
+	{
+		n_reads++;
+		latest_read = Math.max(latest_read, stamp);
+		TagSighting ts = sightings.put(key,
+			new TagSighting(stamp, reader));
+		if (ts != null && !ts.reader.equals(reader)) {
+			long t = stamp - ts.stamp;
+			if (t > 0 && t <= MAX_TRIP_MS) {
+				n_trips++;
+				trip_ms += t;
+			}
+		}
+	}
+
+	/** Update tag read history for one time step */
+	private void updateTagHistory() {
+		read_hist.push(n_reads);
+		if (isLogging() && n_reads > 0) {
+			log("tag reads: " + n_reads + ", trips: " + n_trips +
+			    ", avg trip: " + avgTripSecs() + " s");
+		}
+		n_reads = 0;
+		n_trips = 0;
+		trip_ms = 0;
+		Iterator<TagSighting> it = sightings.values().iterator();
+		while (it.hasNext()) {
+			if (latest_read - it.next().stamp > MAX_TRIP_MS)
+				it.remove();
+		}
+	}
+
+	/** Get the average trip time in current time step (seconds) */
+	private long avgTripSecs() {
+		return (n_trips > 0) ? trip_ms / n_trips / 1000 : 0;
+	}
+
+	/** Get the average tag reads per 30-second time step */
+	public synchronized Double getTagReads() {
+		return read_hist.average();
 	}
 
 	/** Get the current toll zone price.
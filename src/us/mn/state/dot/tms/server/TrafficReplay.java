@@ -0,0 +1,206 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * Traffic replay holds one day of 30-second detector samples, loaded from a
+ * .traffic sample archive.  Volume, scan count (or occupancy) and speed are
+ * kept for each detector, to be replayed one interval at a time.
+ *
+ * @author Douglas Lau
+ */
+public class TrafficReplay {
+
+	/** Sample period (seconds) */
+	static public final int PERIOD_SEC = 30;
+
+	/** Number of sample intervals per day */
+	static public final int STEPS = 24 * 3600 / PERIOD_SEC;
+
+	/** Samples for one detector */
+	static public class Samples {
+
+		/** Volume samples */
+		private final int[] vol = missing();
+
+		/** Scan count samples (60 Hz) */
+		private final int[] scans = missing();
+
+		/** Speed samples (mph) */
+		private final int[] speed = missing();
+
+		/** Get the volume for one interval */
+		public int getVolume(int step) {
+			return vol[step];
+		}
+
+		/** Get the scan count for one interval */
+		public int getScans(int step) {
+			return scans[step];
+		}
+
+		/** Get the speed for one interval */
+		public int getSpeed(int step) {
+			return speed[step];
+		}
+	}
+
+	/** Create an array of missing samples */
+	static private int[] missing() {
+		int[] s = new int[STEPS];
+		Arrays.fill(s, MISSING_DATA);
+		return s;
+	}
+
+	/** Convert an occupancy (0 - 10000) to a 30-second scan count */
+	static private int occToScans(int occ) {
+		return new OccupancySample(0, PERIOD_SEC, occ,
+			OccupancySample.MAX).as60HzScans();
+	}
+
+	/** Samples by detector ID */
+	private final TreeMap<String, Samples> samples =
+		new TreeMap<String, Samples>();
+
+	/** Create an empty traffic replay */
+	public TrafficReplay() { }
+
+	/** Load a traffic replay from a sample archive.
+	 * @param traf Traffic archive file. */
+	public TrafficReplay(File traf) throws IOException {
+		ZipFile zf = new ZipFile(traf);
+		try {
+			Enumeration<? extends ZipEntry> e = zf.entries();
+			while (e.hasMoreElements())
+				loadEntry(zf, e.nextElement());
+		}
+		finally {
+			zf.close();
+		}
+	}
+
+	/** Load one archive entry, if it is a 30-second sample type */
+	private void loadEntry(ZipFile zf, ZipEntry ze) throws IOException {
+		String name = ze.getName();
+		int i = name.indexOf('.');
+		if (i <= 0)
+			return;
+		String ext = name.substring(i + 1);
+		PeriodicSampleType st = SampleSeriesCodec.sampleType(ext);
+		if (st == null || !ext.equals(st.extension + PERIOD_SEC))
+			return;
+		String det = name.substring(0, i);
+		byte[] raw = SampleSeriesFile.readEntry(zf, ze);
+		switch (st) {
+		case VOLUME:
+			decode(raw, st, lookupSamples(det).vol);
+			break;
+		case SCAN:
+			decodeScans(raw, lookupSamples(det).scans);
+			break;
+		case OCCUPANCY:
+			decodeOccupancy(raw, lookupSamples(det).scans);
+			break;
+		case SPEED:
+			decode(raw, st, lookupSamples(det).speed);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/** Decode raw sample data.
+	 * @param raw Raw sample data.
+	 * @param st Sample type.
+	 * @param s Array to store samples. */
+	static private void decode(byte[] raw, PeriodicSampleType st, int[] s) {
+		int n = Math.min(s.length, raw.length / st.sample_bytes);
+		for (int i = 0; i < n; i++) {
+			int v = (st.sample_bytes == 1)
+			      ? raw[i]
+			      : (short) ((raw[i * 2] << 8) |
+			                 (raw[i * 2 + 1] & 0xFF));
+			s[i] = (v >= 0) ? v : MISSING_DATA;
+		}
+	}
+
+	/** Decode raw scan data.  Valid scan counts replace any which were
+	 * converted from occupancy. */
+	static private void decodeScans(byte[] raw, int[] scans) {
+		int[] c = missing();
+		decode(raw, PeriodicSampleType.SCAN, c);
+		for (int i = 0; i < scans.length; i++) {
+			if (c[i] >= 0)
+				scans[i] = c[i];
+		}
+	}
+
+	/** Decode raw occupancy data into scan counts.  Scan counts from a
+	 * .c30 entry take precedence. */
+	static private void decodeOccupancy(byte[] raw, int[] scans) {
+		int[] occ = missing();
+		decode(raw, PeriodicSampleType.OCCUPANCY, occ);
+		for (int i = 0; i < scans.length; i++) {
+			if (scans[i] < 0 && occ[i] >= 0)
+				scans[i] = occToScans(occ[i]);
+		}
+	}
+
+	/** Lookup (or create) samples for a detector */
+	private Samples lookupSamples(String det) {
+		Samples s = samples.get(det);
+		if (null == s) {
+			s = new Samples();
+			samples.put(det, s);
+		}
+		return s;
+	}
+
+	/** Get the set of detector IDs (sorted) */
+	public Set<String> getDetectors() {
+		return samples.keySet();
+	}
+
+	/** Get samples for a detector.
+	 * @param det Detector ID.
+	 * @return Samples, or null if none were archived. */
+	public Samples getSamples(String det) {
+		return samples.get(det);
+	}
+
+	/** Put samples for one interval.  This is for creating synthetic
+	 * traffic, without an archive file.
+	 * @param det Detector ID.
+	 * @param step Interval (0 to STEPS - 1).
+	 * @param v Volume.
+	 * @param c Scan count (60 Hz).
+	 * @param s Speed (mph). */
+	public void putSample(String det, int step, int v, int c, int s) {
+		Samples sam = lookupSamples(det);
+		sam.vol[step] = v;
+		sam.scans[step] = c;
+		sam.speed[step] = s;
+	}
+}
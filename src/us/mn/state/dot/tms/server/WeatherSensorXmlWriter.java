@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2011-2015  AHMCT, University of California
+ * Copyright (C) 2011-2016  AHMCT, University of California
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -26,34 +26,38 @@ import us.mn.state.dot.tms.WeatherSensorHelper;
  * @author Michael Darter
  * @author Travis Swanston
  */
-public class WeatherSensorXmlWriter extends XmlWriter {
+public class WeatherSensorXmlWriter extends XmlFragmentWriter {
 
 	/** XML file */
 	static protected final String FILE_NAME_XML = "weather_sensor.xml";
 
 	/** Create a new XML writer */
 	public WeatherSensorXmlWriter() {
-		super(FILE_NAME_XML, false);
+		super(FILE_NAME_XML, false, "weather_sensor");
 	}
 
-	/** Write the XML to a writer */
-	public void write(Writer w) {
-		try {
-			w.write(XML_DECLARATION + "\n");
-			w.write("<list>\n");
-			Iterator<WeatherSensor> it = WeatherSensorHelper
-				.iterator();
-			while(it.hasNext()) {
-				WeatherSensor ws = it.next();
-				if(ws instanceof WeatherSensorImpl)
-					((WeatherSensorImpl)ws)
-						.printXmlElement(w);
-			}
-			w.write("</list>\n");
-		}
-		catch (IOException e) {
-			// fail
+	/** Write the head of the XML file */
+	@Override
+	protected void writeHead(Writer w) throws IOException {
+		w.write(XML_DECLARATION + "\n");
+		w.write("<list>\n");
+	}
+
+	/** Write the body of the XML file */
+	@Override
+	protected void writeBody() throws IOException {
+		Iterator<WeatherSensor> it = WeatherSensorHelper.iterator();
+		while(it.hasNext()) {
+			WeatherSensor ws = it.next();
+			if(ws instanceof WeatherSensorImpl)
+				((WeatherSensorImpl)ws).printXmlElement(
+					fragment(ws));
 		}
 	}
 
+	/** Write the tail of the XML file */
+	@Override
+	protected void writeTail(Writer w) throws IOException {
+		w.write("</list>\n");
+	}
 }
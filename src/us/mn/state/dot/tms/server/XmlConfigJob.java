@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2013  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -25,6 +25,18 @@ import us.mn.state.dot.sched.Job;
  */
 public class XmlConfigJob extends Job {
 
+	/** XML config writer (shared by all jobs) */
+	static private TmsConfigXmlWriter xml_writer;
+
+	/** Get the XML config writer */
+	static private synchronized TmsConfigXmlWriter getXmlWriter() {
+		if (null == xml_writer) {
+			xml_writer = new TmsConfigXmlWriter(
+				BaseObjectImpl.corridors);
+		}
+		return xml_writer;
+	}
+
 	/** Create a new XML config writer job */
 	public XmlConfigJob() {
 		super(Calendar.DATE, 1, Calendar.HOUR, 20);
@@ -43,8 +55,10 @@ public class XmlConfigJob extends Job {
 	/** Write the TMS xml configuration files */
 	private void writeXmlConfiguration() throws IOException {
 		CorridorManager cm = BaseObjectImpl.corridors;
-		cm.createCorridors();
-		TmsConfigXmlWriter xml_writer = new TmsConfigXmlWriter(cm);
-		xml_writer.write();
+		TmsConfigXmlWriter w = getXmlWriter();
+		synchronized (w) {
+			cm.createCorridors();
+			w.write();
+		}
 	}
 }
@@ -0,0 +1,259 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * An XML fragment writer renders the body of a document as one fragment per
+ * object.  Each fragment is compared with the one rendered for the same
+ * object last time, and the cached string is reused if unchanged.  When no
+ * fragment has changed, the file is not written again.  The document head
+ * (which may contain a time stamp) is not compared.
+ *
+ * A fragment may be given a change stamp, which is a cheap summary of its
+ * source state.  If the stamp is equal to the one from the last rendering,
+ * the cached fragment is reused without rendering it at all.
+ *
+ * A skipped file has its modification time updated, and it is written again
+ * at least every MAX_SKIP_MS, so that the time stamp in its head is never
+ * too stale.
+ *
+ * If the writer has a push topic, changed fragments are published to the
+ * push server.
+ *
+ * @author Douglas Lau
+ */
+abstract public class XmlFragmentWriter extends XmlWriter {
+
+	/** Maximum time to skip writing an unchanged file (ms) */
+	static private final long MAX_SKIP_MS = 5 * 60 * 1000;
+
+	/** Buffer for rendering one fragment */
+	static private class FragmentBuffer extends Writer {
+		private final StringBuilder sb = new StringBuilder();
+
+		@Override public void write(char[] cbuf, int off, int len) {
+			sb.append(cbuf, off, len);
+		}
+		@Override public void write(String str) {
+			sb.append(str);
+		}
+		@Override public void write(int c) {
+			sb.append((char) c);
+		}
+		@Override public void flush() { }
+		@Override public void close() { }
+
+		/** Clear the buffer */
+		private void clear() {
+			sb.setLength(0);
+		}
+
+		/** Check if the buffer contents match a string */
+		private boolean matches(String s) {
+			return s != null && s.contentEquals(sb);
+		}
+
+		@Override public String toString() {
+			return sb.toString();
+		}
+	}
+
+	/** Buffer for current fragment */
+	private final FragmentBuffer buf = new FragmentBuffer();
+
+	/** Object of current fragment */
+	private Object frag_obj;
+
+	/** Fragments from previous rendering, by object */
+	private IdentityHashMap<Object, String> cache =
+		new IdentityHashMap<Object, String>();
+
+	/** Fragments from current rendering, by object */
+	private IdentityHashMap<Object, String> next_cache =
+		new IdentityHashMap<Object, String>();
+
+	/** Change stamps from previous rendering, by object */
+	private IdentityHashMap<Object, Object> stamps =
+		new IdentityHashMap<Object, Object>();
+
+	/** Change stamps from current rendering, by object */
+	private IdentityHashMap<Object, Object> next_stamps =
+		new IdentityHashMap<Object, Object>();
+
+	/** Fragments of current body */
+	private final ArrayList<String> body = new ArrayList<String>();
+
+	/** Fragments of body last written */
+	private final ArrayList<String> written = new ArrayList<String>();
+
+	/** Time the file was last written */
+	private long write_time = 0;
+
+	/** Push server topic (null for none) */
+	private final String topic;
+
+	/** Create a new XML fragment writer.
+	 * @param dir Output directory.
+	 * @param f File name.
+	 * @param gz Flag to compress file.
+	 * @param t Push server topic (null for none). */
+	protected XmlFragmentWriter(File dir, String f, boolean gz, String t) {
+		super(dir, f, gz);
+		topic = t;
+	}
+
+	/** Create a new XML fragment writer.
+	 * @param f File name.
+	 * @param gz Flag to compress file.
+	 * @param t Push server topic (null for none). */
+	public XmlFragmentWriter(String f, boolean gz, String t) {
+		this(XML_OUTPUT_DIRECTORY, f, gz, t);
+	}
+
+	/** Create a new XML fragment writer with no push topic */
+	public XmlFragmentWriter(String f, boolean gz) {
+		this(f, gz, null);
+	}
+
+	/** Write the XML file, if any fragment has changed */
+	@Override
+	public void write() throws IOException {
+		long start = TimeSteward.currentTimeMillis();
+		renderBody();
+		if (isSkipUnchanged() && body.equals(written) && file.exists()
+		 && start - write_time < MAX_SKIP_MS)
+		{
+			file.setLastModified(start);
+			recordStats(start, false);
+		} else {
+			writeFile();
+			write_time = start;
+			written.clear();
+			written.addAll(body);
+			recordStats(start, true);
+		}
+	}
+
+	/** Check if an unchanged document should be skipped.  Documents
+	 * whose time stamp is meaningful on its own (such as periodic samples)
+	 * can override this to always be written. */
+	protected boolean isSkipUnchanged() {
+		return true;
+	}
+
+	/** Render all body fragments */
+	private void renderBody() throws IOException {
+		body.clear();
+		next_cache.clear();
+		next_stamps.clear();
+		writeBody();
+		endFragment();
+		if (topic != null)
+			publishRemoved();
+		IdentityHashMap<Object, String> c = cache;
+		cache = next_cache;
+		next_cache = c;
+		IdentityHashMap<Object, Object> st = stamps;
+		stamps = next_stamps;
+		next_stamps = st;
+	}
+
+	/** Begin a body fragment.
+	 * @param o Object which the fragment represents.
+	 * @return Writer for fragment, valid until the next fragment. */
+	protected Writer fragment(Object o) {
+		return fragment(o, null);
+	}
+
+	/** Begin a body fragment, unless its source is unchanged.
+	 * @param o Object which the fragment represents.
+	 * @param stamp Change stamp of source state (null for none).
+	 * @return Writer for fragment, valid until the next fragment, or
+	 *         null if the stamp is unchanged and the cached fragment
+	 *         was reused. */
+	protected Writer fragment(Object o, Object stamp) {
+		endFragment();
+		if (stamp != null) {
+			next_stamps.put(o, stamp);
+			String prev = cache.get(o);
+			if (prev != null && stamp.equals(stamps.get(o))) {
+				next_cache.put(o, prev);
+				body.add(prev);
+				return null;
+			}
+		}
+		frag_obj = o;
+		buf.clear();
+		return buf;
+	}
+
+	/** End the current fragment */
+	private void endFragment() {
+		Object o = frag_obj;
+		if (o != null) {
+			String prev = cache.get(o);
+			String f = prev;
+			if (!buf.matches(prev)) {
+				f = buf.toString();
+				if (topic != null)
+					publish(o, f);
+			}
+			next_cache.put(o, f);
+			body.add(f);
+			frag_obj = null;
+		}
+	}
+
+	/** Publish a changed fragment */
+	private void publish(Object o, String f) {
+		PushServer.publish(topic, o.toString(),
+			(f.length() > 0) ? f : null);
+	}
+
+	/** Publish objects which have been removed */
+	private void publishRemoved() {
+		for (Object o: cache.keySet()) {
+			if (!next_cache.containsKey(o))
+				PushServer.publish(topic, o.toString(), null);
+		}
+	}
+
+	/** Write the XML to a writer */
+	@Override
+	protected final void write(Writer w) throws IOException {
+		writeHead(w);
+		for (String f: body)
+			w.write(f);
+		writeTail(w);
+	}
+
+	/** Write the head of the document */
+	abstract protected void writeHead(Writer w) throws IOException;
+
+	/** Write the body of the document, by calling fragment for each
+	 * object and writing its element to the returned writer (unless it
+	 * is null) */
+	abstract protected void writeBody() throws IOException;
+
+	/** Write the tail of the document */
+	abstract protected void writeTail(Writer w) throws IOException;
+}
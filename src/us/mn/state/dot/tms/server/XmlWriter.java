@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2005-2014  Minnesota Department of Transportation
+ * Copyright (C) 2005-2016  Minnesota Department of Transportation
  * Copyright (C) 2011-2015  AHMCT, University of California
  *
  * This program is free software; you can redistribute it and/or modify
@@ -23,6 +23,8 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.zip.GZIPOutputStream;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.TimeSteward;
 
 /**
  * A simple class for writing out XML documents.
@@ -33,6 +35,9 @@ import java.util.zip.GZIPOutputStream;
  */
 abstract public class XmlWriter {
 
+	/** XML debug log */
+	static private final DebugLog XML_LOG = new DebugLog("xml");
+
 	/** XML output directory. */
 	static public final File XML_OUTPUT_DIRECTORY =
 		new File("/var/www/html/iris_xml/");
@@ -90,15 +95,55 @@ abstract public class XmlWriter {
 	/** Should the XML data be compressed? */
 	protected final boolean gzip;
 
-	/** Create a new XML writer. */
-	public XmlWriter(String f, boolean gz) {
+	/** Create a new XML writer.
+	 * @param dir Output directory.
+	 * @param f File name.
+	 * @param gz Flag to compress file. */
+	protected XmlWriter(File dir, String f, boolean gz) {
 		if(gz)
 			f = f + ".gz";
-		file = new File(XML_OUTPUT_DIRECTORY, f);
+		file = new File(dir, f);
 		temp = new File(file.getAbsolutePath() + "~");
 		gzip = gz;
 	}
 
+	/** Create a new XML writer. */
+	public XmlWriter(String f, boolean gz) {
+		this(XML_OUTPUT_DIRECTORY, f, gz);
+	}
+
+	/** Time to generate the last document (ms) */
+	private long gen_ms = 0;
+
+	/** Get the time to generate the last document (ms) */
+	public long getGenerationMs() {
+		return gen_ms;
+	}
+
+	/** Size of the last document written (bytes) */
+	private long n_bytes = 0;
+
+	/** Get the size of the last document written (bytes) */
+	public long getBytes() {
+		return n_bytes;
+	}
+
+	/** Count of documents written */
+	private int n_written = 0;
+
+	/** Get the count of documents written */
+	public int getWritten() {
+		return n_written;
+	}
+
+	/** Count of documents skipped (unchanged) */
+	private int n_skipped = 0;
+
+	/** Get the count of documents skipped (unchanged) */
+	public int getSkipped() {
+		return n_skipped;
+	}
+
 	/** Create the underlying output stream. */
 	private OutputStream createOutputStream() throws IOException {
 		OutputStream os = new FileOutputStream(temp);
@@ -110,6 +155,13 @@ abstract public class XmlWriter {
 
 	/** Write the XML file. */
 	public void write() throws IOException {
+		long start = TimeSteward.currentTimeMillis();
+		writeFile();
+		recordStats(start, true);
+	}
+
+	/** Write the XML file, replacing any existing file. */
+	protected void writeFile() throws IOException {
 		OutputStream os = createOutputStream();
 		try {
 			BufferedWriter bw = new BufferedWriter(
@@ -124,6 +176,25 @@ abstract public class XmlWriter {
 			throw new IOException("Rename failed: " + file);
 	}
 
+	/** Record generation statistics.
+	 * @param start Time generation started.
+	 * @param w Flag indicating whether the file was written. */
+	protected void recordStats(long start, boolean w) {
+		gen_ms = TimeSteward.currentTimeMillis() - start;
+		if (w) {
+			n_bytes = file.length();
+			n_written++;
+		} else
+			n_skipped++;
+		if (XML_LOG.isOpen()) {
+			XML_LOG.log(file.getName() +
+				(w ? ": wrote " : ": skipped ") +
+				gen_ms + " ms, " + n_bytes + " bytes, " +
+				n_written + " written, " + n_skipped +
+				" skipped");
+		}
+	}
+
 	/** Write the XML to a writer. */
 	abstract protected void write(Writer w) throws IOException;
 
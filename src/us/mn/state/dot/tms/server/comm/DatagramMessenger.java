@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2015  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -30,7 +30,8 @@ import java.util.Arrays;
 
 /**
  * A DatagramMessenger is a class which can poll a field controller and get the
- * response using a UDP socket connection.
+ * response using a UDP socket connection.  Single host connections share a
+ * datagram mux with all other links on the same local port.
  *
  * @author Douglas Lau
  * @author Michael Darter
@@ -58,9 +59,12 @@ public class DatagramMessenger extends Messenger {
 	/** Remote address to connect */
 	private final SocketAddress remote;
 
-	/** UDP socket */
+	/** UDP socket (RECV_MULT_LOCAL) */
 	private DatagramSocket socket;
 
+	/** Datagram mux endpoint (DEFAULT) */
+	private DatagramMux.Endpoint endpoint;
+
 	/** Receive timeout (ms) */
 	private int timeout = 750;
 
@@ -117,28 +121,20 @@ public class DatagramMessenger extends Messenger {
 	/** Open the datagram messenger */
 	@Override
 	public void open() throws IOException {
-	if (connect_type == ConnType.DEFAULT) {
-			socket = new DatagramSocket();
-			socket.setSoTimeout(timeout);
-			socket.connect(remote);
-		} else if (connect_type == ConnType.RECV_MULT_LOCAL) {
+		if (connect_type == ConnType.DEFAULT)
+			endpoint = DatagramMux.open(port, remote);
+		else if (connect_type == ConnType.RECV_MULT_LOCAL) {
 			socket = new DatagramSocket(null);
 			socket.setSoTimeout(timeout);
 			socket.bind(remote);
 		} else {
 			System.err.println("bogus datagram connection type");
 			return;
-		}		input = new DatagramInputStream();
+		}
+		input = new DatagramInputStream();
 		output = new DatagramOutputStream();
 	}
 
-	/** Create the socket */
-	private DatagramSocket createSocket() throws IOException {
-		return (port != null)
-		      ? new DatagramSocket(port)
-		      : new DatagramSocket();
-	}
-
 	/** Close the datagram messenger */
 	@Override
 	public void close() {
@@ -148,6 +144,11 @@ public class DatagramMessenger extends Messenger {
 			s.close();
 			socket = null;
 		}
+		DatagramMux.Endpoint ep = endpoint;
+		if (ep != null) {
+			ep.close();
+			endpoint = null;
+		}
 		input = null;
 		output = null;
 	}
@@ -174,6 +175,9 @@ public class DatagramMessenger extends Messenger {
 			packet.setSocketAddress(remote);
 			packet.setLength(buffer.position());
 			buffer.clear();
+			DatagramMux.Endpoint ep = endpoint;
+			if (ep != null)
+				ep.send(packet.getData(), packet.getLength());
 			DatagramSocket s = socket;
 			if (s != null)
 				s.send(packet);
@@ -227,6 +231,18 @@ public class DatagramMessenger extends Messenger {
 		 * @throws SocketTimeoutException
 		 */
 		protected void receivePacket() throws IOException {
+			DatagramMux.Endpoint ep = endpoint;
+			if (ep != null) {
+				byte[] b = ep.receive(timeout);
+				if (remote instanceof InetSocketAddress) {
+					origin_addr = ((InetSocketAddress)
+						remote).getAddress();
+				}
+				buffer.clear();
+				buffer.put(b, 0, Math.min(b.length,
+					buffer.capacity()));
+				buffer.flip();
+			}
 			DatagramSocket s = socket;
 			if (s != null) {
 				packet.setLength(1024);
@@ -0,0 +1,297 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A datagram mux shares one UDP channel between many comm links.  All links
+ * on a local port use the same channel, with one receive thread.  Received
+ * packets are routed to an endpoint by remote address and port; packets from
+ * any other address are dropped.
+ *
+ * @author Douglas Lau
+ */
+public class DatagramMux {
+
+	/** Maximum packet size */
+	static private final int MAX_PACKET = 1024;
+
+	/** Maximum packets queued per endpoint */
+	static private final int QUEUE_SIZE = 16;
+
+	/** Channel receive buffer size */
+	static private final int RECV_BUFFER = 1 << 20;
+
+	/** Shared muxes by local port (0 for any) */
+	static private final HashMap<Integer, DatagramMux> MUXES =
+		new HashMap<Integer, DatagramMux>();
+
+	/** Open an endpoint.
+	 * @param p Local port (null for any).
+	 * @param ra Remote socket address.
+	 * @return New endpoint, which must be closed after use. */
+	static public Endpoint open(Integer p, SocketAddress ra)
+		throws IOException
+	{
+		SocketAddress r = resolve(ra);
+		int port = (p != null) ? p : 0;
+		synchronized (MUXES) {
+			DatagramMux mux = MUXES.get(port);
+			if (null == mux) {
+				mux = new DatagramMux(port);
+				MUXES.put(port, mux);
+			} else if (mux.endpoints.containsKey(r)) {
+				if (port != 0)
+					throw new IOException(
+						"DUPLICATE REMOTE");
+				// Same remote on any port -- use a private mux
+				mux = new DatagramMux(0);
+			}
+			return mux.register(r);
+		}
+	}
+
+	/** Resolve a remote socket address, so it matches received packets */
+	static private SocketAddress resolve(SocketAddress ra)
+		throws IOException
+	{
+		if (ra instanceof InetSocketAddress) {
+			InetSocketAddress isa = (InetSocketAddress) ra;
+			if (isa.isUnresolved()) {
+				isa = new InetSocketAddress(isa.getHostString(),
+					isa.getPort());
+				if (isa.isUnresolved()) {
+					throw new UnknownHostException(
+						isa.getHostString());
+				}
+			}
+			return isa;
+		} else
+			return ra;
+	}
+
+	/** Get the number of shared muxes */
+	static public int countShared() {
+		synchronized (MUXES) {
+			return MUXES.size();
+		}
+	}
+
+	/** A mux endpoint for one remote address */
+	public class Endpoint {
+
+		/** Remote socket address */
+		private final SocketAddress remote;
+
+		/** Queue of received packets */
+		private final LinkedBlockingQueue<byte[]> queue =
+			new LinkedBlockingQueue<byte[]>(QUEUE_SIZE);
+
+		/** Create a new endpoint */
+		private Endpoint(SocketAddress ra) {
+			remote = ra;
+		}
+
+		/** Get the remote socket address */
+		public SocketAddress getRemote() {
+			return remote;
+		}
+
+		/** Get the mux of the endpoint */
+		public DatagramMux getMux() {
+			return DatagramMux.this;
+		}
+
+		/** Get the local port */
+		public int getLocalPort() throws IOException {
+			return ((InetSocketAddress) channel.getLocalAddress())
+				.getPort();
+		}
+
+		/** Send a packet to the remote address.
+		 * @param b Packet data.
+		 * @param len Length of packet. */
+		public void send(byte[] b, int len) throws IOException {
+			channel.send(ByteBuffer.wrap(b, 0, len), remote);
+		}
+
+		/** Receive a packet from the remote address.
+		 * @param timeout Receive timeout (ms).
+		 * @return Packet data.
+		 * @throws SocketTimeoutException if no packet is received. */
+		public byte[] receive(int timeout) throws IOException {
+			try {
+				byte[] b = queue.poll(timeout,
+					TimeUnit.MILLISECONDS);
+				if (b != null)
+					return b;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new SocketTimeoutException("RECEIVE TIMEOUT");
+		}
+
+		/** Deliver a received packet.  If the queue is full, the
+		 * oldest packet is dropped. */
+		private void deliver(byte[] b) {
+			while (!queue.offer(b)) {
+				if (queue.poll() != null)
+					n_dropped.incrementAndGet();
+			}
+		}
+
+		/** Close the endpoint */
+		public void close() {
+			unregister(this);
+		}
+	}
+
+	/** Local port (0 for any) */
+	private final int port;
+
+	/** UDP channel */
+	private final DatagramChannel channel;
+
+	/** Endpoints by remote address */
+	private final ConcurrentHashMap<SocketAddress, Endpoint> endpoints =
+		new ConcurrentHashMap<SocketAddress, Endpoint>();
+
+	/** Receive thread */
+	private final Thread receiver;
+
+	/** Count of received packets */
+	private final AtomicLong n_received = new AtomicLong();
+
+	/** Count of dropped packets */
+	private final AtomicLong n_dropped = new AtomicLong();
+
+	/** Create a new datagram mux, with its receive thread.
+	 * @param p Local port to bind (0 for any). */
+	private DatagramMux(int p) throws IOException {
+		port = p;
+		channel = DatagramChannel.open();
+		try {
+			channel.setOption(StandardSocketOptions.SO_RCVBUF,
+				RECV_BUFFER);
+			channel.bind(new InetSocketAddress(p));
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		receiver = new Thread("DatagramMux " + p) {
+			@Override
+			public void run() {
+				receiveLoop();
+			}
+		};
+		receiver.setDaemon(true);
+		receiver.start();
+	}
+
+	/** Get the receive thread */
+	Thread getReceiver() {
+		return receiver;
+	}
+
+	/** Register an endpoint */
+	private Endpoint register(SocketAddress ra) {
+		Endpoint ep = new Endpoint(ra);
+		endpoints.put(ra, ep);
+		return ep;
+	}
+
+	/** Unregister an endpoint, closing the mux if it was the last one */
+	private void unregister(Endpoint ep) {
+		synchronized (MUXES) {
+			if (!endpoints.remove(ep.remote, ep))
+				return;
+			if (endpoints.isEmpty()) {
+				if (MUXES.get(port) == this)
+					MUXES.remove(port);
+				closeChannel();
+			}
+		}
+	}
+
+	/** Close the channel, which stops the receive thread */
+	private void closeChannel() {
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			// Ignore
+		}
+	}
+
+	/** Receive packets and route them to endpoints */
+	private void receiveLoop() {
+		ByteBuffer buf = ByteBuffer.allocate(MAX_PACKET);
+		try {
+			while (true) {
+				buf.clear();
+				SocketAddress src;
+				try {
+					src = channel.receive(buf);
+				}
+				catch (PortUnreachableException e) {
+					continue;
+				}
+				buf.flip();
+				byte[] b = new byte[buf.remaining()];
+				buf.get(b);
+				n_received.incrementAndGet();
+				Endpoint ep = endpoints.get(src);
+				if (ep != null)
+					ep.deliver(b);
+				else
+					n_dropped.incrementAndGet();
+			}
+		}
+		catch (IOException e) {
+			// Channel closed or broken -- stop sharing it
+			synchronized (MUXES) {
+				if (MUXES.get(port) == this)
+					MUXES.remove(port);
+			}
+			closeChannel();
+		}
+	}
+
+	/** Get the count of received packets */
+	public long getReceived() {
+		return n_received.get();
+	}
+
+	/** Get the count of dropped packets */
+	public long getDropped() {
+		return n_dropped.get();
+	}
+}
@@ -25,6 +25,8 @@ import us.mn.state.dot.sched.Scheduler;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.EventType;
 import us.mn.state.dot.tms.server.ControllerImpl;
+import us.mn.state.dot.tms.server.LatencyHistogram;
+import us.mn.state.dot.tms.server.ServerMetrics;
 
 /**
  * MessagePoller is an abstract class which represents a communication channel 
@@ -113,6 +115,12 @@ abstract public class MessagePoller<T extends ControllerProperty>
 		return (ts == ThreadState.RUNNING) ? "" : ts.toString();
 	}
 
+	/** Get the number of queued operations */
+	@Override
+	public int getQueueSize() {
+		return queue.size();
+	}
+
 	/** Check if ready for operation */
 	@Override
 	public boolean isReady() {
@@ -169,6 +177,21 @@ abstract public class MessagePoller<T extends ControllerProperty>
 	/** Timer thread to auto-close messenger */
 	static private final Scheduler CLOSER = new Scheduler("mpcloser");
 
+	/** Metric name prefix */
+	private final String metrics;
+
+	/** Poll latency histogram */
+	private final LatencyHistogram poll_latency;
+
+	/** Operation queue depth gauge */
+	private final ServerMetrics.Gauge queue_depth =
+		new ServerMetrics.Gauge()
+	{
+		public long getValue() {
+			return queue.size();
+		}
+	};
+
 	/**
 	 * Create a new message poller.
 	 * @param n CommLink name
@@ -176,6 +199,8 @@ abstract public class MessagePoller<T extends ControllerProperty>
 	 */
 	protected MessagePoller(String n, Messenger m) {
 		closer_job = new CloserJob();
+		metrics = "poller." + n;
+		poll_latency = ServerMetrics.histogram(metrics + ".poll");
  		thread = new Thread(GROUP, "Poller: " + n) {
 			@Override
 			public void run() {
@@ -247,6 +272,7 @@ abstract public class MessagePoller<T extends ControllerProperty>
 
 	/** Open messenger and perform operations */
 	private void operationLoop() {
+		ServerMetrics.addGauge(metrics + ".queue", queue_depth);
 		try {
 			ensureOpen();
 			CLOSER.addJob(closer_job);
@@ -268,6 +294,8 @@ abstract public class MessagePoller<T extends ControllerProperty>
 			ensureClosed();
 			drainQueue();
 			CLOSER.removeJob(closer_job);
+			ServerMetrics.removeGauge(metrics + ".queue",
+				queue_depth);
 			setThreadState(ThreadState.STOPPED);
 		}
 	}
@@ -385,6 +413,7 @@ abstract public class MessagePoller<T extends ControllerProperty>
 
 		final String oname = o.toString();
 		final long start = TimeSteward.currentTimeMillis();
+		final long start_ns = System.nanoTime();
 
 		try {
 			synchronized (messenger) {
@@ -423,6 +452,7 @@ abstract public class MessagePoller<T extends ControllerProperty>
 			o.handleCommError(EventType.POLL_TIMEOUT_ERROR,
 				exceptionMessage(e));
 		} finally {
+			poll_latency.recordSince(start_ns);
 			if (o.isDone() || !requeueOperation(o))
 				o.cleanup();
 
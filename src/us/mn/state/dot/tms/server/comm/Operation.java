@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2002-2014  Minnesota Department of Transportation
+ * Copyright (C) 2002-2016  Minnesota Department of Transportation
  * Copyright (C) 2014-2015  AHMCT, University of California
  *
  * This program is free software; you can redistribute it and/or modify
@@ -19,6 +19,8 @@ import java.io.IOException;
 
 import us.mn.state.dot.tms.EventType;
 import us.mn.state.dot.tms.SystemAttrEnum;
+import us.mn.state.dot.tms.server.LatencyHistogram;
+import us.mn.state.dot.tms.server.ServerMetrics;
 
 /**
  * An operation is a sequence of phases to be performed on a field controller.
@@ -29,6 +31,22 @@ import us.mn.state.dot.tms.SystemAttrEnum;
  */
 abstract public class Operation<T extends ControllerProperty> {
 
+	/** Package name prefix of comm classes */
+	static private final String COMM_PKG =
+		"us.mn.state.dot.tms.server.comm.";
+
+	/** Latency histograms for each phase class */
+	static private final ClassValue<LatencyHistogram> PHASE_LATENCY =
+		new ClassValue<LatencyHistogram>()
+	{
+		protected LatencyHistogram computeValue(Class<?> c) {
+			String n = c.getName();
+			if (n.startsWith(COMM_PKG))
+				n = n.substring(COMM_PKG.length());
+			return ServerMetrics.histogram("phase." + n);
+		}
+	};
+
 	/** Priority of the operation */
 	private PriorityLevel priority;
 
@@ -125,8 +143,16 @@ abstract public class Operation<T extends ControllerProperty> {
 	public final void poll(CommMessage<T> mess) throws IOException,
 		DeviceContentionException {
 		Phase<T> p = phase;
-		if (p != null)
-			updatePhase(p.poll(mess));
+		if (p != null) {
+			long start = System.nanoTime();
+			try {
+				updatePhase(p.poll(mess));
+			}
+			finally {
+				PHASE_LATENCY.get(p.getClass())
+					.recordSince(start);
+			}
+		}
 	}
 
 	/** Update the phase of the operation */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2014  Minnesota Department of Transportation
+ * Copyright (C) 2000-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -131,6 +131,14 @@ public final class OperationQueue<T extends ControllerProperty> {
 		return null;
 	}
 
+	/** Get the number of operations in the queue (including work) */
+	public synchronized int size() {
+		int n = (work != null && !work.isDone()) ? 1 : 0;
+		for (Node<T> node = front; node != null; node = node.next)
+			n++;
+		return n;
+	}
+
 	/** Does the queue have any elements? */
 	public synchronized boolean hasNext() {
 		return front != null;
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2015  Minnesota Department of Transportation
+ * Copyright (C) 2000-2016  Minnesota Department of Transportation
  * Copyright (C) 2008-2010  AHMCT, University of California
  *
  * This program is free software; you can redistribute it and/or modify
@@ -192,7 +192,7 @@ class Message implements CommMessage
 		long startms = TimeSteward.currentTimeMillis();
 		updateInterStatus("Waiting for sensorserver.");
 		do {
-			String token = null;
+			CharSequence token = null;
 			try {
 				long elapsed = STime.calcTimeDeltaMS(startms);
 				int leftms = (int)(m_dmsTimeoutMS - elapsed);
@@ -247,15 +247,16 @@ class Message implements CommMessage
 			}
 
 			// parse response
+			String xml = token.toString();
 			LOG.log("dmsxml.Message.queryProps(): " +
-				"found complete token:" + token);
+				"found complete token:" + xml);
 
 			try {
 				// can throw IOException
 				istatus = new String[] {"Parse error"};
 				// sets 'was read' flag for each XML element
 				m_xelems.parseResponse(Message.DMSXMLMSGTAG, 
-					Message.ISTATUSTAG, token);
+					Message.ISTATUSTAG, xml);
 
 				// Either a completed response element or an
 				// intermediate status update was read.
@@ -14,12 +14,20 @@
  */
 package us.mn.state.dot.tms.server.comm.dmsxml;
 
+import java.nio.CharBuffer;
+
 /**
  * A buffer for parsing. A caller typically adds to the end,
  * and extracts tokens from the beginning. The buffer grows
  * automatically to the maximum specified size. An assertion
  * is thrown if the buffer grows beyond the maximum size.
  *
+ * Searching for a token is incremental: the scan position is
+ * remembered between calls, so text which has already been
+ * searched is not scanned again as more bytes arrive.  Tokens
+ * deleted from the start of the buffer only advance the head
+ * index; the buffer is compacted when more space is needed.
+ *
  * @author Michael Darter
  */
 final class ParseBuffer
@@ -27,9 +35,17 @@ final class ParseBuffer
 	// fields
 	private char[] m_buffer = new char[0];	// buffer
 	private final int m_allocsize;		// allocated buffer size
+	private int m_head;			// index of first char in buffer
 	private int m_emptySpot;		// index of first empty spot in buffer
 	private final int m_maxsize;		// maximum size allowed
 
+	// incremental scan state (absolute indices into m_buffer)
+	private String m_scanStart;		// start token being scanned
+	private String m_scanEnd;		// end token being scanned
+	private int m_startScan;		// index to resume start search
+	private int m_tokStart = -1;		// index of start token, or -1
+	private int m_endScan;			// index to resume end search
+
 	// types
 	enum ExtractType {
 		KDK,    // keep left most chunk, delete middle, keep right most chunk
@@ -51,6 +67,7 @@ final class ParseBuffer
 		m_allocsize = allocsize;
 		m_buffer = new char[allocsize];
 		m_maxsize = maxsize;
+		m_head = 0;
 		m_emptySpot = 0;
 
 		// LOG.log("m_buffer="+this.toString()+",capacity="+this.capacity()+", length="+this.length()+",maxsize="+this.maxSize());
@@ -58,8 +75,20 @@ final class ParseBuffer
 
 	/** initialize the buffer */
 	void init() {
-		m_buffer = new char[m_allocsize];
+		if(m_buffer.length != m_allocsize)
+			m_buffer = new char[m_allocsize];
+		m_head = 0;
 		m_emptySpot = 0;
+		resetScan();
+	}
+
+	/** Reset the incremental scan state */
+	private void resetScan() {
+		m_scanStart = null;
+		m_scanEnd = null;
+		m_startScan = m_head;
+		m_tokStart = -1;
+		m_endScan = m_head;
 	}
 
 	/**
@@ -85,27 +114,17 @@ final class ParseBuffer
 	 */
 	void append(int numbytes, byte[] ba)
 		throws IllegalArgumentException {
-		if((ba == null) || (numbytes < 0)) {
+		if((ba == null) || (numbytes < 0) || (numbytes > ba.length)) {
 			throw new IllegalArgumentException("arg is invalid");
 		}
 
 		// LOG.log("Will append "+numbytes+" bytes.");
-		char[] ca = byteArrayToCharArray(numbytes, ba);
-		if(ca != null)
-			append(numbytes, ca);
-	}
+		makeRoom(numbytes);
 
-	/** Convert byte[] to char[] using assumed encoding.
-	 *  @returns May return null. */
-	static char[] byteArrayToCharArray(int len, byte[] ba) {
-		char[] ca;
-		try {
-			ca = new String(ba, 0, len, "ISO-8859-1").
-				toCharArray();
-		} catch (Exception UnsupportedEncodingException) {
-			ca = null;
-		}
-		return ca;
+		// ISO-8859-1: each byte maps directly to one char
+		for(int i = 0; i < numbytes; ++i)
+			m_buffer[m_emptySpot + i] = (char)(ba[i] & 0xFF);
+		m_emptySpot += numbytes;
 	}
 
 	/**
@@ -135,20 +154,51 @@ final class ParseBuffer
 		}
 
 		// LOG.log("Will append "+numchars+" chars.");
+		makeRoom(numchars);
+
+		// append
+		System.arraycopy(a, 0, m_buffer, m_emptySpot, numchars);
+		m_emptySpot += numchars;
+
+		// LOG.log("m_buffer="+this.toString()+",capacity="+this.capacity()+", length="+this.length());
+		assert(m_emptySpot >= 0) && (m_emptySpot <= this.capacity());
+	}
+
+	/**
+	 *  Make room to append the specified number of chars, by
+	 *  compacting the buffer or expanding it.
+	 *
+	 *  @params numchars Number of chars to make room for.
+	 */
+	private void makeRoom(int numchars) throws IllegalStateException {
+		if(m_emptySpot + numchars <= this.capacity())
+			return;
+
 		// expand?
 		int newlen = this.length() + numchars;
 
 		// LOG.log("newlen="+newlen);
 		if(newlen > this.capacity()) {
 			this.expand(newlen);
-		}
-
-		// append
-		System.arraycopy(a, 0, m_buffer, this.length(), numchars);
-		m_emptySpot += numchars;
+		} else
+			this.compact();
+	}
 
-		// LOG.log("m_buffer="+this.toString()+",capacity="+this.capacity()+", length="+this.length());
-		assert(m_emptySpot >= 0) && (m_emptySpot <= this.capacity());
+	/**
+	 *  Move the contents of the buffer to the start of the array.
+	 */
+	private void compact() {
+		int h = m_head;
+		if(h > 0) {
+			System.arraycopy(m_buffer, h, m_buffer, 0,
+				this.length());
+			m_head = 0;
+			m_emptySpot -= h;
+			m_startScan -= h;
+			m_endScan -= h;
+			if(m_tokStart >= 0)
+				m_tokStart -= h;
+		}
 	}
 
 	/**
@@ -441,22 +491,44 @@ final class ParseBuffer
 			throw new IllegalArgumentException();
 		}
 
-		String b = this.toString();
+		int i = indexOf(s, m_head + fromIndex);
+		return (i < 0 ? i : i - m_head);
+	}
 
-		return (b.indexOf(s, fromIndex));
+	/**
+	 * Search the buffer for a string, without copying.
+	 *
+	 *  @params s String to search for in the buffer.
+	 *  @params from Absolute index to start searching from.
+	 *  @return Absolute index of string, or -1 if not found.
+	 */
+	private int indexOf(String s, int from) {
+		final int slen = s.length();
+		final char first = s.charAt(0);
+		final int last = m_emptySpot - slen;
+		for(int i = Math.max(from, m_head); i <= last; ++i) {
+			if(m_buffer[i] != first)
+				continue;
+			int j = 1;
+			while(j < slen && m_buffer[i + j] == s.charAt(j))
+				++j;
+			if(j == slen)
+				return (i);
+		}
+		return (-1);
 	}
 
 	/**
-	 * Extract a portion of the buffer that starts and ends
-	 * with the specified strings. null is returned if not found.
-	 * The token is deleted from the buffer if remove is true.
+	 * Find a token which starts and ends with the specified
+	 * strings, resuming the previous search if the strings are
+	 * the same and the buffer has only been appended to.
 	 *
-	 *  @params et Enumerated type that indicates how buffer should be modified after token found.
-	 *  @params start Start of token to extract.
-	 *  @params end End of token to extract.
+	 *  @params start Start of token to find.
+	 *  @params end End of token to find.
+	 *  @return Absolute index of end of token (exclusive), or -1.
+	 *          The start index is stored in m_tokStart.
 	 */
-	String getToken(ParseBuffer.ExtractType et, String start,
-			       String end) {
+	private int findToken(String start, String end) {
 		if((start == null) || (end == null)) {
 			throw new IllegalArgumentException();
 		}
@@ -465,41 +537,92 @@ final class ParseBuffer
 			throw new IllegalArgumentException();
 		}
 
-		String b = this.toString();
+		if(!start.equals(m_scanStart) || !end.equals(m_scanEnd)) {
+			resetScan();
+			m_scanStart = start;
+			m_scanEnd = end;
+		}
 
 		// does the start exist?
-		int i1 = b.indexOf(start, 0);
-
-		// LOG.log("i1="+i1);
-		if(i1 < 0) {
-			return (null);
+		if(m_tokStart < 0) {
+			int i1 = indexOf(start, m_startScan);
+			if(i1 < 0) {
+				m_startScan = Math.max(m_head,
+					m_emptySpot - start.length() + 1);
+				return (-1);
+			}
+			m_tokStart = i1;
+			m_endScan = i1;
 		}
 
 		// does the end exist?
-		int i2 = b.indexOf(end, i1);
-
-		// LOG.log("i2="+i2);
+		int i2 = indexOf(end, m_endScan);
 		if(i2 < 0) {
-			return (null);
+			m_endScan = Math.max(m_tokStart,
+				m_emptySpot - end.length() + 1);
+			return (-1);
 		}
 
 		// overlap of start and end token?
-		if(i1 + start.length() > i2) {
+		if(m_tokStart + start.length() > i2) {
+			resetScan();
 			throw new IllegalArgumentException(
 			    "getToken: start and end tokens overlap.");
 		}
 
+		return (i2 + end.length());
+	}
+
+	/**
+	 * Extract a portion of the buffer that starts and ends
+	 * with the specified strings. null is returned if not found.
+	 * The token is deleted from the buffer if remove is true.
+	 *
+	 *  @params et Enumerated type that indicates how buffer should be modified after token found.
+	 *  @params start Start of token to extract.
+	 *  @params end End of token to extract.
+	 */
+	String getToken(ParseBuffer.ExtractType et, String start,
+			       String end) {
+		int e = findToken(start, end);
+		if(e < 0) {
+			return (null);
+		}
+
 		// get substring
-		String ret = b.substring(i1, i2 + end.length());
+		int i1 = m_tokStart;
+		String ret = new String(m_buffer, i1, e - i1);
 
 		// LOG.log("ret="+ret+", len="+ret.length());
 
 		// remove chunk
-		this.removeChunk(et, i1, i2 + end.length());
+		this.removeChunk(et, i1 - m_head, e - m_head);
 
 		return (ret);
 	}
 
+	/**
+	 * Extract the next token that starts and ends with the
+	 * specified strings, deleting it and any preceding text
+	 * from the buffer (DDK).  No copy of the token is made; the
+	 * returned view is only valid until the buffer is next
+	 * appended to or initialized.
+	 *
+	 *  @params start Start of token to extract.
+	 *  @params end End of token to extract.
+	 *  @return View of token, or null if not found.
+	 */
+	CharSequence nextToken(String start, String end) {
+		int e = findToken(start, end);
+		if(e < 0) {
+			return (null);
+		}
+		int i1 = m_tokStart;
+		m_head = e;
+		resetScan();
+		return CharBuffer.wrap(m_buffer, i1, e - i1).slice();
+	}
+
 	/**
 	 * Modify the buffer by deleting or keeping around or in the specified range.
 	 *
@@ -515,7 +638,6 @@ final class ParseBuffer
 		}
 
 		int chunklen = end - start;
-		int initcap = this.capacity();
 
 		// sanity check
 		if((start < 0) || (start >= this.length()) || (chunklen < 0)
@@ -523,74 +645,32 @@ final class ParseBuffer
 			throw new IllegalArgumentException();
 		}
 
-		// remove or keep left, middle, right
-		char[] nb = new char[this.capacity()];
-		int nb_len = 0;
-
-		for(int i = 0, j = 0; i < this.length(); ++i) {
-			boolean keep = false;
-
-			// left
-			if((i < start)
-				&& ((et == ExtractType.KDK)
-				    || (et == ExtractType.KKK))) {
-				keep = true;
-
-				// middle
-			} else if((i >= start) && (i < end)
-				&& (et == ExtractType.KKK)) {
-				keep = true;
-
-				// end
-			} else if((i >= end)
-				&& ((et == ExtractType.KDK)
-				    || (et == ExtractType.DDK)
-				    || (et == ExtractType.KKK))) {
-				keep = true;
-			}
-
-			if(keep) {
-
-				// LOG.log("ParseBuffer.removeRange(): keep: i="+i+", j="+j);
-				nb[j] = m_buffer[i];
-				++j;
-				++nb_len;
-			}
+		if(et == ExtractType.DDK) {
+			// delete left and middle: just advance the head
+			m_head += end;
+		} else {
+			// KDK: move right chunk over the middle
+			int s = m_head + start;
+			int e = m_head + end;
+			System.arraycopy(m_buffer, e, m_buffer, s,
+				m_emptySpot - e);
+			m_emptySpot -= chunklen;
 		}
-
-		m_buffer = nb;
-		this.setLength(nb_len);
-		assert initcap == this.capacity();
+		resetScan();
 
 		// LOG.log("after remove: m_buffer="+this.toString()+", len="+this.length()+",cap="+this.capacity());
 	}
 
-	/**
-	 * specify the length of the buffer.
-	 */
-	private void setLength(int len) {
-		m_emptySpot = len;
-	}
-
 	/** to string */
 	public String toString() {
-
-		// LOG.log("len="+this.length());
-		// LOG.log("cap="+this.capacity());
-		// LOG.log("b="+m_buffer.toString());
-		StringBuilder s = new StringBuilder(this.length());
-
-		for(int i = 0; i < this.length(); ++i) {
-			s.append(m_buffer[i]);
-		}
-
-		return (s.toString());
+		return new String(m_buffer, m_head, this.length());
 	}
 
 	/** return the length of buffer */
 	int length() {
-		assert(m_emptySpot >= 0) && (m_emptySpot <= m_buffer.length);
-		return (m_emptySpot);
+		assert(m_head >= 0) && (m_head <= m_emptySpot)
+		      && (m_emptySpot <= m_buffer.length);
+		return (m_emptySpot - m_head);
 	}
 
 	/** return the capacity of the buffer */
@@ -609,7 +689,7 @@ final class ParseBuffer
 	char[] toArray() {
 		char[] b = new char[this.length()];
 
-		System.arraycopy(m_buffer, 0, b, 0, m_emptySpot);
+		System.arraycopy(m_buffer, m_head, b, 0, b.length);
 
 		return (b);
 	}
@@ -641,7 +721,14 @@ final class ParseBuffer
 		// LOG.log("newcap="+newcap);
 		char[] na = new char[newcap];
 
-		System.arraycopy(m_buffer, 0, na, 0, this.length());
+		int h = m_head;
+		System.arraycopy(m_buffer, h, na, 0, this.length());
+		m_emptySpot -= h;
+		m_head = 0;
+		m_startScan -= h;
+		m_endScan -= h;
+		if(m_tokStart >= 0)
+			m_tokStart -= h;
 
 		// LOG.log("m_buffer1="+this.toString()+",length="+m_buffer.length);
 		m_buffer = na;
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2014  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  * Copyright (C) 2008-2010  AHMCT, University of California
  *
  * This program is free software; you can redistribute it and/or modify
@@ -35,6 +35,7 @@ class TokenStreamReader
 	private final BufferedReader m_inps;
 	private ParseBuffer m_pb;
 	private final int m_sleeptime;
+	private final char[] m_fragment = new char[512];
 
 	/**
 	 * Constructor.
@@ -78,11 +79,14 @@ class TokenStreamReader
 	 * @param timeout Maximum time to wait for a response in MS. Zero means wait forever.
 	 * @param tokenstart Start of token.
 	 * @param tokenend End of token.
-	 * @return Null if timed out, only if the specified arg timeout>0.
+	 * @return Token, or null if timed out, only if the specified arg
+	 *         timeout>0.  The token is a view into the parse buffer,
+	 *         which is valid until the next call.
 	 * @throws IllegalStateException if maximum capacity is exceeded.
 	 * @throws IOException if endpoint disconnects.
 	 */
-	String readToken(int timeout, String tokenstart, String tokenend)
+	CharSequence readToken(int timeout, String tokenstart,
+		String tokenend)
 		throws IllegalStateException, IOException {
 
 		// check args
@@ -93,8 +97,8 @@ class TokenStreamReader
 		}
 
 		int numread = 0;
-		char[] fragment = new char[512];
-		String token = null;
+		char[] fragment = m_fragment;
+		CharSequence token = null;
 
 		// timeout?
 		long start = 0;
@@ -107,8 +111,7 @@ class TokenStreamReader
 
 			// is a complete token already in buffer? if yes, 
 			// extract it and delete preceeding text.
-			token = m_pb.getToken(ParseBuffer.ExtractType.DDK,
-				tokenstart, tokenend);
+			token = m_pb.nextToken(tokenstart, tokenend);
 			if(token != null)
 				return token;
 
@@ -145,8 +148,7 @@ class TokenStreamReader
 
 				// is a complete token in buffer? if yes, extract it,
 				// and delete text in buffer preceeding token, if any.
-				token = m_pb.getToken(ParseBuffer.ExtractType.DDK,
-					tokenstart, tokenend);
+				token = m_pb.nextToken(tokenstart, tokenend);
 
 				// LOG.log("TokenStreamReader:Extracted token, length now "+m_pb.length()+".");
 
@@ -231,8 +231,10 @@ public class TagTransaction extends E6Property {
 			Integer agency = getAgency();
 			Integer tid = getId();
 			Boolean hov = getHOV();
-			if (stamp != null && typ != null && tid != null)
-				tr.logRead(stamp, typ, agency, tid, hov);
+			if (stamp != null && typ != null && tid != null) {
+				tr.logRead(stamp, typ, agency, tid,
+					Boolean.TRUE.equals(hov));
+			}
 		}
 	}
 
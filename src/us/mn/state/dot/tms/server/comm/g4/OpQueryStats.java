@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2014  Minnesota Department of Transportation
+ * Copyright (C) 2012-2016  Minnesota Department of Transportation
  * Copyright (C) 2012  Iteris Inc.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -20,6 +20,7 @@ import java.util.Date;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.server.ControllerImpl;
 import us.mn.state.dot.tms.server.PeriodicSample;
+import us.mn.state.dot.tms.server.PeriodicSampleType;
 import us.mn.state.dot.tms.server.comm.CommMessage;
 import us.mn.state.dot.tms.server.comm.DownloadRequestException;
 import us.mn.state.dot.tms.server.comm.PriorityLevel;
@@ -106,6 +107,12 @@ public class OpQueryStats extends OpG4 {
 		controller.storeVolume(stamp, period, START_PIN,
 			stat.getVolume(G4VehClass.EXTRA_LARGE),
 			G4VehClass.EXTRA_LARGE.v_class);
+		controller.storeMetric(stamp, period, START_PIN,
+			PeriodicSampleType.HEADWAY, stat.getHeadway());
+		controller.storeMetric(stamp, period, START_PIN,
+			PeriodicSampleType.GAP, stat.getGap());
+		controller.storeMetric(stamp, period, START_PIN,
+			PeriodicSampleType.SPEED_85, stat.getSpeed85());
 		super.cleanup();
 	}
 }
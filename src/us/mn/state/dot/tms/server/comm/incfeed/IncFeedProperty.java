@@ -44,11 +44,15 @@ public class IncFeedProperty extends ControllerProperty {
 	/** Maximum number of chars in response for line reader */
 	static private final int MAX_RESP = 1024;
 
+	/** Feed ID */
+	private final String feed;
+
 	/** Incident cache */
 	private final IncidentCache cache;
 
 	/** Create a new incident feed property */
-	public IncFeedProperty(IncidentCache ic) {
+	public IncFeedProperty(String fid, IncidentCache ic) {
+		feed = fid;
 		cache = ic;
 	}
 
@@ -58,6 +62,7 @@ public class IncFeedProperty extends ControllerProperty {
 		throws IOException
 	{
 		LineReader lr = new LineReader(is, MAX_RESP);
+		cache.begin(feed);
 		String line = lr.readLine();
 		while (line != null) {
 			ParsedIncident inc = new ParsedIncident(line);
@@ -66,15 +71,16 @@ public class IncFeedProperty extends ControllerProperty {
 				checkIncident(inc);
 			line = lr.readLine();
 		}
-		cache.update();
+		int n_cleared = cache.update(feed);
+		if (n_cleared > 0)
+			IncFeedPoller.log(feed + ": cleared " + n_cleared);
 	}
 
 	/** Check a parsed incident */
 	private void checkIncident(ParsedIncident inc) {
-		if (cache.contains(inc.id))
-			cache.refresh(inc.id);
-		else
-			cache.put(inc.id, createIncident(inc));
+		String sig = inc.toString();
+		if (!cache.refresh(feed, inc.id, sig))
+			cache.put(feed, inc.id, sig, createIncident(inc));
 	}
 
 	/** Create an incident */
@@ -61,7 +61,7 @@ public class OpReadIncFeed extends OpController<IncFeedProperty> {
 		protected Phase<IncFeedProperty> poll(
 			CommMessage<IncFeedProperty> mess) throws IOException
 		{
-			mess.add(new IncFeedProperty(cache));
+			mess.add(new IncFeedProperty(feed, cache));
 			mess.queryProps();
 			return null;
 		}
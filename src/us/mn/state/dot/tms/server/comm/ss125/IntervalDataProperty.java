@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2014  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -211,19 +211,39 @@ public class IntervalDataProperty extends SS125Property {
 		return speeds;
 	}
 
-	/** Get the headway for all lanes */
+	/** Convert milliseconds to tenths of a second */
+	static private int msToTenths(int ms) {
+		return (ms + 50) / 100;
+	}
+
+	/** Get the headway for all lanes (tenths of second).  The sensor
+	 * reports headway in milliseconds. */
 	public int[] getHeadway() {
 		int[] headway = new int[lanes.length];
 		for(int i = 0; i < headway.length; i++) {
 			LaneInterval li = lanes[i];
 			if(li != null)
-				headway[i] = li.headway;
+				headway[i] = msToTenths(li.headway);
 			else
 				headway[i] = MISSING_DATA;
 		}
 		return headway;
 	}
 
+	/** Get the gap for all lanes (tenths of second).  The sensor reports
+	 * gap in milliseconds. */
+	public int[] getGap() {
+		int[] gap = new int[lanes.length];
+		for(int i = 0; i < gap.length; i++) {
+			LaneInterval li = lanes[i];
+			if(li != null)
+				gap[i] = msToTenths(li.gap);
+			else
+				gap[i] = MISSING_DATA;
+		}
+		return gap;
+	}
+
 	/** Get a string representation of the property */
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -255,6 +275,10 @@ public class IntervalDataProperty extends SS125Property {
 		for(int s: getHeadway())
 			sb.append("" + s + ",");
 		sb.setLength(sb.length() - 1);
+		sb.append("], gap: [");
+		for(int s: getGap())
+			sb.append("" + s + ",");
+		sb.setLength(sb.length() - 1);
 		sb.append("]");
 		for(SS125VehClass vc: SS125VehClass.values()) {
 			sb.append(", ");
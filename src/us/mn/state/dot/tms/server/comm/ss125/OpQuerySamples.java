@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2014  Minnesota Department of Transportation
+ * Copyright (C) 2009-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -19,6 +19,7 @@ import java.util.Calendar;
 import java.util.Date;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.server.ControllerImpl;
+import us.mn.state.dot.tms.server.PeriodicSampleType;
 import us.mn.state.dot.tms.server.comm.CommMessage;
 import us.mn.state.dot.tms.server.comm.DownloadRequestException;
 import us.mn.state.dot.tms.server.comm.PriorityLevel;
@@ -107,6 +108,12 @@ public class OpQuerySamples extends OpSS125 {
 			controller.storeVolume(stamp, period, START_PIN,
 				sample_data.getVolume(vc), vc.v_class);
 		}
+		controller.storeMetric(stamp, period, START_PIN,
+			PeriodicSampleType.HEADWAY, sample_data.getHeadway());
+		controller.storeMetric(stamp, period, START_PIN,
+			PeriodicSampleType.GAP, sample_data.getGap());
+		controller.storeMetric(stamp, period, START_PIN,
+			PeriodicSampleType.SPEED_85, sample_data.getSpeed85());
 		super.cleanup();
 	}
 }
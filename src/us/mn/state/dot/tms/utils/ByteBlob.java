@@ -15,20 +15,31 @@
  */
 package us.mn.state.dot.tms.utils;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
- * A byte buffer.
+ * A byte buffer, backed by a primitive byte array which grows as needed.
  * @see us.mn.state.dot.tms.utils.ByteBlobTest
  * @author Michael Darter
  * @author Travis Swanston
  */
 public class ByteBlob {
+	/** Default initial capacity */
+	static private final int INITIAL_CAPACITY = 16;
+
+	/** Empty byte array */
+	static private final byte[] EMPTY = new byte[0];
+
 	/** Byte buffer, never null */
-	private ArrayList<Byte> m_buffer = new ArrayList<Byte>();
+	private byte[] m_buffer;
+
+	/** Number of bytes used in buffer */
+	private int m_size = 0;
 
 	/** Constructor */
 	public ByteBlob() {
+		this(INITIAL_CAPACITY);
 	}
 
 	/**
@@ -36,7 +47,7 @@ public class ByteBlob {
 	 * @param ic Initial capacity in bytes
 	 */
 	public ByteBlob(int ic) {
-		m_buffer = new ArrayList<Byte>(ic);
+		m_buffer = new byte[ic < 0 ? 0 : ic];
 	}
 
 	/**
@@ -44,8 +55,7 @@ public class ByteBlob {
 	 * @param array byte array, may be null
 	 */
 	public ByteBlob(byte[] array) {
-		array = (array == null ? new byte[0] : array);
-		m_buffer = new ArrayList<Byte>(array.length);
+		this(array == null ? 0 : array.length);
 		add(array);
 	}
 
@@ -54,14 +64,15 @@ public class ByteBlob {
 	 * @param array Int array, may be null
 	 */
 	public ByteBlob(int[] array) {
+		this(array.length);
 		for(int i : array)
 			add(i);
 	}
 
 	/** Constructor with blob */
 	public ByteBlob(ByteBlob bb) {
-		for(int i : bb.toArray())
-			add(i);
+		this(bb.size());
+		add(bb);
 	}
 
 	/**
@@ -71,8 +82,8 @@ public class ByteBlob {
 	 */
 	public ByteBlob(int len, byte[] array) {
 		len = (len < 0 ? 0 : len);
-		array = (array == null ? new byte[0] : array);
-		m_buffer = new ArrayList<Byte>(len);
+		array = (array == null ? EMPTY : array);
+		m_buffer = new byte[len];
 		add(len, array);
 	}
 
@@ -97,15 +108,23 @@ public class ByteBlob {
 	public boolean equals(byte[] a) {
 		if(a == null || a.length != size())
 			return false;
-		for(int i = 0; i < size(); ++i)
-			if(getByte(i) != a[i])
+		for(int i = 0; i < m_size; ++i)
+			if(m_buffer[i] != a[i])
 				return false;
 		return true;
 	}
 
 	/** Remove all bytes from the container */
 	public void clear() {
-		m_buffer.clear();
+		m_size = 0;
+	}
+
+	/** Ensure the buffer can hold the specified number of bytes */
+	private void ensureCapacity(int cap) {
+		if(cap > m_buffer.length) {
+			int nc = Math.max(cap, m_buffer.length * 2);
+			m_buffer = Arrays.copyOf(m_buffer, nc);
+		}
 	}
 
 	/** Remove all bytes from the container and add new bytes. */
@@ -117,34 +136,44 @@ public class ByteBlob {
 	/** Append a byte blob */
 	public ByteBlob add(ByteBlob bb) {
 		if(bb != null)
-			for(int i = 0; i < bb.size(); ++i)
-				add(bb.getByte(i));
+			add(bb.m_buffer, 0, bb.m_size);
 		return this;
 	}
 
 	/** Add a char to the end of the buffer as a byte */
 	public ByteBlob add(char c) {
-		m_buffer.add((byte)c);
-		return this;
+		return add((byte)c);
 	}
 
 	/** Add a byte to the end of the buffer */
 	public ByteBlob add(byte b) {
-		m_buffer.add(b);
+		ensureCapacity(m_size + 1);
+		m_buffer[m_size++] = b;
 		return this;
 	}
 
 	/** Add an int to the end of the buffer as a single byte value */
 	public ByteBlob add(int i) {
-		m_buffer.add((byte)i);
-		return this;
+		return add((byte)i);
 	}
 
 	/** Add an array to the end of the buffer */
 	public ByteBlob add(byte[] b) {
-		if(b == null)
-			b = new byte[0];
-		add(b.length, b);
+		if(b != null)
+			add(b, 0, b.length);
+		return this;
+	}
+
+	/**
+	 * Append a range of an array to the buffer.
+	 * @param b Array of bytes to add.
+	 * @param off Offset of first byte in array.
+	 * @param len Number of bytes to add.
+	 */
+	public ByteBlob add(byte[] b, int off, int len) {
+		ensureCapacity(m_size + len);
+		System.arraycopy(b, off, m_buffer, m_size, len);
+		m_size += len;
 		return this;
 	}
 
@@ -155,18 +184,16 @@ public class ByteBlob {
 	 */
 	public void add(int num, byte[] b) {
 		assert b != null;
-		if(b == null)
+		if(b == null || num <= 0)
 			return;
-		for(int i = 0; i < num; ++i)
-			if(i < b.length)
-				add(b[i]);
-			else
-				add(0);
+		int n = Math.min(num, b.length);
+		add(b, 0, n);
+		setSize(m_size + num - n);
 	}
 
 	/** Get the number of bytes in the buffer */
 	public int size() {
-		return m_buffer.size();
+		return m_size;
 	}
 
 	/**
@@ -187,18 +214,11 @@ public class ByteBlob {
 	 */
 	public ByteBlob setSize(int ns) {
 		ns = (ns < 0 ? 0 : ns);
-		if(ns == size())
-			return this;
-		else if(ns < size()) {
-			ArrayList<Byte> nb = new ArrayList<Byte>(ns);
-			for(int i = 0; i < ns; ++i)
-				nb.add(m_buffer.get(i));
-			m_buffer = nb;
-		} else {
-			final int more = ns - size();
-			for(int i = 0; i < more; ++i)
-				m_buffer.add((byte)0);
+		if(ns > m_size) {
+			ensureCapacity(ns);
+			Arrays.fill(m_buffer, m_size, ns, (byte)0);
 		}
+		m_size = ns;
 		return this;
 	}
 
@@ -234,7 +254,9 @@ public class ByteBlob {
 
 	/** Get the byte at the specified position as a signed byte. */
 	public byte getByte(int i) {
-		return m_buffer.get(idx(i));
+		if(m_size == 0)
+			throw new IndexOutOfBoundsException("empty");
+		return m_buffer[idx(i)];
 	}
 
 	/** Get byte at specified position as quasi unsigned byte (integer). */
@@ -286,21 +308,34 @@ public class ByteBlob {
 
 	/** Return a byte[] containing the buffer. */
 	public byte[] toArray() {
-		return toArray(m_buffer);
+		return Arrays.copyOf(m_buffer, m_size);
 	}
 
-	/** Return an array given an array list. */
-	static private byte[] toArray(ArrayList<Byte> buffer) {
-		if(buffer == null)
-			return new byte[0];
-		if(buffer.size() <= 0)
-			return new byte[0];
-		byte[] ret = new byte[buffer.size()];
-		for(int i=0; i<buffer.size(); ++i) {
-			Byte b = buffer.get(i);
-			ret[i] = b.byteValue();
-		}
-		return ret;
+	/**
+	 * Copy a range of the buffer into an array.
+	 * @param si Start index, inclusive.
+	 * @param dst Destination array.
+	 * @param off Offset in destination array.
+	 * @param len Number of bytes to copy.
+	 */
+	public void copyTo(int si, byte[] dst, int off, int len) {
+		if(si < 0 || len < 0 || si + len > m_size)
+			throw new IndexOutOfBoundsException();
+		System.arraycopy(m_buffer, si, dst, off, len);
+	}
+
+	/**
+	 * Get a read-only view of a range of the buffer, without copying.
+	 * The view is only valid until the blob is next modified.
+	 * @param si Start index, inclusive.
+	 * @param ei End index, exclusive. Use negative value for length.
+	 */
+	public ByteBuffer getByteBuffer(int si, int ei) {
+		si = (si < 0 ? 0 : (si > m_size ? m_size : si));
+		ei = (ei < 0 || ei > m_size ? m_size : ei);
+		int len = (ei > si ? ei - si : 0);
+		return ByteBuffer.wrap(m_buffer, si, len).slice()
+			.asReadOnlyBuffer();
 	}
 
 	/** Return a string representation. */
@@ -325,9 +360,8 @@ public class ByteBlob {
 	/** Calculate a checksum as an integer. */
 	public int calcIntChecksum(int fi, int ti) {
 		int cs = 0;
-		for(int i = fi; i <= ti; ++i) {
+		for(int i = fi; i <= ti; ++i)
 			cs += getInt(i);
-		}
 		return cs;
 	}
 
@@ -365,8 +399,7 @@ public class ByteBlob {
 	 */
 	public int crc16() {
 		CRC16 crc = new CRC16();
-		for(byte b : toArray())
-			crc.update(b);
+		crc.update(m_buffer, 0, m_size);
 		return (int)crc.getValue();
 	}
 
@@ -377,8 +410,9 @@ public class ByteBlob {
 	 */
 	public int crc16(int si, int ei) {
 		CRC16 crc = new CRC16();
-		for(byte b : getByteArray(si, ei))
-			crc.update(b);
+		int len = rangeLength(si, ei);
+		if(len > 0)
+			crc.update(m_buffer, idx(si), len);
 		return (int)crc.getValue();
 	}
 
@@ -403,16 +437,23 @@ public class ByteBlob {
 	 * @return Byte array containing byte range specified.
 	 */
 	public byte[] getByteArray(int si, int ei) {
+		final int len = rangeLength(si, ei);
+		if(len <= 0)
+			return new byte[0];
+		si = idx(si);
+		return Arrays.copyOfRange(m_buffer, si, si + len);
+	}
+
+	/**
+	 * Get the length of a range, as used by getByteArray.
+	 * @param si Start index, inclusive.
+	 * @param ei End index, exclusive. Use negative value for length.
+	 */
+	private int rangeLength(int si, int ei) {
 		si = idx(si);
 		ei = (ei < 0 ? size(): ei);
 		ei = (ei > size() ? size() : ei);
-		final int len = ei - si;
-		if(len <= 0)
-			return new byte[0];
-		byte[] r = new byte[len];
-		for(int t = 0, s = si; t < len; ++t, ++s)
-			r[t] = getByte(s);
-		return r;
+		return ei - si;
 	}
 
 	/**
@@ -449,9 +490,9 @@ public class ByteBlob {
 	public boolean search(byte[] leader, int idx) {
 		if(leader == null || leader.length <= 0)
 			return true;
+		if(idx + leader.length > m_size)
+			return false;
 		for(int i = 0; i<leader.length; ++i) {
-			if(idx + i >= size())
-				return false;
 			if(getByte(idx + i) != leader[i])
 				return false;
 		}
@@ -540,7 +581,7 @@ public class ByteBlob {
 
 	/** Return the bytes encoded as characters. */
 	public String toStringChars() {
-		return new String(toArray());
+		return new String(m_buffer, 0, m_size);
 	}
 
 }
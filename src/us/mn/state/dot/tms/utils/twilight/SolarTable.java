@@ -0,0 +1,157 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.utils.twilight;
+
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import us.mn.state.dot.tms.geo.Position;
+
+/**
+ * A table of solar events (sunrise and sunset), by day and location.  Each
+ * day is computed once, when first needed or by update, which should be
+ * called shortly after midnight.  Locations are rounded to 0.0001 degrees.
+ *
+ * @author Douglas Lau
+ */
+public class SolarTable {
+
+	/** Scale for rounding locations */
+	static private final double LOC_SCALE = 10000;
+
+	/** Solar events for one day at one location */
+	static public class Day {
+
+		/** Sunrise time stamp */
+		public final long sunrise;
+
+		/** Sunset time stamp */
+		public final long sunset;
+
+		/** Create solar events for one day */
+		private Day(long r, long s) {
+			sunrise = r;
+			sunset = s;
+		}
+	}
+
+	/** Key for one day at one location */
+	static private final class Key {
+		private final int day;
+		private final int lat;
+		private final int lon;
+		private Key(int d, Position pos) {
+			day = d;
+			lat = (int) Math.round(pos.getLatitude() * LOC_SCALE);
+			lon = (int) Math.round(pos.getLongitude() * LOC_SCALE);
+		}
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return day == k.day && lat == k.lat &&
+				       lon == k.lon;
+			} else
+				return false;
+		}
+		@Override
+		public int hashCode() {
+			return (day * 31 + lat) * 31 + lon;
+		}
+	}
+
+	/** Time zone of table */
+	private final TimeZone tz;
+
+	/** Solar events, by day and location */
+	private final ConcurrentHashMap<Key, Day> days =
+		new ConcurrentHashMap<Key, Day>();
+
+	/** Create a new solar table.
+	 * @param z Time zone for days and event times. */
+	public SolarTable(TimeZone z) {
+		tz = z;
+	}
+
+	/** Get a day number (yyyymmdd) of a calendar */
+	static private int dayNumber(Calendar cal) {
+		return cal.get(Calendar.YEAR) * 10000 +
+		      (cal.get(Calendar.MONTH) + 1) * 100 +
+		       cal.get(Calendar.DAY_OF_MONTH);
+	}
+
+	/** Get a calendar at noon of the same day in the table time zone */
+	private Calendar noon(Calendar date) {
+		Calendar cal = Calendar.getInstance(tz);
+		cal.clear();
+		cal.set(date.get(Calendar.YEAR), date.get(Calendar.MONTH),
+			date.get(Calendar.DAY_OF_MONTH), 12, 0, 0);
+		return cal;
+	}
+
+	/** Look up solar events for one day.
+	 * @param date Calendar with date to look up.
+	 * @param pos Location of observer.
+	 * @return Solar events for the day. */
+	public Day lookup(Calendar date, Position pos) {
+		Key k = new Key(dayNumber(date), pos);
+		Day d = days.get(k);
+		if (null == d) {
+			d = compute(noon(date), pos);
+			days.put(k, d);
+		}
+		return d;
+	}
+
+	/** Compute solar events for one day */
+	private Day compute(Calendar cal, Position pos) {
+		boolean dst = tz.inDaylightTime(cal.getTime());
+		Time rise = Sun.sunriseTime(cal, pos, tz, dst);
+		Time set = Sun.sunsetTime(cal, pos, tz, dst);
+		return new Day(toMillis(cal, rise), toMillis(cal, set));
+	}
+
+	/** Get a time stamp from a time of day */
+	static private long toMillis(Calendar cal, Time t) {
+		Calendar c = (Calendar) cal.clone();
+		c.set(Calendar.HOUR_OF_DAY, t.getHours());
+		c.set(Calendar.MINUTE, t.getMinutes());
+		c.set(Calendar.SECOND, (int) t.getSeconds());
+		return c.getTimeInMillis();
+	}
+
+	/** Update the table for a new day.  Earlier days are purged, and
+	 * solar events for the day and the next day are computed.
+	 * @param today Calendar with the current date.
+	 * @param pos Location of observer. */
+	public void update(Calendar today, Position pos) {
+		int dn = dayNumber(today);
+		Iterator<Key> it = days.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().day < dn)
+				it.remove();
+		}
+		Calendar cal = noon(today);
+		lookup(cal, pos);
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		lookup(cal, pos);
+	}
+
+	/** Get the number of days in the table */
+	public int size() {
+		return days.size();
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2011  Minnesota Department of Transportation
+ * Copyright (C) 2011-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,6 +14,11 @@
  */
 package us.mn.state.dot.tms;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
 import junit.framework.TestCase;
 import us.mn.state.dot.tms.CorridorBase;
 
@@ -23,9 +28,129 @@ import us.mn.state.dot.tms.CorridorBase;
  * @author Doug Lau
  */
 public class CorridorBaseTest extends TestCase {
+
+	/** Number of nodes in test corridor */
+	static private final int N_NODES = 60;
+
+	/** Create a stand-in object which returns property values */
+	static private <T> T standIn(Class<T> c, final Object... props) {
+		return c.cast(Proxy.newProxyInstance(c.getClassLoader(),
+			new Class<?>[] { c }, new InvocationHandler()
+		{
+			public Object invoke(Object p, Method m, Object[] a) {
+				for (int i = 0; i < props.length; i += 2) {
+					if (m.getName().equals(props[i]))
+						return props[i + 1];
+				}
+				if (m.getName().equals("hashCode"))
+					return System.identityHashCode(p);
+				if (m.getName().equals("equals"))
+					return p == a[0];
+				Class<?> rt = m.getReturnType();
+				if (rt == boolean.class)
+					return false;
+				if (rt == short.class)
+					return (short) 0;
+				if (rt == int.class)
+					return 0;
+				return null;
+			}
+		}));
+	}
+
+	/** Create a stand-in location */
+	static private GeoLoc createLoc(double lat, double lon) {
+		return standIn(GeoLoc.class, "getLat", lat, "getLon", lon,
+			"getRoadDir", (short) Direction.NORTH.ordinal());
+	}
+
+	/** Create a stand-in node on a northbound curving corridor */
+	static private R_Node createNode(int i) {
+		double lat = 45 + i * 0.004;
+		double lon = -93.2 + 0.01 * Math.sin(i / 10.0);
+		return standIn(R_Node.class, "getName", "rnd_" + i,
+			"getGeoLoc", createLoc(lat, lon));
+	}
+
+	/** Create the test nodes, in a shuffled (but repeatable) order */
+	static private ArrayList<R_Node> createNodes() {
+		ArrayList<R_Node> nodes = new ArrayList<R_Node>();
+		for (int i = 0; i < N_NODES; i++)
+			nodes.add(createNode((i * 37) % N_NODES));
+		return nodes;
+	}
+
+	/** Create a corridor for the test nodes */
+	static private CorridorBase<R_Node> createCorridor() {
+		return new CorridorBase<R_Node>(createLoc(45, -93.2));
+	}
+
 	public CorridorBaseTest(String name) {
 		super(name);
 	}
+
+	/** Incremental insertion must match sorting the whole corridor */
+	public void testInsertNodes() {
+		ArrayList<R_Node> nodes = createNodes();
+		CorridorBase<R_Node> sorted = createCorridor();
+		for (R_Node n: nodes)
+			sorted.addNode(n);
+		sorted.arrangeNodes();
+		CorridorBase<R_Node> inc = createCorridor();
+		// Sort one node in three, then insert the rest in batches
+		// small enough to take the insertion path
+		for (int i = 0; i < N_NODES; i += 3)
+			inc.addNode(nodes.get(i));
+		inc.arrangeNodes();
+		int batch = 0;
+		for (int i = 0; i < N_NODES; i++) {
+			if (i % 3 != 0) {
+				inc.addNode(nodes.get(i));
+				if (++batch == 4) {
+					inc.arrangeNodes();
+					batch = 0;
+				}
+			}
+		}
+		inc.arrangeNodes();
+		Iterator<R_Node> it = inc.iterator();
+		for (R_Node n: sorted) {
+			assertTrue(it.hasNext());
+			R_Node m = it.next();
+			assertSame(n.getName(), n, m);
+			assertEquals(sorted.getMilePoint(n),
+				inc.getMilePoint(m));
+		}
+		assertFalse(it.hasNext());
+		for (int i = 0; i < 100; i++) {
+			GeoLoc loc = createLoc(45.001 + i * 0.0023, -93.195);
+			assertEquals(sorted.calculateMilePoint(loc),
+				inc.calculateMilePoint(loc));
+		}
+	}
+
+	/** Moving a node must place it again using the index */
+	public void testMoveNode() {
+		ArrayList<R_Node> nodes = createNodes();
+		CorridorBase<R_Node> c = createCorridor();
+		for (R_Node n: nodes)
+			c.addNode(n);
+		c.arrangeNodes();
+		R_Node n = nodes.get(5);
+		c.removeNode(n);
+		c.arrangeNodes();
+		assertNull(c.getMilePoint(n));
+		c.addNode(n);
+		c.arrangeNodes();
+		assertNotNull(c.getMilePoint(n));
+		float prev = -1;
+		for (R_Node r: c) {
+			float m = c.getMilePoint(r);
+			assertTrue(m > prev);
+			prev = m;
+		}
+	}
+
 	public void test() {
 		for(int m = 0; m < 10000; m++) {
 			float miles = m + m / 10000f;
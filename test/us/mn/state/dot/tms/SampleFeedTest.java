@@ -0,0 +1,83 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ * Sample feed tests
+ *
+ * @author Douglas Lau
+ */
+public class SampleFeedTest extends TestCase {
+
+	public SampleFeedTest(String name) {
+		super(name);
+	}
+
+	public void testIndexName() {
+		assertEquals("http://host/det_sample_index.bin.gz",
+			SampleFeed.indexName("http://host/det_sample.bin.gz"));
+		assertNull(SampleFeed.indexName("http://host/det_sample.xml.gz"));
+	}
+
+	public void testIndex() throws IOException {
+		String[] sids = { "100", "101", "S7" };
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		SampleFeed.encodeIndex(new DataOutputStream(bos), sids);
+		String[] res = SampleFeed.decodeIndex(new DataInputStream(
+			new ByteArrayInputStream(bos.toByteArray())));
+		assertEquals(3, res.length);
+		assertEquals("S7", res[2]);
+		assertTrue(SampleFeed.indexId(sids) !=
+			SampleFeed.indexId(new String[] { "100", "101" }));
+	}
+
+	public void testData() throws IOException {
+		short[] v = {
+			1200, 55, SampleFeed.MISSING,
+			SampleFeed.MISSING, SampleFeed.MISSING, 3,
+		};
+		SampleFeed f = new SampleFeed(42, 1234567890L, 30, v);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		SampleFeed.encodeData(new DataOutputStream(bos), f);
+		// header (24 bytes) + 2 bytes per value
+		assertEquals(24 + 2 * v.length, bos.size());
+		SampleFeed r = SampleFeed.decodeData(new DataInputStream(
+			new ByteArrayInputStream(bos.toByteArray())));
+		assertEquals(42, r.index_id);
+		assertEquals(1234567890L, r.stamp);
+		assertEquals(30, r.period);
+		assertEquals(2, r.size());
+		assertEquals(Integer.valueOf(1200),
+			r.getValue(0, SampleFeed.FLOW));
+		assertEquals(Integer.valueOf(55),
+			r.getValue(0, SampleFeed.SPEED));
+		assertNull(r.getValue(0, SampleFeed.TVT));
+		assertNull(r.getValue(1, SampleFeed.FLOW));
+		assertEquals(Integer.valueOf(3), r.getValue(1, SampleFeed.TVT));
+	}
+
+	public void testClamp() {
+		assertEquals(SampleFeed.MISSING, SampleFeed.clamp(-1));
+		assertEquals(Short.MAX_VALUE, SampleFeed.clamp(100000));
+		assertEquals(17, SampleFeed.clamp(17));
+	}
+}
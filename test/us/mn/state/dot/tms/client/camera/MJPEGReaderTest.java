@@ -0,0 +1,87 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.camera;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import junit.framework.TestCase;
+
+/**
+ * MJPEG reader tests.
+ *
+ * @author Douglas Lau
+ */
+public class MJPEGReaderTest extends TestCase {
+
+	public MJPEGReaderTest(String name) {
+		super(name);
+	}
+
+	static private void writePart(ByteArrayOutputStream os, byte[] data)
+		throws IOException
+	{
+		os.write(("--myboundary\r\nContent-Type: image/jpeg\r\n" +
+			"Content-Length: " + data.length + "\r\n\r\n")
+			.getBytes("US-ASCII"));
+		os.write(data);
+		os.write("\r\n".getBytes("US-ASCII"));
+	}
+
+	static private MJPEGReader createReader(byte[]... parts)
+		throws IOException
+	{
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		for (byte[] p: parts)
+			writePart(os, p);
+		return new MJPEGReader(new ByteArrayInputStream(
+			os.toByteArray()));
+	}
+
+	public void testFrames() throws IOException {
+		byte[] a = new byte[1000];
+		byte[] b = new byte[10];
+		a[999] = 7;
+		b[9] = 9;
+		MJPEGReader r = createReader(a, b);
+		MJPEGReader.Frame f = new MJPEGReader.Frame();
+		r.readFrame(f);
+		assertEquals(1000, f.getLength());
+		assertEquals(7, f.getData()[999]);
+		byte[] buf = f.getData();
+		r.readFrame(f);
+		assertEquals(10, f.getLength());
+		assertEquals(9, f.getData()[9]);
+		// Buffer is reused for smaller frames
+		assertSame(buf, f.getData());
+		try {
+			r.readFrame(f);
+			fail();
+		}
+		catch (IOException e) {
+			assertEquals("End of stream", e.getMessage());
+		}
+	}
+
+	public void testImage() throws IOException {
+		byte[] a = new byte[10000];
+		a[9999] = 3;
+		MJPEGReader r = new MJPEGReader(new ByteArrayInputStream(a));
+		MJPEGReader.Frame f = new MJPEGReader.Frame();
+		r.readImage(f, -1);
+		assertEquals(10000, f.getLength());
+		assertEquals(3, f.getData()[9999]);
+	}
+}
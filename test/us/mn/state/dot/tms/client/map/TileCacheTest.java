@@ -0,0 +1,196 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.map;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import junit.framework.TestCase;
+
+/**
+ * Tile cache tests, using a local tile directory.
+ *
+ * @author Douglas Lau
+ */
+public class TileCacheTest extends TestCase {
+
+	/** Temporary directory */
+	private File tmp;
+
+	/** Tile source directory */
+	private File src;
+
+	public TileCacheTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws IOException {
+		tmp = File.createTempFile("tiles", "");
+		tmp.delete();
+		src = new File(tmp, "src");
+		for (int x = 0; x < 4; x++) {
+			for (int y = 0; y < 4; y++)
+				writeTile("2/" + x + "/" + y);
+		}
+	}
+
+	@Override
+	protected void tearDown() {
+		delete(tmp);
+	}
+
+	private void writeTile(String n) throws IOException {
+		File f = new File(src, n + ".png");
+		f.getParentFile().mkdirs();
+		BufferedImage img = new BufferedImage(256, 256,
+			BufferedImage.TYPE_INT_RGB);
+		ImageIO.write(img, "png", f);
+	}
+
+	static private void delete(File f) {
+		File[] files = f.listFiles();
+		if (files != null) {
+			for (File c: files)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	private ImageFetcher createFetcher() throws IOException {
+		return new ImageFetcher(src.toURI().toURL().toString());
+	}
+
+	public void testLru() throws IOException {
+		TileCache tc = new TileCache(createFetcher(), 2);
+		tc.lookupTile("2/0/0");
+		tc.lookupTile("2/0/1");
+		// Access first tile, so that second is least-recently-used
+		assertNotNull(tc.getTile("2/0/0"));
+		tc.lookupTile("2/0/2");
+		assertTrue(tc.isCached("2/0/0"));
+		assertFalse(tc.isCached("2/0/1"));
+		assertTrue(tc.isCached("2/0/2"));
+		tc.destroy();
+	}
+
+	public void testMissing() throws IOException {
+		TileCache tc = new TileCache(createFetcher(), 2);
+		try {
+			tc.lookupTile("9/9/9");
+			fail();
+		}
+		catch (FileNotFoundException e) {
+			// expected
+		}
+		tc.destroy();
+	}
+
+	public void testRequest() throws Exception {
+		TileCache tc = new TileCache(createFetcher(), 100);
+		final CountDownLatch latch = new CountDownLatch(16);
+		tc.addListener(new TileCache.Listener() {
+			public void tileLoaded(String n) {
+				latch.countDown();
+			}
+		});
+		for (int x = 0; x < 4; x++) {
+			for (int y = 0; y < 4; y++)
+				tc.requestTile("2/" + x + "/" + y, false);
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (int x = 0; x < 4; x++) {
+			for (int y = 0; y < 4; y++)
+				assertNotNull(tc.getTile("2/" + x + "/" + y));
+		}
+		tc.destroy();
+	}
+
+	public void testTooLarge() throws IOException {
+		File f = new File(src, "2/3/9.png");
+		FileOutputStream fos = new FileOutputStream(f);
+		try {
+			fos.write(new byte[512 * 1024]);
+		}
+		finally {
+			fos.close();
+		}
+		TileCache tc = new TileCache(createFetcher(), 2);
+		try {
+			tc.lookupTile("2/3/9");
+			fail();
+		}
+		catch (FileNotFoundException e) {
+			fail();
+		}
+		catch (IOException e) {
+			String m = e.getMessage();
+			assertTrue(m, m.startsWith("Image too large"));
+		}
+		assertFalse(tc.isCached("2/3/9"));
+		tc.destroy();
+	}
+
+	public void testRequestOrder() throws IOException {
+		TileCache tc = new TileCache(null, 2);
+		PriorityBlockingQueue<TileCache.Request> q =
+			new PriorityBlockingQueue<TileCache.Request>();
+		TileCache.Request p0 = new TileCache.Request("p0", false, 0,
+			tc);
+		TileCache.Request v1 = new TileCache.Request("v1", true, 1, tc);
+		TileCache.Request p2 = new TileCache.Request("p2", false, 2,
+			tc);
+		TileCache.Request v3 = new TileCache.Request("v3", true, 3, tc);
+		q.add(p0);
+		q.add(v1);
+		q.add(p2);
+		q.add(v3);
+		// Newest visible first, then prefetch in request order
+		assertSame(v3, q.poll());
+		assertSame(v1, q.poll());
+		assertSame(p0, q.poll());
+		assertSame(p2, q.poll());
+		tc.destroy();
+	}
+
+	public void testDisk() throws IOException {
+		File dir = new File(tmp, "cache");
+		TileDiskCache disk = new TileDiskCache(dir,
+			TileDiskCache.MAX_AGE_MS);
+		TileCache tc = new TileCache(createFetcher(), disk, 10);
+		tc.lookupTile("2/1/1");
+		assertTrue(new File(dir, "2/1/1.png").isFile());
+		tc.destroy();
+		// Remove source tiles; new cache must load from disk
+		delete(src);
+		tc = new TileCache(createFetcher(), disk, 10);
+		tc.lookupTile("2/1/1");
+		assertNotNull(tc.getTile("2/1/1"));
+		tc.destroy();
+	}
+
+	public void testValid() {
+		assertFalse(TileDiskCache.isValid(new byte[0]));
+		assertFalse(TileDiskCache.isValid("not a png file".getBytes()));
+		assertEquals("tiles.example.com_osm_",
+			TileDiskCache.dirName("http://tiles.example.com/osm/"));
+	}
+}
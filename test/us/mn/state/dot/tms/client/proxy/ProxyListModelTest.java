@@ -0,0 +1,119 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.client.proxy;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.swing.JList;
+import javax.swing.ListSelectionModel;
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.SonarObject;
+
+/**
+ * Proxy list model tests
+ *
+ * @author Douglas Lau
+ */
+public class ProxyListModelTest extends TestCase {
+
+	/** Simple proxy for testing */
+	static private class TestProxy implements SonarObject {
+		private final String name;
+		private TestProxy(String n) {
+			name = n;
+		}
+		public String getTypeName() {
+			return "test_proxy";
+		}
+		public String getName() {
+			return name;
+		}
+		public void destroy() { }
+	}
+
+	/** Model which only includes visible proxies */
+	static private class TestModel extends ProxyListModel<TestProxy> {
+		private final HashSet<TestProxy> visible =
+			new HashSet<TestProxy>();
+		private TestModel() {
+			super(null);
+		}
+		@Override
+		protected Comparator<TestProxy> comparator() {
+			return new Comparator<TestProxy>() {
+				public int compare(TestProxy a, TestProxy b) {
+					String an = a.getName();
+					return an.compareTo(b.getName());
+				}
+			};
+		}
+		@Override
+		protected boolean check(TestProxy proxy) {
+			return visible.contains(proxy);
+		}
+		/** Change visibility of proxies in one batch */
+		private void change(TestProxy... proxies) {
+			Set<TestProxy> batch = new LinkedHashSet<TestProxy>();
+			for (TestProxy p: proxies) {
+				if (!visible.remove(p))
+					visible.add(p);
+				batch.add(p);
+			}
+			proxiesChangedSwing(batch);
+		}
+	}
+
+	private final TestProxy a = new TestProxy("A");
+	private final TestProxy b = new TestProxy("B");
+	private final TestProxy c = new TestProxy("C");
+	private final TestProxy d = new TestProxy("D");
+
+	public ProxyListModelTest(String name) {
+		super(name);
+	}
+
+	/** Create a single selection list for a model */
+	private JList<TestProxy> createList(TestModel m) {
+		JList<TestProxy> jl = new JList<TestProxy>(m);
+		jl.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		return jl;
+	}
+
+	public void testBatchInsertAboveSelection() {
+		TestModel m = new TestModel();
+		JList<TestProxy> jl = createList(m);
+		m.change(b, d);
+		assertEquals(2, m.getSize());
+		jl.setSelectedIndex(1);
+		assertSame(d, jl.getSelectedValue());
+		m.change(a, c);
+		assertEquals(4, m.getSize());
+		assertEquals(3, jl.getSelectedIndex());
+		assertSame(d, jl.getSelectedValue());
+	}
+
+	public void testBatchRemoveAboveSelection() {
+		TestModel m = new TestModel();
+		JList<TestProxy> jl = createList(m);
+		m.change(a, b, c, d);
+		jl.setSelectedIndex(2);
+		assertSame(c, jl.getSelectedValue());
+		m.change(a, b);
+		assertEquals(2, m.getSize());
+		assertSame(c, jl.getSelectedValue());
+	}
+}
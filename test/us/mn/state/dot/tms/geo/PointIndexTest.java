@@ -0,0 +1,105 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.geo;
+
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Point index tests.
+ *
+ * @author Douglas Lau
+ */
+public class PointIndexTest extends TestCase {
+
+	public PointIndexTest(String name) {
+		super(name);
+	}
+
+	/** Find the nearest position by linear haversine search */
+	static private int linearNearest(Position[] pos, Position p,
+		boolean[] removed)
+	{
+		int best = -1;
+		double m = 0;
+		for (int i = 0; i < pos.length; i++) {
+			if (removed[i])
+				continue;
+			double d = pos[i].distanceHaversine(p);
+			if (best < 0 || d < m) {
+				best = i;
+				m = d;
+			}
+		}
+		return best;
+	}
+
+	static private Position[] createPositions(Random r, int n) {
+		Position[] pos = new Position[n];
+		for (int i = 0; i < n; i++) {
+			pos[i] = new Position(44.8 + r.nextDouble() * 0.4,
+				-93.5 + r.nextDouble() * 0.5);
+		}
+		return pos;
+	}
+
+	public void testNearest() {
+		Random r = new Random(42);
+		Position[] pos = createPositions(r, 500);
+		boolean[] removed = new boolean[pos.length];
+		PointIndex index = new PointIndex(pos);
+		for (int j = 0; j < 1000; j++) {
+			Position p = new Position(44.7 + r.nextDouble() * 0.6,
+				-93.6 + r.nextDouble() * 0.7);
+			assertEquals(linearNearest(pos, p, removed),
+				index.findNearest(p));
+		}
+	}
+
+	public void testRemove() {
+		Random r = new Random(7);
+		Position[] pos = createPositions(r, 200);
+		boolean[] removed = new boolean[pos.length];
+		PointIndex index = new PointIndex(pos);
+		for (int j = 0; j < 199; j++) {
+			int i = r.nextInt(pos.length);
+			index.remove(i);
+			removed[i] = true;
+			Position p = pos[r.nextInt(pos.length)];
+			assertEquals(linearNearest(pos, p, removed),
+				index.findNearest(p));
+		}
+	}
+
+	public void testEmpty() {
+		PointIndex index = new PointIndex(new Position[0]);
+		assertEquals(0, index.size());
+		assertEquals(-1, index.findNearest(new Position(45, -93)));
+	}
+
+	public void testTies() {
+		Position[] pos = {
+			new Position(45, -93),
+			new Position(45.1, -93),
+			new Position(45.1, -93),
+		};
+		PointIndex index = new PointIndex(pos);
+		assertEquals(1, index.findNearest(new Position(45.2, -93)));
+		assertEquals(2, index.findNearestTo(1));
+		index.remove(1);
+		assertEquals(2, index.findNearest(new Position(45.2, -93)));
+		assertEquals(2, index.size());
+	}
+}
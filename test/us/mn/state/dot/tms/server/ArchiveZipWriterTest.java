@@ -0,0 +1,124 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import junit.framework.TestCase;
+
+/**
+ * Archive zip writer tests
+ *
+ * @author Douglas Lau
+ */
+public class ArchiveZipWriterTest extends TestCase {
+
+	public ArchiveZipWriterTest(String name) {
+		super(name);
+	}
+
+	/** Read an entry from a zip file */
+	private byte[] readEntry(ZipFile zf, String name) throws IOException {
+		ZipEntry ze = zf.getEntry(name);
+		assertNotNull(ze);
+		byte[] data = new byte[(int) ze.getSize()];
+		InputStream is = zf.getInputStream(ze);
+		try {
+			int n = 0;
+			while (n < data.length) {
+				int r = is.read(data, n, data.length - n);
+				assertTrue(r > 0);
+				n += r;
+			}
+			assertEquals(-1, is.read());
+		}
+		finally {
+			is.close();
+		}
+		return data;
+	}
+
+	public void testEntries() throws IOException {
+		byte[] missing = new byte[2880];
+		Arrays.fill(missing, (byte) -1);
+		byte[] small = new byte[] { 1, 2, 3 };
+		byte[] noise = new byte[1000];
+		new java.util.Random(1).nextBytes(noise);
+		ArchiveZipWriter.Entry e1 = new ArchiveZipWriter.Entry(
+			"100.v30", missing, 6, 256);
+		ArchiveZipWriter.Entry e2 = new ArchiveZipWriter.Entry(
+			"100.pt60", small, 6, 256);
+		ArchiveZipWriter.Entry e3 = new ArchiveZipWriter.Entry(
+			"101.c30", noise, 9, 256);
+		assertEquals(ArchiveZipWriter.DEFLATED, e1.getMethod());
+		assertTrue(e1.getCompressedSize() < 100);
+		assertEquals(ArchiveZipWriter.STORED, e2.getMethod());
+		// random data does not compress
+		assertEquals(ArchiveZipWriter.STORED, e3.getMethod());
+		File f = new File("/tmp/ArchiveZipWriterTest.zip");
+		ArchiveZipWriter zw = new ArchiveZipWriter(
+			new FileOutputStream(f));
+		zw.write(e1);
+		zw.write(e2);
+		zw.write(e3);
+		zw.finish();
+		zw.close();
+		assertEquals(3, zw.getEntryCount());
+		assertEquals(f.length(), zw.getBytes());
+		ZipFile zf = new ZipFile(f);
+		try {
+			assertEquals(3, zf.size());
+			assertTrue(Arrays.equals(missing,
+				readEntry(zf, "100.v30")));
+			assertTrue(Arrays.equals(small,
+				readEntry(zf, "100.pt60")));
+			assertTrue(Arrays.equals(noise,
+				readEntry(zf, "101.c30")));
+		}
+		finally {
+			zf.close();
+		}
+		f.delete();
+	}
+
+	public void testZip64() throws IOException {
+		int n_entries = 70000;
+		byte[] data = new byte[] { 7 };
+		File f = new File("/tmp/ArchiveZipWriterTest64.zip");
+		ArchiveZipWriter zw = new ArchiveZipWriter(
+			new FileOutputStream(f));
+		for (int i = 0; i < n_entries; i++) {
+			zw.write(new ArchiveZipWriter.Entry(i + ".v30", data,
+				6, 256));
+		}
+		zw.finish();
+		zw.close();
+		ZipFile zf = new ZipFile(f);
+		try {
+			assertEquals(n_entries, zf.size());
+			assertTrue(Arrays.equals(data,
+				readEntry(zf, (n_entries - 1) + ".v30")));
+		}
+		finally {
+			zf.close();
+		}
+		f.delete();
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012  Minnesota Department of Transportation
+ * Copyright (C) 2012-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,6 +14,7 @@
  */
 package us.mn.state.dot.tms.server;
 
+import java.util.Random;
 import junit.framework.TestCase;
 import us.mn.state.dot.tms.server.BoundedSampleHistory;
 
@@ -82,4 +83,136 @@ public class BoundedSampleHistoryTest extends TestCase {
 		assertTrue(new Double(30).equals(hist.average(2, 1)));
 		assertTrue(new Double(25).equals(hist.average(2, 2)));
 	}
+
+	public void testFilter() {
+		BoundedSampleHistory hist = new BoundedSampleHistory(4);
+		hist.push(-1D);
+		assertEquals(1, hist.size());
+		assertNull(hist.get(0));
+		assertTrue(Double.isNaN(hist.getValue(0)));
+		assertNull(hist.average());
+		hist.push(20D);
+		hist.push((Double) null);
+		hist.push(Double.NaN);
+		assertEquals(4, hist.size());
+		assertNull(hist.get(0));
+		assertEquals(20D, hist.get(2));
+		assertEquals(20D, hist.average());
+		assertEquals(20D, hist.average(1, 8));
+		assertNull(hist.average(0, 2));
+		assertNull(hist.average(4, 1));
+		hist.push(0D);
+		assertEquals(10D, hist.average());
+	}
+
+	public void testInfinite() {
+		BoundedSampleHistory hist = new BoundedSampleHistory(4);
+		hist.push(Double.POSITIVE_INFINITY);
+		hist.push(Double.NEGATIVE_INFINITY);
+		assertNull(hist.get(0));
+		assertNull(hist.get(1));
+		assertNull(hist.average());
+		hist.push(10D);
+		assertEquals(10D, hist.average());
+		// Push past a full ring, so the running totals are rebased
+		for (int i = 0; i < 10; i++)
+			hist.push(20D);
+		assertTrue(hist.isFull());
+		assertEquals(20D, hist.average());
+		hist.push(Double.POSITIVE_INFINITY);
+		for (int i = 0; i < 5; i++)
+			hist.push(30D);
+		assertEquals(30D, hist.average());
+		assertEquals(30D, hist.average(0, 2));
+	}
+
+	/** Average samples by scanning, as the history did originally */
+	static private Double scanAverage(Double[] sams, int last, int t,
+		int n_sam, int size)
+	{
+		double sum = 0;
+		int count = 0;
+		for (int i = t; i < t + n_sam && i < size; i++) {
+			Double d = sams[last - i];
+			if (d != null && d >= 0) {
+				sum += d;
+				count++;
+			}
+		}
+		return (count > 0) ? sum / count : null;
+	}
+
+	public void testEquivalence() {
+		Random rnd = new Random(43);
+		Double[] sams = new Double[2000];
+		BoundedSampleHistory hist = new BoundedSampleHistory(20);
+		for (int p = 0; p < sams.length; p++) {
+			int r = rnd.nextInt(10);
+			Double s = (r == 0) ? null
+			         : (r == 1) ? -1D
+			         : rnd.nextDouble() * 200;
+			sams[p] = s;
+			hist.push(s);
+			int size = Math.min(p + 1, 20);
+			assertEquals(size, hist.size());
+			for (int t = 0; t < 22; t++) {
+				for (int n = 1; n < 22; n++) {
+					Double e = scanAverage(sams, p, t, n,
+						size);
+					Double a = hist.average(t, n);
+					if (e == null)
+						assertNull(a);
+					else
+						assertEquals(e, a, 1e-9);
+				}
+			}
+		}
+	}
+
+	public void testEwma() {
+		BoundedSampleHistory hist = new BoundedSampleHistory(4, 0.5);
+		assertTrue(Double.isNaN(hist.ewmaValue()));
+		hist.push(10D);
+		assertEquals(10D, hist.ewmaValue());
+		hist.push((Double) null);
+		assertEquals(10D, hist.ewmaValue());
+		hist.push(20D);
+		assertEquals(15D, hist.ewmaValue());
+		hist.push(35D);
+		assertEquals(25D, hist.ewmaValue());
+		hist.clear();
+		assertTrue(Double.isNaN(hist.ewmaValue()));
+		assertTrue(Double.isNaN(new BoundedSampleHistory(4)
+			.ewmaValue()));
+	}
+
+	public void testLargeWindow() {
+		// Many passes around a large ring, so the running totals are
+		// rebased many times and rounding errors would accumulate
+		Random rnd = new Random(47);
+		Double[] sams = new Double[50000];
+		BoundedSampleHistory hist = new BoundedSampleHistory(1000);
+		for (int p = 0; p < sams.length; p++) {
+			int r = rnd.nextInt(20);
+			Double s = (r == 0) ? null
+			         : (r == 1) ? -1D
+			         : rnd.nextDouble() * 2000;
+			sams[p] = s;
+			hist.push(s);
+			if (p % 97 != 0)
+				continue;
+			int size = Math.min(p + 1, 1000);
+			for (int t = 0; t < 1000; t += 333) {
+				for (int n = 1; n <= 1000; n *= 10) {
+					Double e = scanAverage(sams, p, t, n,
+						size);
+					Double a = hist.average(t, n);
+					if (e == null)
+						assertNull(a);
+					else
+						assertEquals(e, a, 1e-9);
+				}
+			}
+		}
+	}
 }
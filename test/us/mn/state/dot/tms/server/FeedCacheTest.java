@@ -0,0 +1,140 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Feed cache tests, using strings as stand-in incidents.
+ *
+ * @author Douglas Lau
+ */
+public class FeedCacheTest extends TestCase {
+
+	/** Feed cache which records cleared incidents */
+	static private class TestCache extends FeedCache<String> {
+		private final ArrayList<String> cleared =
+			new ArrayList<String>();
+		@Override
+		protected void clear(String inc) {
+			cleared.add(inc);
+		}
+	}
+
+	public FeedCacheTest(String name) {
+		super(name);
+	}
+
+	/** Update a feed with a list of incident IDs.  Each incident is
+	 * refreshed, or put if it is new.
+	 * @return Number of incidents cleared. */
+	static private int update(TestCache c, String fid, String... ids) {
+		c.begin(fid);
+		for (String id: ids) {
+			if (!c.refresh(fid, id, "sig_" + id))
+				c.put(fid, id, "sig_" + id, fid + "_" + id);
+		}
+		return c.update(fid);
+	}
+
+	public void testGeneration() {
+		TestCache c = new TestCache();
+		assertEquals(0, update(c, "a", "1", "2", "3"));
+		assertTrue(c.cleared.isEmpty());
+		assertEquals(0, update(c, "a", "1", "2", "3"));
+		assertEquals(1, update(c, "a", "1", "3"));
+		assertEquals(Arrays.asList("a_2"), c.cleared);
+		assertEquals(2, update(c, "a"));
+		assertEquals(Arrays.asList("a_2", "a_1", "a_3"), c.cleared);
+	}
+
+	public void testAccessOrder() {
+		TestCache c = new TestCache();
+		update(c, "a", "1", "2", "3", "4");
+		// Refresh in a different order; missing incidents are
+		// cleared in order of their last refresh
+		update(c, "a", "3", "1", "2", "4");
+		assertEquals(2, update(c, "a", "1", "4"));
+		assertEquals(Arrays.asList("a_3", "a_2"), c.cleared);
+	}
+
+	public void testFeeds() {
+		TestCache c = new TestCache();
+		update(c, "a", "1", "2");
+		update(c, "b", "1", "2");
+		// An update from one feed must not clear another feed
+		assertEquals(2, update(c, "a"));
+		assertEquals(Arrays.asList("a_1", "a_2"), c.cleared);
+		assertEquals(0, update(c, "b", "1", "2"));
+		assertEquals(1, update(c, "b", "2"));
+		assertEquals(Arrays.asList("a_1", "a_2", "b_1"), c.cleared);
+	}
+
+	public void testClearedNotRecreated() {
+		TestCache c = new TestCache();
+		update(c, "a", "1");
+		assertEquals(1, update(c, "a"));
+		// A cleared incident which comes back is not put again
+		assertTrue(c.refresh("a", "1", "sig_1"));
+		assertEquals(0, c.update("a"));
+		assertEquals(1, c.cleared.size());
+	}
+
+	public void testPurge() {
+		TestCache c = new TestCache();
+		update(c, "a", "1");
+		update(c, "a");
+		// First purge moves cleared incidents to garbage
+		c.purge();
+		c.begin("a");
+		assertTrue(c.refresh("a", "1", "sig_1"));
+		// Refreshed garbage is kept, so it survives one purge
+		c.purge();
+		c.begin("a");
+		assertTrue(c.refresh("a", "1", "sig_1"));
+		// Without a refresh, two purges forget the incident
+		c.purge();
+		c.purge();
+		c.begin("a");
+		assertFalse(c.refresh("a", "1", "sig_1"));
+	}
+
+	public void testNotCreated() {
+		TestCache c = new TestCache();
+		c.begin("a");
+		assertFalse(c.refresh("a", "1", "sig_1"));
+		c.put("a", "1", "sig_1", null);
+		assertEquals(0, c.update("a"));
+		// Same signature: not retried
+		c.begin("a");
+		assertTrue(c.refresh("a", "1", "sig_1"));
+		assertEquals(0, c.update("a"));
+		// Changed signature: retried
+		c.begin("a");
+		assertFalse(c.refresh("a", "1", "sig_1b"));
+		c.put("a", "1", "sig_1b", "a_1");
+		assertEquals(0, c.update("a"));
+		// Missing incident which was never created is dropped,
+		// but there is nothing to clear
+		c.begin("a");
+		assertTrue(c.refresh("a", "1", "sig_1b"));
+		c.put("a", "2", "sig_2", null);
+		assertEquals(0, c.update("a"));
+		assertEquals(2, update(c, "a"));
+		assertEquals(Arrays.asList("a_1"), c.cleared);
+	}
+}
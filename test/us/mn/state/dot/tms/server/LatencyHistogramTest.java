@@ -0,0 +1,158 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+
+/**
+ * Latency histogram and server metrics tests.
+ *
+ * @author Douglas Lau
+ */
+public class LatencyHistogramTest extends TestCase {
+
+	/** Number of values to record in overhead tests */
+	static private final int N_VALUES = 1000000;
+
+	/** Allowed allocation for measuring overhead (bytes) */
+	static private final long ALLOC_SLACK = 1024;
+
+	/** Thread MX bean, if it can measure allocation */
+	static private final com.sun.management.ThreadMXBean THREAD_BEAN =
+		threadBean();
+
+	/** Get a thread MX bean which can measure allocation */
+	static private com.sun.management.ThreadMXBean threadBean() {
+		java.lang.management.ThreadMXBean b =
+			ManagementFactory.getThreadMXBean();
+		if (b instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean tb =
+				(com.sun.management.ThreadMXBean) b;
+			if (tb.isThreadAllocatedMemorySupported()) {
+				tb.setThreadAllocatedMemoryEnabled(true);
+				return tb;
+			}
+		}
+		return null;
+	}
+
+	/** Get bytes allocated by the current thread */
+	static private long allocated() {
+		return THREAD_BEAN.getThreadAllocatedBytes(
+			Thread.currentThread().getId());
+	}
+
+	public LatencyHistogramTest(String name) {
+		super(name);
+	}
+
+	public void testEmpty() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMean());
+		assertEquals(0, h.getMax());
+		assertEquals(0, h.getPercentile(50));
+	}
+
+	public void testSmall() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (int v = 1; v <= 10; v++)
+			h.record(v);
+		assertEquals(10, h.getCount());
+		assertEquals(5, h.getMean());
+		assertEquals(10, h.getMax());
+		assertEquals(5, h.getPercentile(50));
+		assertEquals(9, h.getPercentile(90));
+		assertEquals(10, h.getPercentile(100));
+	}
+
+	public void testPrecision() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (long v = 1; v <= 100000; v++)
+			h.record(v * 1000);
+		long[] p = { 50, 90, 99 };
+		for (long pc: p) {
+			long exp = pc * 1000 * 1000;
+			long v = h.getPercentile(pc);
+			assertTrue(pc + ": " + v, v >= exp);
+			assertTrue(pc + ": " + v, v <= exp + exp / 16);
+		}
+		assertEquals(100000000, h.getMax());
+		assertEquals(100000000, h.getPercentile(100));
+	}
+
+	public void testRange() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(-5);
+		h.record(Long.MAX_VALUE);
+		assertEquals(2, h.getCount());
+		assertEquals(0, h.getPercentile(50));
+		assertEquals(LatencyHistogram.MAX_VALUE, h.getPercentile(100));
+		h.clear();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMax());
+	}
+
+	public void testSnapshot() {
+		ServerMetrics.histogram("test.latency").record(2500000);
+		ServerMetrics.counter("test.count").addAndGet(3);
+		ServerMetrics.Gauge g = new ServerMetrics.Gauge() {
+			public long getValue() {
+				return 42;
+			}
+		};
+		ServerMetrics.addGauge("test.gauge", g);
+		assertSame(ServerMetrics.histogram("test.latency"),
+			ServerMetrics.histogram("test.latency"));
+		String s = ServerMetrics.snapshot();
+		assertTrue(s, s.contains("test.count count=3\n"));
+		assertTrue(s, s.contains("test.gauge value=42\n"));
+		assertTrue(s, s.contains("test.latency count=1 mean_us=2500"));
+		assertTrue(s, s.contains("max_us=2500\n"));
+		ServerMetrics.removeGauge("test.gauge", g);
+		assertFalse(ServerMetrics.snapshot().contains("test.gauge"));
+	}
+
+	public void testRecordAllocationFree() {
+		if (null == THREAD_BEAN)
+			return;
+		LatencyHistogram h = ServerMetrics.histogram("test.overhead");
+		// warm up, so the recording path is compiled
+		for (int i = 0; i < N_VALUES; i++)
+			h.recordSince(System.nanoTime() - i);
+		long before = allocated();
+		for (int i = 0; i < N_VALUES; i++)
+			h.recordSince(System.nanoTime() - i);
+		long bytes = allocated() - before;
+		assertTrue("allocated: " + bytes, bytes < ALLOC_SLACK);
+		assertEquals(2 * N_VALUES, h.getCount());
+	}
+
+	public void testCounterAllocationFree() {
+		if (null == THREAD_BEAN)
+			return;
+		AtomicLong c = ServerMetrics.counter("test.overhead");
+		for (int i = 0; i < N_VALUES; i++)
+			c.incrementAndGet();
+		long before = allocated();
+		for (int i = 0; i < N_VALUES; i++)
+			c.incrementAndGet();
+		long bytes = allocated() - before;
+		assertTrue("allocated: " + bytes, bytes < ALLOC_SLACK);
+		assertEquals(2 * N_VALUES, c.get());
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import junit.framework.TestCase;
+
+/**
+ * Meter rate log tests
+ *
+ * @author Douglas Lau
+ */
+public class MeterRateLogTest extends TestCase {
+
+	/** Golden output for one morning */
+	static private final String GOLDEN =
+		"# meter time rate\n" +
+		"M35WN03 06:00:00 1200\n" +
+		"M35WN03 06:00:30 1080\n" +
+		"M35WN03 06:30:00 -\n" +
+		"M62E07 07:15:00 900\n";
+
+	public MeterRateLogTest(String name) {
+		super(name);
+	}
+
+	/** Step for a time of day (end of interval) */
+	static private int step(int h, int m, int s) {
+		return (h * 3600 + m * 60 + s) / 30 - 1;
+	}
+
+	/** Record rates matching the golden output */
+	static private MeterRateLog record() {
+		MeterRateLog log = new MeterRateLog();
+		for (int i = 0; i < TrafficReplay.STEPS; i++) {
+			Integer r = null;
+			if (i == step(6, 0, 0))
+				r = 1200;
+			else if (i > step(6, 0, 0) && i < step(6, 30, 0))
+				r = 1080;
+			log.record("M35WN03", i, r);
+			log.record("M62E07", i, (i >= step(7, 15, 0))
+				? 900 : null);
+		}
+		return log;
+	}
+
+	public void testGolden() throws IOException {
+		MeterRateLog golden = MeterRateLog.read(new StringReader(
+			GOLDEN));
+		assertEquals(Integer.valueOf(1200),
+			golden.getRate("M35WN03", step(6, 0, 0)));
+		assertEquals(Integer.valueOf(1080),
+			golden.getRate("M35WN03", step(6, 29, 30)));
+		assertNull(golden.getRate("M35WN03", step(6, 30, 0)));
+		assertNull(golden.getRate("M62E07", step(7, 14, 30)));
+		assertEquals(Integer.valueOf(900),
+			golden.getRate("M62E07", TrafficReplay.STEPS - 1));
+		MeterRateLog log = record();
+		assertNull(log.compare(golden));
+		StringWriter w = new StringWriter();
+		log.write(w);
+		assertEquals(GOLDEN.substring(GOLDEN.indexOf('\n') + 1),
+			w.toString());
+		log.record("M62E07", step(8, 0, 0), 960);
+		assertEquals("M62E07 08:00:00: 960 != 900",
+			log.compare(golden));
+		log.record("M99", 0, null);
+		assertEquals("M62E07 08:00:00: 960 != 900",
+			log.compare(golden));
+		log.record("M62E07", step(8, 0, 0), 900);
+		log.record("M00", step(0, 0, 30), 600);
+		assertEquals("M00 00:00:30: 600 != -", log.compare(golden));
+	}
+
+	public void testInvalid() {
+		try {
+			MeterRateLog.read(new StringReader("M1 25:00:00 900\n"));
+			fail();
+		}
+		catch (IOException e) {
+			assertEquals("Invalid time: 25:00:00", e.getMessage());
+		}
+		try {
+			MeterRateLog.read(new StringReader("M1 06:00:00\n"));
+			fail();
+		}
+		catch (IOException e) {
+			assertEquals("Invalid line: M1 06:00:00",
+				e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import junit.framework.TestCase;
+
+/**
+ * Meter state log tests
+ *
+ * @author Douglas Lau
+ */
+public class MeterStateLogTest extends TestCase {
+
+	/** Time at midnight of the test day */
+	static private final long MIDNIGHT = midnight();
+
+	/** Get the time at midnight of the test day */
+	static private long midnight() {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2016, Calendar.MARCH, 1);
+		return cal.getTimeInMillis();
+	}
+
+	/** Get a time stamp for a record index (near end of interval) */
+	static private long stamp(int i) {
+		return MIDNIGHT + (i * MeterStateLog.PERIOD_SEC + 29) * 1000L;
+	}
+
+	/** Create a record for an index */
+	static private MeterStateLog.Record record(int i) {
+		return new MeterStateLog.Record(i % 4, i % 6, i % 5, i % 1800,
+			i % 1700 - 1, (i % 400) / 10f, -(i % 50) / 10f, i % 600,
+			240, 240 + i % 1500, 1800, (i % 900) / 10f);
+	}
+
+	public MeterStateLogTest(String name) {
+		super(name);
+	}
+
+	public void testIndex() {
+		assertEquals(0, MeterStateLog.index(MIDNIGHT));
+		assertEquals(0, MeterStateLog.index(stamp(0)));
+		assertEquals(1, MeterStateLog.index(stamp(1)));
+		assertEquals(2879, MeterStateLog.index(stamp(2879)));
+	}
+
+	public void testRoundTrip() throws IOException {
+		File f = new File("/tmp", "M_RT." + MeterStateLog.EXT);
+		f.delete();
+		MeterStateLog log = new MeterStateLog(
+			new PeriodicSampleWriterTest.TestFactory());
+		MeterStateLog.Record r = new MeterStateLog.Record(2, 3, 4,
+			1320, -1, 12.5f, -3.2f, 185, 240, 900, 1714, 41.7f);
+		log.add("M_RT", stamp(720), r);
+		log.add("M_RT", stamp(722), new MeterStateLog.Record(1, 0, 0,
+			99999, 0, 5000f, 0, 0, 0, 0, 0, 0));
+		log.flush();
+		assertEquals(723 * MeterStateLog.RECORD_LEN, f.length());
+		MeterStateLog.Record[] recs = MeterStateLog.read(f, 719, 5);
+		assertEquals(5, recs.length);
+		assertNull(recs[0]);
+		assertEquals(r.toString(), recs[1].toString());
+		assertNull(recs[2]);
+		// values are clamped to the range of a short
+		assertEquals(Short.MAX_VALUE, recs[3].demand);
+		assertEquals(Short.MAX_VALUE / 10f, recs[3].q_len);
+		// records past end of file are missing
+		assertNull(recs[4]);
+		// pending records are only written once
+		log.flush();
+		log.add("M_RT", stamp(100), r);
+		log.clear();
+		log.flush();
+		assertNull(MeterStateLog.read(f, 100, 1)[0]);
+		f.delete();
+	}
+
+	public void testReadDay() throws IOException {
+		File f = new File("/tmp", "M_DAY." + MeterStateLog.EXT);
+		f.delete();
+		MeterStateLog log = new MeterStateLog(
+			new PeriodicSampleWriterTest.TestFactory());
+		for (int i = 0; i < MeterStateLog.RECORDS; i++)
+			log.add("M_DAY", stamp(i), record(i));
+		log.flush();
+		assertEquals(MeterStateLog.RECORDS * MeterStateLog.RECORD_LEN,
+			f.length());
+		long start = System.nanoTime();
+		for (int n = 0; n < 100; n++) {
+			MeterStateLog.Record[] recs = MeterStateLog.read(f, 0,
+				MeterStateLog.RECORDS);
+			assertEquals(record(n).toString(),
+				recs[n].toString());
+		}
+		// one hour from each of 400 meters
+		for (int n = 0; n < 400; n++) {
+			int first = (n * 7) % (MeterStateLog.RECORDS - 120);
+			MeterStateLog.Record[] recs = MeterStateLog.read(f,
+				first, 120);
+			assertEquals(record(first + 119).toString(),
+				recs[119].toString());
+		}
+		long ms = (System.nanoTime() - start) / 1000000;
+		assertTrue("read took " + ms + " ms", ms < 2000);
+		f.delete();
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.BaseHelper;
+import us.mn.state.dot.tms.CtrlCondition;
+import us.mn.state.dot.tms.Direction;
+import us.mn.state.dot.tms.LaneType;
+import us.mn.state.dot.tms.MeterAlgorithm;
+import us.mn.state.dot.tms.R_NodeTransition;
+import us.mn.state.dot.tms.R_NodeType;
+import us.mn.state.dot.tms.RampMeterType;
+import us.mn.state.dot.tms.RoadClass;
+import junit.framework.TestCase;
+
+/**
+ * Metering replay tests.  A small corridor, with three stations and one
+ * K adaptive meter, is replayed through a synthetic morning peak.
+ *
+ * @author Douglas Lau
+ */
+public class MeteringReplayTest extends TestCase {
+
+	/** Golden meter rates for the synthetic morning */
+	static private final String GOLDEN =
+		"# meter time rate\n" +
+		"M1 06:31:30 834\n" +
+		"M1 06:32:00 797\n" +
+		"M1 06:32:30 771\n" +
+		"M1 06:33:00 755\n" +
+		"M1 06:33:30 747\n" +
+		"M1 06:34:00 743\n" +
+		"M1 06:34:30 760\n" +
+		"M1 06:35:00 800\n" +
+		"M1 08:00:30 799\n" +
+		"M1 08:01:00 923\n" +
+		"M1 08:01:30 980\n" +
+		"M1 08:02:00 996\n" +
+		"M1 08:02:30 975\n" +
+		"M1 08:03:00 930\n" +
+		"M1 08:03:30 885\n" +
+		"M1 08:04:00 840\n" +
+		"M1 08:04:30 795\n" +
+		"M1 08:05:00 750\n" +
+		"M1 08:09:00 -\n";
+
+	/** Time at start of replayed day */
+	static private final long MIDNIGHT =
+		MeteringReplay.startOfDay(20160301);
+
+	/** Test namespace */
+	private ServerNamespace ns;
+
+	/** Controller for all devices */
+	private ControllerImpl ctl;
+
+	/** Mainline road */
+	private RoadImpl road;
+
+	/** Cross street */
+	private RoadImpl cross;
+
+	/** Ramp meter */
+	private RampMeterImpl meter;
+
+	public MeteringReplayTest(String name) {
+		super(name);
+	}
+
+	/** Step for a time of day (end of interval) */
+	static private int step(int h, int m, int s) {
+		return (h * 3600 + m * 60 + s) / 30 - 1;
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		ns = new ServerNamespace();
+		ns.registerType(RoadImpl.SONAR_TYPE, RoadImpl.class);
+		ns.registerType(GeoLocImpl.SONAR_TYPE, GeoLocImpl.class);
+		ns.registerType(ControllerImpl.SONAR_TYPE,
+			ControllerImpl.class);
+		ns.registerType(R_NodeImpl.SONAR_TYPE, R_NodeImpl.class);
+		ns.registerType(StationImpl.SONAR_TYPE, StationImpl.class);
+		ns.registerType(DetectorImpl.SONAR_TYPE, DetectorImpl.class);
+		ns.registerType(RampMeterImpl.SONAR_TYPE,
+			RampMeterImpl.class);
+		BaseObjectImpl.namespace = ns;
+		BaseHelper.namespace = ns;
+		road = new RoadImpl("T35", "T35", (short)
+			RoadClass.FREEWAY.ordinal(), (short)
+			Direction.NORTH_SOUTH.ordinal(), (short)
+			Direction.UNKNOWN.ordinal());
+		ns.addObject(road);
+		cross = new RoadImpl("T46", "T46", (short)
+			RoadClass.ARTERIAL.ordinal(), (short)
+			Direction.EAST_WEST.ordinal(), (short)
+			Direction.UNKNOWN.ordinal());
+		ns.addObject(cross);
+		ctl = new ControllerImpl("ctl", (CabinetImpl) null, null,
+			(short) 1, CtrlCondition.ACTIVE.ordinal(), "", "",
+			null);
+		ns.addObject(ctl);
+		createStation("S1", 44.900);
+		createStation("S2", 44.905);
+		createStation("S3", 44.915);
+		R_NodeImpl n = createNode("rnd_e1", 44.9045,
+			R_NodeType.ENTRANCE, null);
+		createDetector("E1Q", n, LaneType.QUEUE, 0);
+		createDetector("E1P", n, LaneType.PASSAGE, 0);
+		createDetector("E1M", n, LaneType.MERGE, 0);
+		createDetector("E1G", n, LaneType.GREEN, 0);
+		meter = new RampMeterImpl("M1", createLoc("M1_loc", 44.9045),
+			ctl, 2, "", RampMeterType.SINGLE.ordinal(), 400, 240,
+			MeterAlgorithm.K_ADAPTIVE.ordinal(), 1200, 1200, null,
+			null, null);
+		ns.addObject(meter);
+		BaseObjectImpl.corridors.createCorridors();
+	}
+
+	@Override
+	protected void tearDown() {
+		BaseObjectImpl.namespace = null;
+		BaseHelper.namespace = null;
+	}
+
+	/** Create a location on the mainline */
+	private GeoLocImpl createLoc(String name, double lat)
+		throws Exception
+	{
+		GeoLocImpl loc = new GeoLocImpl(name, road, (short)
+			Direction.NORTH.ordinal(), cross, (short)
+			Direction.EAST.ordinal(), (short) 0, lat, -93.27, null);
+		ns.addObject(loc);
+		return loc;
+	}
+
+	/** Create an r_node */
+	private R_NodeImpl createNode(String name, double lat, R_NodeType nt,
+		String sid) throws Exception
+	{
+		R_NodeImpl n = new R_NodeImpl(name, createLoc(name, lat),
+			nt.ordinal(), true, false,
+			R_NodeTransition.NONE.ordinal(), 2, true, 0, true,
+			false, sid, 55, "");
+		ns.addObject(n);
+		return n;
+	}
+
+	/** Create a station with two mainline detectors */
+	private void createStation(String sid, double lat) throws Exception {
+		R_NodeImpl n = createNode("rnd_" + sid, lat,
+			R_NodeType.STATION, sid);
+		createDetector(sid + "L1", n, LaneType.MAINLINE, 1);
+		createDetector(sid + "L2", n, LaneType.MAINLINE, 2);
+	}
+
+	/** Create a detector */
+	private void createDetector(String name, R_NodeImpl n, LaneType lt,
+		int ln) throws Exception
+	{
+		DetectorImpl det = new DetectorImpl(name);
+		det.setController(ctl);
+		det.setLaneType((short) lt.ordinal());
+		det.setLaneNumber((short) ln);
+		det.setR_Node(n);
+		ns.addObject(det);
+	}
+
+	/** Create synthetic traffic for one morning peak */
+	static private TrafficReplay createTraffic() {
+		TrafficReplay tr = new TrafficReplay();
+		for (int i = step(5, 0, 30); i <= step(10, 0, 0); i++) {
+			boolean peak = i > step(6, 30, 0) && i <= step(8, 0, 0);
+			int v = peak ? 16 : 10;
+			int s = peak ? 35 : 60;
+			for (String sid: new String[] { "S1", "S2", "S3" }) {
+				tr.putSample(sid + "L1", i, v, v * 25, s);
+				tr.putSample(sid + "L2", i, v, v * 25, s);
+			}
+			int r = peak ? 8 : 5;
+			tr.putSample("E1Q", i, r, r * 25, -1);
+			tr.putSample("E1P", i, r, r * 25, -1);
+			tr.putSample("E1M", i, r, r * 25, -1);
+			tr.putSample("E1G", i, r, -1, -1);
+		}
+		return tr;
+	}
+
+	public void testGolden() throws IOException {
+		MeteringReplay mr = new MeteringReplay(createTraffic(),
+			MIDNIGHT);
+		assertEquals(10, mr.getDetectorCount());
+		MeterRateLog golden = MeterRateLog.read(new StringReader(
+			GOLDEN));
+		MeterRateLog log = mr.run(step(5, 0, 30), step(10, 0, 0));
+		assertNull(log.compare(golden));
+		assertFalse(meter.isOperating());
+		StringWriter w = new StringWriter();
+		log.write(w);
+		assertEquals(GOLDEN.substring(GOLDEN.indexOf('\n') + 1),
+			w.toString());
+		// A second replay must not depend on state from the first
+		log = mr.run(step(5, 0, 30), step(10, 0, 0));
+		assertNull(log.compare(golden));
+	}
+
+	public void testOperating() {
+		MeteringReplay mr = new MeteringReplay(createTraffic(),
+			MIDNIGHT);
+		meter.setOperating(true);
+		try {
+			mr.run(step(6, 0, 0), step(6, 0, 30));
+			fail("Replay with operating meter");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("Meter operating: M1", e.getMessage());
+		}
+		assertTrue(meter.isOperating());
+		meter.setOperating(false);
+	}
+}
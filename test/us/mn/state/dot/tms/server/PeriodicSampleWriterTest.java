@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2013  Minnesota Department of Transportation
+ * Copyright (C) 2012-2016  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -87,7 +87,8 @@ public class PeriodicSampleWriterTest extends TestCase {
 		}
 	}
 
-	static class TestFactory implements SampleArchiveFactory {
+	/** Factory for archive files in /tmp, shared with other tests */
+	static public class TestFactory implements SampleArchiveFactory {
 		public File createFile(String sensor_id, String ext, long stamp)
 			throws IOException
 		{
@@ -103,5 +104,49 @@ public class PeriodicSampleWriterTest extends TestCase {
 		public boolean hasKnownExtension(String name) {
 			return true;
 		}
+		public boolean hasDayFiles() {
+			return false;
+		}
+	}
+
+	public void testDayFile() {
+		PeriodicSampleCache cache = new PeriodicSampleCache(
+			PeriodicSampleType.SCAN);
+		Calendar cal = Calendar.getInstance();
+		cal.set(2012, Calendar.JANUARY, 1, 0, 0, 30);
+		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 100));
+		cal.set(2012, Calendar.JANUARY, 1, 0, 1, 0);
+		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 200));
+		// Missing sample @ 2012-01-01 00:01:30
+		cal.set(2012, Calendar.JANUARY, 1, 0, 2, 0);
+		cache.add(new PeriodicSample(cal.getTimeInMillis(), 30, 400));
+		PeriodicSampleWriter writer = new PeriodicSampleWriter(
+			new TestFactory()
+		{
+			public boolean hasDayFiles() {
+				return true;
+			}
+		});
+		try {
+			File file = new File("/tmp/TEST.day");
+			file.delete();
+			writer.flush(cache, "TEST");
+			SampleDayFile df = new SampleDayFile(file, false);
+			byte[] c = df.read("c30");
+			df.close();
+			assertTrue(c.length == 5760);
+			ByteBuffer buf = ByteBuffer.wrap(c);
+			assertTrue(buf.getShort() == 100);
+			assertTrue(buf.getShort() == 200);
+			assertTrue(buf.getShort() == -1);
+			assertTrue(buf.getShort() == 400);
+			assertTrue(buf.getShort() == -1);
+			assertTrue(file.length() ==
+				SampleDayFile.HEADER_LEN + 5760);
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			assertTrue(false);
+		}
 	}
 }
@@ -0,0 +1,168 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import junit.framework.TestCase;
+
+/**
+ * Poll pacer tests
+ *
+ * @author Douglas Lau
+ */
+public class PollPacerTest extends TestCase {
+
+	/** Maximum poll interval */
+	static private final long MAX_MS = 300 * 1000;
+
+	/** Minimum poll interval */
+	static private final long MIN_MS = MAX_MS / 4;
+
+	/** Maximum queued operations per link */
+	static private final int MAX_LINK = 4;
+
+	/** Fake comm link, which completes one operation every 2 seconds */
+	static private class FakeLink {
+		int depth = 0;
+		int max_depth = 0;
+		void tick(long now) {
+			if (depth > 0 && now % 2000 == 0)
+				depth--;
+		}
+	}
+
+	/** Fake sign */
+	static private class FakeSign {
+		final String name;
+		final FakeLink link;
+		final boolean busy;
+		int state = 0;
+		int n_polls = 0;
+		long last_poll = -1;
+		long max_gap = 0;
+		FakeSign(String n, FakeLink l, boolean b) {
+			name = n;
+			link = l;
+			busy = b;
+		}
+	}
+
+	/** Fake sign pacer */
+	static private class FakePacer extends PollPacer<FakeSign> {
+		final ArrayList<FakeSign> signs;
+		long now = 0;
+		int tick_polls = 0;
+		FakePacer(ArrayList<FakeSign> s) {
+			super(MIN_MS, MAX_MS, 2000, MAX_MS, MAX_LINK);
+			signs = s;
+		}
+		protected Iterator<FakeSign> iterator() {
+			return signs.iterator();
+		}
+		protected String getName(FakeSign s) {
+			return s.name;
+		}
+		protected int getStateHash(FakeSign s) {
+			return s.state;
+		}
+		protected int getLinkDepth(FakeSign s) {
+			return s.link.depth;
+		}
+		protected void poll(FakeSign s) {
+			tick_polls++;
+			s.n_polls++;
+			if (s.last_poll >= 0)
+				s.max_gap = Math.max(s.max_gap,
+					now - s.last_poll);
+			s.last_poll = now;
+			s.link.depth++;
+			s.link.max_depth = Math.max(s.link.max_depth,
+				s.link.depth);
+		}
+	}
+
+	public PollPacerTest(String name) {
+		super(name);
+	}
+
+	public void testPhase() {
+		assertEquals(PollPacer.phaseOffset("V94W01", MAX_MS),
+			PollPacer.phaseOffset("V94W01", MAX_MS));
+		int[] buckets = new int[10];
+		for (int i = 0; i < 2000; i++) {
+			long p = PollPacer.phaseOffset("V" + i, MAX_MS);
+			assertTrue(p >= 0 && p < MAX_MS);
+			buckets[(int) (p * 10 / MAX_MS)]++;
+		}
+		for (int b: buckets)
+			assertTrue(b > 120 && b < 280);
+	}
+
+	public void testFleet() {
+		// 2000 signs, 8 signs per comm link
+		ArrayList<FakeLink> links = new ArrayList<FakeLink>();
+		ArrayList<FakeSign> signs = new ArrayList<FakeSign>();
+		for (int i = 0; i < 2000; i++) {
+			if (i % 8 == 0)
+				links.add(new FakeLink());
+			FakeLink l = links.get(links.size() - 1);
+			signs.add(new FakeSign("V" + i, l, i % 10 == 0));
+		}
+		FakePacer pacer = new FakePacer(signs);
+		long start = 1000000000000L;
+		long end = start + 3 * 3600 * 1000;
+		int max_tick = 0;
+		int max_total = 0;
+		for (long now = start; now < end; now += 1000) {
+			// busy signs change every minute
+			if (now % 60000 == 0) {
+				for (FakeSign s: signs) {
+					if (s.busy)
+						s.state++;
+				}
+			}
+			pacer.now = now;
+			pacer.tick_polls = 0;
+			pacer.tick(now);
+			max_tick = Math.max(max_tick, pacer.tick_polls);
+			int total = 0;
+			for (FakeLink l: links) {
+				l.tick(now);
+				total += l.depth;
+			}
+			max_total = Math.max(max_total, total);
+		}
+		assertEquals(2000, pacer.size());
+		// no burst: about 2000 / 300 polls per second
+		assertTrue(max_tick < 40);
+		// total queue depth stays bounded
+		assertTrue(max_total < 100);
+		for (FakeLink l: links)
+			assertTrue(l.max_depth <= MAX_LINK);
+		int busy_polls = 0;
+		int quiet_polls = 0;
+		for (FakeSign s: signs) {
+			// every sign polled at least every interval
+			assertTrue(s.max_gap <= MAX_MS + 10000);
+			if (s.busy)
+				busy_polls += s.n_polls;
+			else
+				quiet_polls += s.n_polls;
+		}
+		// busy signs are polled more often
+		assertTrue(busy_polls / 200 > 2 * quiet_polls / 1800);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import junit.framework.TestCase;
+
+/**
+ * Push server tests, over loopback.
+ *
+ * @author Douglas Lau
+ */
+public class PushServerTest extends TestCase {
+
+	/** Push server */
+	private PushServer server;
+
+	public PushServerTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws IOException {
+		server = new PushServer(new InetSocketAddress("127.0.0.1", 0),
+			4, 2);
+	}
+
+	@Override
+	protected void tearDown() {
+		server.stop();
+	}
+
+	private HttpURLConnection connect(String query) throws IOException {
+		int port = server.getAddress().getPort();
+		URL url = new URL("http://127.0.0.1:" + port +
+			PushServer.PATH + query);
+		HttpURLConnection c = (HttpURLConnection) url.openConnection();
+		c.setReadTimeout(5000);
+		return c;
+	}
+
+	private BufferedReader open(String query) throws IOException {
+		HttpURLConnection c = connect(query);
+		assertEquals(200, c.getResponseCode());
+		return new BufferedReader(new InputStreamReader(
+			c.getInputStream(), "UTF-8"));
+	}
+
+	/** Wait for a subscriber to be registered */
+	private void waitSubscribers(int n) throws InterruptedException {
+		for (int i = 0; i < 100 && server.getSubscribers() != n; i++)
+			Thread.sleep(10);
+		assertEquals(n, server.getSubscribers());
+	}
+
+	public void testSse() throws Exception {
+		server.publishEvent("incident", "I1", "<incident name='I1'/>\n");
+		BufferedReader r = open("");
+		// Snapshot
+		assertEquals("id: 1", r.readLine());
+		assertEquals("event: incident", r.readLine());
+		assertEquals("data: <incident name='I1'/>", r.readLine());
+		assertEquals("", r.readLine());
+		waitSubscribers(1);
+		server.publishEvent("incident", "I1", null);
+		assertEquals("id: 2", r.readLine());
+		assertEquals("event: incident.removed", r.readLine());
+		assertEquals("data: I1", r.readLine());
+		r.close();
+	}
+
+	public void testJsonTopics() throws Exception {
+		BufferedReader r = open("?format=ndjson&topics=sign_message");
+		waitSubscribers(1);
+		server.publishEvent("incident", "I1", "<incident/>");
+		server.publishEvent("sign_message", "V1",
+			"<sign_message dms='V1' multi=\"A\"/>\n");
+		assertEquals("{\"seq\":2,\"topic\":\"sign_message\"," +
+			"\"name\":\"V1\",\"xml\":\"<sign_message dms='V1' " +
+			"multi=\\\"A\\\"/>\"}", r.readLine());
+		r.close();
+	}
+
+	public void testSlowConsumer() throws Exception {
+		BufferedReader r = open("?topics=station_sample");
+		waitSubscribers(1);
+		// Queue capacity is 4; flood until subscriber is dropped
+		for (int i = 0; i < 100000 && server.getDropped() == 0; i++) {
+			server.publishEvent("station_sample", "S" + i,
+				"<sample sensor='S" + i + "'/>");
+		}
+		assertEquals(1, server.getDropped());
+		waitSubscribers(0);
+		r.close();
+	}
+
+	public void testMaxSubscribers() throws Exception {
+		BufferedReader r0 = open("");
+		BufferedReader r1 = open("");
+		waitSubscribers(2);
+		assertEquals(503, connect("").getResponseCode());
+		r0.close();
+		r1.close();
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+
+/**
+ * SQL connection pool tests, using a stand-in JDBC driver.  Each stand-in
+ * connection executes one statement at a time, like a database socket.
+ *
+ * @author Douglas Lau
+ */
+public class SQLConnectionPoolTest extends TestCase {
+
+	/** Stand-in driver URL */
+	static private final String URL = "jdbc:standin:test";
+
+	/** Time to execute one statement (ms) */
+	static private int exec_ms = 0;
+
+	/** Count of connections opened */
+	static private final AtomicInteger n_connect = new AtomicInteger();
+
+	/** Count of statements prepared */
+	static private final AtomicInteger n_prepare = new AtomicInteger();
+
+	/** Count of prepared statements closed */
+	static private final AtomicInteger n_close = new AtomicInteger();
+
+	/** Count of statements executed */
+	static private final AtomicInteger n_exec = new AtomicInteger();
+
+	/** Count of statements executing now */
+	static private final AtomicInteger n_active = new AtomicInteger();
+
+	/** Maximum count of statements executing at once */
+	static private final AtomicInteger max_active = new AtomicInteger();
+
+	/** Execute one statement, recording concurrency */
+	static private void exec() throws InterruptedException {
+		n_exec.incrementAndGet();
+		int a = n_active.incrementAndGet();
+		int m = max_active.get();
+		while (a > m && !max_active.compareAndSet(m, a))
+			m = max_active.get();
+		try {
+			Thread.sleep(exec_ms);
+		}
+		finally {
+			n_active.decrementAndGet();
+		}
+	}
+
+	/** Default return value for a proxied method */
+	static private Object defaultValue(Method m) {
+		Class<?> r = m.getReturnType();
+		if (r == boolean.class)
+			return false;
+		if (r == int.class)
+			return 0;
+		if (r == long.class)
+			return 0L;
+		return null;
+	}
+
+	/** Create a stand-in prepared statement */
+	static private PreparedStatement createStatement(final Object conn) {
+		return (PreparedStatement) Proxy.newProxyInstance(
+			SQLConnectionPoolTest.class.getClassLoader(),
+			new Class<?>[] { PreparedStatement.class },
+			new InvocationHandler()
+		{
+			public Object invoke(Object p, Method m, Object[] a)
+				throws Throwable
+			{
+				String n = m.getName();
+				if (n.equals("close"))
+					n_close.incrementAndGet();
+				if (n.equals("executeUpdate")) {
+					synchronized (conn) {
+						exec();
+					}
+					return 1;
+				}
+				return defaultValue(m);
+			}
+		});
+	}
+
+	/** Create a stand-in connection */
+	static private Connection createConnection() {
+		n_connect.incrementAndGet();
+		final Object lock = new Object();
+		return (Connection) Proxy.newProxyInstance(
+			SQLConnectionPoolTest.class.getClassLoader(),
+			new Class<?>[] { Connection.class },
+			new InvocationHandler()
+		{
+			public Object invoke(Object p, Method m, Object[] a) {
+				if (m.getName().equals("prepareStatement")) {
+					n_prepare.incrementAndGet();
+					return createStatement(lock);
+				}
+				return defaultValue(m);
+			}
+		});
+	}
+
+	/** Stand-in JDBC driver */
+	static public class StandInDriver implements Driver {
+		public Connection connect(String url, Properties info) {
+			return acceptsURL(url) ? createConnection() : null;
+		}
+		public boolean acceptsURL(String url) {
+			return URL.equals(url);
+		}
+		public DriverPropertyInfo[] getPropertyInfo(String url,
+			Properties info)
+		{
+			return new DriverPropertyInfo[0];
+		}
+		public int getMajorVersion() {
+			return 1;
+		}
+		public int getMinorVersion() {
+			return 0;
+		}
+		public boolean jdbcCompliant() {
+			return false;
+		}
+		public Logger getParentLogger()
+			throws SQLFeatureNotSupportedException
+		{
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+
+	static {
+		try {
+			DriverManager.registerDriver(new StandInDriver());
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public SQLConnectionPoolTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() {
+		exec_ms = 0;
+		n_connect.set(0);
+		n_prepare.set(0);
+		n_close.set(0);
+		n_exec.set(0);
+		n_active.set(0);
+		max_active.set(0);
+	}
+
+	/** Execute one update on a pool */
+	private void update(SQLConnectionPool pool, String sql)
+		throws SQLException
+	{
+		SQLConnectionPool.Pooled pc = pool.acquire();
+		try {
+			PreparedStatement ps = pc.prepare(sql);
+			try {
+				ps.setString(1, "value");
+				ps.executeUpdate();
+			}
+			finally {
+				pc.putPrepared(ps);
+			}
+		}
+		finally {
+			pool.release(pc);
+		}
+	}
+
+	public void testReuse() throws SQLException {
+		SQLConnectionPool pool = new SQLConnectionPool(URL,
+			new Properties(), 2, 8);
+		String[] sql = new String[] {
+			"UPDATE dms SET msg = ? WHERE name = ?;",
+			"UPDATE detector SET notes = ? WHERE name = ?;",
+			"DELETE FROM incident WHERE name = ?;",
+		};
+		for (int i = 0; i < 1000; i++)
+			update(pool, sql[i % sql.length]);
+		assertEquals(1000, n_exec.get());
+		// most recently used connection is reused first
+		assertEquals(1, n_connect.get());
+		assertEquals(3, pool.getPrepared());
+		assertEquals(997, pool.getReused());
+		assertEquals(0, n_close.get());
+	}
+
+	public void testEviction() throws SQLException {
+		SQLConnectionPool pool = new SQLConnectionPool(URL,
+			new Properties(), 1, 2);
+		for (int i = 0; i < 30; i++)
+			update(pool, "UPDATE t" + (i % 3) + " SET a = ?;");
+		// three templates cycling through a cache of two
+		assertEquals(30, n_prepare.get());
+		assertEquals(28, n_close.get());
+	}
+
+	public void testNested() throws SQLException {
+		SQLConnectionPool pool = new SQLConnectionPool(URL,
+			new Properties(), 1, 8);
+		SQLConnectionPool.Pooled pc = pool.acquire();
+		try {
+			PreparedStatement ps = pc.prepare("SELECT ?;");
+			try {
+				// nested use does not wait for the pool, and
+				// does not reuse the statement in use
+				update(pool, "SELECT ?;");
+			}
+			finally {
+				pc.putPrepared(ps);
+			}
+		}
+		finally {
+			pool.release(pc);
+		}
+		assertEquals(2, n_prepare.get());
+		assertEquals(1, n_close.get());
+		update(pool, "SELECT ?;");
+		assertEquals(1, pool.getReused());
+	}
+
+	/** Execute several updates on a pool */
+	private void updates(SQLConnectionPool pool, String sql, int n)
+		throws SQLException
+	{
+		for (int i = 0; i < n; i++)
+			update(pool, sql);
+	}
+
+	/** Run updates from several threads */
+	private void runThreads(final SQLConnectionPool pool, int n_threads,
+		final int n_updates) throws InterruptedException
+	{
+		final AtomicInteger errors = new AtomicInteger();
+		Thread[] threads = new Thread[n_threads];
+		for (int t = 0; t < n_threads; t++) {
+			final String sql = "UPDATE t" + t + " SET a = ?;";
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						updates(pool, sql, n_updates);
+					}
+					catch (SQLException e) {
+						errors.incrementAndGet();
+					}
+				}
+			};
+		}
+		for (Thread t: threads)
+			t.start();
+		for (Thread t: threads)
+			t.join();
+		assertEquals(0, errors.get());
+	}
+
+	public void testContention() throws InterruptedException {
+		exec_ms = 4;
+		runThreads(new SQLConnectionPool(URL, new Properties(), 1, 8),
+			8, 25);
+		assertEquals(1, n_connect.get());
+		assertEquals(200, n_exec.get());
+		// one connection executes one statement at a time
+		assertEquals(1, max_active.get());
+		max_active.set(0);
+		runThreads(new SQLConnectionPool(URL, new Properties(), 4, 8),
+			8, 25);
+		assertEquals(5, n_connect.get());
+		assertEquals(400, n_exec.get());
+		// eight threads keep more than one of four connections busy,
+		// but never more than four
+		int m = max_active.get();
+		assertTrue("max: " + m, m > 1 && m <= 4);
+	}
+}
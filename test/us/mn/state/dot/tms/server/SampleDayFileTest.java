@@ -0,0 +1,100 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Sample day file tests
+ *
+ * @author Douglas Lau
+ */
+public class SampleDayFileTest extends TestCase {
+
+	public SampleDayFileTest(String name) {
+		super(name);
+	}
+
+	/** Create an empty temporary directory */
+	private File createDir(String name) {
+		File dir = new File("/tmp", name);
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f: files)
+				f.delete();
+		}
+		dir.mkdir();
+		return dir;
+	}
+
+	public void testRegions() throws IOException {
+		File dir = createDir("day_regions");
+		File f = new File(dir, "100." + SampleDayFile.EXT);
+		SampleDayFile df = new SampleDayFile(f, true);
+		long v = df.allocate("v30", 2880);
+		long c = df.allocate("c30", 5760);
+		assertEquals(SampleDayFile.HEADER_LEN, v);
+		assertEquals(v + 2880, c);
+		assertEquals(v, df.allocate("v30", 2880));
+		df.write("v30", 10, ByteBuffer.wrap(new byte[] { 5, 6 }));
+		df.close();
+		assertEquals(SampleDayFile.HEADER_LEN + 2880 + 5760,
+			f.length());
+		df = new SampleDayFile(f, false);
+		assertTrue(Arrays.equals(new String[] { "v30", "c30" },
+			df.getExtensions()));
+		byte[] vol = df.read("v30");
+		assertEquals(2880, vol.length);
+		assertEquals(-1, vol[9]);
+		assertEquals(5, vol[10]);
+		assertEquals(6, vol[11]);
+		assertEquals(-1, vol[12]);
+		assertNull(df.read("s30"));
+		df.close();
+	}
+
+	public void testConvert() throws IOException {
+		File dir = createDir("day_convert");
+		String[] ids = { "100", "100a", "101" };
+		for (String id: ids) {
+			SampleDayFile df = new SampleDayFile(new File(dir, id +
+				"." + SampleDayFile.EXT), true);
+			df.allocate("v30", 2880);
+			df.write("v30", 0, ByteBuffer.wrap(new byte[] {
+				(byte) id.length() }));
+			df.allocate("s30", 2880);
+			df.close();
+		}
+		File traf = new File("/tmp/day_convert.traffic");
+		SampleDayFile.toTraffic(dir, traf);
+		File dir2 = createDir("day_convert2");
+		SampleDayFile.fromTraffic(traf, dir2);
+		for (String id: ids) {
+			File f = new File(dir2, id + "." + SampleDayFile.EXT);
+			SampleDayFile df = new SampleDayFile(f, false);
+			// entries are sorted by extension in traffic files
+			assertTrue(Arrays.equals(new String[] { "s30", "v30" },
+				df.getExtensions()));
+			assertEquals(id.length(), df.read("v30")[0]);
+			assertEquals(-1, df.read("s30")[0]);
+			df.close();
+		}
+		traf.delete();
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Sample series decode benchmark.  One year of volume and speed data for
+ * a detector is read from a sample series file, and from one zipped
+ * traffic file per day.  This is not a test case, so it is not part of
+ * the normal test run.  Run it with:
+ *
+ *   java -cp [classpath] us.mn.state.dot.tms.server.SampleSeriesBench
+ *
+ * @author Douglas Lau
+ */
+public class SampleSeriesBench {
+
+	/** Number of days in the benchmark */
+	static private final int N_DAYS = 365;
+
+	/** Number of times to repeat each decode */
+	static private final int N_REPEAT = 10;
+
+	/** Get the date (YYYYMMDD) for a day number */
+	static private int date(int d) {
+		Calendar cal = new GregorianCalendar(2016, Calendar.JANUARY,
+			1);
+		cal.add(Calendar.DATE, d);
+		return cal.get(Calendar.YEAR) * 10000 +
+		      (cal.get(Calendar.MONTH) + 1) * 100 +
+		       cal.get(Calendar.DATE);
+	}
+
+	/** Get the traffic file for a day number */
+	static private File trafficFile(File dir, int d) {
+		return new File(dir, date(d) + ".traffic");
+	}
+
+	/** Write one year of data in both formats */
+	static private void writeData(File dir, File f) throws IOException {
+		Random r = new Random(5);
+		SampleSeriesFile sf = new SampleSeriesFile(f, true);
+		try {
+			for (int d = 0; d < N_DAYS; d++) {
+				byte[] vol = SampleSeriesFileTest.volumeDay(r);
+				byte[] spd = SampleSeriesFileTest.speedDay(r);
+				sf.append(date(d), "v30", vol, 1);
+				sf.append(date(d), "s30", spd, 1);
+				writeTraffic(trafficFile(dir, d), vol, spd);
+			}
+		}
+		finally {
+			sf.close();
+		}
+	}
+
+	/** Write a zipped traffic file for one day */
+	static private void writeTraffic(File traf, byte[] vol, byte[] spd)
+		throws IOException
+	{
+		ArchiveZipWriter zw = new ArchiveZipWriter(
+			new FileOutputStream(traf));
+		try {
+			zw.write(new ArchiveZipWriter.Entry("100.v30", vol, 6,
+				256));
+			zw.write(new ArchiveZipWriter.Entry("100.s30", spd, 6,
+				256));
+			zw.finish();
+		}
+		finally {
+			zw.close();
+		}
+	}
+
+	/** Decode one year of volume data from a series file */
+	static private long decodeSeries(File f) throws IOException {
+		long n_bytes = 0;
+		SampleSeriesFile sf = new SampleSeriesFile(f, false);
+		try {
+			SortedMap<Integer, byte[]> range = sf.readRange(date(0),
+				date(N_DAYS - 1), "v30");
+			for (byte[] raw: range.values())
+				n_bytes += raw.length;
+		}
+		finally {
+			sf.close();
+		}
+		return n_bytes;
+	}
+
+	/** Decode one year of volume data from traffic files */
+	static private long decodeTraffic(File dir) throws IOException {
+		long n_bytes = 0;
+		for (int d = 0; d < N_DAYS; d++) {
+			ZipFile zf = new ZipFile(trafficFile(dir, d));
+			try {
+				ZipEntry ze = zf.getEntry("100.v30");
+				n_bytes += SampleSeriesFile.readEntry(zf,
+					ze).length;
+			}
+			finally {
+				zf.close();
+			}
+		}
+		return n_bytes;
+	}
+
+	/** Get the total size of the traffic files */
+	static private long trafficSize(File dir) {
+		long n_bytes = 0;
+		for (int d = 0; d < N_DAYS; d++)
+			n_bytes += trafficFile(dir, d).length();
+		return n_bytes;
+	}
+
+	/** Print one benchmark result */
+	static private void report(String fmt, long n_bytes, long ns) {
+		System.out.printf("%-8s %8d bytes, %8.2f ms / year\n", fmt,
+			n_bytes, ns / 1e6 / N_REPEAT);
+	}
+
+	/** Run the benchmark */
+	static public void main(String[] args) throws IOException {
+		File dir = new File(System.getProperty("java.io.tmpdir"),
+			"SampleSeriesBench");
+		dir.mkdirs();
+		File f = new File(dir, "100." + SampleSeriesFile.EXT);
+		f.delete();
+		try {
+			writeData(dir, f);
+			// warm up both decoders
+			decodeSeries(f);
+			decodeTraffic(dir);
+			long st = System.nanoTime();
+			for (int i = 0; i < N_REPEAT; i++)
+				decodeSeries(f);
+			report("series", f.length(), System.nanoTime() - st);
+			st = System.nanoTime();
+			for (int i = 0; i < N_REPEAT; i++)
+				decodeTraffic(dir);
+			report("traffic", trafficSize(dir),
+				System.nanoTime() - st);
+		}
+		finally {
+			for (int d = 0; d < N_DAYS; d++)
+				trafficFile(dir, d).delete();
+			f.delete();
+			dir.delete();
+		}
+	}
+}
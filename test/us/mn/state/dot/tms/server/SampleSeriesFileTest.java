@@ -0,0 +1,170 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedMap;
+import junit.framework.TestCase;
+
+/**
+ * Sample series codec and file tests
+ *
+ * @author Douglas Lau
+ */
+public class SampleSeriesFileTest extends TestCase {
+
+	public SampleSeriesFileTest(String name) {
+		super(name);
+	}
+
+	/** Create one day of synthetic 30-second volume data, with a daily
+	 * profile, noise and a few missing periods */
+	static byte[] volumeDay(Random r) {
+		byte[] raw = new byte[2880];
+		for (int i = 0; i < raw.length; i++) {
+			double h = i / 120.0;
+			double p = 6 + 5 * Math.sin((h - 6) * Math.PI / 12);
+			raw[i] = (byte) Math.max(0, p + r.nextGaussian() * 2);
+		}
+		Arrays.fill(raw, 1000, 1060, (byte) -1);
+		raw[2000] = -1;
+		return raw;
+	}
+
+	/** Create one day of 2-byte scan data */
+	static private byte[] scanDay(Random r) {
+		byte[] raw = new byte[5760];
+		for (int i = 0; i < 2880; i++) {
+			int v = (i % 7 == 0) ? -1 : r.nextInt(1800);
+			raw[i * 2] = (byte) (v >> 8);
+			raw[i * 2 + 1] = (byte) v;
+		}
+		return raw;
+	}
+
+	public void testCodec() throws IOException {
+		Random r = new Random(7);
+		byte[] vol = volumeDay(r);
+		byte[] enc = SampleSeriesCodec.encode(vol, 1);
+		assertTrue(Arrays.equals(vol, SampleSeriesCodec.decode(enc,
+			2880, 1)));
+		byte[] scan = scanDay(r);
+		enc = SampleSeriesCodec.encode(scan, 2);
+		assertTrue(Arrays.equals(scan, SampleSeriesCodec.decode(enc,
+			2880, 2)));
+		byte[] missing = new byte[2880];
+		Arrays.fill(missing, (byte) -1);
+		enc = SampleSeriesCodec.encode(missing, 1);
+		assertEquals(3, enc.length);
+		assertTrue(Arrays.equals(missing, SampleSeriesCodec.decode(
+			enc, 2880, 1)));
+		byte[] noise = new byte[2880];
+		r.nextBytes(noise);
+		enc = SampleSeriesCodec.encode(noise, 1);
+		assertTrue(Arrays.equals(noise, SampleSeriesCodec.decode(enc,
+			2880, 1)));
+		enc = SampleSeriesCodec.encode(noise, 2);
+		assertTrue(Arrays.equals(noise, SampleSeriesCodec.decode(enc,
+			1440, 2)));
+	}
+
+	public void testSampleType() {
+		assertEquals(PeriodicSampleType.VOLUME,
+			SampleSeriesCodec.sampleType("v30"));
+		assertEquals(PeriodicSampleType.MOTORCYCLE,
+			SampleSeriesCodec.sampleType("vmc30"));
+		assertEquals(PeriodicSampleType.PRECIP_RATE,
+			SampleSeriesCodec.sampleType("pr60"));
+		assertNull(SampleSeriesCodec.sampleType("vlog"));
+		assertNull(SampleSeriesCodec.sampleType("30"));
+	}
+
+	public void testFile() throws IOException {
+		Random r = new Random(11);
+		File f = new File("/tmp/SampleSeriesFileTest.series");
+		f.delete();
+		byte[][] days = new byte[10][];
+		SampleSeriesFile sf = new SampleSeriesFile(f, true);
+		for (int d = 0; d < days.length; d++) {
+			days[d] = volumeDay(r);
+			sf.append(20160101 + d, "v30", days[d], 1);
+			sf.append(20160101 + d, "c30", scanDay(r), 2);
+		}
+		// replace one day
+		days[3] = volumeDay(r);
+		sf.append(20160104, "v30", days[3], 1);
+		sf.close();
+		// partially written block is ignored
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.seek(raf.length());
+		raf.write(new byte[] { 1, 2, 3 });
+		raf.close();
+		sf = new SampleSeriesFile(f, false);
+		assertTrue(Arrays.equals(new String[] { "c30", "v30" },
+			sf.getExtensions()));
+		SortedMap<Integer, byte[]> range = sf.readRange(20160103,
+			20160105, "v30");
+		assertEquals(3, range.size());
+		for (int d = 2; d <= 4; d++) {
+			assertTrue(Arrays.equals(days[d],
+				range.get(20160101 + d)));
+		}
+		assertNull(sf.read(20160201, "v30"));
+		assertNull(sf.read(20160101, "s30"));
+		sf.close();
+		f.delete();
+	}
+
+	/** Create one day of synthetic 30-second speed data */
+	static byte[] speedDay(Random r) {
+		byte[] raw = new byte[2880];
+		int v = 60;
+		for (int i = 0; i < raw.length; i++) {
+			v = Math.max(10, Math.min(75, v + r.nextInt(5) - 2));
+			raw[i] = (byte) v;
+		}
+		Arrays.fill(raw, 1000, 1060, (byte) -1);
+		return raw;
+	}
+
+	public void testSize() throws IOException {
+		Random r = new Random(3);
+		File f = new File("/tmp/SampleSeriesFileTest.series");
+		f.delete();
+		SampleSeriesFile sf = new SampleSeriesFile(f, true);
+		ArchiveZipWriter zw = new ArchiveZipWriter(
+			new ByteArrayOutputStream());
+		for (int d = 0; d < 30; d++) {
+			byte[] vol = volumeDay(r);
+			byte[] spd = speedDay(r);
+			sf.append(20160101 + d, "v30", vol, 1);
+			sf.append(20160101 + d, "s30", spd, 1);
+			zw.write(new ArchiveZipWriter.Entry("100.v30", vol, 6,
+				256));
+			zw.write(new ArchiveZipWriter.Entry("100.s30", spd, 6,
+				256));
+		}
+		zw.finish();
+		sf.close();
+		// smaller than one month of zipped sample files
+		assertTrue(f.length() < zw.getBytes());
+		f.delete();
+	}
+}
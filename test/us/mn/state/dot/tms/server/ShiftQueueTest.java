@@ -0,0 +1,146 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Shift queue tests.
+ *
+ * @author Douglas Lau
+ */
+public class ShiftQueueTest extends TestCase {
+
+	/** Nanoseconds per millisecond */
+	static private final long NS_PER_MS = 1000000;
+
+	/** Shift queue with a fake clock */
+	static private class FakeClockQueue extends ShiftQueue<String> {
+		private long now = 0;
+		@Override
+		protected long nanoTime() {
+			return now;
+		}
+		private void advance(long ms) {
+			now += ms * NS_PER_MS;
+		}
+	}
+
+	/** Mover which records moves and their times */
+	static private class Recorder implements ShiftQueue.Mover<String> {
+		private final List<String> moved = new ArrayList<String>();
+		private final List<Long> times = new ArrayList<Long>();
+		public synchronized void move(String item) {
+			moved.add(item);
+			times.add(System.nanoTime());
+		}
+	}
+
+	public ShiftQueueTest(String name) {
+		super(name);
+	}
+
+	public void testFirstBatchDue() {
+		FakeClockQueue q = new FakeClockQueue();
+		q.schedule(Arrays.asList("a", "b", "c", "d", "e"), 2, 60000);
+		Recorder r = new Recorder();
+		assertEquals(2, q.dispatch(r));
+		assertEquals(Arrays.asList("a", "b"), r.moved);
+		assertEquals(3, q.size());
+		assertEquals(0, q.dispatch(r));
+		q.clear();
+		assertEquals(0, q.size());
+	}
+
+	public void testNoPause() {
+		FakeClockQueue q = new FakeClockQueue();
+		q.schedule(Arrays.asList("c", "b", "a"), 1, 0);
+		Recorder r = new Recorder();
+		assertEquals(3, q.dispatch(r));
+		assertEquals(Arrays.asList("c", "b", "a"), r.moved);
+	}
+
+	public void testDispatchDoesNotWait() {
+		FakeClockQueue q = new FakeClockQueue();
+		q.schedule(Arrays.asList("x", "y"), 1, 10000);
+		Recorder r = new Recorder();
+		assertEquals(1, q.dispatch(r));
+		// The fake clock never advances, so a waiting dispatch
+		// would never return
+		for (int i = 0; i < 100; i++)
+			assertEquals(0, q.dispatch(r));
+		assertEquals(1, q.size());
+	}
+
+	public void testBatches() {
+		FakeClockQueue q = new FakeClockQueue();
+		q.schedule(Arrays.asList("a", "b", "c", "d", "e", "f"), 2,
+			100);
+		Recorder r = new Recorder();
+		assertEquals(2, q.dispatch(r));
+		q.advance(99);
+		assertEquals(0, q.dispatch(r));
+		q.advance(1);
+		assertEquals(2, q.dispatch(r));
+		assertEquals(Arrays.asList("a", "b", "c", "d"), r.moved);
+		// Late dispatch performs every move which is due, in order
+		q.advance(150);
+		assertEquals(2, q.dispatch(r));
+		assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"),
+			r.moved);
+		assertEquals(0, q.size());
+	}
+
+	public void testSchedulerThread() throws Exception {
+		final ShiftQueue<String> q = new ShiftQueue<String>();
+		final Recorder r = new Recorder();
+		ScheduledExecutorService sched =
+			Executors.newSingleThreadScheduledExecutor();
+		long start = System.nanoTime();
+		q.schedule(Arrays.asList("a", "b", "c", "d", "e", "f"), 2,
+			100);
+		sched.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				q.dispatch(r);
+			}
+		}, 0, 10, TimeUnit.MILLISECONDS);
+		// the scheduler thread must stay free for other jobs
+		for (int i = 0; i < 40; i++) {
+			sched.submit(new Runnable() {
+				public void run() { }
+			}).get(5, TimeUnit.SECONDS);
+			Thread.sleep(10);
+		}
+		for (int i = 0; i < 500 && q.size() > 0; i++)
+			Thread.sleep(10);
+		sched.shutdown();
+		assertTrue(sched.awaitTermination(5, TimeUnit.SECONDS));
+		synchronized (r) {
+			assertEquals(Arrays.asList("a", "b", "c", "d", "e",
+				"f"), r.moved);
+			// moves are never early
+			for (int i = 0; i < 6; i++) {
+				long ms = (r.times.get(i) - start) / NS_PER_MS;
+				assertTrue(i + ": " + ms, ms >= (i / 2) * 100);
+			}
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tag read ring tests, with a synthetic read generator.
+ *
+ * @author Douglas Lau
+ */
+public class TagReadRingTest extends TestCase {
+
+	/** Dedup window (ms) */
+	static private final long WINDOW_MS = 10 * 1000;
+
+	/** Synthetic tag read */
+	static private class Read {
+		private final long stamp;
+		private final TagType tt;
+		private final Integer agency;
+		private final int tid;
+		private final boolean hov;
+		private Read(long st, TagType t, Integer ag, int id,
+			boolean h)
+		{
+			stamp = st;
+			tt = t;
+			agency = ag;
+			tid = id;
+			hov = h;
+		}
+	}
+
+	/** Consumer which collects reads */
+	static private class Collector implements TagReadRing.Consumer {
+		private final ArrayList<Read> reads = new ArrayList<Read>();
+		public void read(long stamp, TagType tt, Integer agency,
+			int tid, boolean hov)
+		{
+			reads.add(new Read(stamp, tt, agency, tid, hov));
+		}
+	}
+
+	/** Synthetic read generator.  Each read is from a random tag out of
+	 * a small population, so tags are read repeatedly. */
+	static private class Generator {
+		private final Random rnd;
+		private final int n_tags;
+		private long stamp;
+		private Generator(long seed, int n, long st) {
+			rnd = new Random(seed);
+			n_tags = n;
+			stamp = st;
+		}
+		private Read next() {
+			stamp += rnd.nextInt(50);
+			int t = rnd.nextInt(n_tags);
+			TagType tt = TagType.values()[t % 2];
+			Integer ag = (tt == TagType.SeGo) ? t % 7 : null;
+			return new Read(stamp, tt, ag, t * 7919, t % 3 == 0);
+		}
+	}
+
+	public TagReadRingTest(String name) {
+		super(name);
+	}
+
+	public void testSize() {
+		assertEquals(2, new TagReadRing(1).size());
+		assertEquals(1024, new TagReadRing(1000).size());
+		assertEquals(1024, new TagReadRing(1024).size());
+	}
+
+	public void testTagKey() {
+		long k0 = TagReadRing.tagKey(TagType.ASTM, null, 5);
+		long k1 = TagReadRing.tagKey(TagType.SeGo, null, 5);
+		long k2 = TagReadRing.tagKey(TagType.SeGo, 0, 5);
+		long k3 = TagReadRing.tagKey(TagType.SeGo, 0, -1);
+		assertTrue(k0 != k1);
+		assertTrue(k1 != k2);
+		assertTrue(k2 != k3);
+	}
+
+	public void testRoundTrip() {
+		TagReadRing ring = new TagReadRing(8);
+		assertTrue(ring.offer(1000, TagType.SeGo, 0xFFFF, -2, true));
+		assertTrue(ring.offer(2000, TagType.ASTM, null, 12345, false));
+		Collector c = new Collector();
+		assertEquals(2, ring.drain(WINDOW_MS, c));
+		Read r0 = c.reads.get(0);
+		assertEquals(1000, r0.stamp);
+		assertEquals(TagType.SeGo, r0.tt);
+		assertEquals(Integer.valueOf(0xFFFF), r0.agency);
+		assertEquals(-2, r0.tid);
+		assertTrue(r0.hov);
+		Read r1 = c.reads.get(1);
+		assertEquals(TagType.ASTM, r1.tt);
+		assertNull(r1.agency);
+		assertEquals(12345, r1.tid);
+		assertFalse(r1.hov);
+	}
+
+	public void testFull() {
+		TagReadRing ring = new TagReadRing(4);
+		for (int i = 0; i < 4; i++)
+			assertTrue(ring.offer(i, TagType.ASTM, null, i, false));
+		assertFalse(ring.offer(4, TagType.ASTM, null, 4, false));
+		assertEquals(1, ring.getDropped());
+		Collector c = new Collector();
+		assertEquals(4, ring.drain(WINDOW_MS, c));
+		assertTrue(ring.offer(5, TagType.ASTM, null, 5, false));
+		assertEquals(1, ring.drain(WINDOW_MS, c));
+		assertEquals(5, c.reads.get(4).tid);
+	}
+
+	public void testDedup() {
+		TagReadRing ring = new TagReadRing(1024);
+		Generator gen = new Generator(1, 50, 0);
+		ArrayList<Read> offered = new ArrayList<Read>();
+		Collector c = new Collector();
+		for (int i = 0; i < 20000; i++) {
+			Read r = gen.next();
+			offered.add(r);
+			assertTrue(ring.offer(r.stamp, r.tt, r.agency, r.tid,
+				r.hov));
+			if (i % 500 == 499)
+				ring.drain(WINDOW_MS, c);
+		}
+		ring.drain(WINDOW_MS, c);
+		// expected: reads at least one window after last passed read
+		HashMap<Long, Long> last = new HashMap<Long, Long>();
+		ArrayList<Read> expected = new ArrayList<Read>();
+		for (Read r: offered) {
+			long k = TagReadRing.tagKey(r.tt, r.agency, r.tid);
+			Long l = last.get(k);
+			if (l == null || r.stamp - l >= WINDOW_MS) {
+				last.put(k, r.stamp);
+				expected.add(r);
+			}
+		}
+		assertEquals(expected.size(), c.reads.size());
+		assertEquals(offered.size() - expected.size(),
+			ring.getRepeats());
+		for (int i = 0; i < expected.size(); i++) {
+			Read e = expected.get(i);
+			Read r = c.reads.get(i);
+			assertEquals(e.stamp, r.stamp);
+			assertEquals(e.tt, r.tt);
+			assertEquals(e.agency, r.agency);
+			assertEquals(e.tid, r.tid);
+			assertEquals(e.hov, r.hov);
+		}
+	}
+
+	public void testConcurrentOrdering() throws InterruptedException {
+		final int n_producers = 4;
+		final int n_reads = 100000;
+		final TagReadRing ring = new TagReadRing(4096);
+		Thread[] producers = new Thread[n_producers];
+		for (int p = 0; p < n_producers; p++) {
+			final int pid = p;
+			producers[p] = new Thread() {
+				public void run() {
+					// Unique tag per read, so none are
+					// skipped; tid encodes sequence
+					for (int i = 0; i < n_reads; i++) {
+						int tid = pid * n_reads + i;
+						while (!ring.offer(i, TagType
+							.ASTM, pid, tid, false))
+							Thread.yield();
+					}
+				}
+			};
+		}
+		final int[] next = new int[n_producers];
+		final boolean[] ok = { true };
+		TagReadRing.Consumer c = new TagReadRing.Consumer() {
+			public void read(long stamp, TagType tt,
+				Integer agency, int tid, boolean hov)
+			{
+				int pid = agency;
+				if (tid != pid * n_reads + next[pid])
+					ok[0] = false;
+				next[pid]++;
+			}
+		};
+		for (Thread t: producers)
+			t.start();
+		int total = 0;
+		while (total < n_producers * n_reads)
+			total += ring.drain(0, c);
+		for (Thread t: producers)
+			t.join();
+		assertTrue(ok[0]);
+		for (int p = 0; p < n_producers; p++)
+			assertEquals(n_reads, next[p]);
+		assertEquals(n_producers * n_reads, total);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ * Traffic replay tests
+ *
+ * @author Douglas Lau
+ */
+public class TrafficReplayTest extends TestCase {
+
+	public TrafficReplayTest(String name) {
+		super(name);
+	}
+
+	/** Add one entry to a zip file */
+	static private void addEntry(ZipOutputStream zos, String name,
+		byte[] data) throws IOException
+	{
+		zos.putNextEntry(new ZipEntry(name));
+		zos.write(data);
+		zos.closeEntry();
+	}
+
+	/** Create 2-byte sample data */
+	static private byte[] shorts(int... v) {
+		byte[] b = new byte[v.length * 2];
+		for (int i = 0; i < v.length; i++) {
+			b[i * 2] = (byte) (v[i] >> 8);
+			b[i * 2 + 1] = (byte) v[i];
+		}
+		return b;
+	}
+
+	public void testLoad() throws IOException {
+		File traf = new File("/tmp", "20160301.traffic");
+		byte[] vol = new byte[TrafficReplay.STEPS];
+		Arrays.fill(vol, (byte) -1);
+		vol[0] = 5;
+		vol[1] = 12;
+		vol[2879] = 3;
+		ZipOutputStream zos = new ZipOutputStream(
+			new FileOutputStream(traf));
+		try {
+			addEntry(zos, "100.v30", vol);
+			addEntry(zos, "100.c30", shorts(180, -1, 1800));
+			addEntry(zos, "100.o30", shorts(500, 1000, 2000));
+			addEntry(zos, "100.s30", new byte[] { 55, -1, 20 });
+			addEntry(zos, "101.o30", shorts(-1, 10000));
+			addEntry(zos, "101.v5", new byte[] { 60 });
+			addEntry(zos, "102.v5", new byte[] { 60 });
+			addEntry(zos, "README", new byte[] { 1 });
+		}
+		finally {
+			zos.close();
+		}
+		TrafficReplay tr = new TrafficReplay(traf);
+		assertEquals(Arrays.asList("100", "101"),
+			Arrays.asList(tr.getDetectors().toArray()));
+		TrafficReplay.Samples s = tr.getSamples("100");
+		assertEquals(5, s.getVolume(0));
+		assertEquals(12, s.getVolume(1));
+		assertEquals(-1, s.getVolume(2));
+		assertEquals(3, s.getVolume(2879));
+		// scan counts take precedence over occupancy
+		assertEquals(180, s.getScans(0));
+		assertEquals(180, s.getScans(1));
+		assertEquals(1800, s.getScans(2));
+		assertEquals(-1, s.getScans(3));
+		assertEquals(55, s.getSpeed(0));
+		assertEquals(-1, s.getSpeed(1));
+		assertEquals(20, s.getSpeed(2));
+		s = tr.getSamples("101");
+		assertEquals(-1, s.getVolume(0));
+		assertEquals(-1, s.getScans(0));
+		assertEquals(1800, s.getScans(1));
+		assertNull(tr.getSamples("102"));
+		traf.delete();
+	}
+
+	public void testSynthetic() {
+		TrafficReplay tr = new TrafficReplay();
+		tr.putSample("200", 10, 8, 270, 61);
+		TrafficReplay.Samples s = tr.getSamples("200");
+		assertEquals(8, s.getVolume(10));
+		assertEquals(270, s.getScans(10));
+		assertEquals(61, s.getSpeed(10));
+		assertEquals(-1, s.getVolume(11));
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+
+/**
+ * XML fragment writer tests
+ *
+ * @author Douglas Lau
+ */
+public class XmlFragmentWriterTest extends TestCase {
+
+	/** Stand-in source object */
+	static private class Item {
+		private final String name;
+		private int value;
+		private Item(String n, int v) {
+			name = n;
+			value = v;
+		}
+	}
+
+	/** Test writer for a list of items */
+	static private class TestWriter extends XmlFragmentWriter {
+		private final ArrayList<Item> items = new ArrayList<Item>();
+		private final boolean stamped;
+		private int n_rendered = 0;
+		private int n_head = 0;
+		private TestWriter(File dir, boolean s) {
+			super(dir, "test.xml", false, null);
+			stamped = s;
+		}
+		@Override
+		protected void writeHead(Writer w) throws IOException {
+			n_head++;
+			w.write("<items time_stamp='" + n_head + "'>\n");
+		}
+		@Override
+		protected void writeBody() throws IOException {
+			for (Item it: items) {
+				Writer w = stamped
+				         ? fragment(it, it.value)
+				         : fragment(it);
+				if (w != null) {
+					n_rendered++;
+					w.write("<item name='" + it.name +
+						"' value='" + it.value +
+						"'/>\n");
+				}
+			}
+		}
+		@Override
+		protected void writeTail(Writer w) throws IOException {
+			w.write("</items>\n");
+		}
+	}
+
+	/** Temporary output directory */
+	private File dir;
+
+	public XmlFragmentWriterTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = Files.createTempDirectory("xml").toFile();
+	}
+
+	@Override
+	protected void tearDown() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f: files)
+				f.delete();
+		}
+		dir.delete();
+	}
+
+	/** Read the output file */
+	private String read(TestWriter tw) throws IOException {
+		return new String(Files.readAllBytes(tw.file.toPath()),
+			"UTF-8");
+	}
+
+	/** Create a writer with three items */
+	private TestWriter create(boolean stamped) {
+		TestWriter tw = new TestWriter(dir, stamped);
+		tw.items.add(new Item("a", 1));
+		tw.items.add(new Item("b", 2));
+		tw.items.add(new Item("c", 3));
+		return tw;
+	}
+
+	public void testUnchanged() throws IOException {
+		TestWriter tw = create(false);
+		tw.write();
+		assertEquals(1, tw.getWritten());
+		assertEquals(3, tw.n_rendered);
+		tw.write();
+		assertEquals(1, tw.getWritten());
+		assertEquals(1, tw.getSkipped());
+		// Fragments without stamps are rendered to be compared
+		assertEquals(6, tw.n_rendered);
+		assertEquals("<items time_stamp='1'>\n" +
+			"<item name='a' value='1'/>\n" +
+			"<item name='b' value='2'/>\n" +
+			"<item name='c' value='3'/>\n" +
+			"</items>\n", read(tw));
+	}
+
+	public void testStampUnchanged() throws IOException {
+		TestWriter tw = create(true);
+		tw.write();
+		assertEquals(3, tw.n_rendered);
+		assertTrue(tw.file.setLastModified(0));
+		tw.write();
+		// Skipped file must still look fresh
+		assertTrue(tw.file.lastModified() > 0);
+		tw.write();
+		assertEquals(1, tw.getWritten());
+		assertEquals(2, tw.getSkipped());
+		// Fragments with unchanged stamps are not rendered
+		assertEquals(3, tw.n_rendered);
+	}
+
+	public void testChanged() throws IOException {
+		TestWriter tw = create(true);
+		tw.write();
+		tw.items.get(1).value = 5;
+		tw.write();
+		assertEquals(2, tw.getWritten());
+		assertEquals(0, tw.getSkipped());
+		assertEquals(4, tw.n_rendered);
+		assertEquals("<items time_stamp='2'>\n" +
+			"<item name='a' value='1'/>\n" +
+			"<item name='b' value='5'/>\n" +
+			"<item name='c' value='3'/>\n" +
+			"</items>\n", read(tw));
+	}
+
+	public void testRemoved() throws IOException {
+		TestWriter tw = create(true);
+		tw.write();
+		tw.items.remove(0);
+		tw.write();
+		assertEquals(2, tw.getWritten());
+		assertEquals(3, tw.n_rendered);
+		assertEquals("<items time_stamp='2'>\n" +
+			"<item name='b' value='2'/>\n" +
+			"<item name='c' value='3'/>\n" +
+			"</items>\n", read(tw));
+		tw.write();
+		assertEquals(1, tw.getSkipped());
+	}
+
+	public void testAddedBack() throws IOException {
+		TestWriter tw = create(true);
+		tw.write();
+		Item a = tw.items.remove(0);
+		tw.write();
+		// Removed fragments are not cached, so must be rendered
+		tw.items.add(a);
+		tw.write();
+		assertEquals(3, tw.getWritten());
+		assertEquals(4, tw.n_rendered);
+	}
+
+	public void testFileRemoved() throws IOException {
+		TestWriter tw = create(true);
+		tw.write();
+		assertTrue(tw.file.delete());
+		tw.write();
+		assertEquals(2, tw.getWritten());
+		assertTrue(tw.file.exists());
+	}
+}
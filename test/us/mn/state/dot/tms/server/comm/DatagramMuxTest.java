@@ -0,0 +1,243 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Datagram mux tests, with simulated devices on loopback.
+ *
+ * @author Douglas Lau
+ */
+public class DatagramMuxTest extends TestCase {
+
+	/** Number of simulated devices */
+	static private final int N_DEVICES = 500;
+
+	/** Number of poller threads */
+	static private final int N_POLLERS = 8;
+
+	/** Simulated devices, which reply to each request with their index
+	 * and the request.  All devices are served by one thread. */
+	static private class Devices extends Thread {
+		final Selector selector = Selector.open();
+		final ArrayList<SocketAddress> addrs =
+			new ArrayList<SocketAddress>();
+		final ArrayList<DatagramChannel> chans =
+			new ArrayList<DatagramChannel>();
+		Devices(int n) throws IOException {
+			setDaemon(true);
+			InetAddress lo = InetAddress.getByName("127.0.0.1");
+			for (int i = 0; i < n; i++) {
+				DatagramChannel dc = DatagramChannel.open();
+				dc.bind(new InetSocketAddress(lo, 0));
+				dc.configureBlocking(false);
+				dc.register(selector, SelectionKey.OP_READ, i);
+				chans.add(dc);
+				addrs.add(dc.getLocalAddress());
+			}
+		}
+		@Override
+		public void run() {
+			ByteBuffer buf = ByteBuffer.allocate(256);
+			try {
+				while (selector.isOpen()) {
+					selector.select();
+					for (SelectionKey k:
+					     selector.selectedKeys())
+					{
+						reply(k, buf);
+					}
+					selector.selectedKeys().clear();
+				}
+			}
+			catch (Exception e) {
+				// closed
+			}
+		}
+		void reply(SelectionKey k, ByteBuffer buf) throws IOException {
+			DatagramChannel dc = (DatagramChannel) k.channel();
+			buf.clear();
+			SocketAddress src = dc.receive(buf);
+			if (src != null) {
+				buf.flip();
+				byte[] req = new byte[buf.remaining()];
+				buf.get(req);
+				String r = "dev " + k.attachment() + ":" +
+					new String(req, "US-ASCII");
+				dc.send(ByteBuffer.wrap(r.getBytes("US-ASCII")),
+					src);
+			}
+		}
+		void close() throws IOException {
+			selector.close();
+			for (DatagramChannel dc: chans)
+				dc.close();
+		}
+	}
+
+	public DatagramMuxTest(String name) {
+		super(name);
+	}
+
+	/** Send a request and check the reply */
+	static private void request(DatagramMux.Endpoint ep, int i, String q)
+		throws IOException
+	{
+		byte[] b = q.getBytes("US-ASCII");
+		ep.send(b, b.length);
+		String r = new String(ep.receive(2000), "US-ASCII");
+		assertEquals("dev " + i + ":" + q, r);
+	}
+
+	public void testRouting() throws Exception {
+		Devices dev = new Devices(N_DEVICES);
+		dev.start();
+		final ArrayList<DatagramMux.Endpoint> eps =
+			new ArrayList<DatagramMux.Endpoint>();
+		for (SocketAddress a: dev.addrs)
+			eps.add(DatagramMux.open(null, a));
+		// all endpoints share one channel and receive thread
+		assertEquals(1, DatagramMux.countShared());
+		DatagramMux mux = eps.get(0).getMux();
+		int port = eps.get(0).getLocalPort();
+		for (DatagramMux.Endpoint ep: eps) {
+			assertSame(mux, ep.getMux());
+			assertEquals(port, ep.getLocalPort());
+		}
+		Thread receiver = mux.getReceiver();
+		assertTrue(receiver.isAlive());
+		// all requests in flight at once
+		for (int i = 0; i < N_DEVICES; i++) {
+			byte[] b = ("all " + i).getBytes("US-ASCII");
+			eps.get(i).send(b, b.length);
+		}
+		for (int i = 0; i < N_DEVICES; i++) {
+			String r = new String(eps.get(i).receive(2000),
+				"US-ASCII");
+			assertEquals("dev " + i + ":all " + i, r);
+		}
+		// concurrent pollers
+		final AtomicInteger errors = new AtomicInteger();
+		Thread[] pollers = new Thread[N_POLLERS];
+		for (int t = 0; t < pollers.length; t++) {
+			final int p = t;
+			pollers[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = p; i < N_DEVICES;
+						     i += N_POLLERS)
+						{
+							request(eps.get(i), i,
+								"poll " + i);
+						}
+					}
+					catch (Throwable e) {
+						errors.incrementAndGet();
+					}
+				}
+			};
+		}
+		for (Thread t: pollers)
+			t.start();
+		for (Thread t: pollers)
+			t.join();
+		assertEquals(0, errors.get());
+		assertEquals(2 * N_DEVICES, mux.getReceived());
+		// packets from unknown addresses are dropped
+		DatagramChannel stranger = DatagramChannel.open();
+		stranger.send(ByteBuffer.wrap(new byte[] { 1 }),
+			new InetSocketAddress("127.0.0.1", port));
+		stranger.close();
+		try {
+			eps.get(0).receive(200);
+			fail();
+		}
+		catch (SocketTimeoutException e) {
+			// expected
+		}
+		assertEquals(1, mux.getDropped());
+		for (DatagramMux.Endpoint ep: eps)
+			ep.close();
+		assertEquals(0, DatagramMux.countShared());
+		// closing the last endpoint stops the receive thread
+		receiver.join(2000);
+		assertFalse(receiver.isAlive());
+		dev.close();
+	}
+
+	public void testInterrupt() throws Exception {
+		Devices dev = new Devices(1);
+		dev.start();
+		DatagramMux.Endpoint ep = DatagramMux.open(null,
+			dev.addrs.get(0));
+		Thread.currentThread().interrupt();
+		try {
+			ep.receive(2000);
+			fail();
+		}
+		catch (SocketTimeoutException e) {
+			// expected
+		}
+		// interrupt status is kept for the caller
+		assertTrue(Thread.interrupted());
+		ep.close();
+		dev.close();
+	}
+
+	public void testDuplicate() throws Exception {
+		Devices dev = new Devices(1);
+		dev.start();
+		SocketAddress a = dev.addrs.get(0);
+		DatagramMux.Endpoint ep0 = DatagramMux.open(null, a);
+		DatagramMux.Endpoint ep1 = DatagramMux.open(null, a);
+		// same remote on any port gets a private mux
+		assertNotSame(ep0.getMux(), ep1.getMux());
+		request(ep0, 0, "zero");
+		request(ep1, 0, "one");
+		ep0.close();
+		ep1.close();
+		assertEquals(0, DatagramMux.countShared());
+		// same remote on a fixed port is an error
+		DatagramChannel dc = DatagramChannel.open();
+		dc.bind(new InetSocketAddress(0));
+		int port = ((InetSocketAddress) dc.getLocalAddress()).getPort();
+		dc.close();
+		DatagramMux.Endpoint ep2 = DatagramMux.open(port, a);
+		assertEquals(port, ep2.getLocalPort());
+		try {
+			DatagramMux.open(port, a);
+			fail();
+		}
+		catch (IOException e) {
+			assertEquals("DUPLICATE REMOTE", e.getMessage());
+		}
+		request(ep2, 0, "two");
+		ep2.close();
+		assertEquals(0, DatagramMux.countShared());
+		dev.close();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.dmsxml;
+
+import junit.framework.TestCase;
+
+/**
+ * ParseBuffer tests
+ *
+ * @author Douglas Lau
+ */
+public class ParseBufferTest extends TestCase {
+
+	/** Start of response token */
+	static private final String START = "<DmsXml>";
+
+	/** End of response token */
+	static private final String END = "</DmsXml>";
+
+	/** Intermediate status response, as sent by SensorServer */
+	static private final String INTER = "<DmsXml><InterStatus><Id>V1" +
+		"</Id><Msg>Waiting for DMS</Msg></InterStatus></DmsXml>";
+
+	/** Status query response, as sent by SensorServer */
+	static private final String STATUS = "<DmsXml><StatusRespMsg>" +
+		"<Id>V1</Id><IsValid>true</IsValid><ErrMsg></ErrMsg>" +
+		"<Owner>Chris</Owner><ActiveMsg>true</ActiveMsg>" +
+		"<MsgText>[jl4]LEFT LANE[nl]CLOSED</MsgText>" +
+		"<UseOnTime>false</UseOnTime><Bitmap>00ff00ff00ff00ff" +
+		"00ff00ff00ff00ff00ff00ff00ff00ff</Bitmap>" +
+		"</StatusRespMsg></DmsXml>";
+
+	public ParseBufferTest(String name) {
+		super(name);
+	}
+
+	public void testLegacy() {
+		assertTrue(ParseBuffer.test());
+	}
+
+	/** Replay a captured stream in chunks of the specified size */
+	private void replay(ParseBuffer pb, String stream, int chunk) {
+		char[] a = stream.toCharArray();
+		int n_tokens = 0;
+		for (int i = 0; i < a.length; i += chunk) {
+			int n = Math.min(chunk, a.length - i);
+			char[] c = new char[n];
+			System.arraycopy(a, i, c, 0, n);
+			pb.append(c);
+			CharSequence t = pb.nextToken(START, END);
+			while (t != null) {
+				String s = t.toString();
+				if (n_tokens % 2 == 0)
+					assertEquals(INTER, s);
+				else
+					assertEquals(STATUS, s);
+				n_tokens++;
+				t = pb.nextToken(START, END);
+			}
+		}
+		assertEquals(6, n_tokens);
+	}
+
+	public void testReplay() {
+		String stream = "\r\n" + INTER + STATUS + "junk" + INTER +
+			"\n" + STATUS + INTER + STATUS;
+		int max = 2 * STATUS.length() + 16;
+		for (int chunk = 1; chunk <= STATUS.length(); chunk++) {
+			ParseBuffer pb = new ParseBuffer(64, max);
+			replay(pb, stream, chunk);
+			assertTrue(pb.capacity() <= max);
+		}
+	}
+
+	public void testIncomplete() {
+		ParseBuffer pb = new ParseBuffer(16, 1024);
+		pb.append(STATUS.substring(0, 100).toCharArray());
+		assertNull(pb.nextToken(START, END));
+		pb.append(STATUS.substring(100).toCharArray());
+		assertEquals(STATUS, pb.nextToken(START, END).toString());
+		assertEquals(0, pb.length());
+	}
+
+	public void testBytes() {
+		ParseBuffer pb = new ParseBuffer(16, 1024);
+		byte[] b = new byte[] { 'a', (byte) 0xE9, 'b' };
+		pb.append(b);
+		assertEquals("aéb", pb.toString());
+	}
+
+	public void testSearch() {
+		ParseBuffer pb = new ParseBuffer(16, 1024);
+		pb.append("xxabcab".toCharArray());
+		assertEquals(2, pb.search("ab", 0));
+		assertEquals(5, pb.search("ab", 3));
+		assertTrue(pb.search("ac", 0) < 0);
+		pb.getToken(ParseBuffer.ExtractType.DDK, "x", "a");
+		assertEquals("bcab", pb.toString());
+		assertEquals(2, pb.search("ab", 0));
+	}
+}
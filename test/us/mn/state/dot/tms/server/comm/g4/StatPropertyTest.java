@@ -0,0 +1,155 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.g4;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Calendar;
+import java.util.TimeZone;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.server.PackedSampleWriter;
+import us.mn.state.dot.tms.server.PeriodicSample;
+import us.mn.state.dot.tms.server.PeriodicSampleCache;
+import us.mn.state.dot.tms.server.PeriodicSampleType;
+import us.mn.state.dot.tms.server.PeriodicSampleWriterTest.TestFactory;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * Statistical property tests, from captured frames to packed archive
+ * records.
+ *
+ * @author Douglas Lau
+ */
+public class StatPropertyTest extends TestCase {
+
+	/** Sensor ID (drop) of captured frames */
+	static private final int DROP = 1;
+
+	/** Frames for message 7, 2016-06-14 13:25:30 UTC, 2 zones, mph,
+	 * 30-second period: header, volume, speed, gap, headway, speed 85%
+	 * (zone 2 invalid) and footer. */
+	static private final String[] FRAMES = {
+		"ffaa80180001070001013025130314061602cc001e781000000000000219",
+		"ffaa1006000100090004000e",
+		"ffaa12060001003e00370076",
+		"ffaa13060001001e00460065",
+		"ffaa1e0600010021004a006c",
+		"ffaa1f0600010044ffff0243",
+		"ffaa81030001070008",
+	};
+
+	/** Convert a hex string to bytes */
+	static private byte[] hex(String h) {
+		byte[] b = new byte[h.length() / 2];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) Integer.parseInt(h.substring(i * 2,
+				i * 2 + 2), 16);
+		}
+		return b;
+	}
+
+	/** Archive directory (see PeriodicSampleWriterTest.TestFactory) */
+	static private final File DIR = new File("/tmp");
+
+	public StatPropertyTest(String name) {
+		super(name);
+	}
+
+	/** Parse the captured frames */
+	private StatProperty parse() throws IOException {
+		StatProperty stat = new StatProperty(30);
+		for (String f: FRAMES)
+			stat.parseFrame(new ByteArrayInputStream(hex(f)), DROP);
+		return stat;
+	}
+
+	public void testParse() throws IOException {
+		StatProperty stat = parse();
+		TimeZone utc = TimeZone.getTimeZone("GMT");
+		Calendar cal = Calendar.getInstance(utc);
+		cal.clear();
+		cal.set(2016, Calendar.JUNE, 14, 13, 25, 30);
+		assertEquals(cal.getTimeInMillis(), stat.getStamp());
+		assertEquals(2, stat.getZones());
+		assertEquals(9, stat.getVolume()[0]);
+		assertEquals(62, stat.getSpeed()[0]);
+		assertEquals(30, stat.getGap()[0]);
+		assertEquals(70, stat.getGap()[1]);
+		assertEquals(33, stat.getHeadway()[0]);
+		assertEquals(74, stat.getHeadway()[1]);
+		assertEquals(68, stat.getSpeed85()[0]);
+		assertEquals(MISSING_DATA, stat.getSpeed85()[1]);
+		assertEquals(MISSING_DATA, stat.getHeadway()[2]);
+	}
+
+	/** Store parsed metrics for one zone (like ControllerImpl) */
+	private PeriodicSampleCache[] store(long stamp, int[][] vals, int z) {
+		PeriodicSampleCache[] caches = new PeriodicSampleCache[3];
+		for (int f = 0; f < 3; f++) {
+			caches[f] = new PeriodicSampleCache(
+				PackedSampleWriter.DET_METRICS[f]);
+			if (vals[f][z] >= 0) {
+				caches[f].add(new PeriodicSample(stamp, 30,
+					vals[f][z]));
+			}
+		}
+		return caches;
+	}
+
+	public void testArchive() throws IOException {
+		StatProperty stat = parse();
+		int[][] vals = {
+			stat.getHeadway(), stat.getGap(), stat.getSpeed85()
+		};
+		PackedSampleWriter w = new PackedSampleWriter(
+			new TestFactory(), PackedSampleWriter.DET_METRICS_EXT,
+			PackedSampleWriter.DET_METRICS);
+		for (int z = 0; z < 2; z++) {
+			new File(DIR, "G4_" + z + ".x30").delete();
+			w.flush("G4_" + z, store(stat.getStamp(), vals, z));
+		}
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(stat.getStamp() - 30 * 1000);
+		int i = (cal.get(Calendar.HOUR_OF_DAY) * 120 +
+			cal.get(Calendar.MINUTE) * 2 +
+			cal.get(Calendar.SECOND) / 30);
+		byte[] d0 = readFile(new File(DIR, "G4_0.x30"));
+		byte[] d1 = readFile(new File(DIR, "G4_1.x30"));
+		assertEquals(33, w.decode(d0, PeriodicSampleType.HEADWAY)[i]);
+		assertEquals(30, w.decode(d0, PeriodicSampleType.GAP)[i]);
+		assertEquals(68, w.decode(d0, PeriodicSampleType.SPEED_85)[i]);
+		assertEquals(74, w.decode(d1, PeriodicSampleType.HEADWAY)[i]);
+		assertEquals(70, w.decode(d1, PeriodicSampleType.GAP)[i]);
+		assertEquals(MISSING_DATA,
+			w.decode(d1, PeriodicSampleType.SPEED_85)[i]);
+		new File(DIR, "G4_0.x30").delete();
+		new File(DIR, "G4_1.x30").delete();
+	}
+
+	/** Read a whole file */
+	static private byte[] readFile(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			byte[] data = new byte[(int) raf.length()];
+			raf.readFully(data);
+			return data;
+		}
+		finally {
+			raf.close();
+		}
+	}
+}
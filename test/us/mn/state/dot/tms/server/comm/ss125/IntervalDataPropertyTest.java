@@ -0,0 +1,216 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.ss125;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Calendar;
+import java.util.TimeZone;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.server.PackedSampleWriter;
+import us.mn.state.dot.tms.server.PeriodicSample;
+import us.mn.state.dot.tms.server.PeriodicSampleCache;
+import us.mn.state.dot.tms.server.PeriodicSampleType;
+import us.mn.state.dot.tms.server.PeriodicSampleWriterTest.TestFactory;
+import us.mn.state.dot.tms.server.SampleDayFile;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * Interval data property tests, from captured message bodies to packed
+ * archive records.
+ *
+ * @author Douglas Lau
+ */
+public class IntervalDataPropertyTest extends TestCase {
+
+	/** Interval 1234, 2016-06-14 13:25:30 UTC, 2 lanes.  Lane 1: 62.5 mph,
+	 * 9 vehicles, 10.5% occupancy, 85% speed 68 mph, headway 3300 ms,
+	 * gap 2950 ms.  Lane 2: no speed, 4 vehicles, 3% occupancy,
+	 * headway 7400 ms, gap 7020 ms. */
+	static private final String[] BODIES = {
+		"7100000004d2000fc0ce03597800803e800000090a80000001000007" +
+		"000001000000804400000ce4000b86020000",
+		"7101000004d2000fc0ce035978000000000000040300000000000004" +
+		"000000000000000000001ce8001b6c020000",
+	};
+
+	/** Convert a hex string to bytes */
+	static private byte[] hex(String h) {
+		byte[] b = new byte[h.length() / 2];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) Integer.parseInt(h.substring(i * 2,
+				i * 2 + 2), 16);
+		}
+		return b;
+	}
+
+	/** Archive directory (see PeriodicSampleWriterTest.TestFactory) */
+	static private final File DIR = new File("/tmp");
+
+	public IntervalDataPropertyTest(String name) {
+		super(name);
+	}
+
+	/** Parse the captured message bodies */
+	private IntervalDataProperty parse() throws IOException {
+		IntervalDataProperty idp = new IntervalDataProperty();
+		for (String b: BODIES)
+			idp.parseQuery(hex(b));
+		assertTrue(idp.isComplete());
+		return idp;
+	}
+
+	/** Get the record index of the sample period */
+	private int index(long stamp) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(stamp - 30 * 1000);
+		return (cal.get(Calendar.HOUR_OF_DAY) * 3600 +
+			cal.get(Calendar.MINUTE) * 60 +
+			cal.get(Calendar.SECOND)) / 30;
+	}
+
+	public void testParse() throws IOException {
+		IntervalDataProperty idp = parse();
+		TimeZone utc = TimeZone.getTimeZone("GMT");
+		Calendar cal = Calendar.getInstance(utc);
+		cal.clear();
+		cal.set(2016, Calendar.JUNE, 14, 13, 25, 30);
+		assertEquals(cal.getTimeInMillis(), idp.getTime());
+		assertEquals(9, idp.getVolume()[0]);
+		assertEquals(4, idp.getVolume()[1]);
+		assertEquals(63, idp.getSpeed()[0]);
+		assertEquals(MISSING_DATA, idp.getSpeed()[1]);
+		assertEquals(68, idp.getSpeed85()[0]);
+		assertEquals(MISSING_DATA, idp.getSpeed85()[1]);
+		assertEquals(33, idp.getHeadway()[0]);
+		assertEquals(74, idp.getHeadway()[1]);
+		assertEquals(30, idp.getGap()[0]);
+		assertEquals(70, idp.getGap()[1]);
+	}
+
+	/** Store parsed metrics for each lane (like ControllerImpl) */
+	private PeriodicSampleCache[][] store(IntervalDataProperty idp) {
+		int[][] vals = {
+			idp.getHeadway(), idp.getGap(), idp.getSpeed85()
+		};
+		PeriodicSampleCache[][] caches = new PeriodicSampleCache[2][3];
+		for (int ln = 0; ln < 2; ln++) {
+			for (int f = 0; f < 3; f++) {
+				caches[ln][f] = new PeriodicSampleCache(
+					PackedSampleWriter.DET_METRICS[f]);
+				int v = vals[f][ln];
+				if (v >= 0) {
+					caches[ln][f].add(new PeriodicSample(
+						idp.getTime(), 30, v));
+				}
+			}
+		}
+		return caches;
+	}
+
+	/** Read a whole file */
+	static private byte[] readFile(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			byte[] data = new byte[(int) raf.length()];
+			raf.readFully(data);
+			return data;
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	public void testArchive() throws IOException {
+		IntervalDataProperty idp = parse();
+		PeriodicSampleCache[][] caches = store(idp);
+		PackedSampleWriter w = new PackedSampleWriter(
+			new TestFactory(),
+			PackedSampleWriter.DET_METRICS_EXT,
+			PackedSampleWriter.DET_METRICS);
+		assertEquals(5, w.record_len);
+		File f1 = new File(DIR, "SS125_1.x30");
+		File f2 = new File(DIR, "SS125_2.x30");
+		f1.delete();
+		f2.delete();
+		w.flush("SS125_1", caches[0]);
+		w.flush("SS125_2", caches[1]);
+		byte[] d1 = readFile(f1);
+		byte[] d2 = readFile(f2);
+		assertEquals(2880 * 5, d1.length);
+		assertEquals(2880 * 5, d2.length);
+		int i = index(idp.getTime());
+		assertEquals(33, w.decode(d1, PeriodicSampleType.HEADWAY)[i]);
+		assertEquals(30, w.decode(d1, PeriodicSampleType.GAP)[i]);
+		assertEquals(68, w.decode(d1, PeriodicSampleType.SPEED_85)[i]);
+		assertEquals(74, w.decode(d2, PeriodicSampleType.HEADWAY)[i]);
+		assertEquals(70, w.decode(d2, PeriodicSampleType.GAP)[i]);
+		assertEquals(MISSING_DATA,
+			w.decode(d2, PeriodicSampleType.SPEED_85)[i]);
+		// other records are missing
+		int j = (i + 1) % 2880;
+		assertEquals(MISSING_DATA,
+			w.decode(d1, PeriodicSampleType.HEADWAY)[j]);
+		assertEquals(MISSING_DATA,
+			w.decode(d1, PeriodicSampleType.SPEED_85)[j]);
+		// a later flush keeps earlier records
+		for (PeriodicSampleCache c: caches[0])
+			c.purge(idp.getTime() + 60 * 1000);
+		caches[0][0].add(new PeriodicSample(idp.getTime() + 30 * 1000,
+			30, 41));
+		w.flush("SS125_1", caches[0]);
+		d1 = readFile(f1);
+		assertEquals(2880 * 5, d1.length);
+		assertEquals(33, w.decode(d1, PeriodicSampleType.HEADWAY)[i]);
+		assertEquals(41, w.decode(d1, PeriodicSampleType.HEADWAY)[j]);
+		assertEquals(MISSING_DATA,
+			w.decode(d1, PeriodicSampleType.GAP)[j]);
+		f1.delete();
+		f2.delete();
+	}
+
+	public void testArchiveDayFile() throws IOException {
+		IntervalDataProperty idp = parse();
+		PeriodicSampleCache[][] caches = store(idp);
+		TestFactory factory = new TestFactory() {
+			public boolean hasDayFiles() {
+				return true;
+			}
+		};
+		PackedSampleWriter w = new PackedSampleWriter(factory,
+			PackedSampleWriter.DET_METRICS_EXT,
+			PackedSampleWriter.DET_METRICS);
+		File f = new File(DIR, "SS125_D." + SampleDayFile.EXT);
+		f.delete();
+		w.flush("SS125_D", caches[0]);
+		SampleDayFile df = new SampleDayFile(f, false);
+		try {
+			byte[] d = df.read("x30");
+			assertEquals(2880 * 5, d.length);
+			int i = index(idp.getTime());
+			assertEquals(33,
+				w.decode(d, PeriodicSampleType.HEADWAY)[i]);
+			assertEquals(30,
+				w.decode(d, PeriodicSampleType.GAP)[i]);
+			assertEquals(68,
+				w.decode(d, PeriodicSampleType.SPEED_85)[i]);
+		}
+		finally {
+			df.close();
+		}
+		f.delete();
+	}
+}
@@ -184,6 +184,24 @@ public class ByteBlobTest extends TestCase {
 				equals(new byte[] {5}));
 		}
 
+		// bulk add, copyTo, getByteBuffer
+		{
+			ByteBlob bb1 = new ByteBlob(0);
+			for(int i = 0; i < 100; ++i)
+				bb1.add(five, 1, 3);
+			assertTrue(300 == bb1.size());
+			assertTrue(4 == bb1.getByte(299));
+			byte[] d = new byte[3];
+			bb1.copyTo(3, d, 0, 3);
+			assertTrue(new ByteBlob(d).equals(new byte[] {2, 3, 4}));
+			java.nio.ByteBuffer buf = bb1.getByteBuffer(1, 4);
+			assertTrue(buf.isReadOnly());
+			assertTrue(3 == buf.remaining());
+			assertTrue(3 == buf.get(0));
+			bb1.setSize(2).setSize(4);
+			assertTrue(bb1.equals(new byte[] {2, 3, 0, 0}));
+		}
+
 		// search at specified position
 		{
 			ByteBlob bb1 = new ByteBlob(new byte[] {(byte)100,
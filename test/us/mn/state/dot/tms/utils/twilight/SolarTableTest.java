@@ -0,0 +1,135 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2016  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.utils.twilight;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.geo.Position;
+
+/**
+ * Solar table tests, against reference sunrise and sunset times (NOAA
+ * solar calculator, rounded to the minute).
+ *
+ * @author Douglas Lau
+ */
+public class SolarTableTest extends TestCase {
+
+	/** Allowed error from reference times (ms) */
+	static private final long TOLERANCE_MS = 3 * 60 * 1000;
+
+	/** Minneapolis, MN */
+	static private final Position MSP = new Position(44.9778, -93.2650);
+
+	/** Sacramento, CA */
+	static private final Position SAC = new Position(38.5816, -121.4944);
+
+	/** Central time zone */
+	static private final TimeZone CENTRAL =
+		TimeZone.getTimeZone("America/Chicago");
+
+	/** Pacific time zone */
+	static private final TimeZone PACIFIC =
+		TimeZone.getTimeZone("America/Los_Angeles");
+
+	/** Reference table: month, day, sunrise and sunset (local HHMM) */
+	static private final int[][] MSP_REF = {
+		{ Calendar.JUNE, 21, 526, 2103 },
+		{ Calendar.DECEMBER, 21, 749, 1634 },
+	};
+
+	/** Reference table: month, day, sunrise and sunset (local HHMM) */
+	static private final int[][] SAC_REF = {
+		{ Calendar.JUNE, 21, 542, 2034 },
+		{ Calendar.DECEMBER, 21, 720, 1649 },
+	};
+
+	/** Create a calendar for a local date and time */
+	static private Calendar local(TimeZone tz, int month, int day,
+		int hhmm)
+	{
+		Calendar cal = Calendar.getInstance(tz);
+		cal.clear();
+		cal.set(2016, month, day, hhmm / 100, hhmm % 100, 0);
+		return cal;
+	}
+
+	public SolarTableTest(String name) {
+		super(name);
+	}
+
+	/** Check a table against reference times */
+	private void checkReference(TimeZone tz, Position pos, int[][] ref) {
+		SolarTable st = new SolarTable(tz);
+		for (int[] r: ref) {
+			SolarTable.Day d = st.lookup(local(tz, r[0], r[1], 0),
+				pos);
+			long rise = local(tz, r[0], r[1], r[2])
+				.getTimeInMillis();
+			long set = local(tz, r[0], r[1], r[3])
+				.getTimeInMillis();
+			assertTrue("sunrise " + r[1],
+				Math.abs(d.sunrise - rise) <= TOLERANCE_MS);
+			assertTrue("sunset " + r[1],
+				Math.abs(d.sunset - set) <= TOLERANCE_MS);
+		}
+	}
+
+	public void testMinneapolis() {
+		checkReference(CENTRAL, MSP, MSP_REF);
+	}
+
+	public void testSacramento() {
+		checkReference(PACIFIC, SAC, SAC_REF);
+	}
+
+	public void testDaylightTime() {
+		SolarTable st = new SolarTable(CENTRAL);
+		// DST begins 2016-03-13; sunrise clock time is about one hour
+		// later, but still about one day after the previous sunrise
+		SolarTable.Day d12 = st.lookup(local(CENTRAL,
+			Calendar.MARCH, 12, 0), MSP);
+		SolarTable.Day d13 = st.lookup(local(CENTRAL,
+			Calendar.MARCH, 13, 0), MSP);
+		long dif = d13.sunrise - d12.sunrise - 24 * 3600 * 1000;
+		assertTrue("dif: " + dif, Math.abs(dif) < 5 * 60 * 1000);
+	}
+
+	public void testCache() {
+		SolarTable st = new SolarTable(CENTRAL);
+		Calendar cal = local(CENTRAL, Calendar.JUNE, 21, 0);
+		SolarTable.Day d = st.lookup(cal, MSP);
+		assertSame(d, st.lookup(local(CENTRAL, Calendar.JUNE, 21,
+			2359), MSP));
+		assertSame(d, st.lookup(cal, new Position(44.97781,
+			-93.26502)));
+		assertNotSame(d, st.lookup(cal, SAC));
+		assertEquals(2, st.size());
+	}
+
+	public void testUpdate() {
+		SolarTable st = new SolarTable(CENTRAL);
+		st.lookup(local(CENTRAL, Calendar.JUNE, 20, 0), MSP);
+		st.lookup(local(CENTRAL, Calendar.JUNE, 21, 0), MSP);
+		st.update(local(CENTRAL, Calendar.JUNE, 21, 0), MSP);
+		// June 20 purged, June 22 precomputed
+		assertEquals(2, st.size());
+		SolarTable.Day d22 = st.lookup(local(CENTRAL, Calendar.JUNE,
+			22, 0), MSP);
+		assertEquals(2, st.size());
+		assertTrue(d22.sunrise > local(CENTRAL, Calendar.JUNE, 22, 0)
+			.getTimeInMillis());
+	}
+}